@@ -71,6 +71,9 @@ dependencies {
     implementation("jakarta.activation:jakarta.activation-api:2.1.3") // Jakarta Activation API
     implementation("fr.com.hp.hpl.jena.rdf.arp:arp:2.2.b") // Jena implementation for RDF parsing
     implementation("org.slf4j:slf4j-api:2.0.16") // Simple Logging Facade for Java (SLF4J)
+    implementation("org.apache.commons:commons-compress:1.27.1") // Library for bzip2 compression
+    implementation("com.github.luben:zstd-jni:1.5.6-8") // Library for zstd compression
+    implementation("com.fasterxml.jackson.core:jackson-core:2.17.2") // Streaming JSON parser and generator
     runtimeOnly("ch.qos.logback:logback-classic:1.5.12") // Logging framework for SLF4J
 
     testImplementation("org.wiremock:wiremock:3.9.2") // HTTP server mocking for API testing
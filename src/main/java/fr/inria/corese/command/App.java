@@ -2,8 +2,11 @@ package fr.inria.corese.command;
 
 import fr.inria.corese.command.programs.Canonicalize;
 import fr.inria.corese.command.programs.Convert;
+import fr.inria.corese.command.programs.GraphStore;
+import fr.inria.corese.command.programs.Push;
 import fr.inria.corese.command.programs.Query;
 import fr.inria.corese.command.programs.QueryEndpoint;
+import fr.inria.corese.command.programs.Serve;
 import fr.inria.corese.command.programs.Validate;
 import picocli.AutoComplete.GenerateCompletion;
 import picocli.CommandLine;
@@ -12,7 +15,8 @@ import picocli.CommandLine.Help.Ansi.Style;
 import picocli.CommandLine.Help.ColorScheme;
 
 @Command(name = "Corese", versionProvider = VersionProvider.class, mixinStandardHelpOptions = true, subcommands = {
-        Convert.class, Query.class, QueryEndpoint.class, Validate.class, Canonicalize.class, GenerateCompletion.class })
+        Convert.class, Query.class, QueryEndpoint.class, Validate.class, Canonicalize.class, Serve.class,
+        Push.class, GraphStore.class, GenerateCompletion.class })
 public final class App implements Runnable {
 
     public static void main(String[] args) {
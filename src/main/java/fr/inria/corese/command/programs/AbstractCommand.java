@@ -1,12 +1,18 @@
 package fr.inria.corese.command.programs;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Path;
 import java.util.Optional;
 import java.util.concurrent.Callable;
 
 import fr.inria.corese.command.VersionProvider;
+import fr.inria.corese.command.utils.CompiledQueryCache;
 import fr.inria.corese.command.utils.ConfigManager;
+import fr.inria.corese.command.utils.compression.CompressedOutput;
+import fr.inria.corese.command.utils.compression.EnumCompression;
 import fr.inria.corese.command.utils.exporter.rdf.RdfDataExporter;
+import fr.inria.corese.command.utils.http.HttpCache;
 import fr.inria.corese.core.util.Property;
 import fr.inria.corese.core.util.Property.Value;
 import picocli.CommandLine.Command;
@@ -35,9 +41,13 @@ public abstract class AbstractCommand implements Callable<Integer> {
     /////////////
 
     @Option(names = { "-o",
-            "--output-data" }, description = "Specifies the output file path. If not provided, the result will be written to standard output.", arity = "0..1", fallbackValue = RdfDataExporter.DEFAULT_OUTPUT)
+            "--output-data" }, description = "Specifies the output file path. If not provided, the result will be written to standard output. N-Triples and N-Quads graphs are written statement by statement; other formats, including Turtle and SPARQL results, are serialized in memory first and are limited to 2 GB.", arity = "0..1", fallbackValue = RdfDataExporter.DEFAULT_OUTPUT)
     protected Path output;
 
+    @Option(names = {
+            "--compress" }, description = "Compresses the output file. Possible values: @|fg(magenta) ${COMPLETION-CANDIDATES}|@. The extension of the compression format is appended to the output file name if missing. Gzip and bzip2 outputs are compressed in parallel blocks.", required = false)
+    protected EnumCompression compression;
+
     @Option(names = { "-c", "--config",
             "--init" }, description = "Specifies the path to a configuration file. If not provided, the default configuration file will be used.", required = false)
     private Path configFilePath;
@@ -48,7 +58,23 @@ public abstract class AbstractCommand implements Callable<Integer> {
 
     @Option(names = { "-w",
             "--owl-import" }, description = "Enables the automatic importation of ontologies specified in 'owl:imports' statements. When this flag is set, the application will fetch and include referenced ontologies. Default is '${DEFAULT-VALUE}'.", required = false, defaultValue = "false")
-    private boolean owlImport;
+    protected boolean owlImport;
+
+    @Option(names = {
+            "--http-cache" }, description = "Keeps the files downloaded from input URLs and imported ontologies in an on-disk cache and revalidates them with their ETag and Last-Modified headers instead of downloading them again. Default value: ${DEFAULT-VALUE}.", defaultValue = "false")
+    private boolean httpCache;
+
+    @Option(names = {
+            "--http-cache-dir" }, description = "Specifies the directory of the HTTP cache. Default value: corese/http in $XDG_CACHE_HOME, or in ~/.cache if it is not set.")
+    private Path httpCacheDir;
+
+    @Option(names = {
+            "--http-cache-size" }, description = "Specifies the maximum size of the HTTP cache in MiB. The least recently used files are removed above it. Default value: ${DEFAULT-VALUE}.", defaultValue = "512")
+    private long httpCacheSize;
+
+    @Option(names = {
+            "--offline" }, description = "Serves input URLs from the HTTP cache only, without accessing the network. URLs that are not in the cache fail to load. Default value: ${DEFAULT-VALUE}.", defaultValue = "false")
+    private boolean offline;
 
     ////////////////
     // Properties //
@@ -76,10 +102,58 @@ public abstract class AbstractCommand implements Callable<Integer> {
             ConfigManager.loadDefaultConfig(this.spec, this.verbose);
         }
 
-        // Set owl import
-        Property.set(Value.OWL_AUTO_IMPORT, this.owlImport);
+        // Configure the HTTP cache of input URLs
+        HttpCache httpCache = HttpCache.getInstance();
+        httpCache.setEnabled(this.httpCache || this.offline);
+        httpCache.setOffline(this.offline);
+        httpCache.setDirectory(this.httpCacheDir != null ? this.httpCacheDir : HttpCache.defaultDirectory());
+        httpCache.setMaxSize(this.httpCacheSize * 1024 * 1024);
+        httpCache.setLog(this.verbose ? this.spec.commandLine().getErr() : null);
+
+        // Set owl import, resolved by the RDF data loader when the HTTP cache
+        // is used so that imported ontologies are cached too
+        Property.set(Value.OWL_AUTO_IMPORT, this.owlImport && !httpCache.isEnabled());
+
+        // Queries compiled with other settings must not be reused
+        CompiledQueryCache.getInstance().setSettings("config=" + this.configFilePath + ";owlImport=" + this.owlImport);
 
         return 0;
     }
 
+    ///////////////////////
+    // Protected methods //
+    ///////////////////////
+
+    /**
+     * Resolve the path of an output file, with the extension of the
+     * compression format if the output is compressed.
+     * 
+     * @param path Path of the output file.
+     * @return The path to write to.
+     */
+    protected Path resolveOutputPath(Path path) {
+        return CompressedOutput.resolvePath(path, this.compression);
+    }
+
+    /**
+     * Open an output file, compressed if the compression option is set.
+     * 
+     * @param path Path of the file, as returned by {@link #resolveOutputPath}.
+     * @return The output stream. The caller is responsible for closing it.
+     * @throws IOException If the file cannot be created.
+     */
+    protected OutputStream openOutputStream(Path path) throws IOException {
+        return CompressedOutput.open(path, this.compression);
+    }
+
+    /**
+     * Check that the output can be written to standard output, which is not
+     * possible when it is compressed.
+     * 
+     * @throws IllegalArgumentException If the compression option is set.
+     */
+    protected void checkStdoutAllowed() {
+        CompressedOutput.checkStdoutAllowed(this.compression);
+    }
+
 }
@@ -1,9 +1,18 @@
 package fr.inria.corese.command.programs;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 import fr.inria.corese.command.utils.ConvertString;
 import fr.inria.corese.command.utils.InputTypeDetector;
+import fr.inria.corese.command.utils.http.HttpCache;
+import fr.inria.corese.command.utils.loader.rdf.EnumRdfInputFormat;
+import fr.inria.corese.command.utils.loader.rdf.GraphSnapshot;
+import fr.inria.corese.command.utils.loader.rdf.RdfDataLoader;
+import fr.inria.corese.command.utils.loader.rdf.RdfInputSource;
+import fr.inria.corese.core.Graph;
 import picocli.CommandLine.Option;
 
 public abstract class AbstractInputCommand extends AbstractCommand {
@@ -16,6 +25,18 @@ public abstract class AbstractInputCommand extends AbstractCommand {
             "--recursive" }, description = "If set to true and an input is a directory, all files in the directory will be loaded recursively. Default value: ${DEFAULT-VALUE}.", defaultValue = "false")
     protected boolean recursive = false;
 
+    @Option(names = {
+            "--load-threads" }, description = "Specifies the number of threads used to parse input files in parallel. A single large N-Triples or N-Quads file is split into chunks parsed in parallel. Default value: ${DEFAULT-VALUE}.", defaultValue = "1")
+    protected int loadThreads = 1;
+
+    @Option(names = {
+            "--snapshot-out" }, description = "Writes the loaded input data to a binary snapshot file, which --snapshot-in reloads much faster than the input files. Only local input files can be snapshotted.")
+    protected Path snapshotOut;
+
+    @Option(names = {
+            "--snapshot-in" }, description = "Loads the input data from a snapshot written with --snapshot-out. If the snapshot is stale because an input file has changed, the input files given with -i are loaded instead.")
+    protected Path snapshotIn;
+
     @Override
     public Integer call() {
         super.call();
@@ -26,6 +47,120 @@ public abstract class AbstractInputCommand extends AbstractCommand {
         return 0;
     }
 
+    /**
+     * Create an RDF data loader configured with the options of the command.
+     *
+     * @return The RDF data loader.
+     */
+    protected RdfDataLoader createRdfDataLoader() {
+        RdfDataLoader loader = new RdfDataLoader(this.spec, this.verbose);
+        loader.setLoadThreads(this.loadThreads);
+        loader.setOwlImport(this.owlImport && HttpCache.getInstance().isEnabled());
+        return loader;
+    }
+
+    /**
+     * Load the input data of the command, from a snapshot if one is given and
+     * up to date, and write a snapshot of it if requested.
+     *
+     * @param loader      RDF data loader.
+     * @param inputFormat Input file serialization format.
+     * @return The loaded graph.
+     * @throws IllegalArgumentException If the data or the snapshot cannot be
+     *                                  loaded, or the snapshot cannot be
+     *                                  written.
+     */
+    protected Graph loadInputGraph(RdfDataLoader loader, EnumRdfInputFormat inputFormat) {
+        String settings = "inputFormat=" + inputFormat + ";recursive=" + this.recursive + ";owlImport="
+                + this.owlImport;
+
+        if (this.snapshotIn != null) {
+            Graph graph = this.loadSnapshot(loader, settings);
+            if (graph != null) {
+                return graph;
+            }
+        }
+
+        Graph graph = loader.load(this.inputsRdfData, inputFormat, this.recursive);
+
+        if (this.snapshotOut != null) {
+            long start = System.nanoTime();
+            try {
+                GraphSnapshot.write(graph, this.listInputFiles(loader), settings, this.snapshotOut);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Failed to write snapshot: " + this.snapshotOut, e);
+            }
+            if (this.verbose) {
+                this.spec.commandLine().getErr().println("Wrote snapshot " + this.snapshotOut + " of " + graph.size()
+                        + " triples in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            }
+        }
+
+        return graph;
+    }
+
+    /**
+     * Load the input data from the snapshot given with --snapshot-in.
+     *
+     * @param loader   RDF data loader, to list the input files.
+     * @param settings Current loading settings.
+     * @return The graph, or null if the snapshot is stale and input files are
+     *         given.
+     * @throws IllegalArgumentException If the snapshot cannot be read, or is
+     *                                  stale and no input file is given.
+     */
+    private Graph loadSnapshot(RdfDataLoader loader, String settings) {
+        boolean hasInputs = this.inputsRdfData != null && this.inputsRdfData.length > 0;
+        long start = System.nanoTime();
+
+        try (GraphSnapshot snapshot = new GraphSnapshot(this.snapshotIn)) {
+            String stale = snapshot.checkStale(hasInputs ? this.listInputFiles(loader) : null,
+                    hasInputs ? settings : snapshot.getSettings());
+            if (stale != null) {
+                if (!hasInputs) {
+                    throw new IllegalArgumentException(
+                            "Snapshot " + this.snapshotIn + " is stale: " + stale
+                                    + ". Please give the input files with -i to load them instead.");
+                }
+                this.spec.commandLine().getErr()
+                        .println("Snapshot " + this.snapshotIn + " is stale: " + stale + ", loading input files");
+                return null;
+            }
+
+            Graph graph = snapshot.readGraph();
+            if (this.verbose) {
+                this.spec.commandLine().getErr().println("Loaded " + graph.size() + " triples from snapshot "
+                        + this.snapshotIn + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            }
+            return graph;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to read snapshot: " + this.snapshotIn, e);
+        }
+    }
+
+    /**
+     * List the local files of the input data, to record in a snapshot.
+     *
+     * @param loader RDF data loader.
+     * @return The paths of the input files, in loading order.
+     * @throws IllegalArgumentException If an input is standard input or a URL.
+     */
+    private List<Path> listInputFiles(RdfDataLoader loader) {
+        if (this.inputsRdfData == null || this.inputsRdfData.length == 0) {
+            throw new IllegalArgumentException("Snapshots cannot be written for data read from standard input.");
+        }
+
+        List<Path> files = new ArrayList<>();
+        for (RdfInputSource source : loader.listSources(this.inputsRdfData, this.recursive)) {
+            if (source.isUrl()) {
+                throw new IllegalArgumentException(
+                        "Snapshots can only be written for local files, not for URL: " + source);
+            }
+            files.add(source.getPath());
+        }
+        return files;
+    }
+
     /**
      * Check if the input values are correct.
      *
@@ -29,11 +29,12 @@ public class Canonicalize extends AbstractInputCommand {
 
         try {
             // Load the input file(s)
-            RdfDataLoader loader = new RdfDataLoader(this.spec, this.verbose);
-            Graph graph = loader.load(this.inputsRdfData, this.inputFormat, this.recursive);
+            RdfDataLoader loader = this.createRdfDataLoader();
+            Graph graph = this.loadInputGraph(loader, this.inputFormat);
 
             // Canonicalize and export the graph
             RdfDataCanonicalizer rdfCanonicalizer = new RdfDataCanonicalizer(this.spec, this.verbose, this.output);
+            rdfCanonicalizer.setCompression(this.compression);
             rdfCanonicalizer.export(graph, this.canonicalAlgo);
 
             return this.ERROR_EXIT_CODE_SUCCESS;
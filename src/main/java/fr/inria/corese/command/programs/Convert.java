@@ -1,9 +1,16 @@
 package fr.inria.corese.command.programs;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.inria.corese.command.utils.compression.EnumCompression;
 import fr.inria.corese.command.utils.exporter.rdf.EnumRdfOutputFormat;
 import fr.inria.corese.command.utils.exporter.rdf.RdfDataExporter;
 import fr.inria.corese.command.utils.loader.rdf.EnumRdfInputFormat;
 import fr.inria.corese.command.utils.loader.rdf.RdfDataLoader;
+import fr.inria.corese.command.utils.loader.rdf.RdfInputSource;
+import fr.inria.corese.command.utils.stream.RdfStreamConverter;
 import fr.inria.corese.core.Graph;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
@@ -19,6 +26,10 @@ public class Convert extends AbstractInputCommand {
             "--output-format" }, required = true, description = "Specifies the RDF serialization format of the output file. Possible values::@|fg(magenta)${COMPLETION-CANDIDATES}|@.")
     private EnumRdfOutputFormat outputFormat;
 
+    @Option(names = {
+            "--streaming" }, description = "Converts N-Triples or N-Quads input statement by statement, without loading it into memory. Only conversions to N-Triples, N-Quads, Turtle or TriG are supported, and duplicate statements are kept. Default value: ${DEFAULT-VALUE}.", defaultValue = "false")
+    private boolean streaming = false;
+
     public Convert() {
     }
 
@@ -28,12 +39,18 @@ public class Convert extends AbstractInputCommand {
         super.call();
 
         try {
+            if (this.streaming) {
+                this.convertStreaming();
+                return this.ERROR_EXIT_CODE_SUCCESS;
+            }
+
             // Load the input file(s)
-            RdfDataLoader loader = new RdfDataLoader(this.spec, this.verbose);
-            Graph graph = loader.load(this.inputsRdfData, this.inputFormat, this.recursive);
+            RdfDataLoader loader = this.createRdfDataLoader();
+            Graph graph = this.loadInputGraph(loader, this.inputFormat);
 
             // Export the graph
             RdfDataExporter rdfExporter = new RdfDataExporter(this.spec, this.verbose, this.output);
+            rdfExporter.setCompression(this.compression);
             rdfExporter.export(graph, this.outputFormat);
 
             return this.ERROR_EXIT_CODE_SUCCESS;
@@ -43,4 +60,48 @@ public class Convert extends AbstractInputCommand {
         }
     }
 
+    /**
+     * Convert the input file(s) statement by statement, without building a
+     * graph.
+     *
+     * All sources are checked before anything is written, so that an
+     * unsupported conversion does not leave a partial output.
+     */
+    private void convertStreaming() {
+        if (this.snapshotIn != null || this.snapshotOut != null) {
+            throw new IllegalArgumentException(
+                    "Snapshots hold a loaded graph and cannot be used with the --streaming option.");
+        }
+        RdfDataLoader loader = this.createRdfDataLoader();
+
+        try (RdfStreamConverter converter = new RdfStreamConverter(this.spec, this.verbose, this.output,
+                this.outputFormat)) {
+            converter.setCompression(this.compression);
+
+            // Convert from standard input
+            if (this.inputsRdfData == null || this.inputsRdfData.length == 0) {
+                try {
+                    converter.convert(EnumCompression.decompress(System.in), "standard input", this.inputFormat);
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Failed to read standard input", e);
+                }
+                return;
+            }
+
+            // Check every source before converting
+            List<RdfInputSource> sources = loader.listSources(this.inputsRdfData, this.recursive);
+            List<EnumRdfInputFormat> formats = new ArrayList<>();
+            for (RdfInputSource source : sources) {
+                EnumRdfInputFormat format = loader.getInputFormat(source, this.inputFormat);
+                RdfStreamConverter.checkSupported(format, this.outputFormat);
+                formats.add(format);
+            }
+
+            converter.setSeparateBlankNodes(sources.size() > 1);
+            for (int i = 0; i < sources.size(); i++) {
+                converter.convert(sources.get(i), formats.get(i));
+            }
+        }
+    }
+
 }
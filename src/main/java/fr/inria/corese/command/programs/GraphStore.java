@@ -0,0 +1,203 @@
+package fr.inria.corese.command.programs;
+
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import fr.inria.corese.command.utils.ConvertString;
+import fr.inria.corese.command.utils.compression.EnumCompression;
+import fr.inria.corese.command.utils.http.EnumGraphStoreMethod;
+import fr.inria.corese.command.utils.http.GraphStoreHttpClient;
+import fr.inria.corese.command.utils.http.RetryPolicy;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+@Command(name = "graph-store", description = "Read, replace, add to or delete a graph of a remote store with the SPARQL Graph Store HTTP Protocol.", mixinStandardHelpOptions = true)
+public class GraphStore extends AbstractCommand {
+
+    @Option(names = { "-e", "--endpoint" }, description = "Specifies the graph store URL.", required = true)
+    private String endpointUrl;
+
+    @Option(names = { "-m",
+            "--method" }, description = "Specifies the operation: get downloads the graph, put replaces it with the input file, post adds the input file to it, delete removes it. Possible values are: :@|fg(magenta) ${COMPLETION-CANDIDATES}|@. Default value: ${DEFAULT-VALUE}.", defaultValue = "get")
+    private EnumGraphStoreMethod method;
+
+    @Option(names = { "-g",
+            "--graph" }, description = "Specifies the URI of the graph. Default value: the default graph of the store.")
+    private String graphUri;
+
+    @Option(names = { "-i",
+            "--input-data" }, description = "Specifies the path of the RDF file to upload with put or post. Compressed files are decompressed on the fly.")
+    private String input;
+
+    @Option(names = { "-t",
+            "--content-type" }, description = "Specifies the media type of the uploaded file. Default value: guessed from the file extension.")
+    private String contentType;
+
+    @Option(names = { "-a",
+            "--accept" }, description = "Specifies the media type of the downloaded graph. Default value: ${DEFAULT-VALUE}.", defaultValue = "application/n-triples")
+    private String accept;
+
+    @Option(names = { "-H",
+            "--header" }, description = "Adds an HTTP header to the request. Multiple headers can be specified.", arity = "0..")
+    private List<String> headers;
+
+    @Option(names = {
+            "--connect-timeout" }, description = "Specifies the connection timeout in seconds, 0 for no timeout. Default value: ${DEFAULT-VALUE}.", defaultValue = "30")
+    private int connectTimeout;
+
+    @Option(names = {
+            "--read-timeout" }, description = "Specifies the longest wait for data from the store in seconds, 0 for no timeout. Default value: ${DEFAULT-VALUE}.", defaultValue = "0")
+    private int readTimeout;
+
+    @Option(names = {
+            "--max-attempts" }, description = "Specifies the maximum number of attempts of a get, put or delete request that fails with a transport error or a temporary status. Post requests are sent once. Default value: ${DEFAULT-VALUE}.", defaultValue = "1")
+    private int maxAttempts;
+
+    public GraphStore() {
+    }
+
+    @Override
+    public Integer call() {
+
+        super.call();
+
+        try (GraphStoreHttpClient client = new GraphStoreHttpClient(this.spec, this.endpointUrl)) {
+            client.setVerbose(this.verbose);
+            client.setConnectTimeout(this.connectTimeout);
+            client.setReadTimeout(this.readTimeout);
+            client.setRetryPolicy(new RetryPolicy(this.maxAttempts, 500, 30_000, true));
+            this.parseHeader(client);
+
+            long start = System.nanoTime();
+            switch (this.method) {
+                case GET:
+                    this.download(client);
+                    break;
+                case PUT:
+                    client.put(this.graphUri, this.uploadedFile(), this.uploadedContentType());
+                    break;
+                case POST:
+                    client.post(this.graphUri, this.uploadedFile(), this.uploadedContentType());
+                    break;
+                case DELETE:
+                    client.delete(this.graphUri);
+                    break;
+            }
+
+            if (this.verbose) {
+                this.spec.commandLine().getErr().println(this.method.toString().toUpperCase() + " "
+                        + (this.graphUri != null ? "<" + this.graphUri + ">" : "default graph") + " done in "
+                        + (System.nanoTime() - start) / 1_000_000 + " ms");
+            }
+        } catch (Exception e) {
+            this.spec.commandLine().getErr().println("Error: " + e.getMessage());
+            return this.ERROR_EXIT_CODE_ERROR;
+        }
+
+        return this.ERROR_EXIT_CODE_SUCCESS;
+    }
+
+    /**
+     * Download the graph to the output file, compressed if requested, or to
+     * standard output.
+     *
+     * @param client The graph store client.
+     * @throws Exception If the request fails or the output cannot be written.
+     */
+    private void download(GraphStoreHttpClient client) throws Exception {
+        if (this.output == null) {
+            this.checkStdoutAllowed();
+            client.get(this.graphUri, this.accept, (body, charset) -> {
+                PrintWriter out = this.spec.commandLine().getOut();
+                new InputStreamReader(body, charset).transferTo(out);
+                out.flush();
+            });
+            return;
+        }
+
+        Path path = this.resolveOutputPath(this.output);
+        client.get(this.graphUri, this.accept, (body, charset) -> {
+            try (OutputStream outputStream = this.openOutputStream(path)) {
+                long size = body.transferTo(outputStream);
+
+                if (this.verbose) {
+                    this.spec.commandLine().getErr().println("Downloaded " + size + " bytes to " + path);
+                }
+            }
+        });
+    }
+
+    /**
+     * Get the file to upload.
+     *
+     * @return The path of the file.
+     * @throws IllegalArgumentException If no readable file is given.
+     */
+    private Path uploadedFile() {
+        if (this.input == null) {
+            throw new IllegalArgumentException(
+                    "The " + this.method + " method needs a file to upload. Please specify it with the option -i.");
+        }
+        Path path = ConvertString.toPathOrThrow(this.input);
+        if (!Files.isRegularFile(path)) {
+            throw new IllegalArgumentException("Failed to open RDF data file: " + this.input);
+        }
+        return path;
+    }
+
+    /**
+     * Get the media type of the file to upload.
+     *
+     * @return The media type given with -t, or guessed from the file extension.
+     * @throws IllegalArgumentException If the media type cannot be guessed.
+     */
+    private String uploadedContentType() {
+        if (this.contentType != null) {
+            return this.contentType;
+        }
+
+        String name = EnumCompression.stripExtension(this.input).toLowerCase();
+        String extension = name.substring(name.lastIndexOf('.') + 1);
+        switch (extension) {
+            case "ttl":
+                return "text/turtle";
+            case "nt":
+                return "application/n-triples";
+            case "nq":
+                return "application/n-quads";
+            case "trig":
+                return "application/trig";
+            case "rdf":
+            case "owl":
+            case "xml":
+                return "application/rdf+xml";
+            case "jsonld":
+                return "application/ld+json";
+            default:
+                throw new IllegalArgumentException("Impossible to determine the media type of " + this.input
+                        + ", please specify it with the -t or --content-type option.");
+        }
+    }
+
+    /**
+     * Parse the headers and add them to the client.
+     *
+     * @param client The client to add the headers to.
+     */
+    private void parseHeader(GraphStoreHttpClient client) {
+        if (this.headers != null) {
+            for (String header : this.headers) {
+                String[] headerParts = header.split(":", 2);
+                if (headerParts.length != 2) {
+                    throw new IllegalArgumentException("Invalid header format (expected key: value): " + header);
+                }
+                client.addHeader(headerParts[0], headerParts[1]);
+            }
+        }
+    }
+
+}
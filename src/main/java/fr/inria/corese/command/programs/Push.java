@@ -0,0 +1,358 @@
+package fr.inria.corese.command.programs;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import fr.inria.corese.command.utils.http.EnumRequestMethod;
+import fr.inria.corese.command.utils.http.RetryPolicy;
+import fr.inria.corese.command.utils.http.SparqlHttpClient;
+import fr.inria.corese.command.utils.loader.rdf.EnumRdfInputFormat;
+import fr.inria.corese.command.utils.loader.rdf.RdfDataLoader;
+import fr.inria.corese.command.utils.stream.NTriplesTerms;
+import fr.inria.corese.command.utils.stream.RdfStatement;
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.api.core.Edge;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+@Command(name = "push", description = "Load RDF data and insert it into a remote SPARQL endpoint in batches of INSERT DATA updates.", mixinStandardHelpOptions = true)
+public class Push extends AbstractInputCommand {
+
+    @Option(names = { "-f", "-if",
+            "--input-format" }, description = "Specifies the RDF serialization format of the input file. Possible values are: :@|fg(magenta) ${COMPLETION-CANDIDATES}|@.")
+    private EnumRdfInputFormat inputFormat = null;
+
+    @Option(names = { "-e", "--endpoint" }, description = "Specifies the SPARQL update endpoint URL.", required = true)
+    private String endpointUrl;
+
+    @Option(names = { "-H",
+            "--header" }, description = "Adds an HTTP header to the requests. Multiple headers can be specified.", arity = "0..")
+    private List<String> headers;
+
+    @Option(names = { "-m",
+            "--request-method" }, description = "Specifies the HTTP request method to use, post-urlencoded or post-direct. Default value: post-urlencoded.")
+    private EnumRequestMethod requestMethod = EnumRequestMethod.POST_URLENCODED;
+
+    @Option(names = {
+            "--batch-size" }, description = "Specifies the maximum number of triples of each INSERT DATA update. Default value: ${DEFAULT-VALUE}.", defaultValue = "10000")
+    private int batchSize;
+
+    @Option(names = {
+            "--push-threads" }, description = "Specifies the number of updates sent at the same time. Default value: ${DEFAULT-VALUE}.", defaultValue = "4")
+    private int pushThreads;
+
+    @Option(names = {
+            "--connect-timeout" }, description = "Specifies the connection timeout in seconds, 0 for no timeout. Default value: ${DEFAULT-VALUE}.", defaultValue = "30")
+    private int connectTimeout;
+
+    @Option(names = {
+            "--read-timeout" }, description = "Specifies the longest wait for data from the endpoint in seconds, 0 for no timeout. Default value: ${DEFAULT-VALUE}.", defaultValue = "0")
+    private int readTimeout;
+
+    @Option(names = {
+            "--max-attempts" }, description = "Specifies the maximum number of attempts of an update that fails with a transport error or a temporary status (429, 502, 503, 504). Default value: ${DEFAULT-VALUE}.", defaultValue = "3")
+    private int maxAttempts;
+
+    @Option(names = {
+            "--backoff-base" }, description = "Specifies the delay before the first retry in milliseconds, doubled at each retry. Default value: ${DEFAULT-VALUE}.", defaultValue = "500")
+    private long backoffBase;
+
+    @Option(names = {
+            "--backoff-cap" }, description = "Specifies the longest delay between two attempts in milliseconds. Default value: ${DEFAULT-VALUE}.", defaultValue = "30000")
+    private long backoffCap;
+
+    @Option(names = {
+            "--skolemize" }, description = "Replaces blank nodes with IRIs under /.well-known/genid/ on the endpoint host, so that a blank node used in several batches stays a single node and failed batches can be sent again. Without this option, data with blank nodes must fit in a single batch, which is never retried. Default value: ${DEFAULT-VALUE}.", defaultValue = "false")
+    private boolean skolemize;
+
+    public Push() {
+    }
+
+    @Override
+    public Integer call() {
+
+        super.call();
+
+        try {
+            if (this.batchSize < 1) {
+                throw new IllegalArgumentException("Batch size must be at least 1, got: " + this.batchSize);
+            }
+            if (this.pushThreads < 1) {
+                throw new IllegalArgumentException(
+                        "The number of push threads must be at least 1, got: " + this.pushThreads);
+            }
+            if (this.requestMethod == EnumRequestMethod.GET) {
+                throw new IllegalArgumentException(
+                        "SPARQL updates cannot be sent with the GET method. Please use a POST method instead.");
+            }
+            RetryPolicy retryPolicy = new RetryPolicy(this.maxAttempts, this.backoffBase, this.backoffCap, true);
+
+            // Load the input file(s)
+            RdfDataLoader loader = this.createRdfDataLoader();
+            Graph graph = this.loadInputGraph(loader, this.inputFormat);
+
+            // Blank nodes are scoped to each update: they cannot be split
+            // across batches, and an update sent twice inserts them twice
+            String skolemPrefix = null;
+            if (hasBlankNodes(graph)) {
+                if (this.skolemize) {
+                    skolemPrefix = this.skolemPrefix();
+                } else if (graph.size() > this.batchSize) {
+                    throw new IllegalArgumentException("The data has blank nodes and does not fit in a single batch of "
+                            + this.batchSize + " triples, a blank node used in several batches would be inserted as several nodes. Please use --skolemize or a --batch-size of at least "
+                            + graph.size() + ".");
+                } else {
+                    retryPolicy = RetryPolicy.none();
+                }
+            }
+
+            // Push the graph
+            return this.push(graph, retryPolicy, skolemPrefix);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.spec.commandLine().getErr().println("Error: interrupted while pushing data");
+            return this.ERROR_EXIT_CODE_ERROR;
+        } catch (Exception e) {
+            this.spec.commandLine().getErr().println("Error: " + e.getMessage());
+            return this.ERROR_EXIT_CODE_ERROR;
+        }
+    }
+
+    /**
+     * Split the graph into INSERT DATA updates and send them to the endpoint.
+     *
+     * Batches are built while earlier ones are being sent, and at most twice
+     * as many batches as threads are kept in memory. Without blank nodes,
+     * INSERT DATA can be applied twice without changing the result, so failed
+     * batches are retried. No new batch is sent once a batch has failed.
+     *
+     * @param graph        Graph to push.
+     * @param retryPolicy  Retry policy of the updates.
+     * @param skolemPrefix Prefix of the IRIs replacing blank nodes, or null to
+     *                     keep blank nodes.
+     * @return The exit code, an error if any batch failed.
+     * @throws InterruptedException If interrupted while waiting for the batches.
+     */
+    private Integer push(Graph graph, RetryPolicy retryPolicy, String skolemPrefix) throws InterruptedException {
+
+        // One client per thread, so that each keeps its connection alive
+        BlockingQueue<SparqlHttpClient> clients = new ArrayBlockingQueue<>(this.pushThreads);
+        for (int i = 0; i < this.pushThreads; i++) {
+            clients.add(this.createClient(retryPolicy));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(this.pushThreads);
+        Semaphore pending = new Semaphore(2 * this.pushThreads);
+
+        AtomicLong pushed = new AtomicLong();
+        AtomicInteger failedBatches = new AtomicInteger();
+        AtomicReference<String> firstError = new AtomicReference<>();
+        int batches = 0;
+
+        long start = System.nanoTime();
+        try {
+            Batch batch = new Batch(skolemPrefix);
+            for (Edge edge : graph.getEdges()) {
+                batch.add(NTriplesTerms.toStatement(edge));
+
+                if (batch.size() >= this.batchSize) {
+                    // Stop at the first failed batch, later ones would fail too
+                    if (firstError.get() != null) {
+                        break;
+                    }
+                    this.submit(executor, pending, clients, batch, ++batches, pushed, failedBatches, firstError);
+                    batch = new Batch(skolemPrefix);
+                }
+            }
+            if (batch.size() > 0 && firstError.get() == null) {
+                this.submit(executor, pending, clients, batch, ++batches, pushed, failedBatches, firstError);
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            clients.forEach(SparqlHttpClient::close);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        // Report the throughput
+        double seconds = elapsed / 1e9;
+        long triplesPerSecond = seconds > 0 ? Math.round(pushed.get() / seconds) : pushed.get();
+        this.spec.commandLine().getErr().println("Pushed " + pushed.get() + " triples in " + batches
+                + " batches in " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms (" + triplesPerSecond
+                + " triples/s), " + failedBatches.get() + " batches failed");
+
+        if (failedBatches.get() > 0) {
+            this.spec.commandLine().getErr().println("Error: " + firstError.get());
+            return this.ERROR_EXIT_CODE_ERROR;
+        }
+        return this.ERROR_EXIT_CODE_SUCCESS;
+    }
+
+    /**
+     * Send a batch on the thread pool, waiting if too many batches are
+     * pending.
+     *
+     * @param executor      Thread pool sending the batches.
+     * @param pending       Permits of the batches kept in memory.
+     * @param clients       Clients free to send a batch.
+     * @param batch         Batch to send.
+     * @param number        Number of the batch, from 1.
+     * @param pushed        Number of triples pushed, updated.
+     * @param failedBatches Number of failed batches, updated.
+     * @param firstError    First error message, updated.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private void submit(ExecutorService executor, Semaphore pending, BlockingQueue<SparqlHttpClient> clients,
+            Batch batch, int number, AtomicLong pushed, AtomicInteger failedBatches,
+            AtomicReference<String> firstError) throws InterruptedException {
+
+        pending.acquire();
+        executor.submit(() -> {
+            long start = System.nanoTime();
+            try {
+                // Batches queued before a failure are not sent either
+                if (firstError.get() != null) {
+                    return;
+                }
+
+                SparqlHttpClient client = clients.take();
+                try {
+                    client.sendUpdate(batch.toUpdate());
+                } finally {
+                    clients.put(client);
+                }
+                pushed.addAndGet(batch.size());
+
+                if (this.verbose) {
+                    this.spec.commandLine().getErr().println("Batch " + number + ": " + batch.size()
+                            + " triples in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+                }
+            } catch (Exception e) {
+                failedBatches.incrementAndGet();
+                firstError.compareAndSet(null, "Batch " + number + " failed, no further batch was sent: "
+                        + e.getMessage());
+            } finally {
+                pending.release();
+            }
+        });
+    }
+
+    /**
+     * Create a client configured with the options of the command.
+     *
+     * @param retryPolicy Retry policy of the updates.
+     * @return The client.
+     */
+    private SparqlHttpClient createClient(RetryPolicy retryPolicy) {
+        SparqlHttpClient client = new SparqlHttpClient(this.spec, this.endpointUrl);
+        client.setRequestMethod(this.requestMethod);
+        client.setConnectTimeout(this.connectTimeout);
+        client.setReadTimeout(this.readTimeout);
+        client.setRetryPolicy(retryPolicy);
+        client.setRetryUpdates(true);
+
+        if (this.headers != null) {
+            for (String header : this.headers) {
+                String[] headerParts = header.split(":", 2);
+                if (headerParts.length != 2) {
+                    throw new IllegalArgumentException("Invalid header format (expected key: value): " + header);
+                }
+                client.addHeader(headerParts[0], headerParts[1]);
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Build the prefix of the IRIs replacing blank nodes, unique to this run
+     * so that pushing the same data twice does not merge the blank nodes.
+     *
+     * @return The prefix, on the host of the endpoint.
+     * @throws IllegalArgumentException If the endpoint URL is not valid.
+     */
+    private String skolemPrefix() {
+        URI endpoint;
+        try {
+            endpoint = URI.create(this.endpointUrl);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid endpoint URL: " + this.endpointUrl, e);
+        }
+        return endpoint.getScheme() + "://" + endpoint.getRawAuthority() + "/.well-known/genid/" + UUID.randomUUID()
+                + "/";
+    }
+
+    /**
+     * Check if a graph has blank nodes.
+     *
+     * @param graph Graph to check.
+     * @return True if a subject or object of the graph is a blank node.
+     */
+    private static boolean hasBlankNodes(Graph graph) {
+        for (Edge edge : graph.getEdges()) {
+            if (edge.getNode(0).getDatatypeValue().isBlank() || edge.getNode(1).getDatatypeValue().isBlank()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Statements of an INSERT DATA update, grouped by graph.
+     */
+    private static class Batch {
+
+        // Statements of each graph, null for the default graph
+        private final Map<String, StringBuilder> graphs = new LinkedHashMap<>();
+        private final String skolemPrefix;
+        private int size = 0;
+
+        private Batch(String skolemPrefix) {
+            this.skolemPrefix = skolemPrefix;
+        }
+
+        private void add(RdfStatement statement) {
+            this.graphs.computeIfAbsent(statement.getGraph(), graph -> new StringBuilder())
+                    .append(this.skolemize(statement.getSubject())).append(' ')
+                    .append(statement.getPredicate()).append(' ')
+                    .append(this.skolemize(statement.getObject())).append(" .\n");
+            this.size++;
+        }
+
+        private String skolemize(String term) {
+            if (this.skolemPrefix == null || !term.startsWith("_:")) {
+                return term;
+            }
+            return "<" + this.skolemPrefix + term.substring(2) + ">";
+        }
+
+        private int size() {
+            return this.size;
+        }
+
+        private String toUpdate() {
+            StringBuilder update = new StringBuilder("INSERT DATA {\n");
+            for (Map.Entry<String, StringBuilder> entry : this.graphs.entrySet()) {
+                if (entry.getKey() == null) {
+                    update.append(entry.getValue());
+                } else {
+                    update.append("GRAPH ").append(entry.getKey()).append(" {\n")
+                            .append(entry.getValue()).append("}\n");
+                }
+            }
+            return update.append('}').toString();
+        }
+    }
+
+}
@@ -1,10 +1,28 @@
 package fr.inria.corese.command.programs;
 
+import java.io.PrintWriter;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import fr.inria.corese.command.utils.CompiledQueryCache;
+import fr.inria.corese.command.utils.InputTypeDetector;
 import fr.inria.corese.command.utils.exporter.sparql.EnumResultFormat;
 import fr.inria.corese.command.utils.exporter.sparql.SparqlResultExporter;
+import fr.inria.corese.command.utils.http.EnumRequestMethod;
+import fr.inria.corese.command.utils.http.SparqlHttpClient;
 import fr.inria.corese.command.utils.loader.rdf.EnumRdfInputFormat;
 import fr.inria.corese.command.utils.loader.rdf.RdfDataLoader;
 import fr.inria.corese.command.utils.loader.sparql.SparqlQueryLoader;
+import fr.inria.corese.command.utils.server.SparqlServer;
 import fr.inria.corese.core.Graph;
 import fr.inria.corese.core.kgram.core.Mappings;
 import fr.inria.corese.core.query.QueryProcess;
@@ -23,8 +41,16 @@ public class Query extends AbstractInputCommand {
     private EnumResultFormat resultFormat = null;
 
     @Option(names = { "-q",
-            "--query" }, description = "Specifies the SPARQL query string or the path/URL to a .rq file containing the query.", required = true)
-    private String queryUrlOrFile;
+            "--query" }, description = "Specifies the SPARQL query string or the path/URL to a .rq file containing the query. Several values, a directory of .rq files or a glob pattern run every query against the same data; each result is then written to its own file in the output directory.", required = true, arity = "1..*")
+    private List<String> queryUrlOrFiles;
+
+    @Option(names = {
+            "--query-threads" }, description = "Specifies the number of queries run in parallel when several queries are given. Queries run one after the other if any of them is an update. Default value: ${DEFAULT-VALUE}.", defaultValue = "1")
+    private int queryThreads = 1;
+
+    @Option(names = {
+            "--connect" }, description = "Sends the query to a server started with the 'serve' command instead of loading input data, e.g. http://localhost:8080.")
+    private String connectUrl;
 
     public Query() {
     }
@@ -36,19 +62,34 @@ public class Query extends AbstractInputCommand {
 
         try {
 
+            if (this.connectUrl != null) {
+                return this.executeOnServer();
+            }
+
+            // List the queries
+            SparqlQueryLoader queryLoader = new SparqlQueryLoader(this.spec, this.verbose);
+            List<String> queryInputs = new ArrayList<>();
+            for (String queryUrlOrFile : this.queryUrlOrFiles) {
+                queryInputs.addAll(queryLoader.expand(queryUrlOrFile));
+            }
+
             // Load the input file(s)
-            RdfDataLoader loader = new RdfDataLoader(this.spec, this.verbose);
-            Graph graph = loader.load(this.inputsRdfData, this.inputFormat, this.recursive);
+            RdfDataLoader loader = this.createRdfDataLoader();
+            Graph graph = this.loadInputGraph(loader, this.inputFormat);
+
+            if (queryInputs.size() > 1) {
+                return this.executeBatch(graph, queryLoader, queryInputs);
+            }
 
             // Load the query
-            SparqlQueryLoader queryLoader = new SparqlQueryLoader(this.spec, this.verbose);
-            String query = queryLoader.load(this.queryUrlOrFile);
+            String query = queryLoader.load(queryInputs.get(0));
 
             // Execute the query
             Mappings mappings = this.execute(graph, query);
 
             // Export the result
             SparqlResultExporter exporter = new SparqlResultExporter(this.spec, this.verbose, this.output);
+            exporter.setCompression(this.compression);
             exporter.export(mappings, graph, this.resultFormat);
 
             return this.ERROR_EXIT_CODE_SUCCESS;
@@ -58,6 +99,251 @@ public class Query extends AbstractInputCommand {
         }
     }
 
+    /**
+     * Send the query to a running server and export its response.
+     *
+     * @return The exit code.
+     * @throws Exception If the query cannot be loaded or sent.
+     */
+    private Integer executeOnServer() throws Exception {
+        if (this.inputsRdfData != null && this.inputsRdfData.length > 0) {
+            throw new IllegalArgumentException(
+                    "Input data cannot be specified with --connect, the server already holds the data.");
+        }
+
+        if (this.queryUrlOrFiles.size() > 1) {
+            throw new IllegalArgumentException("Only one query can be sent with --connect.");
+        }
+
+        // Load the query
+        SparqlQueryLoader queryLoader = new SparqlQueryLoader(this.spec, this.verbose);
+        String query = queryLoader.load(this.queryUrlOrFiles.get(0));
+
+        // Send the query
+        String endpoint = this.connectUrl.endsWith(SparqlServer.PATH) ? this.connectUrl
+                : this.connectUrl.replaceAll("/+$", "") + SparqlServer.PATH;
+
+        // The result format is a named parameter, since formats such as
+        // rdfc-1.0 have no media type of their own
+        if (this.resultFormat != null) {
+            endpoint += "?format=" + URLEncoder.encode(this.resultFormat.toString(), StandardCharsets.UTF_8);
+        }
+
+        String response;
+        try (SparqlHttpClient client = new SparqlHttpClient(this.spec, endpoint)) {
+            client.setRequestMethod(EnumRequestMethod.POST_URLENCODED);
+            client.setVerbose(this.verbose);
+            response = client.sendRequest(query);
+        }
+
+        // Export the result, updates have an empty response
+        if (!response.isEmpty()) {
+            SparqlResultExporter exporter = new SparqlResultExporter(this.spec, this.verbose, this.output);
+            exporter.setCompression(this.compression);
+            exporter.exportResponse(response, this.resultFormat);
+        }
+
+        return this.ERROR_EXIT_CODE_SUCCESS;
+    }
+
+    /**
+     * Run several queries against the same graph and write each result to its
+     * own file in the output directory.
+     *
+     * Results are named after their query file. A summary of the time and
+     * number of results of each query is printed to the error output.
+     *
+     * @param graph       Graph to query.
+     * @param queryLoader Loader of the queries.
+     * @param queryInputs Path, URL or text of each query.
+     * @return The exit code, an error if any query failed.
+     */
+    private Integer executeBatch(Graph graph, SparqlQueryLoader queryLoader, List<String> queryInputs)
+            throws Exception {
+
+        if (this.queryThreads < 1) {
+            throw new IllegalArgumentException(
+                    "The number of query threads must be at least 1, got: " + this.queryThreads);
+        }
+
+        // Prepare the output directory
+        if (this.output == null) {
+            throw new IllegalArgumentException(
+                    "Several queries need an output directory. Please specify it with the option -o.");
+        }
+        if (Files.exists(this.output) && !Files.isDirectory(this.output)) {
+            throw new IllegalArgumentException(
+                    "Output must be a directory when several queries are given: " + this.output);
+        }
+        Files.createDirectories(this.output);
+
+        // Load and compile every query before running any of them
+        List<BatchQuery> batch = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        boolean hasUpdate = false;
+        for (int i = 0; i < queryInputs.size(); i++) {
+            BatchQuery batchQuery = new BatchQuery(uniqueName(queryInputs.get(i), i, names));
+            try {
+                String text = queryLoader.load(queryInputs.get(i));
+                batchQuery.exec = QueryProcess.create(graph);
+                batchQuery.query = CompiledQueryCache.getInstance().compile(batchQuery.exec, text);
+                hasUpdate |= batchQuery.query.getAST().isUpdate();
+            } catch (Exception e) {
+                batchQuery.error = e.getMessage();
+            }
+            batch.add(batchQuery);
+        }
+
+        // Updates change the graph, so they cannot run alongside other queries
+        int threads = hasUpdate ? 1 : Math.min(this.queryThreads, batch.size());
+        if (hasUpdate && this.queryThreads > 1 && this.verbose) {
+            this.spec.commandLine().getErr().println("Update found, running queries one after the other");
+        }
+
+        long start = System.nanoTime();
+        if (threads > 1) {
+            // Build the graph indexes once instead of racing to build them
+            graph.init();
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (BatchQuery batchQuery : batch) {
+                    futures.add(executor.submit(() -> this.runBatchQuery(graph, batchQuery)));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+        } else {
+            for (BatchQuery batchQuery : batch) {
+                this.runBatchQuery(graph, batchQuery);
+            }
+        }
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+
+        this.printSummary(batch, elapsed);
+
+        boolean failed = batch.stream().anyMatch(batchQuery -> batchQuery.error != null);
+        return failed ? this.ERROR_EXIT_CODE_ERROR : this.ERROR_EXIT_CODE_SUCCESS;
+    }
+
+    /**
+     * Run a query of a batch and export its result.
+     *
+     * Failures are recorded in the query instead of being thrown, so that the
+     * other queries still run.
+     *
+     * @param graph      Graph to query.
+     * @param batchQuery Query to run.
+     */
+    private void runBatchQuery(Graph graph, BatchQuery batchQuery) {
+        if (batchQuery.error != null) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            Mappings mappings = CompiledQueryCache.getInstance().execute(batchQuery.exec, batchQuery.query);
+            batchQuery.elapsed = (System.nanoTime() - start) / 1_000_000;
+            batchQuery.results = resultCount(mappings);
+
+            EnumResultFormat format = SparqlResultExporter.resolveFormat(mappings, this.resultFormat);
+            Path path = this.output.resolve(batchQuery.name + "." + format.getExtention());
+            SparqlResultExporter exporter = new SparqlResultExporter(this.spec, this.verbose, path);
+            exporter.setCompression(this.compression);
+            exporter.export(mappings, graph, format);
+        } catch (Exception e) {
+            batchQuery.elapsed = (System.nanoTime() - start) / 1_000_000;
+            batchQuery.error = e.getMessage();
+        }
+    }
+
+    /**
+     * Print the time and number of results of each query of a batch.
+     *
+     * @param batch   Queries of the batch.
+     * @param elapsed Total time of the batch, in milliseconds.
+     */
+    private void printSummary(List<BatchQuery> batch, long elapsed) {
+        PrintWriter err = this.spec.commandLine().getErr();
+        err.println("| Query | Time (ms) | Results | Status |");
+        err.println("| --- | ---: | ---: | --- |");
+        for (BatchQuery batchQuery : batch) {
+            err.println("| " + batchQuery.name
+                    + " | " + (batchQuery.elapsed < 0 ? "-" : batchQuery.elapsed)
+                    + " | " + (batchQuery.results < 0 ? "-" : batchQuery.results)
+                    + " | " + (batchQuery.error == null ? "ok" : "error: " + batchQuery.error) + " |");
+        }
+        long failed = batch.stream().filter(batchQuery -> batchQuery.error != null).count();
+        err.println("Ran " + batch.size() + " queries in " + elapsed + " ms, " + failed + " failed");
+    }
+
+    /**
+     * Count the results of a query.
+     *
+     * @param mappings Result of the query.
+     * @return The number of solutions, the number of triples for construct and
+     *         describe queries, or -1 for updates.
+     */
+    private static long resultCount(Mappings mappings) {
+        if (mappings.getAST().isUpdate()) {
+            return -1;
+        }
+        if ((mappings.getAST().isConstruct() || mappings.getAST().isDescribe())
+                && mappings.getGraph() instanceof Graph) {
+            return ((Graph) mappings.getGraph()).size();
+        }
+        return mappings.size();
+    }
+
+    /**
+     * Build the name of the result of a query from its file name.
+     *
+     * @param input Path, URL or text of the query.
+     * @param index Position of the query in the batch.
+     * @param names Names already used, updated with the new name.
+     * @return A name not used by another query of the batch.
+     */
+    private static String uniqueName(String input, int index, Set<String> names) {
+        String name;
+        InputTypeDetector.InputType type = InputTypeDetector.detect(input);
+        if (type == InputTypeDetector.InputType.FILE_PATH || type == InputTypeDetector.InputType.URL) {
+            name = input.replaceAll("[/\\\\]+$", "");
+            name = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1);
+            int dot = name.lastIndexOf('.');
+            if (dot > 0) {
+                name = name.substring(0, dot);
+            }
+        } else {
+            name = "query-" + (index + 1);
+        }
+
+        String unique = name;
+        for (int i = 2; !names.add(unique); i++) {
+            unique = name + "-" + i;
+        }
+        return unique;
+    }
+
+    /**
+     * A query of a batch and the outcome of its execution.
+     */
+    private static class BatchQuery {
+        private final String name;
+        private QueryProcess exec;
+        private fr.inria.corese.core.kgram.core.Query query;
+        private long elapsed = -1;
+        private long results = -1;
+        private String error;
+
+        private BatchQuery(String name) {
+            this.name = name;
+        }
+    }
+
     private Mappings execute(Graph graph, String query) throws Exception {
         QueryProcess exec = QueryProcess.create(graph);
 
@@ -69,7 +355,8 @@ public class Query extends AbstractInputCommand {
                 this.spec.commandLine().getErr().println("Executing query...");
             }
 
-            return exec.query(query);
+            CompiledQueryCache cache = CompiledQueryCache.getInstance();
+            return cache.execute(exec, cache.compile(exec, query));
         } catch (Exception e) {
             throw new Exception("Error when executing SPARQL query : " + e.getMessage(), e);
         }
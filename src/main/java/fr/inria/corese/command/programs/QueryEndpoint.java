@@ -1,14 +1,42 @@
 package fr.inria.corese.command.programs;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
-
-import com.github.jsonldjava.shaded.com.google.common.io.Files;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import fr.inria.corese.command.utils.http.EnumRequestMethod;
+import fr.inria.corese.command.utils.http.RetryPolicy;
 import fr.inria.corese.command.utils.http.SparqlHttpClient;
+import fr.inria.corese.command.utils.http.SparqlPaginator;
+import fr.inria.corese.command.utils.http.SparqlResultPageWriter;
 import fr.inria.corese.command.utils.loader.sparql.SparqlQueryLoader;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
@@ -20,8 +48,9 @@ public class QueryEndpoint extends AbstractCommand {
             "--query" }, description = "Specifies the SPARQL query to execute. This can be provided as a URL or a file path.", required = false)
     private String queryUrlOrFile;
 
-    @Option(names = { "-e", "--endpoint" }, description = "Specifies the SPARQL endpoint URL.", required = true)
-    private String endpoint_url;
+    @Option(names = { "-e",
+            "--endpoint" }, description = "Specifies the SPARQL endpoint URL. Several endpoints can be specified to send the query to all of them at once.", required = true, arity = "1..*")
+    private List<String> endpoint_urls;
 
     @Option(names = { "-H",
             "--header" }, description = "Adds an HTTP header to the request. Multiple headers can be specified.", arity = "0..")
@@ -47,10 +76,70 @@ public class QueryEndpoint extends AbstractCommand {
             "--ignore-query-validation" }, description = "Ignores query validation if set to true. Default value: ${DEFAULT-VALUE}.", required = false, defaultValue = "false")
     private boolean ignoreQueryValidation;
 
+    @Option(names = {
+            "--connect-timeout" }, description = "Specifies the connection timeout in seconds, 0 for no timeout. Default value: ${DEFAULT-VALUE}.", defaultValue = "30")
+    private int connectTimeout;
+
+    @Option(names = {
+            "--read-timeout" }, description = "Specifies the longest wait for data from the endpoint in seconds, 0 for no timeout. Default value: ${DEFAULT-VALUE}.", defaultValue = "0")
+    private int readTimeout;
+
+    @Option(names = {
+            "--response-compression" }, negatable = true, description = "Asks the endpoint to compress its response with gzip or deflate, decoded transparently. Default value: ${DEFAULT-VALUE}.", defaultValue = "true", fallbackValue = "true")
+    private boolean responseCompression;
+
+    @Option(names = {
+            "--max-attempts" }, description = "Specifies the maximum number of attempts of a request that fails with a transport error or a temporary status (429, 502, 503, 504). Update queries are sent once unless --retry-updates is set. Default value: ${DEFAULT-VALUE}.", defaultValue = "1")
+    private int maxAttempts;
+
+    @Option(names = {
+            "--backoff-base" }, description = "Specifies the delay before the first retry in milliseconds, doubled at each retry. Default value: ${DEFAULT-VALUE}.", defaultValue = "500")
+    private long backoffBase;
+
+    @Option(names = {
+            "--backoff-cap" }, description = "Specifies the longest delay between two attempts in milliseconds. A longer Retry-After header of the endpoint is honored up to this delay. Default value: ${DEFAULT-VALUE}.", defaultValue = "30000")
+    private long backoffCap;
+
+    @Option(names = {
+            "--jitter" }, negatable = true, description = "Picks a random delay between 0 and the backoff delay, so that clients do not retry all at once. Default value: ${DEFAULT-VALUE}.", defaultValue = "true", fallbackValue = "true")
+    private boolean jitter;
+
+    @Option(names = {
+            "--retry-updates" }, description = "Retries update queries too. Only use it if the updates can safely be applied twice. Default value: ${DEFAULT-VALUE}.", defaultValue = "false")
+    private boolean retryUpdates;
+
+    @Option(names = {
+            "--circuit-breaker-threshold" }, description = "Specifies the number of consecutive failed requests to an endpoint after which requests to it fail at once for 30 seconds, 0 to never stop. Default value: ${DEFAULT-VALUE}.", defaultValue = "5")
+    private int circuitBreakerThreshold;
+
+    @Option(names = {
+            "--endpoint-timeout" }, description = "Specifies the longest time in seconds for each endpoint to send its whole result when several endpoints are queried, 0 for no timeout. Default value: ${DEFAULT-VALUE}.", defaultValue = "0")
+    private int endpointTimeout;
+
+    @Option(names = {
+            "--page-size" }, description = "Splits a SELECT query into pages of this number of rows with LIMIT and OFFSET, and writes the rows of all pages as a single CSV, TSV or JSON result. Default value: no pages.")
+    private int pageSize = 0;
+
+    @Option(names = {
+            "--pages-in-flight" }, description = "Specifies the number of pages requested at the same time with --page-size. Default value: ${DEFAULT-VALUE}.", defaultValue = "2")
+    private int pagesInFlight;
+
+    @Option(names = {
+            "--merge" }, description = "Merges the results of several endpoints into a single output instead of one file per endpoint. Only CSV, TSV and N-Triples results can be merged.", defaultValue = "false")
+    private boolean merge;
+
     private String query;
 
+    private RetryPolicy retryPolicy;
+
     private final String DEFAULT_ACCEPT_HEADER = "text/csv";
 
+    // Results that can be concatenated, keeping the header of the first one
+    private static final Set<String> MERGEABLE_EXTENSIONS = Set.of("csv", "tsv", "nt");
+
+    // Time given to cancelled requests to stop writing their result
+    private static final long CANCEL_GRACE_SECONDS = 5;
+
     @Override
     public Integer call() {
 
@@ -67,15 +156,35 @@ public class QueryEndpoint extends AbstractCommand {
                 this.accept = Collections.emptyList();
             }
 
+            // Check the retry options before sending any request
+            this.retryPolicy = new RetryPolicy(this.maxAttempts, this.backoffBase, this.backoffCap, this.jitter);
+
             // Load query
             SparqlQueryLoader queryLoader = new SparqlQueryLoader(this.spec, this.verbose);
             this.query = queryLoader.load(this.queryUrlOrFile);
 
-            // Execute query
-            String res = this.sendRequest();
+            // Compressed output needs a file, check it before sending the query
+            if (this.output == null) {
+                this.checkStdoutAllowed();
+            }
 
-            // Export result
-            this.exportResult(res);
+            if (this.merge && this.endpoint_urls.size() < 2) {
+                throw new IllegalArgumentException("Results can only be merged when several endpoints are given.");
+            }
+
+            // Split the query into pages
+            if (this.pageSize > 0) {
+                this.executePaged();
+                return this.ERROR_EXIT_CODE_SUCCESS;
+            }
+
+            // Send the same query to several endpoints at once
+            if (this.endpoint_urls.size() > 1) {
+                return this.executeFanOut();
+            }
+
+            // Execute query and stream the result to the output
+            this.sendRequest();
 
         } catch (Exception e) {
             this.spec.commandLine().getErr().println("Error: " + e.getMessage());
@@ -97,19 +206,602 @@ public class QueryEndpoint extends AbstractCommand {
     }
 
     /**
-     * Send the SPARQL query to the endpoint.
+     * Send the SPARQL query to the endpoint and export the response as it
+     * arrives.
      * 
-     * @return The response from the endpoint.
      * @throws Exception If an error occurs.
      */
-    public String sendRequest() throws Exception {
+    public void sendRequest() throws Exception {
+        long size = this.sendRequest(this.endpoint_urls.get(0), this.query, this::exportResult);
 
-        SparqlHttpClient client = new SparqlHttpClient(this.spec, this.endpoint_url);
+        if (this.verbose) {
+            this.spec.commandLine().getErr().println("Received " + size + " bytes from the endpoint");
+        }
+    }
+
+    /**
+     * Send a SPARQL query to an endpoint.
+     * 
+     * @param endpointUrl The URL of the endpoint.
+     * @param query       The query to send.
+     * @param handler     The consumer of the response body.
+     * @return The number of bytes received.
+     * @throws Exception If an error occurs.
+     */
+    private long sendRequest(String endpointUrl, String query, SparqlHttpClient.ResponseHandler handler)
+            throws Exception {
+
+        try (SparqlHttpClient client = this.createClient(endpointUrl)) {
+            return client.sendRequest(query, this.default_graph, this.named_graph,
+                    this.ignoreQueryValidation, handler);
+        }
+    }
+
+    /**
+     * Create a client configured with the options of the command.
+     * 
+     * @param endpointUrl The URL of the endpoint.
+     * @return The client.
+     */
+    private SparqlHttpClient createClient(String endpointUrl) {
+        SparqlHttpClient client = new SparqlHttpClient(this.spec, endpointUrl);
         this.parseHeader(client);
         client.setRequestMethod(this.requestMethod);
         client.setVerbose(this.verbose);
+        client.setConnectTimeout(this.connectTimeout);
+        client.setReadTimeout(this.readTimeout);
+        client.setResponseCompression(this.responseCompression);
+        client.setRetryPolicy(this.retryPolicy);
+        client.setRetryUpdates(this.retryUpdates);
+        client.setCircuitBreakerThreshold(this.circuitBreakerThreshold);
+        return client;
+    }
+
+    /**
+     * Send the query as LIMIT/OFFSET pages and write the rows of every page as
+     * a single result.
+     * 
+     * Several pages are requested at the same time, each on its own virtual
+     * thread, and written in order as soon as they arrive. Only the pages in
+     * flight are kept in memory. Pages stop after the first page with fewer
+     * rows than the page size. The page after it must then be empty: if it is
+     * not, the endpoint cut the short page, for example because it limits the
+     * number of rows of a response, and the command fails instead of writing
+     * an incomplete result. The output file is deleted if a page fails.
+     * 
+     * Each page in flight has its own client, reused by later pages so that
+     * connections are kept alive. Only the first page is validated, the others
+     * differ from it by their LIMIT and OFFSET only.
+     * 
+     * @throws Exception If a page fails or the result cannot be written.
+     */
+    private void executePaged() throws Exception {
+
+        if (this.endpoint_urls.size() > 1) {
+            throw new IllegalArgumentException("Pages can only be requested from a single endpoint.");
+        }
+        if (this.pagesInFlight < 1) {
+            throw new IllegalArgumentException(
+                    "The number of pages in flight must be at least 1, got: " + this.pagesInFlight);
+        }
+
+        SparqlResultPageWriter.Format format = SparqlResultPageWriter.Format.fromMediaType(this.acceptedMediaType());
+        if (format == null) {
+            throw new IllegalArgumentException(
+                    "Only CSV, TSV and JSON results can be split into pages, got: " + this.acceptedMediaType());
+        }
+
+        SparqlPaginator paginator = new SparqlPaginator(this.query, this.pageSize);
+        if (!paginator.isOrdered()) {
+            this.spec.commandLine().getErr().println(
+                    "Warning: the query has no ORDER BY clause, the endpoint may return overlapping pages.");
+        }
+
+        String endpointUrl = this.endpoint_urls.get(0);
+        Writer writer = this.openResultWriter();
+        SparqlResultPageWriter pageWriter = new SparqlResultPageWriter(format, writer);
+
+        // One client per page in flight
+        BlockingQueue<SparqlHttpClient> clients = new ArrayBlockingQueue<>(this.pagesInFlight);
+        for (int i = 0; i < this.pagesInFlight; i++) {
+            clients.add(this.createClient(endpointUrl));
+        }
+
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        Deque<Future<Page>> inFlight = new ArrayDeque<>();
+        boolean completed = false;
+        try {
+            long nextPage = 0;
+            boolean lastPage = false;
+            boolean afterShortPage = false;
+            while (true) {
+                // Keep the pipeline full
+                while (!lastPage && inFlight.size() < this.pagesInFlight) {
+                    boolean validate = nextPage == 0 && !this.ignoreQueryValidation;
+                    String pageQuery = paginator.getPage(nextPage++);
+                    if (pageQuery == null) {
+                        lastPage = true;
+                        break;
+                    }
+                    inFlight.addLast(executor.submit(() -> this.fetchPage(clients, pageQuery, validate)));
+                }
+                if (inFlight.isEmpty()) {
+                    break;
+                }
+
+                // Write the oldest page
+                Page page;
+                try {
+                    page = inFlight.removeFirst().get();
+                } catch (ExecutionException e) {
+                    throw new Exception("Failed to get page " + pageWriter.getPages() + ": "
+                            + e.getCause().getMessage(), e.getCause());
+                }
+                long rows = pageWriter.writePage(page.body, page.charset);
+
+                if (afterShortPage) {
+                    // The result must end with the short page
+                    if (rows > 0) {
+                        throw new Exception("Page " + (pageWriter.getPages() - 2)
+                                + " has fewer rows than the page size but the next page is not empty. The endpoint may limit the number of rows of a response, use a smaller --page-size.");
+                    }
+                    break;
+                }
+                if (rows > 0 && rows < this.pageSize) {
+                    // A short page is the end of the result, check it on the
+                    // next page only
+                    lastPage = true;
+                    afterShortPage = true;
+                    while (inFlight.size() > 1) {
+                        inFlight.removeLast().cancel(true);
+                    }
+                    String pageQuery = inFlight.isEmpty() ? paginator.getPage(nextPage) : null;
+                    if (pageQuery != null) {
+                        inFlight.addLast(executor.submit(() -> this.fetchPage(clients, pageQuery, false)));
+                    }
+                } else if (rows < this.pageSize) {
+                    // An empty page is the end of the result
+                    break;
+                }
+            }
+            pageWriter.finish();
+            completed = true;
+        } finally {
+            inFlight.forEach(future -> future.cancel(true));
+            executor.shutdownNow();
+            executor.awaitTermination(CANCEL_GRACE_SECONDS, TimeUnit.SECONDS);
+            clients.forEach(SparqlHttpClient::close);
+            if (this.output != null) {
+                writer.close();
+
+                // Do not leave an incomplete result behind
+                if (!completed) {
+                    Files.deleteIfExists(this.resolveOutputPath(this.output));
+                }
+            }
+        }
+
+        if (this.verbose) {
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            this.spec.commandLine().getErr().println("Received " + pageWriter.getRows() + " rows in "
+                    + pageWriter.getPages() + " pages in " + elapsed + " ms");
+        }
+    }
+
+    /**
+     * Request a page of the result.
+     * 
+     * @param clients   Clients free to send a page.
+     * @param pageQuery The query of the page.
+     * @param validate  True to validate the query of the page.
+     * @return The body of the page.
+     * @throws Exception If the request fails.
+     */
+    private Page fetchPage(BlockingQueue<SparqlHttpClient> clients, String pageQuery, boolean validate)
+            throws Exception {
+        Page page = new Page();
+        SparqlHttpClient client = clients.take();
+        try {
+            client.sendRequest(pageQuery, this.default_graph, this.named_graph, !validate, (body, charset) -> {
+                page.body = body.readAllBytes();
+                page.charset = charset;
+            });
+        } finally {
+            // Never blocks, the client was taken from this queue
+            clients.add(client);
+        }
+        return page;
+    }
+
+    /**
+     * Open a writer on the output file, compressed if requested, or on the
+     * standard output.
+     * 
+     * @return The writer. It must be closed if it writes to a file.
+     * @throws IOException If the output file cannot be opened.
+     */
+    private Writer openResultWriter() throws IOException {
+        if (this.output == null) {
+            return this.spec.commandLine().getOut();
+        }
+        OutputStream outputStream = this.openOutputStream(this.resolveOutputPath(this.output));
+        return new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The body of a page of results.
+     */
+    private static class Page {
+        private byte[] body;
+        private Charset charset;
+    }
+
+    /**
+     * Send the query to every endpoint at once, one virtual thread per
+     * endpoint, and write each result to its own file in the output directory
+     * or merge them into a single output.
+     * 
+     * A summary of the time, size and status of each endpoint is printed to the
+     * error output.
+     * 
+     * @return The exit code, an error if any endpoint failed.
+     * @throws Exception If the outputs cannot be prepared or merged.
+     */
+    private Integer executeFanOut() throws Exception {
+
+        if (this.endpointTimeout < 0) {
+            throw new IllegalArgumentException("Endpoint timeout cannot be negative: " + this.endpointTimeout);
+        }
+
+        // Prepare the outputs
+        String extension = extensionOf(this.acceptedMediaType());
+        if (this.merge) {
+            if (!MERGEABLE_EXTENSIONS.contains(extension)) {
+                throw new IllegalArgumentException(
+                        "Only CSV, TSV and N-Triples results can be merged, got: " + this.acceptedMediaType());
+            }
+        } else {
+            if (this.output == null) {
+                throw new IllegalArgumentException(
+                        "Several endpoints need an output directory. Please specify it with the option -o, or merge the results with --merge.");
+            }
+            if (Files.exists(this.output) && !Files.isDirectory(this.output)) {
+                throw new IllegalArgumentException(
+                        "Output must be a directory when several endpoints are given: " + this.output);
+            }
+            Files.createDirectories(this.output);
+        }
+
+        List<EndpointResult> results = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (String endpointUrl : this.endpoint_urls) {
+            EndpointResult result = new EndpointResult(endpointUrl, uniqueName(endpointUrl, names));
+            if (this.merge) {
+                result.path = Files.createTempFile("corese-endpoint-", "." + extension);
+            } else {
+                result.path = this.resolveOutputPath(this.output.resolve(result.name + "." + extension));
+            }
+            results.add(result);
+        }
+
+        // Send the query to every endpoint
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (EndpointResult result : results) {
+                futures.add(executor.submit(() -> this.queryEndpoint(result)));
+            }
+
+            long deadline = start + TimeUnit.SECONDS.toNanos(this.endpointTimeout);
+            for (int i = 0; i < results.size(); i++) {
+                this.await(futures.get(i), results.get(i), deadline);
+            }
+        } finally {
+            // Let cancelled requests close their file before it is deleted
+            executor.shutdownNow();
+            executor.awaitTermination(CANCEL_GRACE_SECONDS, TimeUnit.SECONDS);
+        }
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+
+        // Results of failed and cancelled endpoints are partial
+        if (!this.merge) {
+            for (EndpointResult result : results) {
+                if (result.error != null) {
+                    Files.deleteIfExists(result.path);
+                }
+            }
+        }
+
+        // Merge the results in the order of the endpoints
+        if (this.merge) {
+            try {
+                this.mergeResults(results, !"nt".equals(extension));
+            } finally {
+                for (EndpointResult result : results) {
+                    Files.deleteIfExists(result.path);
+                }
+            }
+        }
+
+        this.printSummary(results, elapsed);
+
+        boolean failed = results.stream().anyMatch(result -> result.error != null);
+        return failed ? this.ERROR_EXIT_CODE_ERROR : this.ERROR_EXIT_CODE_SUCCESS;
+    }
+
+    /**
+     * Send the query to an endpoint and write its result to the file of the
+     * endpoint.
+     * 
+     * Failures are recorded in the result instead of being thrown, so that the
+     * other endpoints are still queried.
+     * 
+     * @param result The endpoint and the outcome of the request.
+     */
+    private void queryEndpoint(EndpointResult result) {
+        long start = System.nanoTime();
+        try {
+            result.bytes = this.sendRequest(result.url, this.query, (body, charset) -> {
+                if (this.merge) {
+                    // Merged results are re-encoded so that they share one charset
+                    try (Writer writer = Files.newBufferedWriter(result.path, StandardCharsets.UTF_8)) {
+                        new InputStreamReader(body, charset).transferTo(writer);
+                    }
+                } else {
+                    try (OutputStream outputStream = this.openOutputStream(result.path)) {
+                        body.transferTo(outputStream);
+                    }
+                }
+            });
+        } catch (Exception e) {
+            result.error = firstLine(e.getMessage());
+        } finally {
+            result.elapsed = (System.nanoTime() - start) / 1_000_000;
+        }
+    }
+
+    /**
+     * Wait for the request to an endpoint, cancelling it if the endpoint
+     * timeout is reached.
+     * 
+     * @param future   The running request.
+     * @param result   The endpoint and the outcome of the request.
+     * @param deadline The time at which the requests time out, from
+     *                 {@link System#nanoTime()}, ignored if there is no timeout.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private void await(Future<?> future, EndpointResult result, long deadline) throws InterruptedException {
+        try {
+            if (this.endpointTimeout > 0) {
+                future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } else {
+                future.get();
+            }
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            result.elapsed = TimeUnit.SECONDS.toMillis(this.endpointTimeout);
+            result.error = "timed out after " + this.endpointTimeout + " s";
+        } catch (ExecutionException e) {
+            result.error = firstLine(e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Concatenate the results of the endpoints that answered into the output.
+     * 
+     * @param results    The endpoints and their results.
+     * @param hasHeaders True if every result starts with a header line, which
+     *                   is kept only for the first result.
+     * @throws IOException If a result cannot be read or the output written.
+     */
+    private void mergeResults(List<EndpointResult> results, boolean hasHeaders) throws IOException {
+        OutputStream outputStream = null;
+        if (this.output != null) {
+            outputStream = this.openOutputStream(this.resolveOutputPath(this.output));
+            if (this.compression == null) {
+                outputStream = new BufferedOutputStream(outputStream);
+            }
+        }
+
+        PrintWriter stdout = this.spec.commandLine().getOut();
+        boolean first = true;
+        boolean endsWithLineFeed = true;
+        try {
+            for (EndpointResult result : results) {
+                if (result.error != null || Files.size(result.path) == 0) {
+                    continue;
+                }
+
+                // Results do not always end with a line feed
+                if (!endsWithLineFeed) {
+                    if (outputStream != null) {
+                        outputStream.write('\n');
+                    } else {
+                        stdout.println();
+                    }
+                }
+
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(result.path))) {
+                    if (hasHeaders && !first) {
+                        skipLine(in);
+                    }
+                    if (outputStream != null) {
+                        in.transferTo(outputStream);
+                    } else {
+                        new InputStreamReader(in, StandardCharsets.UTF_8).transferTo(stdout);
+                    }
+                }
+                first = false;
+                endsWithLineFeed = lastByte(result.path) == '\n';
+            }
+            if (outputStream == null && !endsWithLineFeed) {
+                stdout.println();
+            }
+        } finally {
+            if (outputStream != null) {
+                outputStream.close();
+            }
+            stdout.flush();
+        }
+    }
 
-        return client.sendRequest(this.query, this.default_graph, this.named_graph, this.ignoreQueryValidation);
+    /**
+     * Print the time, size and status of the request to each endpoint.
+     * 
+     * @param results The endpoints and the outcome of their request.
+     * @param elapsed Total time of the requests, in milliseconds.
+     */
+    private void printSummary(List<EndpointResult> results, long elapsed) {
+        PrintWriter err = this.spec.commandLine().getErr();
+        err.println("| Endpoint | Time (ms) | Bytes | Status |");
+        err.println("| --- | ---: | ---: | --- |");
+        for (EndpointResult result : results) {
+            err.println("| " + result.url
+                    + " | " + (result.elapsed < 0 ? "-" : result.elapsed)
+                    + " | " + (result.bytes < 0 ? "-" : result.bytes)
+                    + " | " + (result.error == null ? "ok" : "error: " + result.error) + " |");
+        }
+        long failed = results.stream().filter(result -> result.error != null).count();
+        err.println("Queried " + results.size() + " endpoints in " + elapsed + " ms, " + failed + " failed");
+    }
+
+    /**
+     * Get the media type of the first Accept header sent to the endpoints.
+     * 
+     * @return The media type, without parameters, in lower case.
+     */
+    private String acceptedMediaType() {
+        String accept = null;
+        if (!this.accept.isEmpty()) {
+            accept = this.accept.get(0);
+        } else if (this.headers != null) {
+            for (String header : this.headers) {
+                String[] headerParts = header.split(":", 2);
+                if (headerParts.length == 2 && headerParts[0].trim().equalsIgnoreCase("Accept")) {
+                    accept = headerParts[1];
+                    break;
+                }
+            }
+        }
+        return accept == null ? "" : accept.split("[,;]", 2)[0].trim().toLowerCase();
+    }
+
+    /**
+     * Get the file extension of a media type.
+     * 
+     * @param mediaType The media type.
+     * @return The file extension, "txt" if the media type is unknown.
+     */
+    private static String extensionOf(String mediaType) {
+        switch (mediaType) {
+            case "text/csv":
+                return "csv";
+            case "text/tab-separated-values":
+                return "tsv";
+            case "application/n-triples":
+                return "nt";
+            case "application/n-quads":
+                return "nq";
+            case "text/turtle":
+                return "ttl";
+            case "application/trig":
+                return "trig";
+            case "application/rdf+xml":
+                return "rdf";
+            case "application/ld+json":
+                return "jsonld";
+            case "application/sparql-results+json":
+            case "application/json":
+                return "json";
+            case "application/sparql-results+xml":
+            case "application/xml":
+                return "xml";
+            default:
+                return "txt";
+        }
+    }
+
+    /**
+     * Build the name of the result of an endpoint from its URL.
+     * 
+     * @param endpointUrl The URL of the endpoint.
+     * @param names       Names already used, updated with the new name.
+     * @return A name not used by another endpoint.
+     */
+    private static String uniqueName(String endpointUrl, Set<String> names) {
+        String name = endpointUrl.replaceFirst("^[a-zA-Z][a-zA-Z0-9+.-]*://", "")
+                .replaceAll("[^A-Za-z0-9._-]+", "-")
+                .replaceAll("^-+|-+$", "");
+        if (name.isEmpty()) {
+            name = "endpoint";
+        }
+
+        String unique = name;
+        for (int i = 2; !names.add(unique); i++) {
+            unique = name + "-" + i;
+        }
+        return unique;
+    }
+
+    /**
+     * Skip the bytes of a stream up to and including the next line feed.
+     * 
+     * @param in The stream to read.
+     * @throws IOException If the stream cannot be read.
+     */
+    private static void skipLine(InputStream in) throws IOException {
+        int b;
+        do {
+            b = in.read();
+        } while (b != -1 && b != '\n');
+    }
+
+    /**
+     * Read the last byte of a file.
+     * 
+     * @param path The file, not empty.
+     * @return The last byte of the file.
+     * @throws IOException If the file cannot be read.
+     */
+    private static int lastByte(Path path) throws IOException {
+        try (SeekableByteChannel channel = Files.newByteChannel(path)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+            channel.position(channel.size() - 1).read(buffer);
+            return buffer.get(0);
+        }
+    }
+
+    /**
+     * Get the first line of an error message.
+     * 
+     * @param message The message, possibly null.
+     * @return The first line of the message.
+     */
+    private static String firstLine(String message) {
+        if (message == null) {
+            return "unknown error";
+        }
+        int newline = message.indexOf('\n');
+        return newline < 0 ? message : message.substring(0, newline);
+    }
+
+    /**
+     * An endpoint and the outcome of the request sent to it.
+     */
+    private static class EndpointResult {
+        private final String url;
+        private final String name;
+        private Path path;
+        private volatile long elapsed = -1;
+        private volatile long bytes = -1;
+        private volatile String error;
+
+        private EndpointResult(String url, String name) {
+            this.url = url;
+            this.name = name;
+        }
     }
 
     /**
@@ -140,20 +832,29 @@ public class QueryEndpoint extends AbstractCommand {
     /**
      * Export the result to a file or to standard output.
      * 
-     * @param response The response to export.
+     * The response is copied in chunks, so memory use does not depend on the
+     * size of the result. Bytes written to a file keep the encoding of the
+     * endpoint.
+     * 
+     * @param body    The response body.
+     * @param charset The charset of the response.
+     * @throws IOException If the response cannot be read or written.
      */
-    private void exportResult(String response) {
+    private void exportResult(InputStream body, Charset charset) throws IOException {
 
         if (this.output != null) {
-            // Write result to file
-            try {
-                Files.write(response.getBytes(StandardCharsets.UTF_8), this.output.toFile());
+            // Write result to file, compressed if requested
+            try (OutputStream outputStream = this.openOutputStream(this.resolveOutputPath(this.output))) {
+                body.transferTo(outputStream);
             } catch (IOException e) {
-                throw new RuntimeException("Error while writing result to file: " + e.getMessage());
+                throw new IOException("Error while writing result to file: " + e.getMessage(), e);
             }
         } else {
             // Write result to standard output
-            this.spec.commandLine().getOut().println(response);
+            PrintWriter out = this.spec.commandLine().getOut();
+            new InputStreamReader(body, charset).transferTo(out);
+            out.println();
+            out.flush();
         }
 
     }
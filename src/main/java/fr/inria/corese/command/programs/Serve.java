@@ -0,0 +1,70 @@
+package fr.inria.corese.command.programs;
+
+import java.util.concurrent.CountDownLatch;
+
+import fr.inria.corese.command.utils.loader.rdf.EnumRdfInputFormat;
+import fr.inria.corese.command.utils.loader.rdf.RdfDataLoader;
+import fr.inria.corese.command.utils.server.SparqlServer;
+import fr.inria.corese.core.Graph;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+@Command(name = "serve", description = "Load RDF data once and answer SPARQL queries on a local HTTP endpoint.", mixinStandardHelpOptions = true)
+public class Serve extends AbstractInputCommand {
+
+    @Option(names = { "-f", "-if",
+            "--input-format" }, description = "Specifies the RDF serialization format of the input file. Possible values are: :@|fg(magenta) ${COMPLETION-CANDIDATES}|@.")
+    private EnumRdfInputFormat inputFormat = null;
+
+    @Option(names = { "-p",
+            "--port" }, description = "Specifies the port to listen on. The server only accepts connections from the local machine. Default value: ${DEFAULT-VALUE}.", defaultValue = "8080")
+    private int port = 8080;
+
+    @Option(names = {
+            "--server-threads" }, description = "Specifies the number of threads handling requests. Queries run concurrently, updates run alone. Default value: the number of available processors.")
+    private int serverThreads = Runtime.getRuntime().availableProcessors();
+
+    @Option(names = {
+            "--allow-updates" }, description = "Allows SPARQL updates to modify the data held by the server. Without this option the server is read-only and rejects updates. Default value: ${DEFAULT-VALUE}.", defaultValue = "false")
+    private boolean allowUpdates = false;
+
+    public Serve() {
+    }
+
+    @Override
+    public Integer call() {
+
+        super.call();
+
+        try {
+            // Load the input file(s)
+            RdfDataLoader loader = this.createRdfDataLoader();
+            Graph graph = this.loadInputGraph(loader, this.inputFormat);
+
+            // Start the server
+            SparqlServer server = new SparqlServer(this.spec, this.verbose, graph);
+            server.setAllowUpdates(this.allowUpdates);
+            int boundPort = server.start(this.port, this.serverThreads);
+
+            CountDownLatch stopped = new CountDownLatch(1);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                stopped.countDown();
+            }));
+
+            this.spec.commandLine().getErr().println("Serving " + graph.size() + " triples on http://localhost:"
+                    + boundPort + SparqlServer.PATH + " (use 'corese query --connect http://localhost:" + boundPort
+                    + "' to send queries)");
+
+            stopped.await();
+            return this.ERROR_EXIT_CODE_SUCCESS;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return this.ERROR_EXIT_CODE_SUCCESS;
+        } catch (IllegalArgumentException e) {
+            this.spec.commandLine().getErr().println("Error: " + e.getMessage());
+            return this.ERROR_EXIT_CODE_ERROR;
+        }
+    }
+
+}
@@ -1,10 +1,18 @@
 package fr.inria.corese.command.programs;
 
-import fr.inria.corese.command.utils.ContentValidator;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 import fr.inria.corese.command.utils.exporter.rdf.EnumRdfOutputFormat;
 import fr.inria.corese.command.utils.exporter.rdf.RdfDataExporter;
 import fr.inria.corese.command.utils.loader.rdf.EnumRdfInputFormat;
 import fr.inria.corese.command.utils.loader.rdf.RdfDataLoader;
+import fr.inria.corese.command.utils.shacl.IncrementalShaclValidator;
+import fr.inria.corese.command.utils.shacl.ShaclValidator;
+import fr.inria.corese.command.utils.shacl.ShapesCache;
+import fr.inria.corese.command.utils.shacl.ValidationSummary;
+import fr.inria.corese.command.utils.shacl.ViolationWriter;
 import fr.inria.corese.core.Graph;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
@@ -28,30 +36,110 @@ public class Validate extends AbstractInputCommand {
             "--output-format" }, description = "Specifies the serialization format of the validation report. Possible values are: :@|fg(magenta) ${COMPLETION-CANDIDATES}|@. Default value: ${DEFAULT-VALUE}.", defaultValue = "TURTLE")
     private EnumRdfOutputFormat outputFormat = null;
 
+    @Option(names = {
+            "--shapes-cache" }, description = "Specifies the path of a binary file caching the loaded shapes. The file is written on the first run, and the shapes are read from it instead of the shapes files as long as these files are unchanged.")
+    private Path shapesCache;
+
+    @Option(names = {
+            "--validation-threads" }, description = "Specifies the number of threads evaluating the shapes. The shapes with targets are split into partitions evaluated in parallel, and their reports are merged into one. Default value: ${DEFAULT-VALUE}.", defaultValue = "1")
+    private int validationThreads = 1;
+
+    @Option(names = {
+            "--fail-fast" }, description = "Stops the validation at the first violation. Same as --max-violations 1.")
+    private boolean failFast = false;
+
+    @Option(names = {
+            "--max-violations" }, description = "Stops the validation once this number of violations, results of severity sh:Violation, is reached. Warnings and infos do not count towards the limit. The remaining shapes are not evaluated and the report holds at most this number of violations. Must be positive or zero. Default value: no limit.")
+    private int maxViolations = 0;
+
+    @Option(names = {
+            "--summary" }, description = "Writes the number of results per shape and severity, as a Markdown table, instead of the validation report. The summary is also written along with --violations-out, to the -o file or to standard output.")
+    private boolean summary = false;
+
+    @Option(names = {
+            "--violations-out" }, description = "Streams the validation results to this file, or to standard output with -, as newline-delimited JSON with one line per result, written as soon as each shape is evaluated. The report is then only written if an output file is given with -o, while a --summary is always written.")
+    private String violationsOut;
+
+    @Option(names = {
+            "--fail-on-violation" }, description = "Exits with code 2 if the data does not conform to the shapes.")
+    private boolean failOnViolation = false;
+
+    @Option(names = {
+            "--baseline" }, description = "Specifies the path or URL of the report of a previous validation. Only the focus nodes affected by the --delta and --removed statements are validated again, and their results in this report are replaced. The input is the dataset with the change applied.")
+    private String baseline;
+
+    @Option(names = {
+            "--delta" }, description = "Specifies the path or URL of the file containing the statements added since the --baseline report.")
+    private String delta;
+
+    @Option(names = {
+            "--removed" }, description = "Specifies the path or URL of the file containing the statements removed since the --baseline report.")
+    private String removed;
+
+    // True if the report was truncated to the maximum number of violations
+    private boolean truncated = false;
+
+    // Writer streaming the results, or null
+    private ViolationWriter violationWriter;
+
+    // Summary counting the results as they are merged, or null
+    private ValidationSummary validationSummary;
+
+    // True if the data conforms to the shapes
+    private boolean conforms = true;
+
+    // Exit code when the data does not conform to the shapes
+    private final int ERROR_EXIT_CODE_VIOLATION = 2;
+
     public Integer call() {
 
         super.call();
 
         try {
-            // Load input file(s)
-            RdfDataLoader loader = new RdfDataLoader(this.spec, this.verbose);
-            Graph dataGraph = loader.load(this.inputsRdfData, this.inputFormat, this.recursive);
-
-            // Load shapes file(s)
-            Graph shapesGraph = loader.load(this.shaclShapes, this.reportFormat, this.recursive);
-
-            // Check if shapes graph contains SHACL shapes
-            if (!ContentValidator.containsShaclShapes(shapesGraph)) {
-                throw new IllegalArgumentException("No SHACL shapes found in the input file(s).");
+            if (this.maxViolations < 0) {
+                throw new IllegalArgumentException(
+                        "The maximum number of violations must be positive or zero, got: " + this.maxViolations);
+            }
+            this.checkIncrementalOptions();
+            if (this.summary && "-".equals(this.violationsOut) && this.output == null) {
+                throw new IllegalArgumentException("The --summary option requires an output file with -o"
+                        + " when --violations-out writes to standard output.");
             }
+            this.validationSummary = this.summary ? new ValidationSummary() : null;
 
-            // Evaluation of SHACL shapes
-            Graph reportGraph = this.evaluateSHACLShapes(dataGraph, shapesGraph);
+            // Load input file(s)
+            RdfDataLoader loader = this.createRdfDataLoader();
+            Graph dataGraph = this.loadInputGraph(loader, this.inputFormat);
+
+            // Load shapes file(s), checked for SHACL shapes once while cached
+            ShapesCache cache = ShapesCache.getInstance();
+            cache.setLog(this.verbose ? this.spec.commandLine().getErr() : null);
+            Graph shapesGraph = cache.load(loader, this.shaclShapes, this.reportFormat, this.recursive,
+                    "owlImport=" + this.owlImport, this.shapesCache);
+
+            // Evaluation of SHACL shapes, streaming the results if requested
+            Graph reportGraph;
+            try (ViolationWriter violationWriter = this.openViolationWriter()) {
+                this.violationWriter = violationWriter;
+                reportGraph = this.baseline == null
+                        ? this.evaluateSHACLShapes(dataGraph, shapesGraph)
+                        : this.evaluateChange(loader, dataGraph, shapesGraph);
+            }
 
-            // Export the report graph
-            RdfDataExporter rdfExporter = new RdfDataExporter(this.spec, this.verbose, this.output);
-            rdfExporter.export(reportGraph, this.outputFormat);
+            // Export the summary, or the report graph unless it is only streamed
+            if (this.summary || this.violationsOut == null || this.output != null) {
+                RdfDataExporter rdfExporter = new RdfDataExporter(this.spec, this.verbose, this.output);
+                rdfExporter.setCompression(this.compression);
+                if (this.summary) {
+                    rdfExporter.exportText(this.validationSummary.toMarkdown(this.truncated), "md");
+                } else {
+                    rdfExporter.export(reportGraph, this.outputFormat);
+                }
+            }
 
+            if (this.failOnViolation && !this.conforms) {
+                return this.ERROR_EXIT_CODE_VIOLATION;
+            }
             return this.ERROR_EXIT_CODE_SUCCESS;
         } catch (Exception e) {
             this.spec.commandLine().getErr().println("Error: " + e.getMessage());
@@ -73,11 +161,89 @@ public class Validate extends AbstractInputCommand {
             this.spec.commandLine().getErr().println("Evaluating SHACL shapes...");
         }
 
-        fr.inria.corese.core.shacl.Shacl shacl = new fr.inria.corese.core.shacl.Shacl(dataGraph, shapesGraph);
-        try {
-            return shacl.eval();
-        } catch (Exception e) {
-            throw new Exception("Error while evaluating SHACL shapes: " + e.getMessage(), e);
+        ShaclValidator validator = this.createShaclValidator();
+        Graph reportGraph = validator.validate(dataGraph, shapesGraph);
+        this.truncated = validator.isTruncated();
+        this.conforms = validator.conforms();
+        return reportGraph;
+    }
+
+    /**
+     * Evaluate SHACL shapes on the focus nodes affected by a change, and
+     * patch the baseline report.
+     *
+     * @param loader      The loader of the input files.
+     * @param dataGraph   The data graph, with the change applied.
+     * @param shapesGraph The shapes graph.
+     * @return The report graph.
+     * @throws Exception If an error occurs while evaluating SHACL shapes.
+     */
+    private Graph evaluateChange(RdfDataLoader loader, Graph dataGraph, Graph shapesGraph) throws Exception {
+
+        Graph baselineGraph = loader.load(new String[] { this.baseline }, null, false);
+        Graph addedGraph = this.delta == null ? Graph.create()
+                : loader.load(new String[] { this.delta }, null, false);
+        Graph removedGraph = this.removed == null ? Graph.create()
+                : loader.load(new String[] { this.removed }, null, false);
+
+        if (this.verbose) {
+            this.spec.commandLine().getErr().println("Evaluating SHACL shapes on the changed data...");
+        }
+
+        IncrementalShaclValidator validator = new IncrementalShaclValidator(this.spec, this.verbose,
+                this.createShaclValidator());
+        Graph reportGraph = validator.validate(dataGraph, shapesGraph, baselineGraph, addedGraph, removedGraph);
+        this.truncated = validator.isTruncated();
+        this.conforms = validator.conforms();
+        return reportGraph;
+    }
+
+    /**
+     * Create a SHACL validator with the options of the command.
+     *
+     * @return The validator.
+     */
+    private ShaclValidator createShaclValidator() {
+        ShaclValidator validator = new ShaclValidator(this.spec, this.verbose);
+        validator.setThreads(this.validationThreads);
+        validator.setMaxViolations(this.failFast ? 1 : this.maxViolations);
+        validator.setViolationWriter(this.violationWriter);
+        validator.setSummary(this.validationSummary);
+
+        // The report is only written if it is not summarized nor streamed alone
+        validator.setKeepResults(!this.summary && (this.violationWriter == null || this.output != null));
+        return validator;
+    }
+
+    /**
+     * Open the writer streaming the results, if requested.
+     *
+     * @return The writer, or null if results are not streamed.
+     * @throws IOException If the file cannot be created.
+     */
+    private ViolationWriter openViolationWriter() throws IOException {
+        if (this.violationsOut == null) {
+            return null;
+        }
+        if ("-".equals(this.violationsOut)) {
+            return new ViolationWriter(this.spec.commandLine().getOut(), false);
+        }
+        return new ViolationWriter(Files.newBufferedWriter(Path.of(this.violationsOut)), true);
+    }
+
+    /**
+     * Check that the options of incremental validation are used together.
+     *
+     * @throws IllegalArgumentException If a change is given without a baseline
+     *                                  report, or the other way round.
+     */
+    private void checkIncrementalOptions() {
+        boolean change = this.delta != null || this.removed != null;
+        if (this.baseline == null && change) {
+            throw new IllegalArgumentException("The --delta and --removed options require a --baseline report.");
+        }
+        if (this.baseline != null && !change) {
+            throw new IllegalArgumentException("The --baseline option requires a --delta or --removed file.");
         }
     }
 
@@ -0,0 +1,203 @@
+package fr.inria.corese.command.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.core.Mappings;
+import fr.inria.corese.core.kgram.core.Query;
+import fr.inria.corese.core.query.QueryProcess;
+import fr.inria.corese.core.sparql.exceptions.EngineException;
+
+/**
+ * Process-wide cache of compiled SPARQL queries.
+ *
+ * Validation, execution, batch and server modes compile queries through this
+ * cache, so that a query text is parsed once per process. Entries are keyed by
+ * the query text with normalized line endings and surrounding whitespace, by
+ * the settings that affect compilation (configuration file and OWL import
+ * mode) and by the query process the query is compiled for. A compiled query
+ * holds evaluation state, so queries to execute are compiled for the query
+ * process that runs them and are never shared with another one; queries that
+ * are only inspected are compiled once for the whole process. The least
+ * recently used entries are dropped once the cache is full.
+ */
+public class CompiledQueryCache {
+
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    private static final CompiledQueryCache INSTANCE = new CompiledQueryCache(DEFAULT_MAX_SIZE);
+
+    private final LinkedHashMap<Key, Query> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int maxSize;
+    private String settings = "";
+
+    /////////////////
+    // Constructor //
+    /////////////////
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize Maximum number of compiled queries kept.
+     */
+    public CompiledQueryCache(int maxSize) {
+        this.setMaxSize(maxSize);
+    }
+
+    /**
+     * Get the cache shared by the whole process.
+     *
+     * @return The shared cache.
+     */
+    public static CompiledQueryCache getInstance() {
+        return INSTANCE;
+    }
+
+    ///////////////////////
+    // Getters & Setters //
+    ///////////////////////
+
+    /**
+     * Sets the maximum number of compiled queries kept.
+     *
+     * @param maxSize Maximum number of entries, at least 1.
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The query cache size must be at least 1, got: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.trim();
+    }
+
+    /**
+     * Sets the settings that affect how queries are compiled.
+     *
+     * Queries compiled with other settings are not returned anymore.
+     *
+     * @param settings Description of the current settings.
+     */
+    public synchronized void setSettings(String settings) {
+        this.settings = settings == null ? "" : settings;
+    }
+
+    ////////////////////
+    // Public methods //
+    ////////////////////
+
+    /**
+     * Compile a query to inspect it, or get it from the cache.
+     *
+     * The compiled query is shared by every caller and must not be executed,
+     * use {@link #compile(QueryProcess, String)} to run it.
+     *
+     * @param queryString SPARQL query.
+     * @return The compiled query.
+     * @throws EngineException If the query is not valid.
+     */
+    public Query compile(String queryString) throws EngineException {
+        return this.compile(null, queryString);
+    }
+
+    /**
+     * Compile a query for a query process, or get it from the cache.
+     *
+     * The compiled query must only be executed by this query process, which
+     * must not be used by several threads at once.
+     *
+     * @param exec        Query process that runs the query, or null if the
+     *                    query is only inspected.
+     * @param queryString SPARQL query.
+     * @return The compiled query.
+     * @throws EngineException If the query is not valid.
+     */
+    public Query compile(QueryProcess exec, String queryString) throws EngineException {
+        Key key;
+        synchronized (this) {
+            key = new Key(exec, this.settings + '\n' + normalize(queryString));
+            Query query = this.entries.get(key);
+            if (query != null) {
+                return query;
+            }
+        }
+
+        // Compile outside the lock, other queries do not wait for this one
+        QueryProcess compiler = exec != null ? exec : QueryProcess.create(Graph.create());
+        Query query = compiler.compile(queryString);
+
+        synchronized (this) {
+            Query existing = this.entries.putIfAbsent(key, query);
+            this.trim();
+            return existing != null ? existing : query;
+        }
+    }
+
+    /**
+     * Execute a compiled query.
+     *
+     * @param exec  Query process of the graph to query.
+     * @param query Compiled query, as returned by
+     *              {@link #compile(QueryProcess, String)} for the same query
+     *              process.
+     * @return The result of the query.
+     * @throws EngineException If the query fails.
+     */
+    public Mappings execute(QueryProcess exec, Query query) throws EngineException {
+        return exec.query(query);
+    }
+
+    /**
+     * Remove every compiled query.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+    }
+
+    /////////////////////
+    // Private methods //
+    /////////////////////
+
+    /**
+     * Normalize a query text so that copies differing only by line endings or
+     * surrounding whitespace share an entry.
+     *
+     * @param queryString SPARQL query.
+     * @return The normalized text.
+     */
+    private static String normalize(String queryString) {
+        return queryString.replace("\r\n", "\n").strip();
+    }
+
+    /**
+     * Drop the least recently used entries above the maximum size.
+     */
+    private void trim() {
+        Iterator<Map.Entry<Key, Query>> iterator = this.entries.entrySet().iterator();
+        while (this.entries.size() > this.maxSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Key of a compiled query.
+     *
+     * @param exec Query process the query is compiled for, or null if it is
+     *             only inspected. Query processes are compared by identity.
+     * @param text Settings and normalized text of the query.
+     */
+    private record Key(QueryProcess exec, String text) {
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key key && this.exec == key.exec && this.text.equals(key.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(this.exec) + this.text.hashCode();
+        }
+    }
+}
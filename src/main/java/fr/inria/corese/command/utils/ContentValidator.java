@@ -1,7 +1,6 @@
 package fr.inria.corese.command.utils;
 
 import fr.inria.corese.core.Graph;
-import fr.inria.corese.core.query.QueryProcess;
 import fr.inria.corese.core.kgram.api.core.Node;
 import fr.inria.corese.core.kgram.core.Query;
 import fr.inria.corese.core.sparql.datatype.DatatypeMap;
@@ -23,11 +22,8 @@ public class ContentValidator {
             return false;
         }
 
-        Graph graph = Graph.create();
-        QueryProcess exec = QueryProcess.create(graph);
-
         try {
-            Query query = exec.compile(input);
+            Query query = CompiledQueryCache.getInstance().compile(input);
             return query != null;
         } catch (EngineException e) {
             return false;
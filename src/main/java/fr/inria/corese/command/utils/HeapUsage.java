@@ -0,0 +1,37 @@
+package fr.inria.corese.command.utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * Utility class to measure the peak heap usage of an operation.
+ */
+public class HeapUsage {
+
+    /**
+     * Reset the peak usage of the heap memory pools.
+     */
+    public static void resetPeak() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Get the peak usage of the heap memory pools since the last reset.
+     *
+     * @return The peak heap usage in MiB.
+     */
+    public static long getPeakMiB() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak / (1024 * 1024);
+    }
+}
@@ -0,0 +1,65 @@
+package fr.inria.corese.command.utils.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Utility methods to write output files that may be compressed.
+ * 
+ * These methods are shared by the commands and the exporters so that every
+ * output file gets the same extension, compressor and checks.
+ */
+public class CompressedOutput {
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private CompressedOutput() {
+    }
+
+    /**
+     * Resolve the path of an output file, with the compression extension if
+     * the output is compressed.
+     * 
+     * @param path        Path of the output file.
+     * @param compression Compression format, or null for uncompressed output.
+     * @return The path to write to.
+     */
+    public static Path resolvePath(Path path, EnumCompression compression) {
+        return compression != null ? compression.appendExtension(path) : path;
+    }
+
+    /**
+     * Open an output file, compressing its content if a compression format is
+     * given.
+     * 
+     * @param path        Path of the file, as returned by
+     *                    {@link #resolvePath}.
+     * @param compression Compression format, or null for uncompressed output.
+     * @return The output stream. The caller is responsible for closing it.
+     * @throws IOException If the file cannot be created.
+     */
+    public static OutputStream open(Path path, EnumCompression compression) throws IOException {
+        OutputStream outputStream = Files.newOutputStream(path);
+        if (compression == null) {
+            return outputStream;
+        }
+        return compression.wrapOutput(outputStream, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Check that the output can be written to standard output.
+     * 
+     * @param compression Compression format, or null for uncompressed output.
+     * @throws IllegalArgumentException If a compression format is given.
+     */
+    public static void checkStdoutAllowed(EnumCompression compression) {
+        if (compression != null) {
+            throw new IllegalArgumentException(
+                    "Compressed output cannot be written to standard output. Please specify an output file with the option -o.");
+        }
+    }
+
+}
@@ -0,0 +1,209 @@
+package fr.inria.corese.command.utils.compression;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+/**
+ * Enumeration of compression formats for input and output files.
+ */
+public enum EnumCompression {
+    GZIP("gzip", "gz", new byte[] { 0x1f, (byte) 0x8b }),
+    BZIP2("bzip2", "bz2", new byte[] { 'B', 'Z', 'h' }),
+    ZSTD("zstd", "zst", new byte[] { 0x28, (byte) 0xb5, 0x2f, (byte) 0xfd });
+
+    // Number of bytes needed to recognize every format
+    private static final int MAGIC_LENGTH = 4;
+
+    private final String name;
+    private final String extension;
+    private final byte[] magic;
+
+    /**
+     * Constructor.
+     *
+     * @param name      The name of the format.
+     * @param extension The file extension of the format.
+     * @param magic     The first bytes of a compressed stream.
+     */
+    private EnumCompression(String name, String extension, byte[] magic) {
+        this.name = name;
+        this.extension = extension;
+        this.magic = magic;
+    }
+
+    /**
+     * Get the file extension of the format.
+     *
+     * @return The file extension of the format.
+     */
+    public String getExtension() {
+        return this.extension;
+    }
+
+    /**
+     * Find the compression format of a file from its extension.
+     *
+     * @param fileName Name, path or URL of the file.
+     * @return The compression format, or null if the extension is not a
+     *         compression extension.
+     */
+    public static EnumCompression fromFileName(String fileName) {
+        String lower = fileName.toLowerCase();
+        for (EnumCompression compression : values()) {
+            if (lower.endsWith("." + compression.extension)) {
+                return compression;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remove the compression extension of a file name, so that the
+     * serialization format can be guessed from the remaining extension.
+     *
+     * @param fileName Name, path or URL of the file.
+     * @return The file name without its compression extension.
+     */
+    public static String stripExtension(String fileName) {
+        EnumCompression compression = fromFileName(fileName);
+        if (compression == null) {
+            return fileName;
+        }
+        return fileName.substring(0, fileName.length() - compression.extension.length() - 1);
+    }
+
+    /**
+     * Wrap an input stream in a decompressor if its first bytes are those of a
+     * compressed stream.
+     *
+     * The magic bytes are checked rather than the file name, so that a stream
+     * already decompressed by an HTTP client is read as is.
+     *
+     * @param inputStream Input stream to read.
+     * @return The decompressed stream, or a buffered stream on the same data if
+     *         it is not compressed.
+     * @throws IOException If the first bytes cannot be read.
+     */
+    public static InputStream decompress(InputStream inputStream) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(inputStream);
+        buffered.mark(MAGIC_LENGTH);
+        byte[] header = buffered.readNBytes(MAGIC_LENGTH);
+        buffered.reset();
+
+        EnumCompression compression = fromHeader(header);
+        return compression != null ? compression.wrapInput(buffered) : buffered;
+    }
+
+    /**
+     * Find the compression format of data from its first bytes.
+     *
+     * @param header First bytes of the data, at least 4 if available.
+     * @return The compression format, or null if the data is not compressed.
+     */
+    public static EnumCompression fromHeader(byte[] header) {
+        for (EnumCompression compression : values()) {
+            if (compression.matches(header)) {
+                return compression;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Wrap an input stream in a decompressor for this format.
+     *
+     * Concatenated streams, as written by {@link #wrapOutput}, are read as a
+     * single stream.
+     *
+     * @param inputStream Compressed input stream.
+     * @return The decompressed stream.
+     * @throws IOException If the stream header is invalid.
+     */
+    public InputStream wrapInput(InputStream inputStream) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new GZIPInputStream(inputStream, 1 << 16);
+            case BZIP2:
+                return new BZip2CompressorInputStream(inputStream, true);
+            case ZSTD:
+                return new ZstdInputStream(inputStream);
+            default:
+                throw new IllegalStateException("Unknown compression format: " + this);
+        }
+    }
+
+    /**
+     * Wrap an output stream in a compressor for this format.
+     *
+     * Gzip and bzip2 outputs are compressed in independent blocks on several
+     * threads and written as concatenated streams, zstd uses its own worker
+     * threads.
+     *
+     * @param outputStream Output stream to write the compressed data to.
+     * @param threads      Number of compression threads.
+     * @return The compressing stream. Closing it closes the underlying stream.
+     * @throws IOException If the stream header cannot be written.
+     */
+    public OutputStream wrapOutput(OutputStream outputStream, int threads) throws IOException {
+        switch (this) {
+            case GZIP:
+            case BZIP2:
+                return new ParallelCompressorOutputStream(outputStream, this, threads);
+            case ZSTD:
+                ZstdOutputStream zstd = new ZstdOutputStream(outputStream);
+                if (threads > 1) {
+                    zstd.setWorkers(threads);
+                }
+                return zstd;
+            default:
+                throw new IllegalStateException("Unknown compression format: " + this);
+        }
+    }
+
+    /**
+     * Append the extension of the format to a path if it does not already have
+     * it.
+     *
+     * @param path Path of the output file.
+     * @return The path ending with the compression extension.
+     */
+    public Path appendExtension(Path path) {
+        if (this == fromFileName(path.toString())) {
+            return path;
+        }
+        return Path.of(path + "." + this.extension);
+    }
+
+    /**
+     * Check if a header starts with the magic bytes of the format.
+     *
+     * @param header First bytes of a stream.
+     * @return True if the header matches the format.
+     */
+    private boolean matches(byte[] header) {
+        if (header.length < this.magic.length) {
+            return false;
+        }
+        for (int i = 0; i < this.magic.length; i++) {
+            if (header[i] != this.magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+
+}
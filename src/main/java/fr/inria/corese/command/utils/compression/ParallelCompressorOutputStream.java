@@ -0,0 +1,200 @@
+package fr.inria.corese.command.utils.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+
+/**
+ * Output stream that compresses fixed-size blocks on several threads.
+ *
+ * Each block is compressed as an independent gzip member or bzip2 stream, and
+ * the compressed blocks are written in order. Both formats allow concatenated
+ * streams, so the output is read back by standard tools as a single file.
+ * Compressing blocks independently costs a little ratio but the speed scales
+ * with the number of threads.
+ */
+public class ParallelCompressorOutputStream extends OutputStream {
+
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    private final OutputStream out;
+    private final EnumCompression compression;
+    private final ExecutorService executor;
+    private final int maxPending;
+
+    // Compressed blocks waiting to be written, in order
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    // Block being filled
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int blockLength = 0;
+
+    private boolean closed = false;
+
+    /////////////////
+    // Constructor //
+    /////////////////
+
+    /**
+     * Constructor.
+     *
+     * @param out         Output stream to write the compressed blocks to.
+     * @param compression Compression format, gzip or bzip2.
+     * @param threads     Number of compression threads.
+     */
+    public ParallelCompressorOutputStream(OutputStream out, EnumCompression compression, int threads) {
+        if (compression != EnumCompression.GZIP && compression != EnumCompression.BZIP2) {
+            throw new IllegalArgumentException("Block compression is not supported for " + compression);
+        }
+        this.out = out;
+        this.compression = compression;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        this.maxPending = 2 * Math.max(1, threads);
+    }
+
+    ////////////////////
+    // Public methods //
+    ////////////////////
+
+    @Override
+    public void write(int b) throws IOException {
+        this.checkOpen();
+        if (this.blockLength == BLOCK_SIZE) {
+            this.submitBlock();
+        }
+        this.block[this.blockLength++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        this.checkOpen();
+        while (len > 0) {
+            if (this.blockLength == BLOCK_SIZE) {
+                this.submitBlock();
+            }
+            int n = Math.min(len, BLOCK_SIZE - this.blockLength);
+            System.arraycopy(b, off, this.block, this.blockLength, n);
+            this.blockLength += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Write the blocks that are already compressed.
+     *
+     * The block being filled is kept, since flushing it would create small
+     * blocks and hurt the compression ratio.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!this.pending.isEmpty() && this.pending.peekFirst().isDone()) {
+            this.writeFirstPending();
+        }
+        this.out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+
+        try {
+            if (this.blockLength > 0 || this.pending.isEmpty()) {
+                this.submitBlock();
+            }
+            while (!this.pending.isEmpty()) {
+                this.writeFirstPending();
+            }
+        } finally {
+            this.executor.shutdownNow();
+            this.out.close();
+        }
+    }
+
+    /////////////////////
+    // Private methods //
+    /////////////////////
+
+    /**
+     * Check that the stream is not closed.
+     *
+     * @throws IOException If the stream is closed.
+     */
+    private void checkOpen() throws IOException {
+        if (this.closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    /**
+     * Hand the current block to the compression threads.
+     *
+     * @throws IOException If a previous block failed to compress or write.
+     */
+    private void submitBlock() throws IOException {
+        byte[] data = this.block;
+        int length = this.blockLength;
+        this.pending.addLast(this.executor.submit(() -> this.compress(data, length)));
+
+        this.block = new byte[BLOCK_SIZE];
+        this.blockLength = 0;
+
+        // Bound memory use by waiting for the oldest block
+        while (this.pending.size() >= this.maxPending) {
+            this.writeFirstPending();
+        }
+    }
+
+    /**
+     * Wait for the oldest block and write it.
+     *
+     * @throws IOException If the block failed to compress or write.
+     */
+    private void writeFirstPending() throws IOException {
+        Future<byte[]> future = this.pending.removeFirst();
+        try {
+            this.out.write(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing output", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compress output", e.getCause());
+        }
+    }
+
+    /**
+     * Compress a block as an independent stream.
+     *
+     * @param data   Block data.
+     * @param length Number of bytes used in the block.
+     * @return The compressed block.
+     * @throws IOException If the block cannot be compressed.
+     */
+    private byte[] compress(byte[] data, int length) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(length / 2 + 64);
+
+        if (this.compression == EnumCompression.GZIP) {
+            try (GZIPOutputStream gzip = new GZIPOutputStream(buffer, 1 << 16)) {
+                gzip.write(data, 0, length);
+            }
+        } else {
+            try (BZip2CompressorOutputStream bzip2 = new BZip2CompressorOutputStream(buffer)) {
+                bzip2.write(data, 0, length);
+            }
+        }
+
+        return buffer.toByteArray();
+    }
+}
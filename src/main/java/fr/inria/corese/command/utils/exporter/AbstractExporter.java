@@ -1,9 +1,21 @@
-
 package fr.inria.corese.command.utils.exporter;
 
+import java.io.BufferedWriter;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 
+import fr.inria.corese.command.utils.HeapUsage;
+import fr.inria.corese.command.utils.compression.CompressedOutput;
+import fr.inria.corese.command.utils.compression.EnumCompression;
+import fr.inria.corese.command.utils.stream.NTriplesTerms;
+import fr.inria.corese.command.utils.stream.RdfStatementWriter;
 import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.api.core.Edge;
 import fr.inria.corese.core.kgram.core.Mappings;
 import fr.inria.corese.core.print.ResultFormat;
 import fr.inria.corese.core.sparql.api.ResultFormatDef;
@@ -17,15 +29,19 @@ public abstract class AbstractExporter {
     public static final String DEFAULT_OUTPUT = "./output";
     private final Path DEFAULT_OUTPUT_PATH = Path.of(DEFAULT_OUTPUT);
 
+    // Size of the output buffer
+    private static final int BUFFER_SIZE = 1 << 20;
+
     // Command specification
-    private CommandSpec spec;
-    private boolean verbose;
+    protected CommandSpec spec;
+    protected boolean verbose;
 
     // Output
     protected Path output;
     protected boolean outputIsDefined;
     protected boolean needToAppendExtension;
     private boolean outputToFileIsDefault;
+    private EnumCompression compression = null;
 
     /////////////////
     // Constructor //
@@ -51,33 +67,96 @@ public abstract class AbstractExporter {
         this.needToAppendExtension = outputIsDefined && !hasExtension(this.output);
     }
 
+    ///////////////////////
+    // Getters & Setters //
+    ///////////////////////
+
+    /**
+     * Sets the compression of the output file.
+     * 
+     * The extension of the compression format is appended to the output file
+     * name if it is missing. Compressed output cannot be written to standard
+     * output.
+     * 
+     * @param compression Compression format, or null to write uncompressed data.
+     */
+    public void setCompression(EnumCompression compression) {
+        this.compression = compression;
+    }
+
     ///////////////////////
     // Protected methods //
     ///////////////////////
 
+    /**
+     * Resolve the path of an output file, with the compression extension if
+     * the output is compressed.
+     * 
+     * @param path Path of the output file.
+     * @return The path to write to.
+     */
+    protected Path resolveOutputPath(Path path) {
+        return CompressedOutput.resolvePath(path, this.compression);
+    }
+
+    /**
+     * Open an output file, compressing its content if a compression format is
+     * set.
+     * 
+     * @param path Path of the file, as returned by {@link #resolveOutputPath}.
+     * @return The output stream. The caller is responsible for closing it.
+     * @throws IOException If the file cannot be created.
+     */
+    protected OutputStream openOutputStream(Path path) throws IOException {
+        return CompressedOutput.open(path, this.compression);
+    }
+
+    /**
+     * Check that the output can be written to standard output.
+     * 
+     * @throws IllegalArgumentException If a compression format is set.
+     */
+    protected void checkStdoutAllowed() {
+        CompressedOutput.checkStdoutAllowed(this.compression);
+    }
+
     /**
      * Export the result to a file.
      * 
+     * N-Triples and N-Quads are written edge by edge, other formats are
+     * serialized by Corese first.
+     * 
      * @param path         Path of the file to export to.
      * @param coreseFormat Corese format.
      * @param formatName   Name of the format.
      * @param graph        Graph to export.
      */
     protected void exportToFile(Path path, ResultFormatDef.format coreseFormat, String formatName, Graph graph) {
-        ResultFormat resultFormater = ResultFormat.create(graph);
-        exportToFile(path, coreseFormat, formatName, resultFormater);
+        if (isLineBased(coreseFormat)) {
+            exportToFile(path, formatName, writer -> writeStatements(writer, coreseFormat, graph));
+        } else {
+            ResultFormat resultFormater = ResultFormat.create(graph);
+            exportToFile(path, coreseFormat, formatName, resultFormater);
+        }
     }
 
     /**
      * Export the result to standard output.
      * 
+     * N-Triples and N-Quads are written edge by edge, other formats are
+     * serialized by Corese first.
+     * 
      * @param coreseFormat Corese format.
      * @param formatName   Name of the format.
      * @param graph        Graph to export.
      */
     protected void exportToStdout(ResultFormatDef.format coreseFormat, String formatName, Graph graph) {
-        ResultFormat resultFormater = ResultFormat.create(graph);
-        exportToStdout(coreseFormat, formatName, resultFormater);
+        if (isLineBased(coreseFormat)) {
+            exportToStdout(formatName, writer -> writeStatements(writer, coreseFormat, graph));
+        } else {
+            ResultFormat resultFormater = ResultFormat.create(graph);
+            exportToStdout(coreseFormat, formatName, resultFormater);
+        }
     }
 
     /**
@@ -105,6 +184,72 @@ public abstract class AbstractExporter {
         exportToStdout(coreseFormat, formatName, resultFormater);
     }
 
+    /**
+     * Export the result to an output stream, such as an HTTP response body.
+     * 
+     * The stream is flushed but not closed.
+     * 
+     * @param outputStream Output stream to write to.
+     * @param coreseFormat Corese format.
+     * @param graph        Graph to export.
+     * @throws IOException If the result cannot be written.
+     */
+    protected void exportToStream(OutputStream outputStream, ResultFormatDef.format coreseFormat, Graph graph)
+            throws IOException {
+        if (isLineBased(coreseFormat)) {
+            exportToStream(outputStream, writer -> writeStatements(writer, coreseFormat, graph));
+        } else {
+            ResultFormat resultFormater = ResultFormat.create(graph);
+            resultFormater.setSelectFormat(coreseFormat);
+            resultFormater.setConstructFormat(coreseFormat);
+            exportToStream(outputStream, writer -> writer.write(resultFormater.toString()));
+        }
+    }
+
+    /**
+     * Export the result to an output stream, such as an HTTP response body.
+     * 
+     * The stream is flushed but not closed.
+     * 
+     * @param outputStream Output stream to write to.
+     * @param coreseFormat Corese format.
+     * @param mappings     Mappings to export.
+     * @throws IOException If the result cannot be written.
+     */
+    protected void exportToStream(OutputStream outputStream, ResultFormatDef.format coreseFormat, Mappings mappings)
+            throws IOException {
+        ResultFormat resultFormater = ResultFormat.create(mappings);
+        resultFormater.setSelectFormat(coreseFormat);
+        resultFormater.setConstructFormat(coreseFormat);
+        exportToStream(outputStream, writer -> writer.write(resultFormater.toString()));
+    }
+
+    /**
+     * Export an already serialized result, such as the response of a server, to
+     * a file.
+     * 
+     * @param path       Path of the file to export to.
+     * @param formatName Name of the format.
+     * @param content    Serialized result.
+     */
+    protected void exportToFile(Path path, String formatName, String content) {
+        exportToFile(path, formatName, writer -> writer.write(content));
+    }
+
+    /**
+     * Export an already serialized result, such as the response of a server, to
+     * standard output.
+     * 
+     * @param formatName Name of the format.
+     * @param content    Serialized result.
+     */
+    protected void exportToStdout(String formatName, String content) {
+        exportToStdout(formatName, writer -> {
+            writer.write(content);
+            writer.write(System.lineSeparator());
+        });
+    }
+
     /////////////////////
     // Private methods //
     /////////////////////
@@ -120,20 +265,11 @@ public abstract class AbstractExporter {
     private void exportToFile(Path path,
             ResultFormatDef.format coreseFormat, String formatName, ResultFormat resultFormater) {
 
+        // Configure the result formater
         resultFormater.setSelectFormat(coreseFormat);
         resultFormater.setConstructFormat(coreseFormat);
 
-        try {
-            resultFormater.write(path.toString());
-        } catch (Exception e) {
-            throw new IllegalArgumentException("Failed to open export file: " + path.toString(), e);
-        }
-
-        if (this.verbose) {
-            this.spec.commandLine().getErr()
-                    .println("Exported result in file: " + path.toString() + " with format: " + formatName);
-
-        }
+        exportToFile(path, formatName, writer -> writer.write(resultFormater.toString()));
     }
 
     /**
@@ -149,10 +285,61 @@ public abstract class AbstractExporter {
         resultFormater.setSelectFormat(coreseFormat);
         resultFormater.setConstructFormat(coreseFormat);
 
+        exportToStdout(formatName, writer -> {
+            writer.write(resultFormater.toString());
+            writer.write(System.lineSeparator());
+        });
+    }
+
+    /**
+     * Write content to a file through a large buffer.
+     * 
+     * @param path       Path of the file to export to.
+     * @param formatName Name of the format.
+     * @param content    Content to write.
+     */
+    private void exportToFile(Path path, String formatName, ContentWriter content) {
+        long start = System.nanoTime();
+        HeapUsage.resetPeak();
+        path = this.resolveOutputPath(path);
+
+        FirstByteWriter writer;
+        try {
+            writer = new FirstByteWriter(new BufferedWriter(
+                    new OutputStreamWriter(this.openOutputStream(path), StandardCharsets.UTF_8), BUFFER_SIZE));
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Failed to open export file: " + path.toString(), e);
+        }
+
+        try (writer) {
+            content.write(writer);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Failed to write export file: " + path.toString(), e);
+        }
+
+        if (this.verbose) {
+            this.spec.commandLine().getErr()
+                    .println("Exported result in file: " + path.toString() + " with format: " + formatName);
+            this.printStatistics(start, writer);
+        }
+    }
+
+    /**
+     * Write content to standard output through a large buffer.
+     * 
+     * @param formatName Name of the format.
+     * @param content    Content to write.
+     */
+    private void exportToStdout(String formatName, ContentWriter content) {
+        this.checkStdoutAllowed();
+        long start = System.nanoTime();
+        HeapUsage.resetPeak();
+
         // Write the result to standard output
+        FirstByteWriter writer = new FirstByteWriter(new BufferedWriter(spec.commandLine().getOut(), BUFFER_SIZE));
         try {
-            String str = resultFormater.toString();
-            spec.commandLine().getOut().println(str);
+            content.write(writer);
+            writer.flush();
         } catch (Exception e) {
             throw new IllegalArgumentException("Failed to write to standard output", e);
         }
@@ -160,7 +347,64 @@ public abstract class AbstractExporter {
         // Print information about the exported file
         if (verbose) {
             spec.commandLine().getErr().println("Exported result to standard output with format: " + formatName);
+            this.printStatistics(start, writer);
+        }
+    }
+
+    /**
+     * Write content to an output stream through a large buffer.
+     * 
+     * @param outputStream Output stream to write to.
+     * @param content      Content to write.
+     * @throws IOException If the content cannot be written.
+     */
+    private void exportToStream(OutputStream outputStream, ContentWriter content) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+        content.write(writer);
+        writer.flush();
+    }
+
+    /**
+     * Write the edges of a graph one by one.
+     * 
+     * @param writer       Writer to write to.
+     * @param coreseFormat Corese format, N-Triples or N-Quads.
+     * @param graph        Graph to export.
+     * @throws IOException If the edges cannot be written.
+     */
+    private void writeStatements(Writer writer, ResultFormatDef.format coreseFormat, Graph graph)
+            throws IOException {
+        graph.init();
+        RdfStatementWriter statementWriter = new RdfStatementWriter(writer, coreseFormat);
+        for (Edge edge : graph.getEdges()) {
+            statementWriter.write(NTriplesTerms.toStatement(edge));
         }
+        statementWriter.finish();
+    }
+
+    /**
+     * Check if a format can be written edge by edge.
+     * 
+     * @param coreseFormat Corese format.
+     * @return True if the format is N-Triples or N-Quads.
+     */
+    private boolean isLineBased(ResultFormatDef.format coreseFormat) {
+        return coreseFormat == ResultFormatDef.format.NTRIPLES_FORMAT
+                || coreseFormat == ResultFormatDef.format.NQUADS_FORMAT;
+    }
+
+    /**
+     * Print the time to first byte, the total time and the peak heap usage of
+     * an export.
+     * 
+     * @param start  Start time of the export, from {@link System#nanoTime()}.
+     * @param writer Writer used for the export.
+     */
+    private void printStatistics(long start, FirstByteWriter writer) {
+        long firstByte = writer.getFirstWriteTime() > 0 ? (writer.getFirstWriteTime() - start) / 1_000_000 : -1;
+        long total = (System.nanoTime() - start) / 1_000_000;
+        this.spec.commandLine().getErr().println("Export time to first byte: " + firstByte + " ms, total: " + total
+                + " ms (peak heap: " + HeapUsage.getPeakMiB() + " MiB)");
     }
 
     /**
@@ -174,4 +418,52 @@ public abstract class AbstractExporter {
         int dotIndex = fileName.lastIndexOf('.');
         return dotIndex > 0 && dotIndex < fileName.length() - 1;
     }
+
+    /**
+     * Content written to the output of an export.
+     */
+    @FunctionalInterface
+    private interface ContentWriter {
+        void write(Writer writer) throws IOException;
+    }
+
+    /**
+     * Writer that records when the first character is written.
+     */
+    private static class FirstByteWriter extends FilterWriter {
+
+        private long firstWriteTime = 0;
+
+        FirstByteWriter(Writer out) {
+            super(out);
+        }
+
+        long getFirstWriteTime() {
+            return this.firstWriteTime;
+        }
+
+        private void mark() {
+            if (this.firstWriteTime == 0) {
+                this.firstWriteTime = System.nanoTime();
+            }
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            this.mark();
+            super.write(c);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            this.mark();
+            super.write(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            this.mark();
+            super.write(str, off, len);
+        }
+    }
 }
@@ -48,4 +48,22 @@ public class RdfDataExporter extends AbstractExporter {
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * Export a text about a graph, such as a summary, to a file or standard
+     * output.
+     * 
+     * @param content   Text to export.
+     * @param extension Extension appended to the output file name if it has
+     *                  none.
+     */
+    public void exportText(String content, String extension) {
+
+        if (this.outputIsDefined) {
+            Path path = this.needToAppendExtension ? Path.of(this.output + "." + extension) : this.output;
+            exportToFile(path, "text", content);
+        } else {
+            exportToStdout("text", content);
+        }
+    }
+
+}
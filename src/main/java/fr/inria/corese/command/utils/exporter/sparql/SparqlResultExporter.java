@@ -1,6 +1,8 @@
 
 package fr.inria.corese.command.utils.exporter.sparql;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Path;
 
 import fr.inria.corese.command.utils.exporter.AbstractExporter;
@@ -47,6 +49,83 @@ public class SparqlResultExporter extends AbstractExporter {
      */
     public void export(Mappings map, Graph graph, EnumResultFormat format) {
 
+        boolean isUpdate = map.getAST().isUpdate();
+        format = resolveFormat(map, format);
+
+        // Define the output file name if not provided
+        this.resolveOutput(format);
+
+        // Export the query result
+        if (isUpdate) {
+            if (this.outputIsDefined) {
+                exportToFile(this.output, format.getCoreseFormat(), format.toString(), graph);
+            } else {
+                exportToStdout(format.getCoreseFormat(), format.toString(), graph);
+            }
+        } else {
+            if (this.outputIsDefined) {
+                exportToFile(this.output, format.getCoreseFormat(), format.toString(), map);
+            } else {
+                exportToStdout(format.getCoreseFormat(), format.toString(), map);
+            }
+        }
+    }
+
+    /**
+     * Export a SPARQL query result to an output stream, such as an HTTP
+     * response body.
+     * 
+     * @param map          SPARQL query result to export.
+     * @param graph        SPARQL graph to export.
+     * @param format       Serialization format, as returned by
+     *                     {@link #resolveFormat}.
+     * @param outputStream Output stream to write to. It is flushed but not
+     *                     closed.
+     * @throws IOException If the result cannot be written.
+     */
+    public void export(Mappings map, Graph graph, EnumResultFormat format, OutputStream outputStream)
+            throws IOException {
+        if (map.getAST().isUpdate()) {
+            exportToStream(outputStream, format.getCoreseFormat(), graph);
+        } else {
+            exportToStream(outputStream, format.getCoreseFormat(), map);
+        }
+    }
+
+    /**
+     * Export a result already serialized by a server to a file or standard
+     * output.
+     * 
+     * @param response Serialized result.
+     * @param format   Serialization format requested from the server, or null if
+     *                 the server chose it.
+     */
+    public void exportResponse(String response, EnumResultFormat format) {
+        String formatName = format != null ? format.toString() : "server default";
+
+        if (format != null) {
+            this.resolveOutput(format);
+        }
+
+        if (this.outputIsDefined) {
+            exportToFile(this.output, formatName, response);
+        } else {
+            exportToStdout(formatName, response);
+        }
+    }
+
+    /**
+     * Get the format to export a SPARQL query result with.
+     * 
+     * @param map    SPARQL query result to export.
+     * @param format Requested serialization format, or null for the default
+     *               format of the query type.
+     * @return The serialization format.
+     * @throws IllegalArgumentException If the format is not compatible with the
+     *                                  query type.
+     */
+    public static EnumResultFormat resolveFormat(Mappings map, EnumResultFormat format) {
+
         ASTQuery ast = map.getAST();
 
         boolean isUpdate = ast.isUpdate();
@@ -75,27 +154,24 @@ public class SparqlResultExporter extends AbstractExporter {
                     format, EnumResultFormat.getMappingFormats()));
         }
 
-        // Define the output file name if not provided
+        return format;
+    }
+
+    /////////////////////
+    // Private methods //
+    /////////////////////
+
+    /**
+     * Define the output file name from the format if it is not complete.
+     * 
+     * @param format Serialization format.
+     */
+    private void resolveOutput(EnumResultFormat format) {
         if (!this.outputIsDefined) {
             this.output = Path.of(DEFAULT_OUTPUT + format.getExtention());
         } else if (this.needToAppendExtension) {
             this.output = Path.of(this.output + format.getExtention());
         }
-
-        // Export the query result
-        if (isUpdate) {
-            if (this.outputIsDefined) {
-                exportToFile(this.output, format.getCoreseFormat(), format.toString(), graph);
-            } else {
-                exportToStdout(format.getCoreseFormat(), format.toString(), graph);
-            }
-        } else {
-            if (this.outputIsDefined) {
-                exportToFile(this.output, format.getCoreseFormat(), format.toString(), map);
-            } else {
-                exportToStdout(format.getCoreseFormat(), format.toString(), map);
-            }
-        }
     }
 
 }
@@ -0,0 +1,332 @@
+package fr.inria.corese.command.utils.http;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import fr.inria.corese.command.VersionProvider;
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.core.Response;
+import picocli.CommandLine.Model.CommandSpec;
+
+/**
+ * Abstract class for the HTTP clients of remote SPARQL endpoints and graph
+ * stores.
+ *
+ * This class holds the connection settings, the custom headers and the JAX-RS
+ * client shared by all the requests of an instance, so that connections are
+ * kept alive and reused. Close the instance to release them. Requests are sent
+ * through {@link #sendWithRetries}, which retries failed requests according to
+ * the retry policy and goes through the circuit breaker of the endpoint.
+ */
+public abstract class AbstractHttpClient implements AutoCloseable {
+
+    protected final SparqlHttpPrinter printer;
+
+    protected final String endpointUrl;
+    protected List<Pair<String, String>> headers = new ArrayList<>();
+
+    protected boolean verbose = false;
+
+    // Connections
+    private Client client;
+    private int connectTimeout = 30;
+    private int readTimeout = 0;
+
+    // Retries
+    protected RetryPolicy retryPolicy = RetryPolicy.none();
+    private int circuitBreakerThreshold = 0;
+    private int retries = 0;
+
+    // Time a circuit stays open once too many requests failed
+    private static final long CIRCUIT_OPEN_MILLIS = 30_000;
+
+    protected final String USERAGENT = "Corese-Command/" + VersionProvider.getCommandVersion();
+
+    /////////////////
+    // Constructor //
+    /////////////////
+
+    /**
+     * Constructor.
+     *
+     * @param spec        command specification, to print messages
+     * @param endpointUrl URL of the endpoint
+     * @param name        name of the endpoint in error messages, e.g.
+     *                    "Endpoint"
+     */
+    protected AbstractHttpClient(CommandSpec spec, String endpointUrl, String name) {
+        this.printer = new SparqlHttpPrinter(spec);
+        if (endpointUrl == null || endpointUrl.isEmpty()) {
+            throw new IllegalArgumentException(name + " URL must be specified");
+        }
+        this.endpointUrl = endpointUrl;
+    }
+
+    ///////////////////////
+    // Getters & Setters //
+    ///////////////////////
+
+    /**
+     * Sets the verbose mode.
+     *
+     * @param verbose true to enable verbose mode, false otherwise
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Sets the connection timeout. Must be set before the first request.
+     *
+     * @param seconds the timeout in seconds, 0 for no timeout
+     */
+    public void setConnectTimeout(int seconds) {
+        if (seconds < 0) {
+            throw new IllegalArgumentException("Connection timeout cannot be negative: " + seconds);
+        }
+        this.connectTimeout = seconds;
+    }
+
+    /**
+     * Sets the read timeout, the longest wait for data from the endpoint. Must
+     * be set before the first request.
+     *
+     * @param seconds the timeout in seconds, 0 for no timeout
+     */
+    public void setReadTimeout(int seconds) {
+        if (seconds < 0) {
+            throw new IllegalArgumentException("Read timeout cannot be negative: " + seconds);
+        }
+        this.readTimeout = seconds;
+    }
+
+    /**
+     * Sets the policy used to retry requests that failed because of a transport
+     * error or a temporary condition of the endpoint.
+     *
+     * @param retryPolicy the retry policy
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy != null ? retryPolicy : RetryPolicy.none();
+    }
+
+    /**
+     * Sets the number of consecutive failed requests to the endpoint after
+     * which requests fail at once for a while. Must be set before the first
+     * request of the process to the endpoint.
+     *
+     * @param threshold the number of failures, 0 to never stop sending requests
+     */
+    public void setCircuitBreakerThreshold(int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Circuit breaker threshold cannot be negative: " + threshold);
+        }
+        this.circuitBreakerThreshold = threshold;
+    }
+
+    /**
+     * Gets the number of requests sent again since the client was created.
+     *
+     * @return the number of retries
+     */
+    public int getRetries() {
+        return this.retries;
+    }
+
+    /**
+     * Gets the endpoint URL.
+     *
+     * @return the endpoint URL
+     */
+    public String getEndpointUrl() {
+        return this.endpointUrl;
+    }
+
+    /**
+     * Sets the personalized header.
+     *
+     * @param key   the key of the header
+     * @param value the value of the header
+     */
+    public void addHeader(String key, String value) {
+        // Check if the key and value are not null or empty
+        if (key == null || key.isBlank() || value == null || value.isBlank()) {
+            return;
+        }
+        this.headers.add(Pair.of(key.trim(), value.trim()));
+    }
+
+    ////////////////////
+    // Public methods //
+    ////////////////////
+
+    /**
+     * Closes the HTTP client and the connections it keeps alive.
+     */
+    @Override
+    public void close() {
+        if (this.client != null) {
+            this.client.close();
+            this.client = null;
+        }
+    }
+
+    ///////////////////////
+    // Protected methods //
+    ///////////////////////
+
+    /**
+     * A single attempt of a request.
+     */
+    @FunctionalInterface
+    protected interface Request {
+
+        /**
+         * Sends the request once.
+         *
+         * @return the response
+         * @throws IOException if the body of the request cannot be read
+         */
+        Response execute() throws IOException;
+    }
+
+    /**
+     * Sends a request, retrying it if it fails with a transport error or a
+     * retryable status.
+     *
+     * Every attempt goes through the circuit breaker of the endpoint and
+     * records its outcome, including unexpected exceptions, so that a trial
+     * request never leaves the circuit half open.
+     *
+     * @param request     the request to send
+     * @param maxAttempts maximum number of attempts, 1 for no retry
+     * @return the response of the last attempt, with its status not checked
+     *         and its body not read yet
+     * @throws Exception if the last attempt fails with an exception, if the
+     *                   circuit is open or if interrupted while waiting
+     */
+    protected Response sendWithRetries(Request request, int maxAttempts) throws Exception {
+        CircuitBreaker breaker = CircuitBreaker.forEndpoint(this.endpointUrl, this.circuitBreakerThreshold,
+                CIRCUIT_OPEN_MILLIS);
+
+        for (int attempt = 1;; attempt++) {
+            breaker.acquire(this.endpointUrl);
+            long start = System.nanoTime();
+
+            Response response;
+            try {
+                response = request.execute();
+            } catch (ProcessingException e) {
+                breaker.recordFailure();
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                this.waitBeforeRetry(attempt, maxAttempts, null, e.getMessage());
+                continue;
+            } catch (IOException | RuntimeException | Error e) {
+                breaker.recordFailure();
+                throw e;
+            }
+
+            int status = response.getStatus();
+            boolean retryable = this.retryPolicy.isRetryableStatus(status);
+            if (retryable || status >= 500) {
+                breaker.recordFailure();
+            } else {
+                breaker.recordSuccess();
+            }
+
+            if (this.verbose) {
+                this.printResponse(response, (System.nanoTime() - start) / 1_000_000);
+            }
+
+            // Retry temporary failures
+            if (retryable && attempt < maxAttempts) {
+                String retryAfter = response.getHeaderString("Retry-After");
+                response.close();
+                this.waitBeforeRetry(attempt, maxAttempts, retryAfter, "HTTP " + status);
+                continue;
+            }
+
+            if (this.verbose && attempt > 1 && status >= 200 && status < 300) {
+                this.printer.printMessage("Request succeeded after " + (attempt - 1) + " retries");
+            }
+
+            return response;
+        }
+    }
+
+    /**
+     * Prints a response in verbose mode.
+     *
+     * @param response      the response, with its body not read yet
+     * @param elapsedMillis time taken by the request, in milliseconds
+     */
+    protected void printResponse(Response response, long elapsedMillis) {
+        this.printer.printMessage("HTTP " + response.getStatus() + " in " + elapsedMillis + " ms");
+    }
+
+    /**
+     * Sets client-specific properties before the HTTP client is built.
+     *
+     * @param clientBuilder the builder of the HTTP client
+     */
+    protected void configureClient(ClientBuilder clientBuilder) {
+    }
+
+    /**
+     * Gets the HTTP client, creating it on the first request.
+     *
+     * The default JAX-RS connector relies on the JDK HTTP stack, which keeps
+     * connections alive and pools them per host.
+     *
+     * @return the HTTP client
+     */
+    protected Client getClient() {
+        if (this.client == null) {
+            ClientBuilder clientBuilder = ClientBuilder.newBuilder();
+            if (this.connectTimeout > 0) {
+                clientBuilder.connectTimeout(this.connectTimeout, TimeUnit.SECONDS);
+            }
+            if (this.readTimeout > 0) {
+                clientBuilder.readTimeout(this.readTimeout, TimeUnit.SECONDS);
+            }
+            this.configureClient(clientBuilder);
+            this.client = clientBuilder.build();
+        }
+        return this.client;
+    }
+
+    /////////////////////
+    // Private methods //
+    /////////////////////
+
+    /**
+     * Waits before sending a failed request again.
+     *
+     * @param attempt     number of the failed attempt, from 1
+     * @param maxAttempts maximum number of attempts
+     * @param retryAfter  value of the Retry-After header, or null
+     * @param reason      reason of the failure
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private void waitBeforeRetry(int attempt, int maxAttempts, String retryAfter, String reason)
+            throws InterruptedException {
+        long delay = this.retryPolicy.getDelayMillis(attempt, retryAfter);
+        this.retries++;
+
+        if (this.verbose) {
+            this.printer.printMessage("Attempt " + attempt + " of " + maxAttempts + " failed (" + reason
+                    + "), retrying in " + delay + " ms");
+        }
+
+        Thread.sleep(delay);
+    }
+
+}
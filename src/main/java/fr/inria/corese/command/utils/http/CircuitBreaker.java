@@ -0,0 +1,103 @@
+package fr.inria.corese.command.utils.http;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class stops sending requests to an endpoint that keeps failing.
+ *
+ * After a number of consecutive failed requests, the circuit opens and
+ * requests to the endpoint fail at once for a while. Once this delay is over,
+ * a single request is let through: the circuit closes if it succeeds and opens
+ * again if it fails.
+ *
+ * Breakers are shared by every client of the process that sends requests to
+ * the same endpoint URL.
+ */
+public class CircuitBreaker {
+
+    private static final Map<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private int failures = 0;
+    private long openUntil = 0;
+    private boolean trial = false;
+
+    /////////////////
+    // Constructor //
+    /////////////////
+
+    /**
+     * Constructor.
+     *
+     * @param failureThreshold number of consecutive failures that open the
+     *                         circuit, 0 to never open it
+     * @param openMillis       time the circuit stays open, in milliseconds
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        if (failureThreshold < 0) {
+            throw new IllegalArgumentException("Circuit breaker threshold cannot be negative: " + failureThreshold);
+        }
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Gets the breaker of an endpoint, creating it on first use.
+     *
+     * @param endpointUrl      URL of the endpoint
+     * @param failureThreshold number of consecutive failures that open the
+     *                         circuit, 0 to never open it
+     * @param openMillis       time the circuit stays open, in milliseconds
+     * @return the breaker of the endpoint
+     */
+    public static CircuitBreaker forEndpoint(String endpointUrl, int failureThreshold, long openMillis) {
+        return BREAKERS.computeIfAbsent(endpointUrl, url -> new CircuitBreaker(failureThreshold, openMillis));
+    }
+
+    ////////////////////
+    // Public methods //
+    ////////////////////
+
+    /**
+     * Checks that a request can be sent.
+     *
+     * @param endpointUrl URL of the endpoint, for the error message
+     * @throws IllegalStateException if the circuit is open
+     */
+    public synchronized void acquire(String endpointUrl) {
+        if (this.failureThreshold == 0 || this.failures < this.failureThreshold) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now < this.openUntil || this.trial) {
+            throw new IllegalStateException("Circuit open for endpoint " + endpointUrl + " after " + this.failures
+                    + " consecutive failures, not sending the request");
+        }
+        // Let a single request test the endpoint
+        this.trial = true;
+    }
+
+    /**
+     * Records a successful request, closing the circuit.
+     */
+    public synchronized void recordSuccess() {
+        this.failures = 0;
+        this.trial = false;
+    }
+
+    /**
+     * Records a failed request, opening the circuit if the threshold is
+     * reached.
+     */
+    public synchronized void recordFailure() {
+        this.failures++;
+        this.trial = false;
+        if (this.failureThreshold > 0 && this.failures >= this.failureThreshold) {
+            this.openUntil = System.currentTimeMillis() + this.openMillis;
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+package fr.inria.corese.command.utils.http;
+
+/**
+ * Enumeration of SPARQL Graph Store HTTP Protocol methods.
+ */
+public enum EnumGraphStoreMethod {
+    GET("get", true),
+    PUT("put", true),
+    POST("post", false),
+    DELETE("delete", true);
+
+    private final String name;
+    private final boolean idempotent;
+
+    /**
+     * Constructor.
+     *
+     * @param name       The name of the method.
+     * @param idempotent True if sending the request twice has the same effect
+     *                   as sending it once.
+     */
+    private EnumGraphStoreMethod(String name, boolean idempotent) {
+        this.name = name;
+        this.idempotent = idempotent;
+    }
+
+    /**
+     * Check if the request can be sent again after a failure.
+     *
+     * @return True if sending the request twice has the same effect as sending
+     *         it once.
+     */
+    public boolean isIdempotent() {
+        return this.idempotent;
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+}
@@ -0,0 +1,221 @@
+package fr.inria.corese.command.utils.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import fr.inria.corese.command.utils.compression.EnumCompression;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.client.Invocation.Builder;
+import jakarta.ws.rs.core.Response;
+import picocli.CommandLine.Model.CommandSpec;
+
+/**
+ * This class provides functionalities to read and write graphs with the SPARQL
+ * 1.1 Graph Store HTTP Protocol.
+ *
+ * Graphs are identified with the {@code graph} parameter, or the
+ * {@code default} parameter for the default graph. Uploads are streamed from a
+ * file with chunked transfer encoding and downloads are streamed to an output
+ * stream, so graphs are never held in memory.
+ *
+ * A single JAX-RS client is kept for all the requests of an instance, so that
+ * connections to the store are kept alive and reused. Close the instance to
+ * release them. Idempotent requests (GET, PUT and DELETE) are retried with the
+ * retry policy, POST requests are never retried.
+ */
+public class GraphStoreHttpClient extends AbstractHttpClient {
+
+    // Size of the chunks of streamed uploads
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    /////////////////
+    // Constructor //
+    /////////////////
+
+    /**
+     * Constructor.
+     *
+     * @param spec        command specification, to print messages
+     * @param endpointUrl URL of the graph store
+     */
+    public GraphStoreHttpClient(CommandSpec spec, String endpointUrl) {
+        super(spec, endpointUrl, "Graph store");
+    }
+
+    /////////////////////////
+    // Graph store methods //
+    /////////////////////////
+
+    /**
+     * Downloads a graph and streams it to a handler.
+     *
+     * @param graphUri URI of the graph, or null for the default graph
+     * @param accept   media type of the serialization to get
+     * @param handler  consumer of the serialized graph
+     * @throws Exception if the request fails or the handler fails
+     */
+    public void get(String graphUri, String accept, SparqlHttpClient.ResponseHandler handler) throws Exception {
+        Response response = this.send(EnumGraphStoreMethod.GET, graphUri, accept, null, null);
+        try (InputStream body = response.readEntity(InputStream.class)) {
+            handler.handle(body, SparqlHttpClient.charsetOf(response));
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Replaces a graph with the content of a file.
+     *
+     * @param graphUri    URI of the graph, or null for the default graph
+     * @param file        file to upload, decompressed on the fly if compressed
+     * @param contentType media type of the serialization of the file
+     * @throws Exception if the request fails
+     */
+    public void put(String graphUri, Path file, String contentType) throws Exception {
+        this.send(EnumGraphStoreMethod.PUT, graphUri, null, file, contentType).close();
+    }
+
+    /**
+     * Adds the content of a file to a graph.
+     *
+     * @param graphUri    URI of the graph, or null for the default graph
+     * @param file        file to upload, decompressed on the fly if compressed
+     * @param contentType media type of the serialization of the file
+     * @throws Exception if the request fails
+     */
+    public void post(String graphUri, Path file, String contentType) throws Exception {
+        this.send(EnumGraphStoreMethod.POST, graphUri, null, file, contentType).close();
+    }
+
+    /**
+     * Deletes a graph.
+     *
+     * @param graphUri URI of the graph, or null for the default graph
+     * @throws Exception if the request fails
+     */
+    public void delete(String graphUri) throws Exception {
+        this.send(EnumGraphStoreMethod.DELETE, graphUri, null, null, null).close();
+    }
+
+    ///////////////////////
+    // Protected methods //
+    ///////////////////////
+
+    /**
+     * Sends request bodies with chunked transfer encoding, so that uploads are
+     * streamed instead of being buffered to compute their length.
+     *
+     * @param clientBuilder the builder of the HTTP client
+     */
+    @Override
+    protected void configureClient(ClientBuilder clientBuilder) {
+        clientBuilder.property("jersey.config.client.request.entity.processing", "CHUNKED")
+                .property("jersey.config.client.chunkedEncodingSize", CHUNK_SIZE);
+    }
+
+    /////////////////////
+    // Private methods //
+    /////////////////////
+
+    /**
+     * Sends a request and checks the status of the response, retrying
+     * idempotent requests that failed.
+     *
+     * @param method      method of the request
+     * @param graphUri    URI of the graph, or null for the default graph
+     * @param accept      media type to accept, or null
+     * @param file        file to upload, or null
+     * @param contentType media type of the file, or null
+     * @return the successful response, with its body not read yet
+     * @throws Exception if the request fails
+     */
+    private Response send(EnumGraphStoreMethod method, String graphUri, String accept, Path file,
+            String contentType) throws Exception {
+
+        String url = this.buildUrl(graphUri);
+        int maxAttempts = method.isIdempotent() ? this.retryPolicy.getMaxAttempts() : 1;
+
+        Response response = this.sendWithRetries(() -> {
+            if (this.verbose) {
+                this.printer.printMessage(method.toString().toUpperCase() + " " + url);
+            }
+            return this.execute(method, url, accept, file, contentType);
+        }, maxAttempts);
+
+        int status = response.getStatus();
+        if (status < 200 || status >= 300) {
+            String body = response.readEntity(String.class);
+            String reason = response.getStatusInfo().getReasonPhrase();
+            response.close();
+            throw new Exception("HTTP " + status + " " + reason + "\n" +
+                    "Response body:\n" + body);
+        }
+
+        return response;
+    }
+
+    /**
+     * Executes a request once.
+     *
+     * @param method      method of the request
+     * @param url         URL of the graph
+     * @param accept      media type to accept, or null
+     * @param file        file to upload, or null
+     * @param contentType media type of the file, or null
+     * @return the response
+     * @throws IOException if the file cannot be opened
+     */
+    private Response execute(EnumGraphStoreMethod method, String url, String accept, Path file,
+            String contentType) throws IOException {
+
+        Builder builder = this.getClient().target(url).request();
+        if (accept != null) {
+            builder = builder.header("Accept", accept);
+        }
+        if (!this.headers.stream().anyMatch(header -> header.getLeft().equalsIgnoreCase("User-Agent"))) {
+            builder = builder.header("User-Agent", this.USERAGENT);
+        }
+        for (Pair<String, String> header : this.headers) {
+            builder = builder.header(header.getKey(), header.getValue());
+        }
+
+        switch (method) {
+            case GET:
+                return builder.get();
+            case DELETE:
+                return builder.delete();
+            case PUT:
+            case POST:
+                // The file is opened again for each attempt, and closed by the
+                // client once sent
+                InputStream body = EnumCompression.decompress(Files.newInputStream(file));
+                Entity<InputStream> entity = Entity.entity(body, contentType);
+                return method == EnumGraphStoreMethod.PUT ? builder.put(entity) : builder.post(entity);
+            default:
+                throw new IllegalStateException("Unknown graph store method: " + method);
+        }
+    }
+
+    /**
+     * Builds the URL of a graph.
+     *
+     * @param graphUri URI of the graph, or null for the default graph
+     * @return the URL with the {@code graph} or {@code default} parameter
+     */
+    private String buildUrl(String graphUri) {
+        String separator = this.endpointUrl.contains("?") ? "&" : "?";
+        if (graphUri == null) {
+            return this.endpointUrl + separator + "default";
+        }
+        return this.endpointUrl + separator + "graph="
+                + URLEncoder.encode(graphUri, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+}
@@ -0,0 +1,523 @@
+package fr.inria.corese.command.utils.http;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import fr.inria.corese.command.VersionProvider;
+
+/**
+ * Process-wide on-disk cache of the files downloaded from input URLs.
+ *
+ * Each downloaded body is stored with its {@code ETag}, {@code Last-Modified}
+ * and {@code Content-Type} headers. When the same URL is opened again, the
+ * cached copy is revalidated with {@code If-None-Match} and
+ * {@code If-Modified-Since}, and only downloaded again if it changed. If the
+ * server cannot be reached, the cached copy is used. In offline mode, URLs are
+ * served from the cache only.
+ *
+ * The cache is shared by concurrent processes: files are written to a
+ * temporary file and moved into place. Once the cache is larger than its
+ * maximum size, the least recently used files are removed.
+ */
+public class HttpCache {
+
+    public static final long DEFAULT_MAX_SIZE = 512L * 1024 * 1024;
+
+    private static final HttpCache INSTANCE = new HttpCache(defaultDirectory(), DEFAULT_MAX_SIZE);
+
+    private static final String BODY_EXTENSION = ".body";
+    private static final String META_EXTENSION = ".properties";
+
+    private final String USERAGENT = "Corese-Command/" + VersionProvider.getCommandVersion();
+
+    private Path directory;
+    private long maxSize;
+    private boolean enabled = false;
+    private boolean offline = false;
+
+    // Verbose messages, or null
+    private PrintWriter log;
+
+    /////////////////
+    // Constructor //
+    /////////////////
+
+    /**
+     * Constructor.
+     *
+     * @param directory Directory of the cache, created on first use.
+     * @param maxSize   Maximum size of the cached bodies, in bytes.
+     */
+    public HttpCache(Path directory, long maxSize) {
+        this.setDirectory(directory);
+        this.setMaxSize(maxSize);
+    }
+
+    /**
+     * Get the cache shared by the whole process.
+     *
+     * @return The shared cache.
+     */
+    public static HttpCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the default directory of the cache: {@code corese/http} in
+     * {@code $XDG_CACHE_HOME}, or in {@code ~/.cache} if it is not set.
+     *
+     * @return The default directory.
+     */
+    public static Path defaultDirectory() {
+        String cacheHome = System.getenv("XDG_CACHE_HOME");
+        Path base = cacheHome != null && !cacheHome.isBlank()
+                ? Path.of(cacheHome)
+                : Path.of(System.getProperty("user.home"), ".cache");
+        return base.resolve("corese").resolve("http");
+    }
+
+    ///////////////////////
+    // Getters & Setters //
+    ///////////////////////
+
+    /**
+     * Sets the directory of the cache.
+     *
+     * @param directory Directory, created on first use.
+     */
+    public synchronized void setDirectory(Path directory) {
+        if (directory == null) {
+            throw new IllegalArgumentException("The HTTP cache directory must be specified");
+        }
+        this.directory = directory;
+    }
+
+    /**
+     * Sets the maximum size of the cached bodies.
+     *
+     * @param maxSize Maximum size in bytes, at least 0.
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("The HTTP cache size cannot be negative, got: " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Enables or disables the cache. When disabled, URLs are always
+     * downloaded and nothing is stored.
+     *
+     * @param enabled True to use the cache.
+     */
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Check if the cache is used.
+     *
+     * @return True if the cache is used.
+     */
+    public synchronized boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Sets the offline mode, in which URLs are served from the cache only and
+     * never downloaded.
+     *
+     * @param offline True to never access the network.
+     */
+    public synchronized void setOffline(boolean offline) {
+        this.offline = offline;
+    }
+
+    /**
+     * Sets where to print what the cache does with each URL.
+     *
+     * @param log Writer of the messages, or null for no messages.
+     */
+    public synchronized void setLog(PrintWriter log) {
+        this.log = log;
+    }
+
+    ////////////////////
+    // Public methods //
+    ////////////////////
+
+    /**
+     * Open a URL through the cache.
+     *
+     * URLs other than HTTP and HTTPS are opened directly.
+     *
+     * @param url    URL to open.
+     * @param accept Value of the {@code Accept} header, or null. URLs opened
+     *               with different values are cached separately.
+     * @return The body of the URL and its media type. The caller is
+     *         responsible for closing it.
+     * @throws IOException If the URL cannot be downloaded and is not cached.
+     */
+    public Resource open(URL url, String accept) throws IOException {
+        boolean enabled;
+        boolean offline;
+        Path directory;
+        synchronized (this) {
+            enabled = this.enabled;
+            offline = this.offline;
+            directory = this.directory;
+        }
+
+        boolean http = "http".equalsIgnoreCase(url.getProtocol()) || "https".equalsIgnoreCase(url.getProtocol());
+        if (!http || !enabled) {
+            URLConnection connection = url.openConnection();
+            if (accept != null) {
+                connection.setRequestProperty("Accept", accept);
+            }
+            return new Resource(connection.getInputStream(), connection.getContentType());
+        }
+
+        String key = key(url, accept);
+        Path body = directory.resolve(key + BODY_EXTENSION);
+        Path meta = directory.resolve(key + META_EXTENSION);
+        Properties cached = readMeta(meta, body);
+
+        if (offline) {
+            if (cached == null) {
+                throw new IOException("Not in the HTTP cache (offline mode): " + url);
+            }
+            this.print("HTTP cache: offline, using cached copy of " + url);
+            return this.openCached(body, meta, cached);
+        }
+
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestProperty("User-Agent", this.USERAGENT);
+            if (accept != null) {
+                connection.setRequestProperty("Accept", accept);
+            }
+            if (cached != null) {
+                if (cached.getProperty("etag") != null) {
+                    connection.setRequestProperty("If-None-Match", cached.getProperty("etag"));
+                }
+                if (cached.getProperty("lastModified") != null) {
+                    connection.setRequestProperty("If-Modified-Since", cached.getProperty("lastModified"));
+                }
+            }
+
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                connection.disconnect();
+                this.print("HTTP cache: not modified, using cached copy of " + url);
+                return this.openCached(body, meta, cached);
+            }
+            if (status < 200 || status >= 300) {
+                connection.disconnect();
+                throw new IOException("HTTP " + status + " " + connection.getResponseMessage());
+            }
+
+            Properties stored = this.store(url, accept, connection, directory, body, meta);
+            this.print("HTTP cache: downloaded " + url + " (" + stored.getProperty("size") + " bytes)");
+            this.evict(directory, key);
+            return this.openCached(body, meta, stored);
+        } catch (IOException e) {
+            if (cached == null) {
+                throw e;
+            }
+            this.print("Warning: failed to revalidate " + url + " (" + e.getMessage() + "), using cached copy");
+            return this.openCached(body, meta, cached);
+        }
+    }
+
+    /**
+     * Open a URL through the cache, as a plain input stream.
+     *
+     * @param url    URL to open.
+     * @param accept Value of the {@code Accept} header, or null.
+     * @return The body of the URL. Closing it closes the resource it was read
+     *         from. The caller is responsible for closing it.
+     * @throws IOException If the URL cannot be downloaded and is not cached.
+     * @see #open(URL, String)
+     */
+    public InputStream openStream(URL url, String accept) throws IOException {
+        Resource resource = this.open(url, accept);
+        return new FilterInputStream(resource.getBody()) {
+            @Override
+            public void close() throws IOException {
+                resource.close();
+            }
+        };
+    }
+
+    /**
+     * Body and media type of a URL.
+     */
+    public static class Resource implements Closeable {
+
+        private final InputStream body;
+        private final String contentType;
+
+        private Resource(InputStream body, String contentType) {
+            this.body = body;
+            this.contentType = contentType;
+        }
+
+        /**
+         * Get the body.
+         *
+         * @return The body, as sent by the server.
+         */
+        public InputStream getBody() {
+            return this.body;
+        }
+
+        /**
+         * Get the media type of the body.
+         *
+         * @return The value of the {@code Content-Type} header, or null.
+         */
+        public String getContentType() {
+            return this.contentType;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.body.close();
+        }
+    }
+
+    /////////////////////
+    // Private methods //
+    /////////////////////
+
+    /**
+     * Get the name of the files of a URL in the cache.
+     *
+     * @param url    URL.
+     * @param accept Value of the {@code Accept} header, or null.
+     * @return The SHA-256 of the URL and the header, in hexadecimal.
+     */
+    private static String key(URL url, String accept) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((accept == null ? "" : accept).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            digest.update(url.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Read the metadata of a cached URL.
+     *
+     * @param meta Metadata file.
+     * @param body Body file.
+     * @return The metadata, or null if the URL is not cached.
+     */
+    private static Properties readMeta(Path meta, Path body) {
+        if (!Files.isRegularFile(meta) || !Files.isRegularFile(body)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream inputStream = Files.newInputStream(meta)) {
+            properties.load(inputStream);
+            return properties;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Open a cached body and mark it as recently used.
+     *
+     * @param body   Body file.
+     * @param meta   Metadata file.
+     * @param cached Metadata of the URL.
+     * @return The cached body.
+     * @throws IOException If the body cannot be opened.
+     */
+    private Resource openCached(Path body, Path meta, Properties cached) throws IOException {
+        InputStream inputStream = Files.newInputStream(body);
+        try {
+            Files.setLastModifiedTime(meta, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Only the eviction order is affected
+        }
+        return new Resource(inputStream, cached.getProperty("contentType"));
+    }
+
+    /**
+     * Download a body into the cache.
+     *
+     * @param url        URL of the body.
+     * @param accept     Value of the {@code Accept} header, or null.
+     * @param connection Connection with a successful response.
+     * @param directory  Directory of the cache.
+     * @param body       Body file.
+     * @param meta       Metadata file.
+     * @return The metadata of the stored body.
+     * @throws IOException If the body cannot be downloaded or stored.
+     */
+    private Properties store(URL url, String accept, HttpURLConnection connection, Path directory, Path body,
+            Path meta) throws IOException {
+
+        Files.createDirectories(directory);
+
+        long size;
+        Path bodyTemp = Files.createTempFile(directory, body.getFileName().toString(), ".tmp");
+        try {
+            try (InputStream inputStream = connection.getInputStream();
+                    OutputStream outputStream = Files.newOutputStream(bodyTemp)) {
+                size = inputStream.transferTo(outputStream);
+            }
+            Files.move(bodyTemp, body, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(bodyTemp);
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty("url", url.toString());
+        properties.setProperty("size", Long.toString(size));
+        setIfPresent(properties, "accept", accept);
+        setIfPresent(properties, "etag", connection.getHeaderField("ETag"));
+        setIfPresent(properties, "lastModified", connection.getHeaderField("Last-Modified"));
+        setIfPresent(properties, "contentType", connection.getContentType());
+
+        Path metaTemp = Files.createTempFile(directory, meta.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream outputStream = Files.newOutputStream(metaTemp)) {
+                properties.store(outputStream, null);
+            }
+            Files.move(metaTemp, meta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(metaTemp);
+        }
+
+        return properties;
+    }
+
+    /**
+     * Set a property if its value is not null.
+     *
+     * @param properties Properties to update.
+     * @param key        Key of the property.
+     * @param value      Value of the property, or null.
+     */
+    private static void setIfPresent(Properties properties, String key, String value) {
+        if (value != null) {
+            properties.setProperty(key, value);
+        }
+    }
+
+    /**
+     * Remove the least recently used bodies until the cache fits its maximum
+     * size.
+     *
+     * @param directory Directory of the cache.
+     * @param keep      Key of the body just stored, never removed.
+     */
+    private synchronized void evict(Path directory, String keep) {
+        List<CachedFile> cachedFiles = new ArrayList<>();
+        long total = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path meta : (Iterable<Path>) files::iterator) {
+                if (!meta.getFileName().toString().endsWith(META_EXTENSION)) {
+                    continue;
+                }
+                try {
+                    CachedFile cachedFile = new CachedFile(meta, Files.size(bodyOf(meta)),
+                            Files.getLastModifiedTime(meta).toMillis());
+                    cachedFiles.add(cachedFile);
+                    total += cachedFile.size;
+                } catch (IOException e) {
+                    // Removed by another process
+                }
+            }
+        } catch (IOException e) {
+            return;
+        }
+
+        cachedFiles.sort(Comparator.comparingLong(cachedFile -> cachedFile.lastUsed));
+        for (CachedFile cachedFile : cachedFiles) {
+            if (total <= this.maxSize) {
+                break;
+            }
+            if (cachedFile.meta.getFileName().toString().equals(keep + META_EXTENSION)) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(cachedFile.meta);
+                Files.deleteIfExists(bodyOf(cachedFile.meta));
+                total -= cachedFile.size;
+                this.print("HTTP cache: removed " + cachedFile.meta.getFileName() + " (" + cachedFile.size
+                        + " bytes)");
+            } catch (IOException e) {
+                // Kept, retried at the next eviction
+            }
+        }
+    }
+
+    /**
+     * Get the body file of a metadata file.
+     *
+     * @param meta Metadata file.
+     * @return The body file.
+     */
+    private static Path bodyOf(Path meta) {
+        String name = meta.getFileName().toString();
+        return meta.resolveSibling(name.substring(0, name.length() - META_EXTENSION.length()) + BODY_EXTENSION);
+    }
+
+    /**
+     * Body of the cache, with its size and last use.
+     */
+    private static class CachedFile {
+
+        private final Path meta;
+        private final long size;
+        private final long lastUsed;
+
+        private CachedFile(Path meta, long size, long lastUsed) {
+            this.meta = meta;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    /**
+     * Print a message if a log is set.
+     *
+     * @param message Message to print.
+     */
+    private void print(String message) {
+        PrintWriter log;
+        synchronized (this) {
+            log = this.log;
+        }
+        if (log != null) {
+            log.println(message);
+        }
+    }
+}
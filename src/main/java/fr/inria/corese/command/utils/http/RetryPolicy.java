@@ -0,0 +1,143 @@
+package fr.inria.corese.command.utils.http;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class describes when and how often a failed request to a SPARQL
+ * endpoint is sent again.
+ *
+ * Requests failing with a transport error or with a status that signals a
+ * temporary condition (429, 502, 503, 504) are retried up to a maximum number
+ * of attempts. The wait between attempts grows exponentially from a base
+ * delay up to a cap, with optional full jitter. It is never shorter than the
+ * delay asked by the {@code Retry-After} header of the response, unless that
+ * delay is longer than the cap: the wait never exceeds the cap.
+ */
+public class RetryPolicy {
+
+    // Statuses of responses worth retrying
+    private static final Set<Integer> RETRYABLE_STATUSES = Set.of(429, 502, 503, 504);
+
+    private final int maxAttempts;
+    private final long backoffBaseMillis;
+    private final long backoffCapMillis;
+    private final boolean jitter;
+
+    /////////////////
+    // Constructor //
+    /////////////////
+
+    /**
+     * Constructor.
+     *
+     * @param maxAttempts       maximum number of attempts, 1 for no retry
+     * @param backoffBaseMillis delay before the first retry, in milliseconds
+     * @param backoffCapMillis  longest delay between two attempts, in
+     *                          milliseconds
+     * @param jitter            true to pick a random delay between 0 and the
+     *                          exponential delay, false otherwise
+     */
+    public RetryPolicy(int maxAttempts, long backoffBaseMillis, long backoffCapMillis, boolean jitter) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("The number of attempts must be at least 1, got: " + maxAttempts);
+        }
+        if (backoffBaseMillis < 0) {
+            throw new IllegalArgumentException("Backoff base cannot be negative: " + backoffBaseMillis);
+        }
+        if (backoffCapMillis < backoffBaseMillis) {
+            throw new IllegalArgumentException("Backoff cap (" + backoffCapMillis
+                    + " ms) cannot be lower than backoff base (" + backoffBaseMillis + " ms)");
+        }
+        this.maxAttempts = maxAttempts;
+        this.backoffBaseMillis = backoffBaseMillis;
+        this.backoffCapMillis = backoffCapMillis;
+        this.jitter = jitter;
+    }
+
+    /**
+     * Gets a policy that never retries.
+     *
+     * @return the policy
+     */
+    public static RetryPolicy none() {
+        return new RetryPolicy(1, 0, 0, false);
+    }
+
+    ///////////////////////
+    // Getters & Setters //
+    ///////////////////////
+
+    /**
+     * Gets the maximum number of attempts.
+     *
+     * @return the maximum number of attempts
+     */
+    public int getMaxAttempts() {
+        return this.maxAttempts;
+    }
+
+    ////////////////////
+    // Public methods //
+    ////////////////////
+
+    /**
+     * Checks if a response status signals a temporary condition.
+     *
+     * @param status the HTTP status code
+     * @return true if the request can be retried, false otherwise
+     */
+    public boolean isRetryableStatus(int status) {
+        return RETRYABLE_STATUSES.contains(status);
+    }
+
+    /**
+     * Gets the delay before the next attempt.
+     *
+     * @param attempt    number of the failed attempt, from 1
+     * @param retryAfter value of the Retry-After header, or null
+     * @return the delay in milliseconds, at most the backoff cap
+     */
+    public long getDelayMillis(int attempt, String retryAfter) {
+        long exponential = this.backoffBaseMillis << Math.min(attempt - 1, 30);
+        long delay = Math.min(this.backoffCapMillis, exponential < 0 ? Long.MAX_VALUE : exponential);
+        if (this.jitter && delay > 0) {
+            delay = ThreadLocalRandom.current().nextLong(delay + 1);
+        }
+        return Math.min(this.backoffCapMillis, Math.max(delay, parseRetryAfter(retryAfter)));
+    }
+
+    /////////////////////
+    // Private methods //
+    /////////////////////
+
+    /**
+     * Parses a Retry-After header, given in seconds or as an HTTP date.
+     *
+     * @param retryAfter the header value, or null
+     * @return the delay in milliseconds, 0 if the header is missing or invalid
+     */
+    private static long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return 0;
+        }
+        String value = retryAfter.trim();
+        try {
+            long seconds = Long.parseLong(value);
+            return seconds <= 0 ? 0 : seconds > Long.MAX_VALUE / 1000 ? Long.MAX_VALUE : seconds * 1000;
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, try a date
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(date.getZone()), date).toMillis());
+        } catch (DateTimeParseException | ArithmeticException e) {
+            return 0;
+        }
+    }
+
+}
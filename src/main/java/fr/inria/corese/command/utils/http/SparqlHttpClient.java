@@ -1,24 +1,28 @@
 package fr.inria.corese.command.utils.http;
 
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import org.apache.commons.lang3.tuple.Pair;
 
-import fr.inria.corese.command.VersionProvider;
-import fr.inria.corese.command.utils.ContentValidator;
-import fr.inria.corese.core.Graph;
+import fr.inria.corese.command.utils.CompiledQueryCache;
 import fr.inria.corese.core.kgram.core.Query;
-import fr.inria.corese.core.query.QueryProcess;
 import fr.inria.corese.core.sparql.triple.parser.Constant;
 import fr.inria.corese.core.sparql.triple.update.ASTUpdate;
 import fr.inria.corese.core.sparql.triple.update.Composite;
 import fr.inria.corese.core.sparql.triple.update.Update;
-import jakarta.ws.rs.client.Client;
-import jakarta.ws.rs.client.ClientBuilder;
 import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.client.Invocation.Builder;
 import jakarta.ws.rs.client.WebTarget;
@@ -29,19 +33,23 @@ import picocli.CommandLine.Model.CommandSpec;
 /**
  * This class provides functionalities to send HTTP requests to a SPARQL
  * endpoint.
+ * 
+ * A single JAX-RS client is kept for all the requests of an instance, so that
+ * connections to the endpoint are kept alive and reused. Close the instance
+ * to release them.
  */
-public class SparqlHttpClient {
+public class SparqlHttpClient extends AbstractHttpClient {
 
-    private final SparqlHttpPrinter printer;
-
-    private final String endpointUrl;
     private EnumRequestMethod requestMethod = EnumRequestMethod.GET;
     private Boolean requestMethodIsDefinedByUser = false;
-    private List<Pair<String, String>> headers = new ArrayList<>();
 
-    private boolean verbose = false;
+    private boolean responseCompression = true;
+
+    // Retries
+    private boolean retryUpdates = false;
 
-    private final String USERAGENT = "Corese-Command/" + VersionProvider.getCommandVersion();
+    // Content encodings this client can decode
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
 
     /////////////////
     // Constructor //
@@ -53,11 +61,7 @@ public class SparqlHttpClient {
      * @param endpointUrl URL of the SPARQL endpoint to send the request to.
      */
     public SparqlHttpClient(CommandSpec spec, String endpointUrl) {
-        this.printer = new SparqlHttpPrinter(spec);
-        if (endpointUrl == null || endpointUrl.isEmpty()) {
-            throw new IllegalArgumentException("Endpoint URL must be specified");
-        }
-        this.endpointUrl = endpointUrl;
+        super(spec, endpointUrl, "Endpoint");
     }
 
     ///////////////////////
@@ -77,35 +81,24 @@ public class SparqlHttpClient {
     }
 
     /**
-     * Sets the verbose mode.
-     * 
-     * @param verbose true to enable verbose mode, false otherwise
-     */
-    public void setVerbose(boolean verbose) {
-        this.verbose = verbose;
-    }
-
-    /**
-     * Gets the endpoint URL.
+     * Sets whether the endpoint is asked to compress its responses with gzip
+     * or deflate. Compressed responses are decoded transparently.
      * 
-     * @return the endpoint URL
+     * @param responseCompression true to accept compressed responses, false
+     *                            otherwise
      */
-    public String getEndpointUrl() {
-        return this.endpointUrl;
+    public void setResponseCompression(boolean responseCompression) {
+        this.responseCompression = responseCompression;
     }
 
     /**
-     * Sets the personalized header.
+     * Sets whether update queries are retried. Updates are not idempotent, so
+     * they are only sent once by default.
      * 
-     * @param key   the key of the header
-     * @param value the value of the header
+     * @param retryUpdates true to retry updates, false otherwise
      */
-    public void addHeader(String key, String value) {
-        // Check if the key and value are not null or empty
-        if (key == null || key.isBlank() || value == null || value.isBlank()) {
-            return;
-        }
-        this.headers.add(Pair.of(key.trim(), value.trim()));
+    public void setRetryUpdates(boolean retryUpdates) {
+        this.retryUpdates = retryUpdates;
     }
 
     /////////////////////////
@@ -137,11 +130,136 @@ public class SparqlHttpClient {
             boolean ignoreQueryValidation)
             throws Exception {
 
+        Response response = this.send(query, defaultGraphUris, namedGraphUris, ignoreQueryValidation, false);
+
+        // Return the response
+        try (InputStream body = this.openBody(response)) {
+            return new String(body.readAllBytes(), charsetOf(response));
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Sends a SPARQL query to the SPARQL endpoint and streams the response
+     * body to a handler, without holding it in memory.
+     * 
+     * @param query                 SPARQL query to send
+     * @param defaultGraphUris      default graph URIs to use
+     * @param namedGraphUris        named graph URIs to use
+     * @param ignoreQueryValidation true to ignore query validation, false otherwise
+     * @param handler               consumer of the response body
+     * @return the number of bytes of the response body
+     * @throws Exception if an error occurs while sending the request or
+     *                   handling the response
+     */
+    public long sendRequest(String query, List<String> defaultGraphUris, List<String> namedGraphUris,
+            boolean ignoreQueryValidation, ResponseHandler handler)
+            throws Exception {
+
+        Response response = this.send(query, defaultGraphUris, namedGraphUris, ignoreQueryValidation, false);
+
+        try (CountingInputStream body = new CountingInputStream(this.openBody(response))) {
+            handler.handle(body, charsetOf(response));
+            return body.getCount();
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Sends a SPARQL update to the SPARQL endpoint, with the {@code update}
+     * parameter or the {@code application/sparql-update} content type of the
+     * SPARQL protocol.
+     * 
+     * The update is not validated, so that large generated updates are not
+     * parsed before being sent. It is retried only if retries of updates are
+     * allowed.
+     * 
+     * @param update SPARQL update to send
+     * @return the number of bytes of the response body
+     * @throws Exception if an error occurs while sending the request
+     */
+    public long sendUpdate(String update) throws Exception {
+        if (this.requestMethod == EnumRequestMethod.GET) {
+            if (this.requestMethodIsDefinedByUser) {
+                throw new IllegalArgumentException(
+                        "SPARQL updates cannot be sent with the GET method. Please use a POST method instead.");
+            }
+            this.requestMethod = EnumRequestMethod.POST_URLENCODED;
+        }
+
+        Response response = this.send(update, null, null, true, true);
+
+        try (InputStream body = this.openBody(response)) {
+            return body.transferTo(OutputStream.nullOutputStream());
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Consumer of a response body.
+     */
+    @FunctionalInterface
+    public interface ResponseHandler {
+
+        /**
+         * Handles the response body.
+         * 
+         * @param body    the response body, closed by the caller
+         * @param charset the charset of the response, UTF-8 if not specified
+         * @throws IOException if the body cannot be read or written
+         */
+        void handle(InputStream body, Charset charset) throws IOException;
+    }
+
+    ///////////////////////
+    // Protected methods //
+    ///////////////////////
+
+    /**
+     * Prints the status, headers and body of a response in verbose mode.
+     * 
+     * @param response      the response
+     * @param elapsedMillis time taken by the request, in milliseconds
+     */
+    @Override
+    protected void printResponse(Response response, long elapsedMillis) {
+        this.printer.printResponse(response);
+    }
+
+    /////////////////////
+    // Private methods //
+    /////////////////////
+
+    /**
+     * Validates the query, sends it and checks the status of the response.
+     * 
+     * @param query                 SPARQL query to send
+     * @param defaultGraphUris      default graph URIs to use
+     * @param namedGraphUris        named graph URIs to use
+     * @param ignoreQueryValidation true to ignore query validation, false otherwise
+     * @param update                true to send the query as an update, false
+     *                              to send it as a query
+     * @return the successful response, with its body not read yet
+     * @throws Exception if an error occurs while sending the request
+     */
+    private Response send(String query, List<String> defaultGraphUris, List<String> namedGraphUris,
+            boolean ignoreQueryValidation, boolean update)
+            throws Exception {
+
         // If the "User-Agent" header is not present, add it
         if (!this.headers.stream().anyMatch(header -> header.getLeft().equalsIgnoreCase("User-Agent"))) {
             this.addHeader("User-Agent", this.USERAGENT);
         }
 
+        // Ask for a compressed response unless the user chose an encoding
+        if (this.responseCompression
+                && !this.headers.stream().anyMatch(header -> header.getLeft().equalsIgnoreCase("Accept-Encoding"))) {
+            this.addHeader("Accept-Encoding", ACCEPT_ENCODING);
+        }
+
         // Fix parameters
         if (defaultGraphUris == null) {
             defaultGraphUris = new ArrayList<>();
@@ -151,47 +269,139 @@ public class SparqlHttpClient {
             namedGraphUris = new ArrayList<>();
         }
 
-        // Validate the query
+        // Validate the query, which tells whether it is an update
+        boolean isUpdate = update;
         if (!ignoreQueryValidation) {
-            this.validateQuery(query, defaultGraphUris, namedGraphUris);
+            isUpdate |= this.validateQuery(query, defaultGraphUris, namedGraphUris);
         }
 
         // Create the web target based on type of request method
         WebTarget webTarget = this.buildWebTarget(this.endpointUrl, query, defaultGraphUris, namedGraphUris);
 
         // Create the request body based on type of request method
-        String bodyContent = this.buildRequestBody(query, defaultGraphUris, namedGraphUris);
+        String bodyContent = this.buildRequestBody(query, defaultGraphUris, namedGraphUris, update);
+
+        // Updates are not idempotent, only retry them if allowed. A query that
+        // was not validated is only compiled if it could be retried.
+        int maxAttempts = this.retryPolicy.getMaxAttempts();
+        if (maxAttempts > 1 && !this.retryUpdates
+                && (isUpdate || (ignoreQueryValidation && this.isUpdate(query)))) {
+            maxAttempts = 1;
+        }
+        Response response = this.sendWithRetries(() -> this.executeRequest(webTarget, bodyContent, update),
+                maxAttempts);
 
-        Response response;
+        // Validate the response
+        validateResponse(response);
+        return response;
+    }
 
-        // Execute the request
-        response = this.executeRequest(webTarget, bodyContent);
+    /**
+     * Checks if a query is an update. Queries that cannot be compiled are
+     * considered updates, so that they are never retried by mistake.
+     * 
+     * @param queryString the query to check
+     * @return true if the query is or may be an update, false otherwise
+     */
+    private boolean isUpdate(String queryString) {
+        try {
+            return this.buildQuery(queryString).getAST().isSPARQLUpdate();
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
 
-        // Print the response if verbose mode is enabled
-        if (this.verbose) {
-            this.printer.printResponse(response);
+    /**
+     * Opens the body of a response, decoding it according to its
+     * Content-Encoding header.
+     * 
+     * In verbose mode, the number of bytes received and decoded is printed
+     * when the body is closed.
+     * 
+     * @param response the response
+     * @return the decoded body
+     * @throws IOException if the encoding is not supported or the body is
+     *                     malformed
+     */
+    private InputStream openBody(Response response) throws IOException {
+        String contentEncoding = response.getHeaderString("Content-Encoding");
+        String encoding = contentEncoding == null ? "identity" : contentEncoding.trim().toLowerCase();
+        if (encoding.isEmpty() || encoding.equals("identity")) {
+            return response.readEntity(InputStream.class);
+        }
+        if (!encoding.equals("gzip") && !encoding.equals("x-gzip") && !encoding.equals("deflate")) {
+            throw new IOException("Unsupported content encoding: " + contentEncoding);
         }
 
-        // Validate the response
-        validateResponse(response);
+        CountingInputStream received = new CountingInputStream(response.readEntity(InputStream.class));
+        BufferedInputStream buffered = new BufferedInputStream(received);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+
+        // Responses without content, such as those of updates, have nothing to
+        // decode
+        if (first == -1) {
+            return buffered;
+        }
 
-        // Return the response
-        return response.readEntity(String.class);
+        InputStream decoded;
+        if (encoding.equals("deflate")) {
+            // Deflate is meant to be zlib-wrapped, but some servers send raw
+            // deflate data
+            boolean zlib = (first & 0x0f) == 8 && ((first << 8) | second) % 31 == 0;
+            decoded = zlib ? new InflaterInputStream(buffered) : new InflaterInputStream(buffered, new Inflater(true));
+        } else {
+            decoded = new GZIPInputStream(buffered, 1 << 16);
+        }
+
+        if (!this.verbose) {
+            return decoded;
+        }
+        return new CountingInputStream(decoded) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                SparqlHttpClient.this.printer.printMessage("Received " + received.getCount() + " bytes, "
+                        + this.getCount() + " bytes after " + encoding + " decoding");
+            }
+        };
     }
 
-    /////////////////////
-    // Private methods //
-    /////////////////////
+    /**
+     * Gets the charset of a response.
+     * 
+     * @param response the response
+     * @return the charset of the Content-Type header, or UTF-8
+     */
+    static Charset charsetOf(Response response) {
+        MediaType mediaType = response.getMediaType();
+        if (mediaType != null) {
+            String charset = mediaType.getParameters().get(MediaType.CHARSET_PARAMETER);
+            if (charset != null) {
+                try {
+                    return Charset.forName(charset);
+                } catch (IllegalArgumentException e) {
+                    // Unknown charset, fall back to UTF-8
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
 
     /**
      * Validates the query. The query must be defined and must be a valid SPARQL
      * query and respect the SPARQL specification.
      * 
+     * The query is compiled once and the compiled query is used by every check.
+     * 
      * @param queryString      the query to validate
      * @param defaultGraphUris default graph URIs to use
      * @param namedGraphUris   named graph URIs to use
+     * @return true if the query is an update, false otherwise
      */
-    private void validateQuery(String queryString, List<String> defaultGraphUris, List<String> namedGraphUris) {
+    private boolean validateQuery(String queryString, List<String> defaultGraphUris, List<String> namedGraphUris) {
 
         // Check if the query is defined
         if (queryString == null || queryString.isEmpty()) {
@@ -199,15 +409,20 @@ public class SparqlHttpClient {
         }
 
         // Check if the query is a valid SPARQL query
-        if (!ContentValidator.isValidSparqlQuery(queryString)) {
-            throw new IllegalArgumentException("Invalid SPARQL query");
+        long start = System.nanoTime();
+        Query query = buildQuery(queryString);
+
+        if (this.verbose) {
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            this.printer.printMessage("Compiled query (" + queryString.length() + " characters) in " + elapsed
+                    + " ms");
         }
 
-        Query query = buildQuery(queryString);
+        boolean isUpdate = query.getAST().isSPARQLUpdate();
 
         if (!this.requestMethodIsDefinedByUser) {
             // Check if the query is an update query.
-            if (query.getAST().isSPARQLUpdate()) {
+            if (isUpdate) {
                 // If it is an update query, set the request method to POST_Encoded.
                 this.requestMethod = EnumRequestMethod.POST_URLENCODED;
             } else {
@@ -219,7 +434,7 @@ public class SparqlHttpClient {
         // Check if the query is an update query and the method is GET
         // which is not allowed by the SPARQL specification
         // (see https://www.w3.org/TR/sparql11-protocol/#update-operation)
-        if (this.requestMethod == EnumRequestMethod.GET && query.getAST().isSPARQLUpdate()) {
+        if (this.requestMethod == EnumRequestMethod.GET && isUpdate) {
             throw new IllegalArgumentException(
                     "SPARQL query is an update query, but GET method is used. Please use a POST method instead.");
         }
@@ -236,25 +451,12 @@ public class SparqlHttpClient {
         // and the using-graph-uri/using-named-graph-uri parameters are also specified
         // which is not allowed by the SPARQL specification
         // (see https://www.w3.org/TR/sparql11-protocol/#update-operation)
-        List<String> sparqlConstants = new ArrayList<>();
-        ASTUpdate astUpdate = query.getAST().getUpdate();
-        if (astUpdate != null) {
-            for (Update update : astUpdate.getUpdates()) {
-                Composite composite = update.getComposite();
-                if (composite != null) {
-                    Constant with = composite.getWith();
-                    if (with != null) {
-                        sparqlConstants.add(with.getLabel());
-                    }
-                }
-            }
-        }
-
-        if (!sparqlConstants.isEmpty() && (!defaultGraphUris.isEmpty() || !namedGraphUris.isEmpty())) {
+        if (containsWithClause(query) && (!defaultGraphUris.isEmpty() || !namedGraphUris.isEmpty())) {
             throw new IllegalArgumentException(
                     "SPARQL update query contains USING, USING NAMED, or WITH clause and the using-graph-uri/using-named-graph-uri parameters are also specified. It is not allowed to specify both USING, USING NAMED, or WITH clause and the using-graph-uri/using-named-graph-uri parameters. Please remove USING, USING NAMED, or WITH clause from the query or remove the using-graph-uri/using-named-graph-uri parameters.");
         }
 
+        return isUpdate;
     }
 
     /**
@@ -264,16 +466,42 @@ public class SparqlHttpClient {
      * @return the query object
      */
     private Query buildQuery(String query) {
-        QueryProcess exec = QueryProcess.create(Graph.create());
         Query q;
         try {
-            q = exec.compile(query);
+            q = CompiledQueryCache.getInstance().compile(query);
         } catch (Exception e) {
             throw new IllegalArgumentException("Invalid SPARQL query", e);
         }
+        if (q == null) {
+            throw new IllegalArgumentException("Invalid SPARQL query");
+        }
         return q;
     }
 
+    /**
+     * Checks if the update query contains a WITH clause.
+     * 
+     * @param query the query to check
+     * @return true if one of the updates has a WITH clause, false otherwise
+     */
+    private boolean containsWithClause(Query query) {
+        ASTUpdate astUpdate = query.getAST().getUpdate();
+        if (astUpdate == null) {
+            return false;
+        }
+
+        for (Update update : astUpdate.getUpdates()) {
+            Composite composite = update.getComposite();
+            if (composite != null) {
+                Constant with = composite.getWith();
+                if (with != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Checks if the query contains FROM clause.
      * 
@@ -300,9 +528,7 @@ public class SparqlHttpClient {
             List<String> namedGraphUris) {
 
         // Create the web target
-        ClientBuilder clientBuilder = ClientBuilder.newBuilder();
-        Client client = clientBuilder.build();
-        WebTarget webTarget = client.target(endpoint);
+        WebTarget webTarget = this.getClient().target(endpoint);
 
         // Add the query parameter
         if (this.requestMethod == EnumRequestMethod.GET) {
@@ -328,18 +554,20 @@ public class SparqlHttpClient {
      * @param query            the query
      * @param defaultGraphUris default graph URIs to use
      * @param namedGraphUris   named graph URIs to use
+     * @param update           true if the query is sent as an update
      * @return the request body
      */
     private String buildRequestBody(
             String query,
             List<String> defaultGraphUris,
-            List<String> namedGraphUris) {
+            List<String> namedGraphUris,
+            boolean update) {
 
         StringBuilder bodyContent = new StringBuilder();
 
         if (this.requestMethod == EnumRequestMethod.POST_URLENCODED) {
             // Add the query parameter
-            bodyContent.append("query=").append(this.encode(query));
+            bodyContent.append(update ? "update=" : "query=").append(this.encode(query));
 
             // Add graph URIs
             for (String defaultGraphUri : defaultGraphUris) {
@@ -361,9 +589,10 @@ public class SparqlHttpClient {
      * 
      * @param webTarget   the web target of the request
      * @param bodyContent the body content of the request
+     * @param update      true if the query is sent as an update
      * @return the response from the endpoint
      */
-    private Response executeRequest(WebTarget webTarget, String bodyContent) {
+    private Response executeRequest(WebTarget webTarget, String bodyContent, boolean update) {
         Response response = null;
 
         // Add headers
@@ -378,7 +607,7 @@ public class SparqlHttpClient {
         if (this.requestMethod == EnumRequestMethod.POST_URLENCODED) {
             contentType = MediaType.APPLICATION_FORM_URLENCODED;
         } else if (this.requestMethod == EnumRequestMethod.POST_DIRECT) {
-            contentType = "application/sparql-query";
+            contentType = update ? "application/sparql-update" : "application/sparql-query";
         }
 
         // Print query and body content if verbose mode is enabled
@@ -429,7 +658,10 @@ public class SparqlHttpClient {
         int status = response.getStatus();
 
         if (status < 200 || status >= 300) {
-            String body = response.readEntity(String.class);
+            String body;
+            try (InputStream in = this.openBody(response)) {
+                body = new String(in.readAllBytes(), charsetOf(response));
+            }
             String reason = response.getStatusInfo().getReasonPhrase();
 
             throw new Exception("HTTP " + status + " " + reason + "\n" +
@@ -437,4 +669,38 @@ public class SparqlHttpClient {
         }
     }
 
+    /**
+     * Input stream that counts the bytes read.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return this.count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                this.count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                this.count += n;
+            }
+            return n;
+        }
+    }
+
 }
@@ -167,6 +167,15 @@ public class SparqlHttpPrinter {
         err.println("\n──────────────────────────────────");
     }
 
+    /**
+     * Prints a single line of information, such as a timing.
+     * 
+     * @param message The message to print.
+     */
+    public void printMessage(String message) {
+        err.println(message);
+    }
+
     /**
      * Normalizes the header key by converting it to a standard format.
      * This method capitalizes the first letter of each part of the header key
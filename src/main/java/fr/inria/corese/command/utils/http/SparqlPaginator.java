@@ -0,0 +1,252 @@
+package fr.inria.corese.command.utils.http;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import fr.inria.corese.command.utils.CompiledQueryCache;
+import fr.inria.corese.core.kgram.core.Query;
+import fr.inria.corese.core.sparql.triple.parser.ASTQuery;
+
+/**
+ * This class splits a SPARQL SELECT query into pages of LIMIT/OFFSET queries.
+ *
+ * The query is compiled once to check that it is a SELECT query and to read
+ * its own LIMIT and OFFSET, which bound the pages. Comments are removed from
+ * the query text, then the LIMIT and OFFSET clauses at the end of the query,
+ * before its trailing VALUES clause if any, are replaced by those of each
+ * page.
+ */
+public class SparqlPaginator {
+
+    // LIMIT and OFFSET clauses at the end of a query
+    private static final Pattern TRAILING_MODIFIERS = Pattern
+            .compile("(?i)(\\s*\\b(LIMIT|OFFSET)\\s+\\d+)+\\s*$");
+
+    // Characters that cannot appear in an IRI reference
+    private static final String NOT_IN_IRI = "<\"{}|^`";
+
+    private final String baseQuery;
+    private final String valuesClause;
+    private final int pageSize;
+    private final long offset;
+    private final long limit;
+    private final boolean ordered;
+
+    /////////////////
+    // Constructor //
+    /////////////////
+
+    /**
+     * Constructor.
+     *
+     * @param queryString SPARQL SELECT query to split.
+     * @param pageSize    Number of rows per page.
+     */
+    public SparqlPaginator(String queryString, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1, got: " + pageSize);
+        }
+
+        Query query;
+        try {
+            query = CompiledQueryCache.getInstance().compile(queryString);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid SPARQL query", e);
+        }
+
+        ASTQuery ast = query.getAST();
+        if (!ast.isSelect()) {
+            throw new IllegalArgumentException("Only SELECT queries can be split into pages.");
+        }
+
+        this.pageSize = pageSize;
+        this.offset = Math.max(0, ast.getOffset());
+        this.limit = ast.getLimit() < Integer.MAX_VALUE ? ast.getLimit() : Long.MAX_VALUE;
+        this.ordered = ast.getOrderBy() != null && !ast.getOrderBy().isEmpty();
+
+        // Set the trailing VALUES clause aside, the modifiers of the pages go
+        // before it
+        String text = stripComments(queryString);
+        int valuesStart = findTrailingValues(text);
+        String body = valuesStart < 0 ? text : text.substring(0, valuesStart);
+        this.valuesClause = valuesStart < 0 ? "" : "\n" + text.substring(valuesStart).strip();
+
+        // Remove the modifiers of the query, the pages set their own
+        Matcher matcher = TRAILING_MODIFIERS.matcher(body);
+        if (matcher.find()) {
+            this.baseQuery = body.substring(0, matcher.start());
+        } else if (this.offset > 0 || this.limit < Long.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "Cannot split the query into pages: LIMIT and OFFSET must be the last clauses of the query.");
+        } else {
+            this.baseQuery = body.strip();
+        }
+    }
+
+    ///////////////////////
+    // Getters & Setters //
+    ///////////////////////
+
+    /**
+     * Gets the number of rows per page.
+     *
+     * @return the page size
+     */
+    public int getPageSize() {
+        return this.pageSize;
+    }
+
+    /**
+     * Checks if the query has an ORDER BY clause. Without it, endpoints do not
+     * guarantee that pages are consistent with each other.
+     *
+     * @return true if the query is ordered, false otherwise
+     */
+    public boolean isOrdered() {
+        return this.ordered;
+    }
+
+    ////////////////////
+    // Public methods //
+    ////////////////////
+
+    /**
+     * Gets the query of a page.
+     *
+     * @param index index of the page, from 0
+     * @return the query of the page, or null if the page is past the LIMIT of
+     *         the original query
+     */
+    public String getPage(long index) {
+        long start = index * this.pageSize;
+        if (start >= this.limit) {
+            return null;
+        }
+        long size = Math.min(this.pageSize, this.limit - start);
+        return this.baseQuery + "\nLIMIT " + size + "\nOFFSET " + (this.offset + start) + this.valuesClause;
+    }
+
+    /////////////////////
+    // Private methods //
+    /////////////////////
+
+    /**
+     * Removes the comments of a query, keeping the line breaks that end them.
+     * 
+     * @param text the query text
+     * @return the query text without comments
+     */
+    private static String stripComments(String text) {
+        StringBuilder result = new StringBuilder(text.length());
+        int i = 0;
+        while (i < text.length()) {
+            int end = skipLiteralOrIri(text, i);
+            if (end != -1) {
+                result.append(text, i, end);
+                i = end;
+            } else if (text.charAt(i) == '#') {
+                while (i < text.length() && text.charAt(i) != '\n' && text.charAt(i) != '\r') {
+                    i++;
+                }
+            } else {
+                result.append(text.charAt(i++));
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Finds the VALUES clause that ends a query, outside of any group.
+     * 
+     * @param text the query text, without comments
+     * @return the position of the VALUES keyword, or -1 if the query has no
+     *         trailing VALUES clause
+     */
+    private static int findTrailingValues(String text) {
+        int depth = 0;
+        int i = 0;
+        while (i < text.length()) {
+            int end = skipLiteralOrIri(text, i);
+            if (end != -1) {
+                i = end;
+                continue;
+            }
+
+            char c = text.charAt(i);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+            } else if (isNameChar(c) || c == '?' || c == '$' || c == ':') {
+                // Read a whole keyword, variable or prefixed name
+                int wordEnd = i + 1;
+                while (wordEnd < text.length()
+                        && (isNameChar(text.charAt(wordEnd)) || text.charAt(wordEnd) == ':')) {
+                    wordEnd++;
+                }
+                if (depth == 0 && text.substring(i, wordEnd).equalsIgnoreCase("VALUES")) {
+                    return i;
+                }
+                i = wordEnd;
+                continue;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the end of a string literal or IRI reference starting at a
+     * position.
+     * 
+     * @param text  the query text
+     * @param start the position of the first character
+     * @return the position after the literal or IRI, or -1 if none starts at
+     *         this position
+     */
+    private static int skipLiteralOrIri(String text, int start) {
+        char c = text.charAt(start);
+
+        if (c == '"' || c == '\'') {
+            String longQuote = String.valueOf(c).repeat(3);
+            boolean isLong = text.startsWith(longQuote, start);
+            int i = start + (isLong ? 3 : 1);
+            while (i < text.length()) {
+                char d = text.charAt(i);
+                if (d == '\\') {
+                    i += 2;
+                } else if (isLong ? text.startsWith(longQuote, i) : d == c) {
+                    return i + (isLong ? 3 : 1);
+                } else {
+                    i++;
+                }
+            }
+            return text.length();
+        }
+
+        // A '<' followed by spaces is a comparison, not an IRI
+        if (c == '<') {
+            for (int i = start + 1; i < text.length(); i++) {
+                char d = text.charAt(i);
+                if (d == '>') {
+                    return i + 1;
+                }
+                if (Character.isWhitespace(d) || NOT_IN_IRI.indexOf(d) >= 0) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if a character can be part of a keyword or name.
+     * 
+     * @param c the character
+     * @return true if the character is a letter, a digit, '_' or '-'
+     */
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-';
+    }
+
+}
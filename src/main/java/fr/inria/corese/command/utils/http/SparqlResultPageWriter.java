@@ -0,0 +1,275 @@
+package fr.inria.corese.command.utils.http;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * This class writes pages of SPARQL SELECT results, received one after the
+ * other, as a single result.
+ *
+ * CSV and TSV pages are concatenated, keeping the header line of the first
+ * page only. JSON pages are read with a streaming parser and their bindings
+ * are copied into a single bindings array, so a page is never held as a tree.
+ */
+public class SparqlResultPageWriter {
+
+    /**
+     * Result formats that can be merged.
+     */
+    public enum Format {
+        CSV, TSV, JSON;
+
+        /**
+         * Finds the format of a media type.
+         *
+         * @param mediaType the media type, without parameters
+         * @return the format, or null if results of this type cannot be merged
+         */
+        public static Format fromMediaType(String mediaType) {
+            switch (mediaType) {
+                case "text/csv":
+                    return CSV;
+                case "text/tab-separated-values":
+                    return TSV;
+                case "application/sparql-results+json":
+                case "application/json":
+                    return JSON;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final Format format;
+    private final Writer writer;
+
+    private long pages = 0;
+    private long rows = 0;
+
+    // JSON output state
+    private JsonGenerator generator;
+    private boolean bindingsStarted = false;
+
+    /////////////////
+    // Constructor //
+    /////////////////
+
+    /**
+     * Constructor.
+     *
+     * @param format format of the pages
+     * @param writer writer of the merged result, not closed by this class
+     */
+    public SparqlResultPageWriter(Format format, Writer writer) {
+        this.format = format;
+        this.writer = writer;
+    }
+
+    ///////////////////////
+    // Getters & Setters //
+    ///////////////////////
+
+    /**
+     * Gets the number of pages written.
+     *
+     * @return the number of pages
+     */
+    public long getPages() {
+        return this.pages;
+    }
+
+    /**
+     * Gets the number of rows written.
+     *
+     * @return the number of rows
+     */
+    public long getRows() {
+        return this.rows;
+    }
+
+    ////////////////////
+    // Public methods //
+    ////////////////////
+
+    /**
+     * Writes the rows of a page.
+     *
+     * @param page    body of the page
+     * @param charset charset of the page
+     * @return the number of rows of the page
+     * @throws IOException if the page is malformed or cannot be written
+     */
+    public long writePage(byte[] page, Charset charset) throws IOException {
+        long count = this.format == Format.JSON
+                ? this.writeJsonPage(page)
+                : this.writeTextPage(new String(page, charset));
+        this.pages++;
+        this.rows += count;
+        return count;
+    }
+
+    /**
+     * Ends the merged result. Must be called once, after the last page.
+     *
+     * @throws IOException if the result cannot be written
+     */
+    public void finish() throws IOException {
+        if (this.format == Format.JSON) {
+            this.startBindings();
+            this.generator.writeEndArray();
+            this.generator.writeEndObject();
+            this.generator.writeEndObject();
+            this.generator.flush();
+        }
+        this.writer.flush();
+    }
+
+    /////////////////////
+    // Private methods //
+    /////////////////////
+
+    /**
+     * Writes a CSV or TSV page, without its header line unless it is the first
+     * page.
+     *
+     * @param page body of the page
+     * @return the number of rows of the page
+     * @throws IOException if the page cannot be written
+     */
+    private long writeTextPage(String page) throws IOException {
+
+        // Count the non-empty records, ignoring line ends inside quoted CSV
+        // values
+        boolean quoted = false;
+        boolean content = false;
+        int headerEnd = -1;
+        long records = 0;
+        for (int i = 0; i < page.length(); i++) {
+            char c = page.charAt(i);
+            if (c == '"' && this.format == Format.CSV) {
+                quoted = !quoted;
+                content = true;
+            } else if (c == '\n' && !quoted) {
+                if (headerEnd < 0) {
+                    headerEnd = i + 1;
+                }
+                if (content) {
+                    records++;
+                }
+                content = false;
+            } else if (c != '\r') {
+                content = true;
+            }
+        }
+        if (content) {
+            records++;
+        }
+
+        // Keep the header line of the first page only
+        String body = this.pages == 0 ? page : headerEnd > 0 ? page.substring(headerEnd) : "";
+        if (!body.isEmpty()) {
+            this.writer.write(body);
+            if (!body.endsWith("\n")) {
+                this.writer.write('\n');
+            }
+        }
+
+        return Math.max(0, records - 1);
+    }
+
+    /**
+     * Writes the bindings of a JSON page. The head of the first page is kept.
+     *
+     * @param page body of the page
+     * @return the number of bindings of the page
+     * @throws IOException if the page is malformed or cannot be written
+     */
+    private long writeJsonPage(byte[] page) throws IOException {
+        this.startObject();
+
+        long count = 0;
+        try (JsonParser parser = JSON_FACTORY.createParser(page)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Malformed SPARQL JSON results: expected an object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+
+                if ("head".equals(field) && this.pages == 0 && !this.bindingsStarted) {
+                    this.generator.writeFieldName("head");
+                    this.generator.copyCurrentStructure(parser);
+                } else if ("results".equals(field) && parser.currentToken() == JsonToken.START_OBJECT) {
+                    count += this.copyBindings(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Copies the bindings of the results object the parser is on.
+     *
+     * @param parser parser positioned on the start of the results object
+     * @return the number of bindings copied
+     * @throws IOException if the page is malformed or cannot be written
+     */
+    private long copyBindings(JsonParser parser) throws IOException {
+        long count = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+
+            if ("bindings".equals(field) && parser.currentToken() == JsonToken.START_ARRAY) {
+                this.startBindings();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    this.generator.copyCurrentStructure(parser);
+                    count++;
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Opens the merged bindings array if it is not open yet.
+     *
+     * @throws IOException if the result cannot be written
+     */
+    private void startBindings() throws IOException {
+        this.startObject();
+        if (!this.bindingsStarted) {
+            this.generator.writeFieldName("results");
+            this.generator.writeStartObject();
+            this.generator.writeFieldName("bindings");
+            this.generator.writeStartArray();
+            this.bindingsStarted = true;
+        }
+    }
+
+    /**
+     * Opens the merged result object if it is not open yet.
+     *
+     * @throws IOException if the result cannot be written
+     */
+    private void startObject() throws IOException {
+        if (this.generator == null) {
+            this.generator = JSON_FACTORY.createGenerator(this.writer);
+            this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            this.generator.writeStartObject();
+        }
+    }
+
+}
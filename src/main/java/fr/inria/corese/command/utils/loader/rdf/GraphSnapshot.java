@@ -0,0 +1,544 @@
+package fr.inria.corese.command.utils.loader.rdf;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.inria.corese.command.VersionProvider;
+import fr.inria.corese.command.utils.stream.NTriplesTerms;
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.api.core.Edge;
+import fr.inria.corese.core.kgram.api.core.Node;
+import fr.inria.corese.core.sparql.api.IDatatype;
+
+/**
+ * Binary snapshot of a loaded graph, reloaded much faster than the files it
+ * was parsed from.
+ *
+ * A snapshot holds a header, the dictionary of the terms of the graph and the
+ * table of its edges as term numbers:
+ *
+ * <pre>
+ * magic "CORESNAP", version (int)
+ * creation time (long), command version (string), settings (string)
+ * source count (int), then per source: path (string), size (long),
+ *     modification time (long), SHA-256 (32 bytes)
+ * term count (int), then per term: kind (byte), label (string),
+ *     and for literals: datatype (string), language (string)
+ * edge count (long), then per edge: graph, subject, predicate, object (int)
+ * </pre>
+ *
+ * Strings are written as their length in bytes (int) followed by their UTF-8
+ * bytes. The file is read back with a single sequential pass over a memory
+ * mapping.
+ *
+ * The sources recorded in the header let a snapshot detect that it is stale:
+ * a source is unchanged if its size and modification time are the same, or if
+ * its content has the same hash.
+ */
+public class GraphSnapshot implements AutoCloseable {
+
+    private static final byte[] MAGIC = "CORESNAP".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+
+    // Kinds of terms
+    private static final byte IRI = 0;
+    private static final byte BLANK = 1;
+    private static final byte LITERAL = 2;
+
+    // Size of the mapped windows of the file
+    private static final int WINDOW_SIZE = 1 << 30;
+
+    private final Path file;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long bufferStart;
+
+    // Header
+    private long createdAt;
+    private String commandVersion;
+    private String settings;
+    private List<Source> sources = new ArrayList<>();
+
+    /////////////////
+    // Constructor //
+    /////////////////
+
+    /**
+     * Open a snapshot and read its header.
+     *
+     * @param file Snapshot file.
+     * @throws IOException If the file cannot be read or is not a snapshot.
+     */
+    public GraphSnapshot(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            this.map(0);
+            this.readHeader();
+        } catch (IOException | RuntimeException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    ///////////////////////
+    // Getters & Setters //
+    ///////////////////////
+
+    /**
+     * Get the time the snapshot was written.
+     *
+     * @return The time in milliseconds since the epoch.
+     */
+    public long getCreatedAt() {
+        return this.createdAt;
+    }
+
+    /**
+     * Get the version of the command that wrote the snapshot.
+     *
+     * @return The version.
+     */
+    public String getCommandVersion() {
+        return this.commandVersion;
+    }
+
+    /**
+     * Get the loading settings the snapshot was written with.
+     *
+     * @return The settings.
+     */
+    public String getSettings() {
+        return this.settings;
+    }
+
+    /**
+     * Get the paths of the files the snapshot was built from.
+     *
+     * @return The absolute paths, in loading order.
+     */
+    public List<Path> getSourcePaths() {
+        List<Path> paths = new ArrayList<>();
+        for (Source source : this.sources) {
+            paths.add(Path.of(source.path));
+        }
+        return paths;
+    }
+
+    ////////////////////
+    // Public methods //
+    ////////////////////
+
+    /**
+     * Write a graph to a snapshot.
+     *
+     * The snapshot is written to a temporary file and moved into place, so an
+     * interrupted write never leaves a truncated snapshot.
+     *
+     * @param graph    Graph to write.
+     * @param sources  Files the graph was loaded from.
+     * @param settings Loading settings, compared when the snapshot is read.
+     * @param file     Snapshot file.
+     * @throws IOException If a source cannot be read or the file cannot be
+     *                     written.
+     */
+    public static void write(Graph graph, List<Path> sources, String settings, Path file) throws IOException {
+
+        // Number the terms by node, the default graph being the null node
+        Map<Node, Integer> ids = new IdentityHashMap<>();
+        List<Node> terms = new ArrayList<>();
+        long edgeCount = 0;
+        for (Edge edge : graph.getEdges()) {
+            number(edge.getGraph(), ids, terms);
+            number(edge.getNode(0), ids, terms);
+            number(edge.getEdgeNode(), ids, terms);
+            number(edge.getNode(1), ids, terms);
+            edgeCount++;
+        }
+
+        Path absolute = file.toAbsolutePath();
+        Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp), 1 << 20))) {
+
+                // Header
+                out.write(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(System.currentTimeMillis());
+                writeString(out, VersionProvider.getCommandVersion());
+                writeString(out, settings);
+
+                out.writeInt(sources.size());
+                for (Path source : sources) {
+                    Path path = source.toAbsolutePath().normalize();
+                    writeString(out, path.toString());
+                    out.writeLong(Files.size(path));
+                    out.writeLong(Files.getLastModifiedTime(path).toMillis());
+                    out.write(sha256(path));
+                }
+
+                // Dictionary
+                out.writeInt(terms.size());
+                for (Node term : terms) {
+                    if (term == null) {
+                        out.writeByte(IRI);
+                        writeString(out, NTriplesTerms.DEFAULT_GRAPH);
+                        continue;
+                    }
+                    IDatatype value = term.getDatatypeValue();
+                    if (value.isLiteral()) {
+                        out.writeByte(LITERAL);
+                        writeString(out, value.getLabel());
+                        writeString(out, value.getDatatypeURI() == null ? "" : value.getDatatypeURI());
+                        writeString(out, value.getLang() == null ? "" : value.getLang());
+                    } else {
+                        out.writeByte(value.isBlank() ? BLANK : IRI);
+                        writeString(out, value.getLabel());
+                    }
+                }
+
+                // Edges
+                out.writeLong(edgeCount);
+                for (Edge edge : graph.getEdges()) {
+                    out.writeInt(ids.get(edge.getGraph()));
+                    out.writeInt(ids.get(edge.getNode(0)));
+                    out.writeInt(ids.get(edge.getEdgeNode()));
+                    out.writeInt(ids.get(edge.getNode(1)));
+                }
+            }
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Check if the snapshot still matches its sources.
+     *
+     * @param sources  Files the graph would be loaded from, or null to check
+     *                 the sources recorded in the snapshot only.
+     * @param settings Current loading settings.
+     * @return Null if the snapshot is up to date, or the reason why it is
+     *         stale.
+     * @throws IOException If a source cannot be read.
+     */
+    public String checkStale(List<Path> sources, String settings) throws IOException {
+        if (!this.settings.equals(settings)) {
+            return "it was written with other loading options (" + this.settings + ")";
+        }
+
+        if (sources != null) {
+            List<Path> expected = new ArrayList<>();
+            for (Path source : sources) {
+                expected.add(source.toAbsolutePath().normalize());
+            }
+            if (!expected.equals(this.getSourcePaths())) {
+                return "it was built from other input files";
+            }
+        }
+
+        for (Source source : this.sources) {
+            Path path = Path.of(source.path);
+            if (!Files.isRegularFile(path)) {
+                return path + " does not exist anymore";
+            }
+            if (Files.size(path) != source.size) {
+                return path + " has changed";
+            }
+            if (Files.getLastModifiedTime(path).toMillis() != source.modified
+                    && !Arrays.equals(sha256(path), source.sha256)) {
+                return path + " has changed";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Read the graph of the snapshot.
+     *
+     * @return The graph.
+     * @throws IOException If the file cannot be read or is truncated.
+     */
+    public Graph readGraph() throws IOException {
+        Graph graph = Graph.create();
+
+        // Dictionary, nodes are created for the roles the terms are used in
+        int termCount = this.readInt();
+        byte[] kinds = new byte[termCount];
+        String[] labels = new String[termCount];
+        String[] datatypes = new String[termCount];
+        String[] langs = new String[termCount];
+        for (int i = 0; i < termCount; i++) {
+            kinds[i] = this.readByte();
+            labels[i] = this.readString();
+            if (kinds[i] == LITERAL) {
+                datatypes[i] = emptyToNull(this.readString());
+                langs[i] = emptyToNull(this.readString());
+            }
+        }
+
+        Node[] graphNodes = new Node[termCount];
+        Node[] propertyNodes = new Node[termCount];
+        Node[] valueNodes = new Node[termCount];
+
+        // Edges
+        long edgeCount = this.readLong();
+        for (long i = 0; i < edgeCount; i++) {
+            int g = this.readInt();
+            int s = this.readInt();
+            int p = this.readInt();
+            int o = this.readInt();
+
+            if (graphNodes[g] == null) {
+                graphNodes[g] = graph.addGraph(labels[g]);
+            }
+            if (propertyNodes[p] == null) {
+                propertyNodes[p] = graph.addProperty(labels[p]);
+            }
+            graph.addEdge(graphNodes[g], this.valueNode(graph, valueNodes, s, kinds, labels, datatypes, langs),
+                    propertyNodes[p], this.valueNode(graph, valueNodes, o, kinds, labels, datatypes, langs));
+        }
+
+        return graph;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /////////////////////
+    // Private methods //
+    /////////////////////
+
+    /**
+     * Read the header of the snapshot.
+     *
+     * @throws IOException If the file is not a snapshot of a known version.
+     */
+    private void readHeader() throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        this.ensure(magic.length);
+        this.buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a graph snapshot: " + this.file);
+        }
+        int version = this.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported graph snapshot version " + version + ": " + this.file);
+        }
+
+        this.createdAt = this.readLong();
+        this.commandVersion = this.readString();
+        this.settings = this.readString();
+
+        int sourceCount = this.readInt();
+        for (int i = 0; i < sourceCount; i++) {
+            Source source = new Source();
+            source.path = this.readString();
+            source.size = this.readLong();
+            source.modified = this.readLong();
+            source.sha256 = new byte[32];
+            this.ensure(source.sha256.length);
+            this.buffer.get(source.sha256);
+            this.sources.add(source);
+        }
+    }
+
+    /**
+     * Get the node of a subject or object, creating it on first use.
+     *
+     * @param graph     Graph to create the node in.
+     * @param nodes     Nodes created so far, by term number.
+     * @param id        Number of the term.
+     * @param kinds     Kinds of the terms.
+     * @param labels    Labels of the terms.
+     * @param datatypes Datatypes of the literals.
+     * @param langs     Languages of the literals.
+     * @return The node.
+     */
+    private Node valueNode(Graph graph, Node[] nodes, int id, byte[] kinds, String[] labels, String[] datatypes,
+            String[] langs) {
+        if (nodes[id] == null) {
+            switch (kinds[id]) {
+                case BLANK:
+                    nodes[id] = graph.addBlank(labels[id]);
+                    break;
+                case LITERAL:
+                    nodes[id] = graph.addLiteral(labels[id], datatypes[id], langs[id]);
+                    break;
+                default:
+                    nodes[id] = graph.addResource(labels[id]);
+                    break;
+            }
+        }
+        return nodes[id];
+    }
+
+    /**
+     * Map the window of the file starting at a position.
+     *
+     * @param position Position in the file.
+     * @throws IOException If the file cannot be mapped.
+     */
+    private void map(long position) throws IOException {
+        long size = Math.min(WINDOW_SIZE, this.channel.size() - position);
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        this.bufferStart = position;
+    }
+
+    /**
+     * Make sure the next bytes are in the mapped window.
+     *
+     * @param length Number of bytes to read next.
+     * @throws IOException If the file is truncated.
+     */
+    private void ensure(int length) throws IOException {
+        if (this.buffer.remaining() < length) {
+            this.map(this.bufferStart + this.buffer.position());
+            if (this.buffer.remaining() < length) {
+                throw new IOException("Truncated graph snapshot: " + this.file);
+            }
+        }
+    }
+
+    /**
+     * Read a byte.
+     *
+     * @return The byte.
+     * @throws IOException If the file is truncated.
+     */
+    private byte readByte() throws IOException {
+        this.ensure(Byte.BYTES);
+        return this.buffer.get();
+    }
+
+    /**
+     * Read an int.
+     *
+     * @return The int.
+     * @throws IOException If the file is truncated.
+     */
+    private int readInt() throws IOException {
+        this.ensure(Integer.BYTES);
+        return this.buffer.getInt();
+    }
+
+    /**
+     * Read a long.
+     *
+     * @return The long.
+     * @throws IOException If the file is truncated.
+     */
+    private long readLong() throws IOException {
+        this.ensure(Long.BYTES);
+        return this.buffer.getLong();
+    }
+
+    /**
+     * Read a string written by {@link #writeString}.
+     *
+     * @return The string.
+     * @throws IOException If the file is truncated.
+     */
+    private String readString() throws IOException {
+        int length = this.readInt();
+        this.ensure(length);
+        byte[] bytes = new byte[length];
+        this.buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write a string as its length followed by its UTF-8 bytes.
+     *
+     * @param out   Stream to write to.
+     * @param value String to write.
+     * @throws IOException If the stream cannot be written.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read an optional string, written empty when absent.
+     *
+     * @param value String read.
+     * @return The string, or null if it is empty.
+     */
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Give a number to a node the first time it is seen.
+     *
+     * Nodes are compared by identity, so no term string is built while
+     * numbering. The graph shares one node per term and role; a term reached
+     * through two distinct nodes only gets two entries with the same label in
+     * the dictionary, which are read back as the same node.
+     *
+     * @param node  Node of the term, or null for the default graph.
+     * @param ids   Numbers of the nodes seen so far.
+     * @param terms Nodes seen so far, by number.
+     */
+    private static void number(Node node, Map<Node, Integer> ids, List<Node> terms) {
+        if (!ids.containsKey(node)) {
+            ids.put(node, terms.size());
+            terms.add(node);
+        }
+    }
+
+    /**
+     * Compute the SHA-256 of a file.
+     *
+     * @param path File to hash.
+     * @return The hash.
+     * @throws IOException If the file cannot be read.
+     */
+    private static byte[] sha256(Path path) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] chunk = new byte[1 << 16];
+            try (InputStream inputStream = Files.newInputStream(path)) {
+                int read;
+                while ((read = inputStream.read(chunk)) != -1) {
+                    digest.update(chunk, 0, read);
+                }
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * A file a snapshot was built from.
+     */
+    private static class Source {
+        private String path;
+        private long size;
+        private long modified;
+        private byte[] sha256;
+    }
+
+}
@@ -0,0 +1,404 @@
+package fr.inria.corese.command.utils.loader.rdf;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import fr.inria.corese.command.utils.compression.EnumCompression;
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.api.Loader;
+import fr.inria.corese.core.load.Load;
+
+/**
+ * Loads large local N-Triples and N-Quads files by parsing chunks of the file
+ * in parallel.
+ *
+ * The file is memory-mapped and split into chunks at line boundaries. Each
+ * chunk is parsed straight from the mapping into its own graph on a pool of
+ * threads, and the graphs are merged in the order of the file.
+ *
+ * Blank node labels are scoped to the whole file, while each parse gives its
+ * own identity to the labels it reads. Lines containing {@code _:} are
+ * therefore set aside and parsed together, in a single parse, once every
+ * chunk is merged.
+ */
+public class MappedLineLoader {
+
+    // Files smaller than this are parsed as usual
+    public static final long DEFAULT_MIN_FILE_SIZE = 64L * 1024 * 1024;
+
+    // Size of the chunks parsed in parallel
+    public static final int DEFAULT_CHUNK_SIZE = 32 * 1024 * 1024;
+
+    private static volatile long minFileSize = DEFAULT_MIN_FILE_SIZE;
+    private static volatile int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    private final int threads;
+
+    // Statistics of the last load
+    private int chunks = 0;
+    private long blankNodeBytes = 0;
+
+    /////////////////
+    // Constructor //
+    /////////////////
+
+    /**
+     * Constructor.
+     *
+     * @param threads Number of threads parsing chunks.
+     */
+    public MappedLineLoader(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of load threads must be at least 1: " + threads);
+        }
+        this.threads = threads;
+    }
+
+    ///////////////////////
+    // Getters & Setters //
+    ///////////////////////
+
+    /**
+     * Get the number of chunks of the last loaded file.
+     *
+     * @return The number of chunks.
+     */
+    public int getChunks() {
+        return this.chunks;
+    }
+
+    /**
+     * Get the size of the lines of the last loaded file that contain blank
+     * nodes, and were parsed after the chunks.
+     *
+     * @return The size in bytes.
+     */
+    public long getBlankNodeBytes() {
+        return this.blankNodeBytes;
+    }
+
+    /**
+     * Sets the size from which files are loaded in chunks, and the size of the
+     * chunks, for every loader. Small values split small files into many
+     * chunks, which is only useful to exercise the chunking.
+     *
+     * @param minFileSize Minimum size of the files loaded in chunks.
+     * @param chunkSize   Size of the chunks, at least 1.
+     */
+    public static void setSizes(long minFileSize, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The chunk size must be at least 1: " + chunkSize);
+        }
+        MappedLineLoader.minFileSize = minFileSize;
+        MappedLineLoader.chunkSize = chunkSize;
+    }
+
+    ////////////////////
+    // Public methods //
+    ////////////////////
+
+    /**
+     * Check if a file can be loaded in chunks: a large, uncompressed,
+     * N-Triples or N-Quads file.
+     *
+     * @param path   Path of the file.
+     * @param format Serialization format of the file.
+     * @return True if the file can be loaded in chunks.
+     */
+    public static boolean supports(Path path, EnumRdfInputFormat format) {
+        if (format == null || (format.getCoreseFormat() != Loader.format.NT_FORMAT
+                && format.getCoreseFormat() != Loader.format.NQUADS_FORMAT)) {
+            return false;
+        }
+        try {
+            if (Files.size(path) < minFileSize) {
+                return false;
+            }
+            byte[] header = new byte[4];
+            try (InputStream inputStream = Files.newInputStream(path)) {
+                inputStream.readNBytes(header, 0, header.length);
+            }
+            return EnumCompression.fromHeader(header) == null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Load a file into a graph.
+     *
+     * @param path   Path of the file.
+     * @param format Serialization format of the file, N-Triples or N-Quads.
+     * @param graph  Graph to load the data into.
+     * @throws IllegalArgumentException If the file cannot be read or parsed.
+     */
+    public void load(Path path, EnumRdfInputFormat format, Graph graph) {
+        this.chunks = 0;
+        this.blankNodeBytes = 0;
+
+        Path blankNodeLines = null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            blankNodeLines = Files.createTempFile("corese-blank-nodes", ".nq");
+
+            try (OutputStream blankNodeOutput = new BufferedOutputStream(Files.newOutputStream(blankNodeLines))) {
+                this.loadChunks(channel, path, format, graph, blankNodeOutput);
+            }
+
+            // Lines with blank nodes, in a single parse
+            if (this.blankNodeBytes > 0) {
+                try (InputStream inputStream = Files.newInputStream(blankNodeLines)) {
+                    parse(inputStream, format, graph, path + " (lines with blank nodes)");
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to read RDF data file: " + path, e);
+        } finally {
+            if (blankNodeLines != null) {
+                try {
+                    Files.deleteIfExists(blankNodeLines);
+                } catch (IOException e) {
+                    // Left in the temporary directory
+                }
+            }
+        }
+    }
+
+    /////////////////////
+    // Private methods //
+    /////////////////////
+
+    /**
+     * Split the file into chunks, parse them in parallel and merge them in
+     * order. At most twice as many chunks as threads are mapped at any time.
+     *
+     * @param channel         Channel of the file.
+     * @param path            Path of the file, used in error messages.
+     * @param format          Serialization format of the file.
+     * @param graph           Graph to merge the chunks into.
+     * @param blankNodeOutput Stream collecting the lines with blank nodes.
+     * @throws IOException If the file cannot be mapped.
+     */
+    private void loadChunks(FileChannel channel, Path path, EnumRdfInputFormat format, Graph graph,
+            OutputStream blankNodeOutput) throws IOException {
+
+        long size = channel.size();
+        int window = 2 * this.threads;
+        Deque<Future<Chunk>> pending = new ArrayDeque<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+        try {
+            long position = 0;
+            while (position < size || !pending.isEmpty()) {
+
+                // Keep the window full
+                while (position < size && pending.size() < window) {
+                    ByteBuffer buffer = this.mapChunk(channel, position, size);
+                    String name = path + " (bytes " + position + " to " + (position + buffer.limit()) + ")";
+                    position += buffer.limit();
+                    this.chunks++;
+                    pending.add(executor.submit(() -> parseChunk(buffer, format, name)));
+                }
+
+                // Merge the oldest chunk as soon as it is parsed
+                Chunk chunk = await(pending.poll());
+                graph.merge(chunk.graph);
+                if (chunk.blankNodeLines != null) {
+                    chunk.blankNodeLines.writeTo(blankNodeOutput);
+                    this.blankNodeBytes += chunk.blankNodeLines.size();
+                }
+            }
+        } finally {
+            // Stop the remaining chunks after a failure
+            for (Future<Chunk> future : pending) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Map the next chunk of the file, ending after a line feed or at the end
+     * of the file.
+     *
+     * @param channel  Channel of the file.
+     * @param position Start of the chunk.
+     * @param size     Size of the file.
+     * @return The mapped chunk.
+     * @throws IOException If the file cannot be mapped.
+     */
+    private ByteBuffer mapChunk(FileChannel channel, long position, long size) throws IOException {
+        long length = Math.min(chunkSize, size - position);
+        while (true) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            if (position + length == size) {
+                return buffer;
+            }
+            for (int i = (int) length - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return buffer.slice(0, i + 1);
+                }
+            }
+            // A line longer than the chunk
+            length = Math.min(2 * length, size - position);
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Line longer than 2 GB at byte " + position);
+            }
+        }
+    }
+
+    /**
+     * Parse a chunk into its own graph, setting aside the lines with blank
+     * nodes.
+     *
+     * @param buffer Chunk to parse.
+     * @param format Serialization format of the file.
+     * @param name   Name of the chunk, used in error messages.
+     * @return The parsed chunk.
+     */
+    private static Chunk parseChunk(ByteBuffer buffer, EnumRdfInputFormat format, String name) {
+        Chunk chunk = new Chunk();
+
+        if (!containsBlankNode(buffer, 0, buffer.limit())) {
+            parse(new ByteBufferInputStream(buffer), format, chunk.graph, name);
+            return chunk;
+        }
+
+        ByteArrayOutputStream lines = new ByteArrayOutputStream(buffer.limit());
+        chunk.blankNodeLines = new ByteArrayOutputStream();
+        byte[] line = new byte[0];
+        int start = 0;
+        while (start < buffer.limit()) {
+            int end = start;
+            while (end < buffer.limit() && buffer.get(end) != '\n') {
+                end++;
+            }
+            end = Math.min(end + 1, buffer.limit());
+
+            if (line.length < end - start) {
+                line = new byte[end - start];
+            }
+            buffer.get(start, line, 0, end - start);
+            if (containsBlankNode(buffer, start, end)) {
+                chunk.blankNodeLines.write(line, 0, end - start);
+            } else {
+                lines.write(line, 0, end - start);
+            }
+            start = end;
+        }
+
+        parse(new ByteBufferInputStream(ByteBuffer.wrap(lines.toByteArray())), format, chunk.graph, name);
+        return chunk;
+    }
+
+    /**
+     * Check if a range of a buffer contains {@code _:}. Literals containing it
+     * are reported too, which only costs them a parallel parse.
+     *
+     * @param buffer Buffer to search.
+     * @param start  Start of the range.
+     * @param end    End of the range, exclusive.
+     * @return True if the range contains {@code _:}.
+     */
+    private static boolean containsBlankNode(ByteBuffer buffer, int start, int end) {
+        for (int i = start; i < end - 1; i++) {
+            if (buffer.get(i) == '_' && buffer.get(i + 1) == ':') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parse a stream into a graph.
+     *
+     * @param inputStream Stream to parse.
+     * @param format      Serialization format.
+     * @param graph       Graph to load the data into.
+     * @param name        Name of the data, used in error messages.
+     */
+    private static void parse(InputStream inputStream, EnumRdfInputFormat format, Graph graph, String name) {
+        try {
+            Load.create(graph).parse(inputStream, format.getCoreseFormat());
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Failed to parse RDF file: " + name
+                    + ". Check if file is well-formed and that the input format is correct. " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Wait for a chunk to be parsed.
+     *
+     * @param future Future of the parsed chunk.
+     * @return The parsed chunk.
+     */
+    private static Chunk await(Future<Chunk> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) e.getCause();
+            }
+            throw new IllegalArgumentException("Failed to load RDF data: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException("Interrupted while loading RDF data", e);
+        }
+    }
+
+    /**
+     * A parsed chunk.
+     */
+    private static class Chunk {
+        private final Graph graph = Graph.create();
+
+        // Lines with blank nodes, or null if there are none
+        private ByteArrayOutputStream blankNodeLines;
+    }
+
+    /**
+     * Input stream reading a buffer without copying it.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return this.buffer.hasRemaining() ? this.buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!this.buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(length, this.buffer.remaining());
+            this.buffer.get(bytes, offset, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return this.buffer.remaining();
+        }
+    }
+
+}
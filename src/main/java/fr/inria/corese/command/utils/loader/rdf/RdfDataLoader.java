@@ -1,18 +1,31 @@
 package fr.inria.corese.command.utils.loader.rdf;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import fr.inria.corese.command.utils.ConvertString;
+import fr.inria.corese.command.utils.HeapUsage;
 import fr.inria.corese.command.utils.InputTypeDetector;
 import fr.inria.corese.command.utils.InputTypeDetector.InputType;
+import fr.inria.corese.command.utils.compression.EnumCompression;
+import fr.inria.corese.command.utils.http.HttpCache;
 import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.api.core.Edge;
 import fr.inria.corese.core.load.Load;
 import fr.inria.corese.core.load.LoadFormat;
 import picocli.CommandLine.Model.CommandSpec;
@@ -26,6 +39,17 @@ public class RdfDataLoader {
     private CommandSpec spec;
     private boolean verbose;
 
+    // Number of threads used to parse input files
+    private int loadThreads = 1;
+
+    // Whether ontologies named in owl:imports statements are loaded
+    private boolean owlImport = false;
+
+    private static final String OWL_IMPORTS = "http://www.w3.org/2002/07/owl#imports";
+
+    // Media types asked for imported ontologies
+    private static final String IMPORT_ACCEPT = "text/turtle, application/rdf+xml;q=0.9, application/n-triples;q=0.8, application/ld+json;q=0.7, */*;q=0.1";
+
     /////////////////
     // Constructor //
     /////////////////
@@ -41,16 +65,46 @@ public class RdfDataLoader {
         this.verbose = verbose;
     }
 
+    ///////////////////////
+    // Getters & Setters //
+    ///////////////////////
+
+    /**
+     * Sets the number of threads used to parse input files.
+     *
+     * With more than one thread, files are parsed concurrently and merged into
+     * the resulting graph in the order of the inputs.
+     *
+     * @param loadThreads Number of threads, must be at least 1.
+     */
+    public void setLoadThreads(int loadThreads) {
+        if (loadThreads < 1) {
+            throw new IllegalArgumentException("The number of load threads must be at least 1: " + loadThreads);
+        }
+        this.loadThreads = loadThreads;
+    }
+
+    /**
+     * Sets whether the ontologies named in {@code owl:imports} statements are
+     * loaded into the resulting graph, transitively, through the
+     * {@link HttpCache}.
+     *
+     * @param owlImport True to load imported ontologies.
+     */
+    public void setOwlImport(boolean owlImport) {
+        this.owlImport = owlImport;
+    }
+
     ////////////////////
     // Public methods //
     ////////////////////
 
     /**
      * Load RDF data into a Corese Graph.
-     * 
+     *
      * Load from standard input if no input is provided.
      * Load from URL or file if input is a valid URL or file path.
-     * 
+     *
      * @param inputs      Paths or URLs of the files to load.
      * @param inputFormat Input file serialization format.
      * @param recursive   If true, load RDF data from subdirectories.
@@ -61,31 +115,79 @@ public class RdfDataLoader {
 
         // If no input is provided, load from standard input
         if (inputs == null || inputs.length == 0) {
-            return this.LoadFromStdin(inputFormat);
+            Graph graph = this.LoadFromStdin(inputFormat);
+            this.loadImports(graph, List.of());
+            return graph;
         }
 
+        List<RdfInputSource> sources = this.listSources(inputs, recursive);
         Graph graph = Graph.create();
 
+        long start = System.nanoTime();
+        HeapUsage.resetPeak();
+
+        if (this.loadThreads > 1 && sources.size() > 1) {
+            this.loadInParallel(sources, inputFormat, graph);
+        } else {
+            // Parse every source straight into the resulting graph, large
+            // line-based files in parallel chunks
+            Load load = Load.create(graph);
+            for (RdfInputSource source : sources) {
+                EnumRdfInputFormat sourceFormat = this.getInputFormat(source, inputFormat);
+                if (this.loadThreads > 1 && !source.isUrl()
+                        && MappedLineLoader.supports(source.getPath(), sourceFormat)) {
+                    this.loadInChunks(source, sourceFormat, graph);
+                } else {
+                    this.loadFromSource(source, sourceFormat, load);
+                }
+            }
+        }
+        this.loadImports(graph, sources);
+
+        if (this.verbose) {
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            this.spec.commandLine().getErr().println("Loaded " + graph.size() + " triples from " + sources.size()
+                    + " files in " + elapsed + " ms (peak heap: " + HeapUsage.getPeakMiB() + " MiB)");
+        }
+
+        return graph;
+    }
+
+    /**
+     * List the files to load from the given inputs.
+     *
+     * Directories are expanded into the files they contain, sorted by name, so
+     * that the list is the same from one run to another.
+     *
+     * @param inputs    Paths or URLs of the files to load.
+     * @param recursive If true, list files from subdirectories.
+     * @return The sources to load, in order.
+     */
+    public List<RdfInputSource> listSources(String[] inputs, boolean recursive) {
+        List<RdfInputSource> sources = new ArrayList<>();
+
         for (String input : inputs) {
             InputType type = InputTypeDetector.detect(input);
 
             switch (type) {
                 case URL:
-                    Graph resultGraphUrl = this.loadFromURL(ConvertString.toUrlOrThrow(input), inputFormat);
-                    graph.merge(resultGraphUrl);
+                    sources.add(RdfInputSource.fromUrl(ConvertString.toUrlOrThrow(input)));
                     break;
 
                 case FILE_PATH:
                     Path path = ConvertString.toPathOrThrow(input);
-                    File file = path.toFile();
-                    Graph resultGraph;
 
-                    if (file.isDirectory()) {
-                        resultGraph = this.loadFromDirectory(path, inputFormat, recursive);
+                    if (path.toFile().isDirectory()) {
+                        int before = sources.size();
+                        this.listDirectory(path, recursive, sources);
+
+                        if (this.verbose) {
+                            this.spec.commandLine().getErr()
+                                    .println("Listed directory: " + path + " (" + (sources.size() - before) + " files)");
+                        }
                     } else {
-                        resultGraph = this.loadFromFile(path, inputFormat);
+                        sources.add(RdfInputSource.fromFile(path));
                     }
-                    graph.merge(resultGraph);
                     break;
 
                 default:
@@ -93,7 +195,22 @@ public class RdfDataLoader {
             }
         }
 
-        return graph;
+        return sources;
+    }
+
+    /**
+     * Get the serialization format of a source.
+     *
+     * @param source      Source to load.
+     * @param inputFormat Input format given by the user, or null to guess it
+     *                    from the file extension.
+     * @return The input format.
+     */
+    public EnumRdfInputFormat getInputFormat(RdfInputSource source, EnumRdfInputFormat inputFormat) {
+        if (inputFormat != null) {
+            return inputFormat;
+        }
+        return this.guessInputFormat(source.getUncompressedName()).orElse(null);
     }
 
     /////////////////////
@@ -108,7 +225,13 @@ public class RdfDataLoader {
      */
     private Graph LoadFromStdin(EnumRdfInputFormat inputFormat) {
 
-        Graph graph = this.loadFromInputStream(System.in, inputFormat);
+        Graph graph = Graph.create();
+        try {
+            InputStream inputStream = EnumCompression.decompress(System.in);
+            this.loadFromInputStream(inputStream, inputFormat, "standard input", Load.create(graph));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to read standard input", e);
+        }
 
         if (this.verbose) {
             this.spec.commandLine().getErr().println("Loaded file: standard input");
@@ -118,110 +241,258 @@ public class RdfDataLoader {
     }
 
     /**
-     * Load RDF data from a path or URL into a Corese Graph.
+     * Load RDF data from a file or URL into a Corese Graph.
      *
-     * @param url         URL of the file to load.
+     * @param source      Source to load.
      * @param inputFormat Input file serialization format.
-     * @return The Corese Graph containing the RDF data.
+     * @param load        Loader of the graph to load the data into.
      */
-    private Graph loadFromURL(URL url, EnumRdfInputFormat inputFormat) {
+    private void loadFromSource(RdfInputSource source, EnumRdfInputFormat inputFormat, Load load) {
 
         // If the input format is not provided, try to determine it from the file
-        if (inputFormat == null) {
-            Optional<EnumRdfInputFormat> inputFormatOptional = this.guessInputFormat(url.toString());
-            if (inputFormatOptional.isPresent()) {
-                inputFormat = inputFormatOptional.get();
-            }
-        }
+        inputFormat = this.getInputFormat(source, inputFormat);
 
-        // Load RDF data from URL
-        InputStream inputStream;
-        try {
-            inputStream = url.openStream();
+        // Load RDF data from file or URL
+        try (InputStream inputStream = source.open()) {
+            this.loadFromInputStream(inputStream, inputFormat, source.toString(), load);
         } catch (IOException e) {
-            throw new IllegalArgumentException("Failed to open URL: " + url.toString(), e);
+            throw new IllegalArgumentException("Failed to close RDF data file: " + source, e);
         }
-        Graph graph = this.loadFromInputStream(inputStream, inputFormat);
 
         if (this.verbose) {
-            this.spec.commandLine().getErr().println("Loaded file: " + url.toString());
+            this.spec.commandLine().getErr().println("Loaded file: " + source);
         }
-        return graph;
     }
 
     /**
-     * Load RDF data from a path to a file into a Corese Graph.
+     * Load a large N-Triples or N-Quads file by parsing chunks of it in
+     * parallel.
      *
-     * @param path        Path of the file to load.
+     * @param source      Source to load, a local file.
      * @param inputFormat Input file serialization format.
-     * @return The Corese Graph containing the RDF data.
+     * @param graph       Graph to load the data into.
      */
-    private Graph loadFromFile(Path path, EnumRdfInputFormat inputFormat) {
+    private void loadInChunks(RdfInputSource source, EnumRdfInputFormat inputFormat, Graph graph) {
+        long start = System.nanoTime();
 
-        // If the input format is not provided, try to determine it from the file
-        if (inputFormat == null) {
-            Optional<EnumRdfInputFormat> inputFormatOptional = this.guessInputFormat(path.toString());
-            if (inputFormatOptional.isPresent()) {
-                inputFormat = inputFormatOptional.get();
+        MappedLineLoader chunkLoader = new MappedLineLoader(this.loadThreads);
+        chunkLoader.load(source.getPath(), inputFormat, graph);
+
+        if (this.verbose) {
+            this.spec.commandLine().getErr().println("Loaded file: " + source + " in " + chunkLoader.getChunks()
+                    + " chunks with " + this.loadThreads + " threads in " + (System.nanoTime() - start) / 1_000_000
+                    + " ms");
+
+            // Lines with blank nodes are not parsed in parallel
+            long blankNodeBytes = chunkLoader.getBlankNodeBytes();
+            if (blankNodeBytes > 0) {
+                long percent = 100 * blankNodeBytes / Math.max(1, source.getPath().toFile().length());
+                this.spec.commandLine().getErr().println(blankNodeBytes + " bytes (" + percent
+                        + "% of the file) of lines with blank nodes were parsed on a single thread"
+                        + (percent >= 50 ? ", more load threads will not make this file much faster" : ""));
             }
         }
+    }
 
-        // Load RDF data from file
-        InputStream inputStream;
-        try {
-            inputStream = new FileInputStream(path.toFile());
-        } catch (FileNotFoundException e) {
-            throw new IllegalArgumentException("Failed to open RDF data file: " + path.toString(), e);
-        }
-        Graph graph = this.loadFromInputStream(inputStream, inputFormat);
+    /**
+     * Load sources concurrently and merge them into a graph.
+     *
+     * Local files are parsed on a fixed pool of {@code loadThreads} threads and
+     * URLs on virtual threads, since they mostly wait on the network. A Corese
+     * graph cannot be written from several threads, so each source is parsed
+     * into its own graph before being merged. At most
+     * twice as many sources as threads are in flight at any time, and parsed
+     * graphs are merged in the order of the sources, so the result does not
+     * depend on the number of threads.
+     *
+     * @param sources     Sources to load.
+     * @param inputFormat Input file serialization format.
+     * @param graph       Graph to merge the loaded data into.
+     */
+    private void loadInParallel(List<RdfInputSource> sources, EnumRdfInputFormat inputFormat, Graph graph) {
 
         if (this.verbose) {
-            this.spec.commandLine().getErr().println("Loaded file: " + path);
+            this.spec.commandLine().getErr()
+                    .println("Loading " + sources.size() + " files with " + this.loadThreads + " threads");
+        }
+
+        int window = 2 * this.loadThreads;
+        Deque<Future<Graph>> pending = new ArrayDeque<>();
+
+        try (ExecutorService fileExecutor = Executors.newFixedThreadPool(this.loadThreads);
+                ExecutorService urlExecutor = Executors.newVirtualThreadPerTaskExecutor()) {
+
+            try {
+                int next = 0;
+                while (next < sources.size() || !pending.isEmpty()) {
+
+                    // Keep the window full
+                    while (next < sources.size() && pending.size() < window) {
+                        RdfInputSource source = sources.get(next++);
+                        ExecutorService executor = source.isUrl() ? urlExecutor : fileExecutor;
+                        pending.add(executor.submit(() -> {
+                            Graph sourceGraph = Graph.create();
+                            this.loadFromSource(source, inputFormat, Load.create(sourceGraph));
+                            return sourceGraph;
+                        }));
+                    }
+
+                    // Merge the oldest source as soon as it is parsed
+                    graph.merge(this.await(pending.poll()));
+                }
+            } finally {
+                // Stop the remaining sources after a failure
+                for (Future<Graph> future : pending) {
+                    future.cancel(true);
+                }
+                fileExecutor.shutdownNow();
+                urlExecutor.shutdownNow();
+            }
         }
-        return graph;
     }
 
     /**
-     * Load RDF data from a directory into a Corese Graph.
+     * Load the ontologies named in {@code owl:imports} statements of a graph,
+     * until no new import is found.
      *
-     * @param path        Path of the directory to load.
-     * @param inputFormat Input file serialization format.
-     * @param recursive   If true, load RDF data from subdirectories.
-     * @return The Corese Graph containing the RDF data.
+     * Each ontology is loaded once, and never if it is one of the sources. An
+     * ontology that fails to load is reported and skipped.
+     *
+     * @param graph   Graph to load the ontologies into.
+     * @param sources Sources already loaded into the graph.
      */
-    private void loadFromDirectoryRecursive(Path path, EnumRdfInputFormat inputFormat, boolean recursive, Graph graph) {
-
-        File[] files = path.toFile().listFiles();
+    private void loadImports(Graph graph, List<RdfInputSource> sources) {
+        if (!this.owlImport) {
+            return;
+        }
 
-        if (files != null) {
-            for (File childFile : files) {
+        Set<String> imported = new HashSet<>();
+        for (RdfInputSource source : sources) {
+            if (source.isUrl()) {
+                imported.add(source.getUrl().toString());
+            }
+        }
 
-                if (childFile.isDirectory() && recursive) {
-                    this.loadFromDirectoryRecursive(childFile.toPath(), inputFormat, recursive, graph);
-                } else if (childFile.isFile()) {
-                    Graph resultGraph = this.loadFromFile(childFile.toPath(), inputFormat);
-                    graph.merge(resultGraph);
+        Load load = Load.create(graph);
+        boolean found = true;
+        while (found) {
+            found = false;
+            for (String uri : this.listImports(graph)) {
+                if (imported.add(uri)) {
+                    this.loadImport(uri, load);
+                    found = true;
                 }
             }
         }
     }
 
     /**
-     * Load RDF data from a directory into a Corese Graph.
-     * 
-     * @param path        Path of the directory to load.
-     * @param inputFormat Input file serialization format.
-     * @param recursive   If true, load RDF data from subdirectories.
-     * @return The Corese Graph containing the RDF data.
+     * List the ontologies named in {@code owl:imports} statements.
+     *
+     * @param graph Graph to search.
+     * @return The URIs of the imported ontologies.
      */
-    private Graph loadFromDirectory(Path path, EnumRdfInputFormat inputFormat, boolean recursive) {
-        Graph graph = Graph.create();
-        this.loadFromDirectoryRecursive(path, inputFormat, recursive, graph);
+    private List<String> listImports(Graph graph) {
+        List<String> uris = new ArrayList<>();
+        for (Edge edge : graph.getEdges(OWL_IMPORTS)) {
+            if (edge != null && edge.getNode(1).getDatatypeValue().isURI()) {
+                uris.add(edge.getNode(1).getLabel());
+            }
+        }
+        return uris;
+    }
 
-        if (this.verbose) {
-            this.spec.commandLine().getErr().println("Loaded directory: " + path);
+    /**
+     * Load an imported ontology through the HTTP cache.
+     *
+     * The serialization format is read from the media type of the response,
+     * or guessed from the URI.
+     *
+     * @param uri  URI of the ontology.
+     * @param load Loader of the graph to load the ontology into.
+     */
+    private void loadImport(String uri, Load load) {
+        try (HttpCache.Resource resource = HttpCache.getInstance().open(ConvertString.toUrlOrThrow(uri),
+                IMPORT_ACCEPT);
+                InputStream inputStream = EnumCompression.decompress(resource.getBody())) {
+
+            EnumRdfInputFormat inputFormat = this.formatOfMediaType(resource.getContentType());
+            if (inputFormat == null) {
+                inputFormat = this.guessInputFormat(EnumCompression.stripExtension(uri)).orElse(null);
+            }
+            this.loadFromInputStream(inputStream, inputFormat, uri, load);
+
+            if (this.verbose) {
+                this.spec.commandLine().getErr().println("Imported ontology: " + uri);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            this.spec.commandLine().getErr()
+                    .println("Warning: failed to import ontology " + uri + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the serialization format of a media type.
+     *
+     * @param contentType Value of a {@code Content-Type} header, or null.
+     * @return The format, or null if the media type is not an RDF format.
+     */
+    private EnumRdfInputFormat formatOfMediaType(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        String mediaType = contentType.split(";", 2)[0].trim().toLowerCase();
+        for (EnumRdfInputFormat format : EnumRdfInputFormat.values()) {
+            if (format.toString().contains("/") && format.toString().equals(mediaType)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Wait for a source to be parsed.
+     *
+     * @param future Future of the parsed graph.
+     * @return The parsed graph.
+     */
+    private Graph await(Future<Graph> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) e.getCause();
+            }
+            throw new IllegalArgumentException("Failed to load RDF data: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException("Interrupted while loading RDF data", e);
+        }
+    }
+
+    /**
+     * List the files of a directory.
+     *
+     * @param path      Path of the directory to list.
+     * @param recursive If true, list files from subdirectories.
+     * @param sources   List to add the files to.
+     */
+    private void listDirectory(Path path, boolean recursive, List<RdfInputSource> sources) {
+
+        File[] files = path.toFile().listFiles();
+
+        if (files != null) {
+            Arrays.sort(files, Comparator.comparing(File::getName));
+
+            for (File childFile : files) {
+
+                if (childFile.isDirectory() && recursive) {
+                    this.listDirectory(childFile.toPath(), recursive, sources);
+                } else if (childFile.isFile()) {
+                    sources.add(RdfInputSource.fromFile(childFile.toPath()));
+                }
+            }
         }
-        return graph;
     }
 
     /**
@@ -229,12 +500,11 @@ public class RdfDataLoader {
      *
      * @param inputStream Input stream of the file to load.
      * @param inputFormat Input file serialization format.
-     * @return The Corese Graph containing the RDF data.
+     * @param sourceName  Name of the source, used in error messages.
+     * @param load        Loader of the graph to load the data into.
      */
-    private Graph loadFromInputStream(InputStream inputStream, EnumRdfInputFormat inputFormat) {
-
-        Graph graph = Graph.create();
-        Load load = Load.create(graph);
+    private void loadFromInputStream(InputStream inputStream, EnumRdfInputFormat inputFormat, String sourceName,
+            Load load) {
 
         if (inputFormat == null) {
             throw new IllegalArgumentException(
@@ -243,10 +513,9 @@ public class RdfDataLoader {
         } else {
             try {
                 load.parse(inputStream, inputFormat.getCoreseFormat());
-                return graph;
             } catch (Exception e) {
-                throw new IllegalArgumentException("Failed to parse RDF file. Check if file is well-formed and that "
-                        + "the input format is correct. " + e.getMessage(), e);
+                throw new IllegalArgumentException("Failed to parse RDF file: " + sourceName
+                        + ". Check if file is well-formed and that the input format is correct. " + e.getMessage(), e);
             }
         }
     }
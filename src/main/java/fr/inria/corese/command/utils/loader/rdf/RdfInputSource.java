@@ -0,0 +1,144 @@
+package fr.inria.corese.command.utils.loader.rdf;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Path;
+
+import fr.inria.corese.command.utils.compression.EnumCompression;
+import fr.inria.corese.command.utils.http.HttpCache;
+
+/**
+ * A single RDF input to load: either a local file or a URL.
+ */
+public class RdfInputSource {
+
+    private final Path path;
+    private final URL url;
+
+    /////////////////
+    // Constructor //
+    /////////////////
+
+    /**
+     * Constructor.
+     *
+     * @param path Path of the file, or null if the source is a URL.
+     * @param url  URL of the file, or null if the source is a local file.
+     */
+    private RdfInputSource(Path path, URL url) {
+        this.path = path;
+        this.url = url;
+    }
+
+    /**
+     * Create a source from a local file.
+     *
+     * @param path Path of the file.
+     * @return The source.
+     */
+    public static RdfInputSource fromFile(Path path) {
+        return new RdfInputSource(path, null);
+    }
+
+    /**
+     * Create a source from a URL.
+     *
+     * @param url URL of the file.
+     * @return The source.
+     */
+    public static RdfInputSource fromUrl(URL url) {
+        return new RdfInputSource(null, url);
+    }
+
+    ///////////////////////
+    // Getters & Setters //
+    ///////////////////////
+
+    /**
+     * Check if the source is a URL.
+     *
+     * @return True if the source is a URL, false if it is a local file.
+     */
+    public boolean isUrl() {
+        return this.url != null;
+    }
+
+    /**
+     * Get the path of the file.
+     *
+     * @return The path, or null if the source is a URL.
+     */
+    public Path getPath() {
+        return this.path;
+    }
+
+    /**
+     * Get the URL of the file.
+     *
+     * @return The URL, or null if the source is a local file.
+     */
+    public URL getUrl() {
+        return this.url;
+    }
+
+    ////////////////////
+    // Public methods //
+    ////////////////////
+
+    /**
+     * Get the name of the source without its compression extension, to guess
+     * the serialization format from.
+     *
+     * @return The path or URL of the source, without a trailing {@code .gz},
+     *         {@code .bz2} or {@code .zst}.
+     */
+    public String getUncompressedName() {
+        return EnumCompression.stripExtension(this.toString());
+    }
+
+    /**
+     * Open an input stream on the source.
+     *
+     * URLs are opened through the {@link HttpCache}. Gzip, bzip2 and zstd
+     * compressed data is detected from its first bytes and decompressed on the
+     * fly.
+     *
+     * @return The input stream. The caller is responsible for closing it.
+     * @throws IllegalArgumentException If the source cannot be opened.
+     */
+    public InputStream open() {
+        InputStream inputStream;
+        if (this.isUrl()) {
+            try {
+                inputStream = HttpCache.getInstance().openStream(this.url, null);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Failed to open URL: " + this.url.toString(), e);
+            }
+        } else {
+            try {
+                inputStream = new FileInputStream(this.path.toFile());
+            } catch (FileNotFoundException e) {
+                throw new IllegalArgumentException("Failed to open RDF data file: " + this.path.toString(), e);
+            }
+        }
+
+        try {
+            return EnumCompression.decompress(inputStream);
+        } catch (IOException e) {
+            try {
+                inputStream.close();
+            } catch (IOException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw new IllegalArgumentException("Failed to decompress RDF data file: " + this.toString(), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.isUrl() ? this.url.toString() : this.path.toString();
+    }
+}
@@ -2,12 +2,20 @@ package fr.inria.corese.command.utils.loader.sparql;
 
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import fr.inria.corese.command.utils.ConvertString;
 import fr.inria.corese.command.utils.InputTypeDetector;
+import fr.inria.corese.command.utils.http.HttpCache;
 import picocli.CommandLine.Model.CommandSpec;
 
 /**
@@ -71,10 +79,132 @@ public class SparqlQueryLoader {
         }
     }
 
+    /**
+     * Expand a query input into the list of queries it designates.
+     * 
+     * A directory designates the {@code .rq} and {@code .sparql} files it
+     * contains, and a path with {@code *}, {@code ?} or {@code [} the files
+     * matching it as a glob. Other inputs designate a single query.
+     * 
+     * @param input Path, directory, glob, URL, or SPARQL query.
+     * @return The inputs to pass to {@link #load}, sorted by name.
+     */
+    public List<String> expand(String input) {
+
+        if (input == null || input.isEmpty()) {
+            return List.of("");
+        }
+
+        InputTypeDetector.InputType type = InputTypeDetector.detect(input);
+        if (type == InputTypeDetector.InputType.SPARQL || type == InputTypeDetector.InputType.URL) {
+            return List.of(input);
+        }
+
+        if (isGlob(input)) {
+            return this.expandGlob(input);
+        }
+
+        Path path = Path.of(input);
+        if (Files.isDirectory(path)) {
+            return this.expandDirectory(path);
+        }
+
+        return List.of(input);
+    }
+
     /////////////////////
     // Private methods //
     /////////////////////
 
+    /**
+     * Check if an input is a glob pattern.
+     * 
+     * @param input Input to check.
+     * @return True if the input contains glob characters.
+     */
+    private static boolean isGlob(String input) {
+        return input.contains("*") || input.contains("?") || input.contains("[");
+    }
+
+    /**
+     * List the SPARQL query files of a directory.
+     * 
+     * @param directory Directory to list.
+     * @return The paths of the query files, sorted by name.
+     */
+    private List<String> expandDirectory(Path directory) {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<String> queries = files
+                    .filter(Files::isRegularFile)
+                    .filter(file -> file.toString().endsWith(".rq") || file.toString().endsWith(".sparql"))
+                    .map(Path::toString)
+                    .sorted()
+                    .collect(Collectors.toList());
+
+            if (queries.isEmpty()) {
+                throw new IllegalArgumentException("No SPARQL query file (.rq, .sparql) in directory: " + directory);
+            }
+            if (this.verbose) {
+                this.spec.commandLine().getErr()
+                        .println("Found " + queries.size() + " SPARQL query files in directory: " + directory);
+            }
+            return queries;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to list directory: " + directory, e);
+        }
+    }
+
+    /**
+     * List the files matching a glob pattern.
+     * 
+     * The search starts from the longest leading part of the pattern without
+     * glob characters, and only goes as deep as the remaining segments of the
+     * pattern unless it contains {@code **}.
+     * 
+     * @param glob Glob pattern.
+     * @return The paths of the matching files, sorted by name.
+     */
+    private List<String> expandGlob(String glob) {
+        Path base = Path.of(".");
+        Path pattern = Path.of(glob);
+        if (pattern.isAbsolute()) {
+            base = pattern.getRoot();
+        }
+        int fixedSegments = 0;
+        for (Path segment : pattern) {
+            if (isGlob(segment.toString())) {
+                break;
+            }
+            base = base.resolve(segment);
+            fixedSegments++;
+        }
+
+        // Files cannot match below the last segment of the pattern
+        int maxDepth = glob.contains("**") ? Integer.MAX_VALUE : pattern.getNameCount() - fixedSegments;
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern.normalize());
+
+        try (Stream<Path> files = Files.walk(base, maxDepth)) {
+            List<String> queries = files
+                    .filter(Files::isRegularFile)
+                    .filter(file -> matcher.matches(file.normalize()))
+                    .map(Path::toString)
+                    .sorted()
+                    .collect(Collectors.toList());
+
+            if (queries.isEmpty()) {
+                throw new IllegalArgumentException("No SPARQL query file matches: " + glob);
+            }
+            if (this.verbose) {
+                this.spec.commandLine().getErr()
+                        .println("Found " + queries.size() + " SPARQL query files matching: " + glob);
+            }
+            return queries;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to list files matching: " + glob, e);
+        }
+    }
+
     /**
      * Load a SPARQL query from standard input.
      *
@@ -114,21 +244,19 @@ public class SparqlQueryLoader {
     }
 
     /**
-     * Load a SPARQL query from a URL.
+     * Load a SPARQL query from a URL, through the {@link HttpCache}.
      *
      * @param url URL of the file to load.
      * @return The loaded query.
      */
     private String loadFromUrl(URL url) {
-        InputStream inputStream;
-        try {
-            inputStream = url.openStream();
-        } catch (Exception e) {
+        String query;
+        try (HttpCache.Resource resource = HttpCache.getInstance().open(url, null)) {
+            query = this.loadFromInputStream(resource.getBody());
+        } catch (IOException e) {
             throw new IllegalArgumentException("Failed to open SPARQL query file: " + url.toString(), e);
         }
 
-        String query = this.loadFromInputStream(inputStream);
-
         if (this.verbose) {
             this.spec.commandLine().getErr().println("Loaded SPARQL query file: " + url.toString());
         }
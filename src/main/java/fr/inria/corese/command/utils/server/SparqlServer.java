@@ -0,0 +1,458 @@
+package fr.inria.corese.command.utils.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import fr.inria.corese.command.utils.CompiledQueryCache;
+import fr.inria.corese.command.utils.exporter.sparql.EnumResultFormat;
+import fr.inria.corese.command.utils.exporter.sparql.SparqlResultExporter;
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.core.Mappings;
+import fr.inria.corese.core.kgram.core.Query;
+import fr.inria.corese.core.query.QueryProcess;
+import fr.inria.corese.core.sparql.api.ResultFormatDef;
+import picocli.CommandLine.Model.CommandSpec;
+
+/**
+ * Local SPARQL server that keeps a graph in memory between queries.
+ *
+ * The server listens on the loopback interface only and follows the SPARQL
+ * protocol: queries are sent with GET or POST in the {@code query} parameter,
+ * updates with POST in the {@code update} parameter, or directly as the
+ * request body. The result format is chosen with the {@code format} parameter,
+ * using the names of {@link EnumResultFormat}, or with the media types of the
+ * {@code Accept} header.
+ *
+ * The server is read-only unless updates are allowed with
+ * {@link #setAllowUpdates(boolean)}. Requests whose {@code Host} header is not
+ * a loopback address are rejected, so that web pages cannot reach the server
+ * through a DNS name that resolves to the local machine.
+ *
+ * Queries run concurrently, updates run alone.
+ */
+public class SparqlServer implements AutoCloseable {
+
+    public static final String PATH = "/sparql";
+
+    private final CommandSpec spec;
+    private final boolean verbose;
+    private final Graph graph;
+
+    // Updates are rejected unless explicitly allowed
+    private boolean allowUpdates = false;
+
+    // Queries share the graph, updates need it alone
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Query processes are not thread-safe, so each thread has its own
+    private final ThreadLocal<QueryProcess> queryProcess;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /////////////////
+    // Constructor //
+    /////////////////
+
+    /**
+     * Constructor.
+     *
+     * @param spec    Command specification.
+     * @param verbose If true, print information about each request.
+     * @param graph   Graph to query.
+     */
+    public SparqlServer(CommandSpec spec, boolean verbose, Graph graph) {
+        this.spec = spec;
+        this.verbose = verbose;
+        this.graph = graph;
+        this.queryProcess = ThreadLocal.withInitial(() -> QueryProcess.create(graph));
+    }
+
+    ////////////////////
+    // Public methods //
+    ////////////////////
+
+    /**
+     * Allow SPARQL updates to modify the graph held by the server.
+     *
+     * @param allowUpdates If true, updates are executed, otherwise they are
+     *                     rejected with the status 403.
+     */
+    public void setAllowUpdates(boolean allowUpdates) {
+        this.allowUpdates = allowUpdates;
+    }
+
+    /**
+     * Start listening on the loopback interface.
+     *
+     * @param port    Port to listen on, or 0 to pick a free port.
+     * @param threads Number of threads handling requests.
+     * @return The port the server listens on.
+     * @throws IllegalArgumentException If the server cannot be started.
+     */
+    public int start(int port, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of server threads must be at least 1, got: " + threads);
+        }
+
+        try {
+            this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to start server on port: " + port, e);
+        }
+
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.server.setExecutor(this.executor);
+        this.server.createContext(PATH, this::handle);
+        this.server.start();
+
+        return this.server.getAddress().getPort();
+    }
+
+    /**
+     * Stop the server, letting running requests finish.
+     */
+    @Override
+    public void close() {
+        if (this.server != null) {
+            this.server.stop(1);
+            this.executor.shutdown();
+            this.server = null;
+        }
+    }
+
+    /////////////////////
+    // Private methods //
+    /////////////////////
+
+    /**
+     * Handle a SPARQL protocol request.
+     *
+     * @param exchange HTTP exchange.
+     * @throws IOException If the response cannot be written.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!isLoopbackHost(exchange.getRequestHeaders().getFirst("Host"))) {
+                this.sendError(exchange, 403, "Requests must be sent to localhost");
+                return;
+            }
+
+            Map<String, String> parameters;
+            try {
+                parameters = this.readParameters(exchange);
+            } catch (IllegalArgumentException e) {
+                this.sendError(exchange, 400, e.getMessage());
+                return;
+            }
+
+            String text = parameters.containsKey("update") ? parameters.get("update") : parameters.get("query");
+            if (text == null || text.isBlank()) {
+                this.sendError(exchange, 400, "Missing 'query' or 'update' parameter");
+                return;
+            }
+
+            // Compile first to know which lock to take
+            QueryProcess exec = this.queryProcess.get();
+            Query query;
+            try {
+                query = CompiledQueryCache.getInstance().compile(exec, text);
+            } catch (Exception e) {
+                this.sendError(exchange, 400, "Invalid SPARQL query: " + e.getMessage());
+                return;
+            }
+
+            boolean isUpdate = query.getAST().isUpdate();
+            if (isUpdate && !this.allowUpdates) {
+                this.sendError(exchange, 403, "SPARQL updates are disabled, start the server with --allow-updates");
+                return;
+            }
+            if (isUpdate && "GET".equals(exchange.getRequestMethod())) {
+                this.sendError(exchange, 405, "SPARQL updates must be sent with POST");
+                return;
+            }
+
+            Lock graphLock = isUpdate ? this.lock.writeLock() : this.lock.readLock();
+            graphLock.lock();
+            try {
+                this.execute(exchange, exec, query, parameters.get("format"));
+            } finally {
+                graphLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Execute a compiled query and stream its result.
+     *
+     * @param exchange HTTP exchange.
+     * @param exec     Query process of the current thread.
+     * @param query    Compiled query.
+     * @param format   Value of the format parameter, or null.
+     * @throws IOException If the response cannot be written.
+     */
+    private void execute(HttpExchange exchange, QueryProcess exec, Query query, String format) throws IOException {
+        long start = System.nanoTime();
+
+        Mappings mappings;
+        try {
+            mappings = CompiledQueryCache.getInstance().execute(exec, query);
+        } catch (Exception e) {
+            this.sendError(exchange, 500, "Error when executing SPARQL query: " + e.getMessage());
+            return;
+        }
+
+        // Updates change the resident graph, there is nothing to send back
+        if (query.getAST().isUpdate()) {
+            exchange.sendResponseHeaders(204, -1);
+            this.log(exchange, 204, start);
+            return;
+        }
+
+        EnumResultFormat resultFormat;
+        try {
+            resultFormat = SparqlResultExporter.resolveFormat(mappings,
+                    this.findFormat(format, exchange.getRequestHeaders().getFirst("Accept")));
+        } catch (IllegalArgumentException e) {
+            this.sendError(exchange, 406, e.getMessage());
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", contentType(resultFormat) + "; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream body = exchange.getResponseBody()) {
+            SparqlResultExporter exporter = new SparqlResultExporter(this.spec, false, null);
+            exporter.export(mappings, this.graph, resultFormat, body);
+        }
+        this.log(exchange, 200, start);
+    }
+
+    /**
+     * Read the parameters of a request from its URL and body.
+     *
+     * @param exchange HTTP exchange.
+     * @return The parameters.
+     * @throws IOException If the body cannot be read.
+     */
+    private Map<String, String> readParameters(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), parameters);
+
+        String method = exchange.getRequestMethod();
+        if ("GET".equals(method)) {
+            return parameters;
+        }
+        if (!"POST".equals(method)) {
+            throw new IllegalArgumentException("Unsupported method: " + method);
+        }
+
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        String mediaType = contentType == null ? "" : contentType.split(";", 2)[0].trim().toLowerCase();
+
+        String body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        switch (mediaType) {
+            case "application/x-www-form-urlencoded":
+                parseForm(body, parameters);
+                break;
+            case "application/sparql-query":
+                parameters.put("query", body);
+                break;
+            case "application/sparql-update":
+                parameters.put("update", body);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported content type: " + contentType);
+        }
+        return parameters;
+    }
+
+    /**
+     * Find the result format requested by the client.
+     *
+     * @param format Value of the format parameter, or null.
+     * @param accept Value of the Accept header, or null.
+     * @return The requested format, or null to use the default format.
+     * @throws IllegalArgumentException If the format parameter is unknown.
+     */
+    private EnumResultFormat findFormat(String format, String accept) {
+        if (format != null) {
+            EnumResultFormat resultFormat = formatByName(format);
+            if (resultFormat == null) {
+                throw new IllegalArgumentException("Unknown result format: " + format);
+            }
+            return resultFormat;
+        }
+
+        if (accept != null) {
+            for (String mediaRange : accept.split(",")) {
+                EnumResultFormat resultFormat = formatByMediaType(mediaRange.split(";", 2)[0].trim());
+                if (resultFormat != null) {
+                    return resultFormat;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find a result format by name.
+     *
+     * @param name Name of the format.
+     * @return The format, or null if the name is unknown.
+     */
+    private static EnumResultFormat formatByName(String name) {
+        for (EnumResultFormat resultFormat : EnumResultFormat.values()) {
+            if (resultFormat.toString().equalsIgnoreCase(name) || resultFormat.name().equalsIgnoreCase(name)) {
+                return resultFormat;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find a result format by media type.
+     *
+     * @param mediaType Media type of an Accept header.
+     * @return The first format with this media type, or null if the media type
+     *         is not served.
+     */
+    private static EnumResultFormat formatByMediaType(String mediaType) {
+        for (EnumResultFormat resultFormat : EnumResultFormat.values()) {
+            if (contentType(resultFormat).equalsIgnoreCase(mediaType)) {
+                return resultFormat;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check that the Host header of a request names the loopback interface.
+     *
+     * @param host Value of the Host header, or null.
+     * @return True if the host is localhost or a loopback address.
+     */
+    private static boolean isLoopbackHost(String host) {
+        if (host == null) {
+            return false;
+        }
+
+        // Remove the port, IPv6 addresses are in brackets
+        String name = host.trim().toLowerCase();
+        int colon = name.lastIndexOf(':');
+        if (colon >= 0 && colon > name.lastIndexOf(']')) {
+            name = name.substring(0, colon);
+        }
+
+        return name.equals("localhost") || name.equals("[::1]") || name.matches("127(\\.\\d{1,3}){3}");
+    }
+
+    /**
+     * Get the media type of a result format.
+     *
+     * @param format Result format.
+     * @return The media type.
+     */
+    private static String contentType(EnumResultFormat format) {
+        ResultFormatDef.format coreseFormat = format.getCoreseFormat();
+        switch (coreseFormat) {
+            case RDF_XML_FORMAT:
+                return "application/rdf+xml";
+            case TURTLE_FORMAT:
+                return "text/turtle";
+            case TRIG_FORMAT:
+                return "application/trig";
+            case JSONLD_FORMAT:
+                return "application/ld+json";
+            case NTRIPLES_FORMAT:
+            case RDFC10_FORMAT:
+            case RDFC10_SHA384_FORMAT:
+                return "application/n-triples";
+            case NQUADS_FORMAT:
+                return "application/n-quads";
+            case XML_FORMAT:
+                return "application/sparql-results+xml";
+            case JSON_FORMAT:
+                return "application/sparql-results+json";
+            case CSV_FORMAT:
+                return "text/csv";
+            case TSV_FORMAT:
+                return "text/tab-separated-values";
+            case MARKDOWN_FORMAT:
+                return "text/markdown";
+            default:
+                return "text/plain";
+        }
+    }
+
+    /**
+     * Parse URL-encoded parameters.
+     *
+     * @param form       URL-encoded parameters, or null.
+     * @param parameters Map to add the parameters to.
+     */
+    private static void parseForm(String form, Map<String, String> parameters) {
+        if (form == null || form.isEmpty()) {
+            return;
+        }
+        for (String pair : form.split("&")) {
+            String[] parts = pair.split("=", 2);
+            String key = URLDecoder.decode(parts[0], StandardCharsets.UTF_8);
+            String value = parts.length > 1 ? URLDecoder.decode(parts[1], StandardCharsets.UTF_8) : "";
+            parameters.putIfAbsent(key, value);
+        }
+    }
+
+    /**
+     * Send an error response.
+     *
+     * @param exchange HTTP exchange.
+     * @param status   HTTP status code.
+     * @param message  Error message.
+     * @throws IOException If the response cannot be written.
+     */
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+        if (this.verbose) {
+            this.spec.commandLine().getErr().println("Request failed with status " + status + ": " + message);
+        }
+    }
+
+    /**
+     * Print information about a request in verbose mode.
+     *
+     * @param exchange HTTP exchange.
+     * @param status   HTTP status code.
+     * @param start    Start time of the request, from {@link System#nanoTime()}.
+     */
+    private void log(HttpExchange exchange, int status, long start) {
+        if (this.verbose) {
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            this.spec.commandLine().getErr().println(exchange.getRequestMethod() + " " + PATH + " " + status
+                    + " in " + elapsed + " ms");
+        }
+    }
+}
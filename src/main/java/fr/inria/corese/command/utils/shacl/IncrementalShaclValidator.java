@@ -0,0 +1,783 @@
+package fr.inria.corese.command.utils.shacl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.inria.corese.command.utils.stream.NTriplesTerms;
+import fr.inria.corese.command.utils.stream.RdfStatement;
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.api.core.Edge;
+import fr.inria.corese.core.kgram.api.core.Node;
+import picocli.CommandLine.Model.CommandSpec;
+
+/**
+ * Utility class to validate a data graph again after a change, starting from
+ * the report of the previous validation.
+ *
+ * Only the focus nodes that the change can affect are evaluated again: the
+ * nodes of the added and removed statements, and the nodes that reach them
+ * through the predicates used in the paths of the shapes, in as many steps as
+ * the longest path, through nested shapes. Their results in the previous
+ * report are replaced by the results of the new evaluation. The neighbours of
+ * each node are looked up in the indexes of the data graph, so that the cost
+ * depends on the size of the change rather than on the size of the data.
+ *
+ * The whole data graph is validated instead when a change cannot be followed
+ * this way: SPARQL-based targets and constraints, changes to the class
+ * hierarchy, and blank nodes, whose labels differ from one parse to another.
+ */
+public class IncrementalShaclValidator {
+
+    private static final String SH = "http://www.w3.org/ns/shacl#";
+    private static final String RDF = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    private static final String RDFS_SUB_CLASS_OF = "<http://www.w3.org/2000/01/rdf-schema#subClassOf>";
+
+    private static final String TARGET_NODE = "<" + SH + "targetNode>";
+    private static final String TARGET_CLASS = "<" + SH + "targetClass>";
+    private static final String TARGET_SUBJECTS_OF = "<" + SH + "targetSubjectsOf>";
+    private static final String TARGET_OBJECTS_OF = "<" + SH + "targetObjectsOf>";
+    private static final String PATH = "<" + SH + "path>";
+    private static final String INVERSE_PATH = "<" + SH + "inversePath>";
+    private static final String RDF_NIL = "<" + RDF + "nil>";
+    private static final String RDF_FIRST = "<" + RDF + "first>";
+    private static final String RDF_REST = "<" + RDF + "rest>";
+    private static final String ALTERNATIVE_PATH = "<" + SH + "alternativePath>";
+    private static final String ZERO_OR_ONE_PATH = "<" + SH + "zeroOrOnePath>";
+
+    // Depth of paths that can be followed any number of times
+    private static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    // Predicates leading to the parts of a path, in the same direction
+    private static final Set<String> PATH_PARTS = Set.of(
+            "<" + RDF + "first>",
+            "<" + RDF + "rest>",
+            "<" + SH + "alternativePath>",
+            "<" + SH + "zeroOrMorePath>",
+            "<" + SH + "oneOrMorePath>",
+            "<" + SH + "zeroOrOnePath>");
+
+    // Paths that can be followed any number of times
+    private static final Set<String> REPEATED_PATHS = Set.of(
+            "<" + SH + "zeroOrMorePath>",
+            "<" + SH + "oneOrMorePath>");
+
+    // Predicates leading from a shape to the shapes it uses on its value nodes
+    private static final Set<String> NESTED_SHAPES = Set.of(
+            "<" + SH + "node>",
+            "<" + SH + "property>",
+            "<" + SH + "qualifiedValueShape>",
+            "<" + SH + "not>");
+
+    // Predicates leading from a shape to lists of shapes it uses
+    private static final Set<String> NESTED_SHAPE_LISTS = Set.of(
+            "<" + SH + "and>",
+            "<" + SH + "or>",
+            "<" + SH + "xone>");
+
+    // Predicates comparing the values of a focus node with those of a property
+    private static final Set<String> COMPARISONS = Set.of(
+            "<" + SH + "equals>",
+            "<" + SH + "disjoint>",
+            "<" + SH + "lessThan>",
+            "<" + SH + "lessThanOrEquals>");
+
+    // Predicates whose effect cannot be followed from the changed statements
+    private static final Set<String> UNSUPPORTED = Set.of(
+            "<" + SH + "target>",
+            "<" + SH + "sparql>",
+            "<" + SH + "validator>",
+            "<" + SH + "nodeValidator>",
+            "<" + SH + "propertyValidator>");
+
+    // Command specification
+    private CommandSpec spec;
+    private boolean verbose;
+
+    // Validator evaluating the shapes
+    private ShaclValidator validator;
+
+    // True if the last report was truncated to the maximum number of violations
+    private boolean truncated = false;
+
+    // True if the data conformed to the shapes in the last validation
+    private boolean conforms = true;
+
+    /////////////////
+    // Constructor //
+    /////////////////
+
+    /**
+     * Constructor.
+     *
+     * @param spec      Command specification.
+     * @param verbose   If true, print information about the validation.
+     * @param validator Validator evaluating the shapes.
+     */
+    public IncrementalShaclValidator(CommandSpec spec, boolean verbose, ShaclValidator validator) {
+        this.spec = spec;
+        this.verbose = verbose;
+        this.validator = validator;
+    }
+
+    ///////////////////////
+    // Getters & Setters //
+    ///////////////////////
+
+    /**
+     * Check if the last report was truncated to the maximum number of
+     * violations of the validator.
+     *
+     * @return True if some results were left out.
+     */
+    public boolean isTruncated() {
+        return this.truncated;
+    }
+
+    /**
+     * Check if the data conformed to the shapes in the last validation,
+     * without reading the report.
+     *
+     * @return True if the last report conforms.
+     */
+    public boolean conforms() {
+        return this.conforms;
+    }
+
+    ////////////////////
+    // Public methods //
+    ////////////////////
+
+    /**
+     * Validate a data graph after a change.
+     *
+     * @param dataGraph   The data graph, with the change applied.
+     * @param shapesGraph The shapes graph.
+     * @param baseline    The report of the validation before the change.
+     * @param added       Statements added by the change.
+     * @param removed     Statements removed by the change.
+     * @return The report graph.
+     * @throws Exception If an error occurs while evaluating the shapes.
+     */
+    public Graph validate(Graph dataGraph, Graph shapesGraph, Graph baseline, Graph added, Graph removed)
+            throws Exception {
+        long start = System.nanoTime();
+
+        if (!isReport(baseline)) {
+            throw new IllegalArgumentException("The baseline does not contain a SHACL validation report.");
+        }
+
+        Map<String, List<RdfStatement>> shapes = bySubject(shapesGraph);
+        List<RdfStatement> changes = statements(added);
+        changes.addAll(statements(removed));
+
+        // Nodes of the changed statements, with their node in the data graph
+        Map<String, Node> affected = new LinkedHashMap<>();
+        for (Graph change : List.of(added, removed)) {
+            for (Edge edge : change.getEdges()) {
+                addAffected(dataGraph, edge.getNode(0), affected);
+                if (!edge.getNode(1).getDatatypeValue().isLiteral()) {
+                    addAffected(dataGraph, edge.getNode(1), affected);
+                }
+            }
+        }
+
+        String reason = unsupportedReason(shapes, changes);
+        if (reason == null) {
+            // Nodes reaching them through the paths of the shapes
+            Set<String> forward = new HashSet<>();
+            Set<String> inverse = new HashSet<>();
+            collectPathPredicates(shapes, forward, inverse);
+            expand(dataGraph, affected, forward, inverse, maxDepth(shapes));
+
+            if (affected.keySet().stream().anyMatch(node -> node.startsWith("_:"))) {
+                reason = "the change reaches blank nodes";
+            }
+        }
+
+        if (reason != null) {
+            if (this.verbose) {
+                this.spec.commandLine().getErr().println("Validating the whole data graph: " + reason);
+            }
+            Graph report = this.validator.validate(dataGraph, shapesGraph);
+            this.truncated = this.validator.isTruncated();
+            this.conforms = this.validator.conforms();
+            return report;
+        }
+
+        // Evaluate the shapes on the affected focus nodes only
+        Map<String, Set<String>> targets = targetedNodes(dataGraph, shapes, affected);
+        ReportMerger merger = this.validator.createMerger();
+        merger.addPrevious(baseline, affected.keySet());
+        this.truncated = merger.isTruncated();
+        if (!targets.isEmpty()) {
+            if (merger.isFull()) {
+                // No room left for the results of the affected focus nodes
+                this.truncated = true;
+            } else {
+                this.validator.validate(dataGraph, retarget(shapes, targets), merger);
+                this.truncated = this.validator.isTruncated();
+            }
+        }
+        this.conforms = merger.conforms();
+
+        if (this.verbose) {
+            long focusNodes = targets.values().stream().flatMap(Set::stream).distinct().count();
+            this.spec.commandLine().getErr().println("Validated " + focusNodes + " focus nodes affected by "
+                    + changes.size() + " changed statements (" + affected.size() + " nodes reached) in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+        return merger.toGraph();
+    }
+
+    /////////////////////
+    // Private methods //
+    /////////////////////
+
+    /**
+     * Group the statements of a graph by subject.
+     *
+     * @param graph The graph.
+     * @return The statements by subject, in N-Triples syntax.
+     */
+    private static Map<String, List<RdfStatement>> bySubject(Graph graph) {
+        Map<String, List<RdfStatement>> bySubject = new LinkedHashMap<>();
+        for (Edge edge : graph.getEdges()) {
+            RdfStatement statement = NTriplesTerms.toStatement(edge);
+            bySubject.computeIfAbsent(statement.getSubject(), subject -> new ArrayList<>()).add(statement);
+        }
+        return bySubject;
+    }
+
+    /**
+     * Get the statements of a graph.
+     *
+     * @param graph The graph.
+     * @return The statements, in N-Triples syntax.
+     */
+    private static List<RdfStatement> statements(Graph graph) {
+        List<RdfStatement> statements = new ArrayList<>();
+        for (Edge edge : graph.getEdges()) {
+            statements.add(NTriplesTerms.toStatement(edge));
+        }
+        return statements;
+    }
+
+    /**
+     * Check if a graph contains a validation report.
+     *
+     * @param graph The graph.
+     * @return True if a node is a {@code sh:ValidationReport}.
+     */
+    private static boolean isReport(Graph graph) {
+        for (RdfStatement statement : statements(graph)) {
+            if (ShaclValidator.RDF_TYPE.equals(statement.getPredicate())
+                    && ("<" + SH + "ValidationReport>").equals(statement.getObject())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find why a change cannot be validated incrementally.
+     *
+     * @param shapes  Statements of the shapes graph by subject.
+     * @param changes Added and removed statements.
+     * @return The reason, or null if the change can be validated
+     *         incrementally.
+     */
+    private static String unsupportedReason(Map<String, List<RdfStatement>> shapes, List<RdfStatement> changes) {
+        for (List<RdfStatement> statements : shapes.values()) {
+            for (RdfStatement statement : statements) {
+                if (UNSUPPORTED.contains(statement.getPredicate())) {
+                    return "the shapes use SPARQL-based targets or constraints";
+                }
+            }
+        }
+        for (RdfStatement statement : changes) {
+            if (RDFS_SUB_CLASS_OF.equals(statement.getPredicate())) {
+                return "the change modifies the class hierarchy";
+            }
+            if (statement.getSubject().startsWith("_:") || statement.getObject().startsWith("_:")) {
+                return "the change contains blank nodes";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Collect the predicates that the shapes follow from a focus node, in the
+     * direction in which they are followed.
+     *
+     * @param shapes  Statements of the shapes graph by subject.
+     * @param forward Predicates followed from subject to object.
+     * @param inverse Predicates followed from object to subject.
+     */
+    private static void collectPathPredicates(Map<String, List<RdfStatement>> shapes, Set<String> forward,
+            Set<String> inverse) {
+        for (List<RdfStatement> statements : shapes.values()) {
+            for (RdfStatement statement : statements) {
+                if (PATH.equals(statement.getPredicate())) {
+                    collectPath(statement.getObject(), false, shapes, forward, inverse, new HashSet<>());
+                } else if (COMPARISONS.contains(statement.getPredicate())) {
+                    forward.add(statement.getObject());
+                }
+            }
+        }
+    }
+
+    /**
+     * Collect the predicates of a path.
+     *
+     * @param path     Path, a predicate or a node describing a complex path.
+     * @param inverted If true, the path is followed backwards.
+     * @param shapes   Statements of the shapes graph by subject.
+     * @param forward  Predicates followed from subject to object.
+     * @param inverse  Predicates followed from object to subject.
+     * @param visited  Nodes of the path already visited.
+     */
+    private static void collectPath(String path, boolean inverted, Map<String, List<RdfStatement>> shapes,
+            Set<String> forward, Set<String> inverse, Set<String> visited) {
+        if (RDF_NIL.equals(path) || !visited.add(path)) {
+            return;
+        }
+        if (path.startsWith("<")) {
+            (inverted ? inverse : forward).add(path);
+            return;
+        }
+        for (RdfStatement statement : shapes.getOrDefault(path, List.of())) {
+            if (INVERSE_PATH.equals(statement.getPredicate())) {
+                collectPath(statement.getObject(), !inverted, shapes, forward, inverse, visited);
+            } else if (PATH_PARTS.contains(statement.getPredicate())) {
+                collectPath(statement.getObject(), inverted, shapes, forward, inverse, visited);
+            }
+        }
+    }
+
+    /**
+     * Get the number of steps that the shapes follow from a focus node: the
+     * length of the longest path, through nested shapes.
+     *
+     * @param shapes Statements of the shapes graph by subject.
+     * @return The number of steps, or {@link #UNBOUNDED} if a path can be
+     *         repeated or a shape uses itself.
+     */
+    private static int maxDepth(Map<String, List<RdfStatement>> shapes) {
+        Map<String, Integer> depths = new HashMap<>();
+        int depth = 0;
+        for (String shape : shapes.keySet()) {
+            depth = Math.max(depth, shapeDepth(shape, shapes, depths, new HashSet<>()));
+        }
+        return depth;
+    }
+
+    /**
+     * Get the number of steps that a shape follows from its focus nodes.
+     *
+     * @param shape    The shape.
+     * @param shapes   Statements of the shapes graph by subject.
+     * @param depths   Depths of the shapes already computed.
+     * @param visiting Shapes whose depth is being computed.
+     * @return The number of steps, or {@link #UNBOUNDED}.
+     */
+    private static int shapeDepth(String shape, Map<String, List<RdfStatement>> shapes, Map<String, Integer> depths,
+            Set<String> visiting) {
+        if (depths.containsKey(shape)) {
+            return depths.get(shape);
+        }
+        if (!visiting.add(shape)) {
+            return UNBOUNDED;
+        }
+
+        int path = 0;
+        int nested = 0;
+        for (RdfStatement statement : shapes.getOrDefault(shape, List.of())) {
+            if (PATH.equals(statement.getPredicate())) {
+                path = Math.max(path, pathDepth(statement.getObject(), shapes, new HashSet<>()));
+            } else if (COMPARISONS.contains(statement.getPredicate())) {
+                nested = Math.max(nested, 1);
+            } else if (NESTED_SHAPES.contains(statement.getPredicate())) {
+                nested = Math.max(nested, shapeDepth(statement.getObject(), shapes, depths, visiting));
+            } else if (NESTED_SHAPE_LISTS.contains(statement.getPredicate())) {
+                for (String member : listMembers(statement.getObject(), shapes)) {
+                    nested = Math.max(nested, shapeDepth(member, shapes, depths, visiting));
+                }
+            }
+        }
+
+        visiting.remove(shape);
+        int depth = add(path, nested);
+        depths.put(shape, depth);
+        return depth;
+    }
+
+    /**
+     * Get the number of steps of a path.
+     *
+     * @param path    Path, a predicate or a node describing a complex path.
+     * @param shapes  Statements of the shapes graph by subject.
+     * @param visited Nodes of the path already visited.
+     * @return The number of steps, or {@link #UNBOUNDED} if the path can be
+     *         repeated.
+     */
+    private static int pathDepth(String path, Map<String, List<RdfStatement>> shapes, Set<String> visited) {
+        if (path.startsWith("<")) {
+            return 1;
+        }
+        if (!visited.add(path)) {
+            return UNBOUNDED;
+        }
+
+        int depth = 0;
+        for (RdfStatement statement : shapes.getOrDefault(path, List.of())) {
+            String predicate = statement.getPredicate();
+            if (REPEATED_PATHS.contains(predicate)) {
+                return UNBOUNDED;
+            } else if (INVERSE_PATH.equals(predicate) || ZERO_OR_ONE_PATH.equals(predicate)) {
+                depth = pathDepth(statement.getObject(), shapes, visited);
+            } else if (ALTERNATIVE_PATH.equals(predicate)) {
+                for (String member : listMembers(statement.getObject(), shapes)) {
+                    depth = Math.max(depth, pathDepth(member, shapes, visited));
+                }
+            } else if (RDF_FIRST.equals(predicate)) {
+                // Sequence path
+                for (String member : listMembers(path, shapes)) {
+                    depth = add(depth, pathDepth(member, shapes, visited));
+                }
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Get the members of an RDF list.
+     *
+     * @param list   Head of the list.
+     * @param shapes Statements of the shapes graph by subject.
+     * @return The members of the list.
+     */
+    private static List<String> listMembers(String list, Map<String, List<RdfStatement>> shapes) {
+        List<String> members = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        String node = list;
+        while (node != null && !RDF_NIL.equals(node) && visited.add(node)) {
+            String next = null;
+            for (RdfStatement statement : shapes.getOrDefault(node, List.of())) {
+                if (RDF_FIRST.equals(statement.getPredicate())) {
+                    members.add(statement.getObject());
+                } else if (RDF_REST.equals(statement.getPredicate())) {
+                    next = statement.getObject();
+                }
+            }
+            node = next;
+        }
+        return members;
+    }
+
+    /**
+     * Add two numbers of steps.
+     *
+     * @param a Number of steps, or {@link #UNBOUNDED}.
+     * @param b Number of steps, or {@link #UNBOUNDED}.
+     * @return The sum, or {@link #UNBOUNDED}.
+     */
+    private static int add(int a, int b) {
+        return (int) Math.min(UNBOUNDED, (long) a + b);
+    }
+
+    /**
+     * Add a node to the affected nodes.
+     *
+     * @param dataGraph The data graph.
+     * @param node      Node of the data graph or of a change.
+     * @param affected  Affected nodes, with their node in the data graph, or
+     *                  null for nodes no longer in it.
+     */
+    private static void addAffected(Graph dataGraph, Node node, Map<String, Node> affected) {
+        String term = NTriplesTerms.toTerm(node);
+        if (!affected.containsKey(term)) {
+            affected.put(term, dataGraph.getNode(node.getDatatypeValue(), false, false));
+        }
+    }
+
+    /**
+     * Add to the affected nodes the nodes of the data graph that reach one of
+     * them through the predicates of the paths, in at most a number of steps.
+     * The neighbours of each node are looked up in the indexes of the graph.
+     *
+     * @param dataGraph The data graph.
+     * @param affected  Affected nodes, completed in place.
+     * @param forward   Predicates followed from subject to object.
+     * @param inverse   Predicates followed from object to subject.
+     * @param depth     Maximum number of steps, or {@link #UNBOUNDED}.
+     */
+    private static void expand(Graph dataGraph, Map<String, Node> affected, Set<String> forward,
+            Set<String> inverse, int depth) {
+        List<Node> forwardProperties = properties(dataGraph, forward);
+        List<Node> inverseProperties = properties(dataGraph, inverse);
+
+        List<Node> frontier = new ArrayList<>();
+        for (Node node : affected.values()) {
+            if (node != null) {
+                frontier.add(node);
+            }
+        }
+
+        for (int step = 0; step < depth && !frontier.isEmpty(); step++) {
+            List<Node> next = new ArrayList<>();
+            for (Node node : frontier) {
+                // Subjects reaching the node forward, objects reaching it backwards
+                for (Node property : forwardProperties) {
+                    for (Edge edge : dataGraph.getEdges(property, node, 1)) {
+                        reach(edge == null ? null : edge.getNode(0), affected, next);
+                    }
+                }
+                for (Node property : inverseProperties) {
+                    for (Edge edge : dataGraph.getEdges(property, node, 0)) {
+                        reach(edge == null ? null : edge.getNode(1), affected, next);
+                    }
+                }
+            }
+            frontier = next;
+        }
+    }
+
+    /**
+     * Add a node reached from an affected node.
+     *
+     * @param node     The node, or null.
+     * @param affected Affected nodes.
+     * @param next     Nodes to follow at the next step.
+     */
+    private static void reach(Node node, Map<String, Node> affected, List<Node> next) {
+        if (node == null) {
+            return;
+        }
+        String term = NTriplesTerms.toTerm(node);
+        if (!affected.containsKey(term)) {
+            affected.put(term, node);
+            // The whole graph is validated once a blank node is reached
+            if (!term.startsWith("_:")) {
+                next.add(node);
+            }
+        }
+    }
+
+    /**
+     * Find the affected nodes selected by the targets of each shape.
+     *
+     * @param dataGraph The data graph.
+     * @param shapes    Statements of the shapes graph by subject.
+     * @param affected  Affected nodes, with their node in the data graph.
+     * @return The targeted nodes by shape, for the shapes that target some.
+     */
+    private static Map<String, Set<String>> targetedNodes(Graph dataGraph, Map<String, List<RdfStatement>> shapes,
+            Map<String, Node> affected) {
+        Map<String, Set<String>> classes = classesOf(dataGraph, affected);
+        Map<String, Set<String>> targets = new LinkedHashMap<>();
+
+        for (Map.Entry<String, List<RdfStatement>> entry : shapes.entrySet()) {
+            Set<String> nodes = new LinkedHashSet<>();
+            for (RdfStatement statement : entry.getValue()) {
+                if (!ShaclValidator.isTargetStatement(statement)) {
+                    continue;
+                }
+                String target = statement.getObject();
+                switch (statement.getPredicate()) {
+                    case TARGET_NODE:
+                        if (affected.containsKey(target)) {
+                            nodes.add(target);
+                        }
+                        break;
+                    case TARGET_CLASS:
+                        addInstances(classes, target, nodes);
+                        break;
+                    case TARGET_SUBJECTS_OF:
+                        addIfUsed(dataGraph, target, 0, affected, nodes);
+                        break;
+                    case TARGET_OBJECTS_OF:
+                        addIfUsed(dataGraph, target, 1, affected, nodes);
+                        break;
+                    default:
+                        // Implicit class target
+                        addInstances(classes, entry.getKey(), nodes);
+                        break;
+                }
+            }
+            if (!nodes.isEmpty()) {
+                targets.put(entry.getKey(), nodes);
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Get the classes of the affected nodes, with their superclasses.
+     *
+     * @param dataGraph The data graph.
+     * @param affected  Affected nodes, with their node in the data graph.
+     * @return The classes by node.
+     */
+    private static Map<String, Set<String>> classesOf(Graph dataGraph, Map<String, Node> affected) {
+        Node type = property(dataGraph, ShaclValidator.RDF_TYPE);
+        Node subClassOf = property(dataGraph, RDFS_SUB_CLASS_OF);
+        Map<String, Set<String>> superClasses = new HashMap<>();
+
+        Map<String, Set<String>> classes = new HashMap<>();
+        if (type == null) {
+            return classes;
+        }
+        for (Map.Entry<String, Node> entry : affected.entrySet()) {
+            if (entry.getValue() == null) {
+                continue;
+            }
+            Set<String> nodeClasses = new HashSet<>();
+            for (Edge edge : dataGraph.getEdges(type, entry.getValue(), 0)) {
+                if (edge != null) {
+                    nodeClasses.addAll(superClasses(dataGraph, subClassOf, edge.getNode(1), superClasses));
+                }
+            }
+            if (!nodeClasses.isEmpty()) {
+                classes.put(entry.getKey(), nodeClasses);
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Get a class with its superclasses.
+     *
+     * @param dataGraph    The data graph.
+     * @param subClassOf   Node of {@code rdfs:subClassOf}, or null if the
+     *                     data graph does not use it.
+     * @param type         The class.
+     * @param superClasses Classes with their superclasses already computed.
+     * @return The class and its superclasses.
+     */
+    private static Set<String> superClasses(Graph dataGraph, Node subClassOf, Node type,
+            Map<String, Set<String>> superClasses) {
+        String term = NTriplesTerms.toTerm(type);
+        Set<String> known = superClasses.get(term);
+        if (known != null) {
+            return known;
+        }
+
+        Set<String> result = new HashSet<>(List.of(term));
+        List<Node> pending = new ArrayList<>(List.of(type));
+        while (subClassOf != null && !pending.isEmpty()) {
+            Node node = pending.remove(pending.size() - 1);
+            for (Edge edge : dataGraph.getEdges(subClassOf, node, 0)) {
+                if (edge != null && result.add(NTriplesTerms.toTerm(edge.getNode(1)))) {
+                    pending.add(edge.getNode(1));
+                }
+            }
+        }
+        superClasses.put(term, result);
+        return result;
+    }
+
+    /**
+     * Add the affected nodes that are instances of a class.
+     *
+     * @param classes Classes of the affected nodes.
+     * @param type    The class.
+     * @param nodes   Nodes to add to.
+     */
+    private static void addInstances(Map<String, Set<String>> classes, String type, Set<String> nodes) {
+        for (Map.Entry<String, Set<String>> entry : classes.entrySet()) {
+            if (entry.getValue().contains(type)) {
+                nodes.add(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Add the affected nodes used as subject or object of a predicate.
+     *
+     * @param dataGraph The data graph.
+     * @param predicate Predicate in N-Triples syntax.
+     * @param index     0 for subjects, 1 for objects.
+     * @param affected  Affected nodes, with their node in the data graph.
+     * @param nodes     Nodes to add to.
+     */
+    private static void addIfUsed(Graph dataGraph, String predicate, int index, Map<String, Node> affected,
+            Set<String> nodes) {
+        Node property = property(dataGraph, predicate);
+        if (property == null) {
+            return;
+        }
+        for (Map.Entry<String, Node> entry : affected.entrySet()) {
+            if (entry.getValue() == null) {
+                continue;
+            }
+            for (Edge edge : dataGraph.getEdges(property, entry.getValue(), index)) {
+                if (edge != null) {
+                    nodes.add(entry.getKey());
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Build a shapes graph whose shapes only target the given nodes.
+     *
+     * @param shapes  Statements of the shapes graph by subject.
+     * @param targets Targeted nodes by shape.
+     * @return The shapes graph.
+     */
+    private static Graph retarget(Map<String, List<RdfStatement>> shapes, Map<String, Set<String>> targets) {
+        StringBuilder nTriples = new StringBuilder();
+        for (List<RdfStatement> statements : shapes.values()) {
+            for (RdfStatement statement : statements) {
+                if (!ShaclValidator.isTargetStatement(statement)) {
+                    ShaclValidator.appendTriple(nTriples, statement.getSubject(), statement.getPredicate(),
+                            statement.getObject());
+                }
+            }
+        }
+        for (Map.Entry<String, Set<String>> entry : targets.entrySet()) {
+            for (String node : entry.getValue()) {
+                ShaclValidator.appendTriple(nTriples, entry.getKey(), TARGET_NODE, node);
+            }
+        }
+        return ShaclValidator.parseNTriples(nTriples.toString());
+    }
+
+    /**
+     * Get the node of a predicate in a graph.
+     *
+     * @param graph     The graph.
+     * @param predicate Predicate in N-Triples syntax.
+     * @return The node, or null if the graph does not use the predicate.
+     */
+    private static Node property(Graph graph, String predicate) {
+        return graph.getPropertyNode(predicate.substring(1, predicate.length() - 1));
+    }
+
+    /**
+     * Get the nodes of predicates in a graph.
+     *
+     * @param graph      The graph.
+     * @param predicates Predicates in N-Triples syntax.
+     * @return The nodes of the predicates that the graph uses.
+     */
+    private static List<Node> properties(Graph graph, Collection<String> predicates) {
+        List<Node> properties = new ArrayList<>();
+        for (String predicate : predicates) {
+            Node property = property(graph, predicate);
+            if (property != null) {
+                properties.add(property);
+            }
+        }
+        return properties;
+    }
+
+}
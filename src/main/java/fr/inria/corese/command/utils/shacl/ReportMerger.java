@@ -0,0 +1,346 @@
+package fr.inria.corese.command.utils.shacl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.inria.corese.command.utils.stream.NTriplesTerms;
+import fr.inria.corese.command.utils.stream.RdfStatement;
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.api.core.Edge;
+import fr.inria.corese.core.kgram.api.core.Node;
+
+/**
+ * Merges SHACL validation reports into a single report.
+ *
+ * The results of every report are attached to one new report node. As in the
+ * SHACL specification, the merged report conforms only if it has no result.
+ * The statements of the results are copied edge by edge into the merged
+ * report graph, with the blank nodes of each report renamed so that they do
+ * not collide. Results can also be streamed to a {@link ViolationWriter} and
+ * counted in a {@link ValidationSummary} as each report is added.
+ *
+ * The maximum number of violations only counts the results of severity
+ * {@code sh:Violation}; warnings and infos are kept until it is reached.
+ */
+class ReportMerger {
+
+    private static final String SH = "http://www.w3.org/ns/shacl#";
+    private static final String RDF_TYPE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#type";
+    private static final String XSD_BOOLEAN = "http://www.w3.org/2001/XMLSchema#boolean";
+
+    private static final String VALIDATION_REPORT = "<" + SH + "ValidationReport>";
+    private static final String RESULT = "<" + SH + "result>";
+    private static final String FOCUS_NODE = "<" + SH + "focusNode>";
+    private static final String RESULT_SEVERITY = "<" + SH + "resultSeverity>";
+    private static final String VIOLATION = "<" + SH + "Violation>";
+
+    // Merged report graph, holding the statements of the results
+    private final Graph graph = Graph.create();
+
+    // Default graph node of the merged report
+    private final Node graphNode = this.graph.addGraph(NTriplesTerms.DEFAULT_GRAPH);
+
+    // Results attached to the merged report node
+    private final List<Node> results = new ArrayList<>();
+    // Number of results added, kept or not
+    private int resultCount = 0;
+    // Number of results of severity sh:Violation among them
+    private int violationCount = 0;
+
+    // If false, results are counted and streamed but left out of the report
+    private boolean keepResults = true;
+
+    // Writer streaming the results as they are added, or null
+    private ViolationWriter violationWriter;
+
+    // Summary counting the results as they are added, or null
+    private ValidationSummary summary;
+
+    // Number of reports added
+    private int reports = 0;
+
+    // Maximum number of violations, or 0 for no limit
+    private int maxViolations = 0;
+
+    // True if results were left out because of the limit
+    private boolean truncated = false;
+
+    ///////////////////////
+    // Getters & Setters //
+    ///////////////////////
+
+    /**
+     * Sets the maximum number of violations of the merged report. Further
+     * results are left out, whatever their severity.
+     *
+     * @param maxViolations Maximum number of violations, or 0 for no limit.
+     */
+    public void setMaxViolations(int maxViolations) {
+        this.maxViolations = maxViolations;
+    }
+
+    /**
+     * Sets whether the results are kept in the merged report. Without them,
+     * the merged report only tells whether the data conforms.
+     *
+     * @param keepResults If false, results are left out of the merged report.
+     */
+    public void setKeepResults(boolean keepResults) {
+        this.keepResults = keepResults;
+    }
+
+    /**
+     * Sets a writer streaming the results as they are added.
+     *
+     * @param violationWriter Writer of the results, or null.
+     */
+    public void setViolationWriter(ViolationWriter violationWriter) {
+        this.violationWriter = violationWriter;
+    }
+
+    /**
+     * Sets a summary counting the results as they are added.
+     *
+     * @param summary Summary of the results, or null.
+     */
+    public void setSummary(ValidationSummary summary) {
+        this.summary = summary;
+    }
+
+    /**
+     * Check if the maximum number of violations is reached.
+     *
+     * @return True if no more result can be added.
+     */
+    public boolean isFull() {
+        return this.maxViolations > 0 && this.violationCount >= this.maxViolations;
+    }
+
+    /**
+     * Check if the merged report conforms, that is if no result was added,
+     * kept or not.
+     *
+     * @return True if the merged report conforms.
+     */
+    public boolean conforms() {
+        return this.resultCount == 0;
+    }
+
+    /**
+     * Check if results were left out because of the maximum number of
+     * violations.
+     *
+     * @return True if the merged report is truncated.
+     */
+    public boolean isTruncated() {
+        return this.truncated;
+    }
+
+    ////////////////////
+    // Public methods //
+    ////////////////////
+
+    /**
+     * Add all the results of a report.
+     *
+     * @param report Report to add.
+     * @throws IOException If the results cannot be streamed.
+     */
+    public void add(Graph report) throws IOException {
+        this.add(report, Set.of(), true);
+    }
+
+    /**
+     * Add the results of a previous report, except those about some focus
+     * nodes. Their violations count towards the maximum number of
+     * violations, but they are not streamed again.
+     *
+     * @param report            Report to add.
+     * @param droppedFocusNodes Focus nodes, in N-Triples syntax, whose results
+     *                          are left out.
+     * @throws IOException If the results cannot be streamed.
+     */
+    public void addPrevious(Graph report, Set<String> droppedFocusNodes) throws IOException {
+        this.add(report, droppedFocusNodes, false);
+    }
+
+    /**
+     * Build the merged report. The merger must not be used afterwards.
+     *
+     * @return The merged report graph.
+     */
+    public Graph toGraph() {
+        Node report = this.graph.addBlank("_:report");
+        this.graph.addEdge(this.graphNode, report, this.graph.addProperty(RDF_TYPE),
+                this.graph.addResource(SH + "ValidationReport"));
+        this.graph.addEdge(this.graphNode, report, this.graph.addProperty(SH + "conforms"),
+                this.graph.addLiteral(Boolean.toString(this.conforms()), XSD_BOOLEAN, null));
+        Node resultProperty = this.graph.addProperty(SH + "result");
+        for (Node result : this.results) {
+            this.graph.addEdge(this.graphNode, report, resultProperty, result);
+        }
+        return this.graph;
+    }
+
+    /////////////////////
+    // Private methods //
+    /////////////////////
+
+    /**
+     * Add the results of a report, except those about some focus nodes.
+     *
+     * @param report            Report to add.
+     * @param droppedFocusNodes Focus nodes, in N-Triples syntax, whose results
+     *                          are left out.
+     * @param stream            If true, the results are streamed to the
+     *                          violation writer.
+     * @throws IOException If the results cannot be streamed.
+     */
+    private void add(Graph report, Set<String> droppedFocusNodes, boolean stream) throws IOException {
+        String prefix = "_:r" + this.reports++ + "_";
+
+        // Statements by subject, and report nodes
+        Map<String, List<Arc>> bySubject = new LinkedHashMap<>();
+        Set<String> reportNodes = new HashSet<>();
+        for (Edge edge : report.getEdges()) {
+            Arc arc = new Arc(edge.getNode(0), edge.getEdgeNode(), edge.getNode(1),
+                    NTriplesTerms.toTerm(edge.getEdgeNode()), NTriplesTerms.toTerm(edge.getNode(1)));
+            String subject = NTriplesTerms.toTerm(edge.getNode(0));
+            bySubject.computeIfAbsent(subject, key -> new ArrayList<>()).add(arc);
+            if (ShaclValidator.RDF_TYPE.equals(arc.predicateTerm()) && VALIDATION_REPORT.equals(arc.objectTerm())) {
+                reportNodes.add(subject);
+            }
+        }
+
+        Set<String> added = new LinkedHashSet<>();
+        for (String reportNode : reportNodes) {
+            for (Arc arc : bySubject.get(reportNode)) {
+                if (!RESULT.equals(arc.predicateTerm())) {
+                    continue;
+                }
+                String result = arc.objectTerm();
+                String focusNode = focusNode(result, bySubject);
+                if (focusNode != null && droppedFocusNodes.contains(focusNode)) {
+                    continue;
+                }
+                if (this.isFull()) {
+                    this.truncated = true;
+                    break;
+                }
+                this.resultCount++;
+                if (isViolation(result, bySubject)) {
+                    this.violationCount++;
+                }
+                added.add(result);
+                if (this.summary != null) {
+                    this.summary.count(statements(result, bySubject));
+                }
+                if (this.keepResults) {
+                    this.results.add(ShaclValidator.copyNode(this.graph, arc.object(), prefix));
+                    this.copy(result, bySubject, reportNodes, prefix);
+                }
+            }
+        }
+
+        if (stream && this.violationWriter != null && !added.isEmpty()) {
+            this.violationWriter.write(report, added);
+        }
+    }
+
+    /**
+     * Get the focus node of a result.
+     *
+     * @param result    Result node.
+     * @param bySubject Statements of the report by subject.
+     * @return The focus node, or null if the result has none.
+     */
+    private static String focusNode(String result, Map<String, List<Arc>> bySubject) {
+        for (Arc arc : bySubject.getOrDefault(result, List.of())) {
+            if (FOCUS_NODE.equals(arc.predicateTerm())) {
+                return arc.objectTerm();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check if a result is a violation.
+     *
+     * @param result    Result node.
+     * @param bySubject Statements of the report by subject.
+     * @return True if the severity of the result is {@code sh:Violation}, or
+     *         if it has none.
+     */
+    private static boolean isViolation(String result, Map<String, List<Arc>> bySubject) {
+        for (Arc arc : bySubject.getOrDefault(result, List.of())) {
+            if (RESULT_SEVERITY.equals(arc.predicateTerm())) {
+                return VIOLATION.equals(arc.objectTerm());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the statements about a result.
+     *
+     * @param result    Result node.
+     * @param bySubject Statements of the report by subject.
+     * @return The statements, in N-Triples syntax.
+     */
+    private static List<RdfStatement> statements(String result, Map<String, List<Arc>> bySubject) {
+        List<RdfStatement> statements = new ArrayList<>();
+        for (Arc arc : bySubject.getOrDefault(result, List.of())) {
+            statements.add(new RdfStatement(result, arc.predicateTerm(), arc.objectTerm(), null));
+        }
+        return statements;
+    }
+
+    /**
+     * Copy the statements about a result and about every node it reaches in
+     * the report, such as nested results and complex result paths.
+     *
+     * @param result      Result node.
+     * @param bySubject   Statements of the report by subject.
+     * @param reportNodes Report nodes, never copied.
+     * @param prefix      Prefix of the renamed blank nodes.
+     */
+    private void copy(String result, Map<String, List<Arc>> bySubject, Set<String> reportNodes, String prefix) {
+        Set<String> visited = new HashSet<>(reportNodes);
+        visited.add(result);
+        List<String> pending = new ArrayList<>(List.of(result));
+
+        while (!pending.isEmpty()) {
+            String subject = pending.remove(pending.size() - 1);
+            for (Arc arc : bySubject.getOrDefault(subject, List.of())) {
+                this.graph.addEdge(this.graphNode,
+                        ShaclValidator.copyNode(this.graph, arc.subject(), prefix),
+                        this.graph.addProperty(arc.predicate().getLabel()),
+                        ShaclValidator.copyNode(this.graph, arc.object(), prefix));
+
+                if (bySubject.containsKey(arc.objectTerm()) && visited.add(arc.objectTerm())) {
+                    pending.add(arc.objectTerm());
+                }
+            }
+        }
+    }
+
+    /**
+     * A statement of a report, with its predicate and object also in
+     * N-Triples syntax.
+     *
+     * @param subject       Subject node.
+     * @param predicate     Predicate node.
+     * @param object        Object node.
+     * @param predicateTerm Predicate in N-Triples syntax.
+     * @param objectTerm    Object in N-Triples syntax.
+     */
+    private record Arc(Node subject, Node predicate, Node object, String predicateTerm, String objectTerm) {
+    }
+
+}
@@ -0,0 +1,521 @@
+package fr.inria.corese.command.utils.shacl;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import fr.inria.corese.command.utils.stream.NTriplesTerms;
+import fr.inria.corese.command.utils.stream.RdfStatement;
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.api.Loader;
+import fr.inria.corese.core.kgram.api.core.Edge;
+import fr.inria.corese.core.kgram.api.core.Node;
+import fr.inria.corese.core.load.Load;
+import fr.inria.corese.core.shacl.Shacl;
+import fr.inria.corese.core.sparql.api.IDatatype;
+import picocli.CommandLine.Model.CommandSpec;
+
+/**
+ * Utility class to validate a data graph against SHACL shapes.
+ *
+ * With more than one thread, the shapes are split into partitions, each
+ * evaluated on its own thread, and the partial reports are merged into a
+ * single {@code sh:ValidationReport} by a {@link ReportMerger}. Every thread
+ * evaluates against the same data graph, indexed once before the threads
+ * start.
+ *
+ * A partition holds some of the shapes that select focus nodes (with a
+ * target, or as an implicit class target) together with everything they
+ * reference in the shapes graph, such as property shapes, lists and nested
+ * shapes. A referenced shape is copied without its targets into the
+ * partitions that do not own it, so that every focus node is validated
+ * against every shape exactly once.
+ *
+ * With a maximum number of violations or a {@link ViolationWriter}, the
+ * shapes are evaluated one partition per shape, so that no more shape is
+ * evaluated once the limit is reached, and results are streamed shape by
+ * shape.
+ */
+public class ShaclValidator {
+
+    private static final String SH = "http://www.w3.org/ns/shacl#";
+    static final String RDF_TYPE = "<http://www.w3.org/1999/02/22-rdf-syntax-ns#type>";
+
+    // Predicates that give targets to a shape
+    private static final Set<String> TARGET_PREDICATES = Set.of(
+            "<" + SH + "targetClass>",
+            "<" + SH + "targetNode>",
+            "<" + SH + "targetSubjectsOf>",
+            "<" + SH + "targetObjectsOf>",
+            "<" + SH + "target>");
+
+    // Classes that make a node shape an implicit class target
+    private static final Set<String> CLASS_TYPES = Set.of(
+            "<http://www.w3.org/2000/01/rdf-schema#Class>",
+            "<http://www.w3.org/2002/07/owl#Class>");
+
+    // Command specification
+    private CommandSpec spec;
+    private boolean verbose;
+
+    // Number of threads evaluating partitions of the shapes
+    private int threads = 1;
+
+    // Maximum number of violations, or 0 for no limit
+    private int maxViolations = 0;
+
+    // True if the last report was truncated to the maximum number of violations
+    private boolean truncated = false;
+
+    // True if the data conformed to the shapes in the last validation
+    private boolean conforms = true;
+
+    // If false, the report only tells whether the data conforms
+    private boolean keepResults = true;
+
+    // Writer streaming the results as they are produced, or null
+    private ViolationWriter violationWriter;
+
+    // Summary counting the results as they are merged, or null
+    private ValidationSummary summary;
+
+    /////////////////
+    // Constructor //
+    /////////////////
+
+    /**
+     * Constructor.
+     *
+     * @param spec    Command specification.
+     * @param verbose If true, print information about the validation.
+     */
+    public ShaclValidator(CommandSpec spec, boolean verbose) {
+        this.spec = spec;
+        this.verbose = verbose;
+    }
+
+    ///////////////////////
+    // Getters & Setters //
+    ///////////////////////
+
+    /**
+     * Sets the number of threads evaluating partitions of the shapes.
+     *
+     * @param threads Number of threads, must be at least 1.
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of validation threads must be at least 1: " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the maximum number of violations, the results of severity
+     * {@code sh:Violation}. Once it is reached, the remaining shapes are not
+     * evaluated and the report is truncated.
+     *
+     * @param maxViolations Maximum number of violations, or 0 for no limit.
+     */
+    public void setMaxViolations(int maxViolations) {
+        if (maxViolations < 0) {
+            throw new IllegalArgumentException(
+                    "The maximum number of violations must be positive: " + maxViolations);
+        }
+        this.maxViolations = maxViolations;
+    }
+
+    /**
+     * Sets whether the results are kept in the report. Without them, the
+     * report only holds {@code sh:conforms}, and the results are only streamed
+     * to the violation writer, if any.
+     *
+     * @param keepResults If false, results are left out of the report.
+     */
+    public void setKeepResults(boolean keepResults) {
+        this.keepResults = keepResults;
+    }
+
+    /**
+     * Sets a writer streaming the results as they are produced. The shapes are
+     * then evaluated shape by shape, and the results of each shape are
+     * written as soon as it is evaluated.
+     *
+     * @param violationWriter Writer of the results, or null.
+     */
+    public void setViolationWriter(ViolationWriter violationWriter) {
+        this.violationWriter = violationWriter;
+    }
+
+    /**
+     * Sets a summary counting the results as they are merged. The report is
+     * then built by merging, so that the summary does not need it.
+     *
+     * @param summary Summary of the results, or null.
+     */
+    public void setSummary(ValidationSummary summary) {
+        this.summary = summary;
+    }
+
+    /**
+     * Check if the last report was truncated to the maximum number of
+     * violations.
+     *
+     * @return True if some results were left out.
+     */
+    public boolean isTruncated() {
+        return this.truncated;
+    }
+
+    /**
+     * Check if the data conformed to the shapes in the last validation,
+     * without reading the report.
+     *
+     * @return True if the last report conforms.
+     */
+    public boolean conforms() {
+        return this.conforms;
+    }
+
+    ////////////////////
+    // Public methods //
+    ////////////////////
+
+    /**
+     * Validate a data graph against SHACL shapes.
+     *
+     * @param dataGraph   The data graph, only read.
+     * @param shapesGraph The shapes graph.
+     * @return The report graph.
+     * @throws Exception If an error occurs while evaluating the shapes.
+     */
+    public Graph validate(Graph dataGraph, Graph shapesGraph) throws Exception {
+
+        // Without limit, streaming, summary or threads, the report of Corese is kept as is
+        if (this.maxViolations == 0 && this.violationWriter == null && this.summary == null && this.threads == 1
+                && this.keepResults) {
+            long start = System.nanoTime();
+            this.truncated = false;
+            Graph report = this.evaluate(dataGraph, shapesGraph);
+            this.conforms = conforms(report);
+            this.printTime(start, 1);
+            return report;
+        }
+
+        ReportMerger merger = this.createMerger();
+        this.validate(dataGraph, shapesGraph, merger);
+        return merger.toGraph();
+    }
+
+    /////////////////////
+    // Package methods //
+    /////////////////////
+
+    /**
+     * Validate a data graph against SHACL shapes, adding the results to a
+     * merger that may already hold some. The maximum number of violations is
+     * the one of the merger.
+     *
+     * @param dataGraph   The data graph, only read.
+     * @param shapesGraph The shapes graph.
+     * @param merger      Merger of the results, created by
+     *                    {@link #createMerger()}.
+     * @throws Exception If an error occurs while evaluating the shapes.
+     */
+    void validate(Graph dataGraph, Graph shapesGraph, ReportMerger merger) throws Exception {
+        long start = System.nanoTime();
+
+        // Shape by shape to stop or stream results as soon as possible
+        boolean byShape = this.maxViolations > 0 || this.violationWriter != null;
+        int count = byShape ? Integer.MAX_VALUE : this.threads;
+        List<Graph> partitions = count > 1 ? this.partition(shapesGraph, count) : List.of();
+
+        if (partitions.size() > 1) {
+            this.validatePartitions(dataGraph, partitions, merger);
+        } else {
+            merger.add(this.evaluate(dataGraph, shapesGraph));
+            this.truncated = merger.isTruncated();
+        }
+        this.conforms = merger.conforms();
+        this.printTime(start, partitions.size());
+    }
+
+    /**
+     * Create a merger of reports with the settings of the validator.
+     *
+     * @return The merger.
+     */
+    ReportMerger createMerger() {
+        ReportMerger merger = new ReportMerger();
+        merger.setMaxViolations(this.maxViolations);
+        merger.setKeepResults(this.keepResults);
+        merger.setViolationWriter(this.violationWriter);
+        merger.setSummary(this.summary);
+        return merger;
+    }
+
+    /////////////////////
+    // Private methods //
+    /////////////////////
+
+    /**
+     * Print the time spent evaluating the shapes, in verbose mode.
+     *
+     * @param start      Start time, in nanoseconds.
+     * @param partitions Number of partitions of the shapes.
+     */
+    private void printTime(long start, int partitions) {
+        if (this.verbose) {
+            this.spec.commandLine().getErr().println("Evaluated SHACL shapes in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms"
+                    + (partitions > 1 ? " (" + partitions + " partitions)" : "")
+                    + (this.truncated ? ", stopped after " + this.maxViolations + " violations" : ""));
+        }
+    }
+
+    /**
+     * Evaluate shapes on the current thread.
+     *
+     * @param dataGraph   The data graph.
+     * @param shapesGraph The shapes graph.
+     * @return The report graph.
+     * @throws Exception If an error occurs while evaluating the shapes.
+     */
+    private Graph evaluate(Graph dataGraph, Graph shapesGraph) throws Exception {
+        try {
+            return new Shacl(dataGraph, shapesGraph).eval();
+        } catch (Exception e) {
+            throw new Exception("Error while evaluating SHACL shapes: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Evaluate partitions of the shapes concurrently and merge their reports
+     * in order. No more partition is evaluated once the maximum number of
+     * violations is reached.
+     *
+     * The data graph is shared by the evaluations. Corese builds the indexes
+     * of a graph on its first query, so they are built once here instead of
+     * by several threads at once.
+     *
+     * @param dataGraph  The data graph.
+     * @param partitions Partitions of the shapes graph.
+     * @param merger     Merger of the reports.
+     * @throws Exception If an error occurs while evaluating the shapes.
+     */
+    private void validatePartitions(Graph dataGraph, List<Graph> partitions, ReportMerger merger)
+            throws Exception {
+        int poolSize = Math.min(this.threads, partitions.size());
+
+        if (this.verbose) {
+            this.spec.commandLine().getErr().println("Evaluating " + partitions.size()
+                    + " partitions of the shapes with " + poolSize + " threads");
+        }
+
+        // Build the graph indexes once instead of racing to build them
+        dataGraph.init();
+
+        Deque<Future<Graph>> pending = new ArrayDeque<>();
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+        try {
+            int next = 0;
+            do {
+                // Keep every thread busy
+                while (next < partitions.size() && pending.size() < poolSize) {
+                    Graph partition = partitions.get(next++);
+                    pending.add(executor.submit(() -> this.evaluate(dataGraph, partition)));
+                }
+                merger.add(pending.poll().get());
+            } while ((!pending.isEmpty() || next < partitions.size()) && !merger.isFull());
+
+            // Truncated if results were left out, or shapes left unevaluated
+            this.truncated = merger.isTruncated()
+                    || (merger.isFull() && (!pending.isEmpty() || next < partitions.size()));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        } finally {
+            // Stop the remaining partitions once the limit is reached
+            for (Future<Graph> future : pending) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Split the shapes graph into partitions.
+     *
+     * @param shapesGraph The shapes graph.
+     * @param maxCount    Maximum number of partitions.
+     * @return The partitions, or an empty list if there are not enough shapes
+     *         with targets to split.
+     */
+    private List<Graph> partition(Graph shapesGraph, int maxCount) {
+
+        // Statements by subject
+        Map<String, List<RdfStatement>> bySubject = new LinkedHashMap<>();
+        for (Edge edge : shapesGraph.getEdges()) {
+            RdfStatement statement = NTriplesTerms.toStatement(edge);
+            bySubject.computeIfAbsent(statement.getSubject(), subject -> new ArrayList<>()).add(statement);
+        }
+
+        // Shapes that select focus nodes
+        List<String> roots = new ArrayList<>();
+        for (Map.Entry<String, List<RdfStatement>> entry : bySubject.entrySet()) {
+            if (entry.getValue().stream().anyMatch(ShaclValidator::isTargetStatement)) {
+                roots.add(entry.getKey());
+            }
+        }
+
+        int count = Math.min(maxCount, roots.size());
+        if (count < 2) {
+            return List.of();
+        }
+
+        // Deal the shapes in turn, each partition with what its shapes use
+        List<Graph> partitions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Set<String> owned = new HashSet<>();
+            for (int j = i; j < roots.size(); j += count) {
+                owned.add(roots.get(j));
+            }
+            partitions.add(this.closure(owned, bySubject));
+        }
+        return partitions;
+    }
+
+    /**
+     * Build the graph of a partition: the statements about its shapes and
+     * about every node they reach, without the targets of shapes it does not
+     * own.
+     *
+     * @param owned     Shapes owned by the partition.
+     * @param bySubject Statements of the shapes graph by subject.
+     * @return The shapes graph of the partition.
+     */
+    private Graph closure(Set<String> owned, Map<String, List<RdfStatement>> bySubject) {
+        StringBuilder nTriples = new StringBuilder();
+        Set<String> visited = new HashSet<>(owned);
+        List<String> pending = new ArrayList<>(owned);
+
+        while (!pending.isEmpty()) {
+            String subject = pending.remove(pending.size() - 1);
+            for (RdfStatement statement : bySubject.getOrDefault(subject, List.of())) {
+                if (!owned.contains(subject) && isTargetStatement(statement)) {
+                    continue;
+                }
+                appendTriple(nTriples, statement.getSubject(), statement.getPredicate(), statement.getObject());
+
+                String object = statement.getObject();
+                if (bySubject.containsKey(object) && visited.add(object)) {
+                    pending.add(object);
+                }
+            }
+        }
+
+        return parseNTriples(nTriples.toString());
+    }
+
+    /**
+     * Read the {@code sh:conforms} value of a report, through the index of
+     * its predicate.
+     *
+     * @param report The report graph.
+     * @return False if a report node does not conform.
+     */
+    private static boolean conforms(Graph report) {
+        for (Edge edge : report.getEdges(SH + "conforms")) {
+            if (edge != null && !"true".equals(edge.getNode(1).getLabel())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if a statement makes its subject select focus nodes.
+     *
+     * @param statement Statement of the shapes graph.
+     * @return True for a target, or a class type of a node shape.
+     */
+    static boolean isTargetStatement(RdfStatement statement) {
+        return TARGET_PREDICATES.contains(statement.getPredicate())
+                || (RDF_TYPE.equals(statement.getPredicate()) && CLASS_TYPES.contains(statement.getObject()));
+    }
+
+    /**
+     * Prefix the label of a blank node.
+     *
+     * @param term   Term in N-Triples syntax.
+     * @param prefix Prefix of the blank nodes, starting with {@code _:}.
+     * @return The renamed blank node, or the term itself.
+     */
+    static String rename(String term, String prefix) {
+        return term.startsWith("_:") ? prefix + term.substring(2) : term;
+    }
+
+    /**
+     * Create a node with the value of another node in a graph, or get it if
+     * the graph already has it.
+     *
+     * @param graph  Graph to create the node in.
+     * @param node   Node to copy.
+     * @param prefix Prefix of the blank nodes, starting with {@code _:}.
+     * @return The node of the graph.
+     */
+    static Node copyNode(Graph graph, Node node, String prefix) {
+        IDatatype value = node.getDatatypeValue();
+        if (value.isBlank()) {
+            return graph.addBlank(rename(NTriplesTerms.toTerm(node), prefix));
+        }
+        if (value.isLiteral()) {
+            String lang = value.getLang() == null || value.getLang().isEmpty() ? null : value.getLang();
+            return graph.addLiteral(value.getLabel(), value.getDatatypeURI(), lang);
+        }
+        return graph.addResource(value.getLabel());
+    }
+
+    /**
+     * Append a triple in N-Triples syntax.
+     *
+     * @param nTriples  Text to append to.
+     * @param subject   Subject term.
+     * @param predicate Predicate term.
+     * @param object    Object term.
+     */
+    static void appendTriple(StringBuilder nTriples, String subject, String predicate, String object) {
+        nTriples.append(subject).append(' ').append(predicate).append(' ').append(object).append(" .\n");
+    }
+
+    /**
+     * Parse N-Triples into a new graph.
+     *
+     * @param nTriples N-Triples text.
+     * @return The graph.
+     */
+    static Graph parseNTriples(String nTriples) {
+        Graph graph = Graph.create();
+        try {
+            Load.create(graph).parse(new ByteArrayInputStream(nTriples.getBytes(StandardCharsets.UTF_8)),
+                    Loader.format.NT_FORMAT);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to build SHACL graph: " + e.getMessage(), e);
+        }
+        return graph;
+    }
+
+}
@@ -0,0 +1,312 @@
+package fr.inria.corese.command.utils.shacl;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.inria.corese.command.utils.ContentValidator;
+import fr.inria.corese.command.utils.loader.rdf.EnumRdfInputFormat;
+import fr.inria.corese.command.utils.loader.rdf.GraphSnapshot;
+import fr.inria.corese.command.utils.loader.rdf.RdfDataLoader;
+import fr.inria.corese.command.utils.loader.rdf.RdfInputSource;
+import fr.inria.corese.core.Graph;
+
+/**
+ * Process-wide cache of loaded SHACL shapes graphs.
+ *
+ * A shapes graph is loaded and checked for shapes once, then kept in memory
+ * for as long as its source files keep their size and modification time, so
+ * that repeated validations in the same process do not parse the shapes again.
+ * It can also be written to a {@link GraphSnapshot} artifact, reloaded by later
+ * processes without parsing as long as the checksums of its source files
+ * match. Shapes read from URLs are not cached.
+ *
+ * Cached graphs are shared between validations and must not be modified.
+ */
+public class ShapesCache {
+
+    public static final int DEFAULT_MAX_SIZE = 8;
+
+    private static final ShapesCache INSTANCE = new ShapesCache(DEFAULT_MAX_SIZE);
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int maxSize;
+    private PrintWriter log;
+
+    /////////////////
+    // Constructor //
+    /////////////////
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize Maximum number of shapes graphs kept in memory.
+     */
+    public ShapesCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The shapes cache size must be at least 1, got: " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the cache shared by the whole process.
+     *
+     * @return The shared cache.
+     */
+    public static ShapesCache getInstance() {
+        return INSTANCE;
+    }
+
+    ///////////////////////
+    // Getters & Setters //
+    ///////////////////////
+
+    /**
+     * Sets where to print where the shapes are loaded from.
+     *
+     * @param log Writer of the messages, or null for no messages.
+     */
+    public synchronized void setLog(PrintWriter log) {
+        this.log = log;
+    }
+
+    ////////////////////
+    // Public methods //
+    ////////////////////
+
+    /**
+     * Load a shapes graph, from memory or from an artifact if they are up to
+     * date, and check that it contains shapes.
+     *
+     * @param loader    RDF data loader.
+     * @param inputs    Paths or URLs of the shapes files.
+     * @param format    Serialization format of the shapes files, or null.
+     * @param recursive If true, load shapes files from subdirectories.
+     * @param settings  Other loading settings that affect the graph.
+     * @param artifact  Path of the artifact to read and write, or null.
+     * @return The shapes graph.
+     * @throws IllegalArgumentException If the shapes cannot be loaded, contain
+     *                                  no shape, or the artifact cannot be
+     *                                  read or written.
+     */
+    public Graph load(RdfDataLoader loader, String[] inputs, EnumRdfInputFormat format, boolean recursive,
+            String settings, Path artifact) {
+
+        List<Path> files = localFiles(loader.listSources(inputs, recursive));
+        if (files == null) {
+            if (artifact != null) {
+                throw new IllegalArgumentException("The shapes cache can only be written for local files.");
+            }
+            return loadShapes(loader, inputs, format, recursive);
+        }
+
+        // Shapes already loaded by this process
+        String shapesSettings = "shapes;shapesFormat=" + format + ";recursive=" + recursive + ";" + settings;
+        String key = shapesSettings + '\n' + files;
+        Entry entry;
+        synchronized (this) {
+            entry = this.entries.get(key);
+        }
+        try {
+            if (entry != null && entry.isUpToDate()) {
+                this.print("Reusing the shapes graph loaded by this process");
+                if (artifact != null && !Files.exists(artifact)) {
+                    this.writeArtifact(artifact, entry.graph, files, shapesSettings);
+                }
+                return entry.graph;
+            }
+
+            Graph graph = null;
+            if (artifact != null && Files.exists(artifact)) {
+                graph = this.readArtifact(artifact, files, shapesSettings);
+            }
+            if (graph == null) {
+                graph = loadShapes(loader, inputs, format, recursive);
+                if (artifact != null) {
+                    this.writeArtifact(artifact, graph, files, shapesSettings);
+                }
+            }
+
+            synchronized (this) {
+                this.entries.put(key, new Entry(graph, files));
+                this.trim();
+            }
+            return graph;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to check the shapes files: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Remove every shapes graph from memory.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+    }
+
+    /////////////////////
+    // Private methods //
+    /////////////////////
+
+    /**
+     * Load the shapes files and check that they contain shapes.
+     *
+     * @param loader    RDF data loader.
+     * @param inputs    Paths or URLs of the shapes files.
+     * @param format    Serialization format of the shapes files, or null.
+     * @param recursive If true, load shapes files from subdirectories.
+     * @return The shapes graph.
+     * @throws IllegalArgumentException If the graph contains no shape.
+     */
+    private static Graph loadShapes(RdfDataLoader loader, String[] inputs, EnumRdfInputFormat format,
+            boolean recursive) {
+        Graph graph = loader.load(inputs, format, recursive);
+        if (!ContentValidator.containsShaclShapes(graph)) {
+            throw new IllegalArgumentException("No SHACL shapes found in the input file(s).");
+        }
+        return graph;
+    }
+
+    /**
+     * Read the shapes graph from an artifact.
+     *
+     * @param artifact Path of the artifact.
+     * @param files    Shapes files.
+     * @param settings Loading settings that affect the graph.
+     * @return The graph, or null if the artifact is stale.
+     * @throws IllegalArgumentException If the artifact cannot be read.
+     */
+    private Graph readArtifact(Path artifact, List<Path> files, String settings) {
+        long start = System.nanoTime();
+        try (GraphSnapshot snapshot = new GraphSnapshot(artifact)) {
+            String stale = snapshot.checkStale(files, settings);
+            if (stale != null) {
+                this.print("Shapes cache " + artifact + " is stale: " + stale + ", loading shapes files");
+                return null;
+            }
+
+            Graph graph = snapshot.readGraph();
+            this.print("Loaded " + graph.size() + " shapes triples from " + artifact + " in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+            return graph;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to read shapes cache: " + artifact, e);
+        }
+    }
+
+    /**
+     * Write the shapes graph to an artifact.
+     *
+     * @param artifact Path of the artifact.
+     * @param graph    Shapes graph.
+     * @param files    Shapes files.
+     * @param settings Loading settings that affect the graph.
+     * @throws IllegalArgumentException If the artifact cannot be written.
+     */
+    private void writeArtifact(Path artifact, Graph graph, List<Path> files, String settings) {
+        try {
+            GraphSnapshot.write(graph, files, settings, artifact);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to write shapes cache: " + artifact, e);
+        }
+        this.print("Wrote shapes cache " + artifact);
+    }
+
+    /**
+     * List the paths of local sources.
+     *
+     * @param sources Sources of the shapes.
+     * @return The paths, or null if a source is a URL.
+     */
+    private static List<Path> localFiles(List<RdfInputSource> sources) {
+        List<Path> files = new ArrayList<>();
+        for (RdfInputSource source : sources) {
+            if (source.isUrl()) {
+                return null;
+            }
+            files.add(source.getPath().toAbsolutePath().normalize());
+        }
+        return files;
+    }
+
+    /**
+     * Drop the least recently used entries above the maximum size.
+     */
+    private void trim() {
+        Iterator<Map.Entry<String, Entry>> iterator = this.entries.entrySet().iterator();
+        while (this.entries.size() > this.maxSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Print a message if a log is set.
+     *
+     * @param message Message to print.
+     */
+    private void print(String message) {
+        PrintWriter log;
+        synchronized (this) {
+            log = this.log;
+        }
+        if (log != null) {
+            log.println(message);
+        }
+    }
+
+    /**
+     * A shapes graph in memory, with the size and modification time of its
+     * source files when it was loaded.
+     */
+    private static class Entry {
+        private final Graph graph;
+        private final List<Path> files;
+        private final List<Long> stamps;
+
+        private Entry(Graph graph, List<Path> files) throws IOException {
+            this.graph = graph;
+            this.files = files;
+            this.stamps = stamps(files);
+        }
+
+        /**
+         * Check if the source files are unchanged.
+         *
+         * @return True if every file has kept its size and modification time.
+         * @throws IOException If a file cannot be read.
+         */
+        private boolean isUpToDate() throws IOException {
+            for (Path file : this.files) {
+                if (!Files.isRegularFile(file)) {
+                    return false;
+                }
+            }
+            return this.stamps.equals(stamps(this.files));
+        }
+
+        /**
+         * Get the size and modification time of files.
+         *
+         * @param files The files.
+         * @return The size and modification time of each file, in turn.
+         * @throws IOException If a file cannot be read.
+         */
+        private static List<Long> stamps(List<Path> files) throws IOException {
+            List<Long> stamps = new ArrayList<>();
+            for (Path file : files) {
+                stamps.add(Files.size(file));
+                stamps.add(Files.getLastModifiedTime(file).toMillis());
+            }
+            return stamps;
+        }
+    }
+
+}
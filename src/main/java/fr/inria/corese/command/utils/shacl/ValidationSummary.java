@@ -0,0 +1,126 @@
+package fr.inria.corese.command.utils.shacl;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.inria.corese.command.utils.stream.RdfStatement;
+
+/**
+ * Summary of a SHACL validation report: the number of results per shape and
+ * severity.
+ *
+ * A summary is given to a {@link ShaclValidator} and filled as the results
+ * are merged, without keeping them in memory.
+ *
+ * Property shapes are usually blank nodes, whose labels mean nothing to the
+ * reader. Their results are counted under the path of the result instead.
+ */
+public class ValidationSummary {
+
+    private static final String SH = "http://www.w3.org/ns/shacl#";
+
+    private static final String SOURCE_SHAPE = "<" + SH + "sourceShape>";
+    private static final String RESULT_SEVERITY = "<" + SH + "resultSeverity>";
+    private static final String RESULT_PATH = "<" + SH + "resultPath>";
+
+    // Number of results by shape and severity
+    private final Map<Row, Integer> counts = new LinkedHashMap<>();
+
+    // Total number of results
+    private int results = 0;
+
+    ///////////////////////
+    // Getters & Setters //
+    ///////////////////////
+
+    /**
+     * Get the total number of results.
+     *
+     * @return The number of results.
+     */
+    public int getResults() {
+        return this.results;
+    }
+
+    /**
+     * Check if the report conforms, that is if it has no result.
+     *
+     * @return True if the report conforms.
+     */
+    public boolean conforms() {
+        return this.results == 0;
+    }
+
+    ////////////////////
+    // Public methods //
+    ////////////////////
+
+    /**
+     * Format the summary as a Markdown table, most frequent results first.
+     *
+     * @param truncated If true, the report was truncated to a maximum number
+     *                  of violations.
+     * @return The summary.
+     */
+    public String toMarkdown(boolean truncated) {
+        StringBuilder markdown = new StringBuilder();
+        markdown.append("| Shape | Severity | Results |\n");
+        markdown.append("| --- | --- | ---: |\n");
+        this.counts.entrySet().stream()
+                .sorted(Map.Entry.<Row, Integer>comparingByValue().reversed())
+                .forEach(entry -> markdown.append("| ").append(entry.getKey().shape())
+                        .append(" | ").append(entry.getKey().severity())
+                        .append(" | ").append(entry.getValue()).append(" |\n"));
+        markdown.append("Conforms: ").append(this.conforms()).append(", ").append(this.results)
+                .append(this.results == 1 ? " result" : " results");
+        if (truncated) {
+            markdown.append(" (validation stopped at the maximum number of violations)");
+        }
+        return markdown.toString();
+    }
+
+    /////////////////////
+    // Package methods //
+    /////////////////////
+
+    /**
+     * Count a result.
+     *
+     * @param statements Statements about the result.
+     */
+    void count(List<RdfStatement> statements) {
+        String shape = null;
+        String path = null;
+        String severity = "-";
+        for (RdfStatement statement : statements) {
+            String predicate = statement.getPredicate();
+            String object = statement.getObject();
+            if (SOURCE_SHAPE.equals(predicate)) {
+                shape = object;
+            } else if (RESULT_PATH.equals(predicate)) {
+                path = object;
+            } else if (RESULT_SEVERITY.equals(predicate)) {
+                severity = object.startsWith("<" + SH)
+                        ? object.substring(SH.length() + 1, object.length() - 1)
+                        : object;
+            }
+        }
+
+        if (shape == null || shape.startsWith("_:")) {
+            shape = path != null && path.startsWith("<") ? "[path " + path + "]" : "[]";
+        }
+        this.counts.merge(new Row(shape, severity), 1, Integer::sum);
+        this.results++;
+    }
+
+    /**
+     * A row of the summary.
+     *
+     * @param shape    Shape of the results.
+     * @param severity Severity of the results.
+     */
+    private record Row(String shape, String severity) {
+    }
+
+}
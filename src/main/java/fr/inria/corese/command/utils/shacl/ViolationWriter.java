@@ -0,0 +1,150 @@
+package fr.inria.corese.command.utils.shacl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import fr.inria.corese.command.utils.stream.NTriplesTerms;
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.api.core.Edge;
+import fr.inria.corese.core.kgram.api.core.Node;
+import fr.inria.corese.core.sparql.api.IDatatype;
+
+/**
+ * Writes validation results as newline-delimited JSON, one object per
+ * {@code sh:ValidationResult}, as soon as they are produced.
+ *
+ * Each line holds the focus node, path, value, source shape, constraint
+ * component, severity and message of a result, when present. IRIs are written
+ * as is, blank nodes with their {@code _:} label and literals as their lexical
+ * form. The output is flushed after every batch of results.
+ */
+public class ViolationWriter implements Closeable {
+
+    private static final String SH = "http://www.w3.org/ns/shacl#";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    // Fields of a line, by predicate, in the order they are written
+    private static final Map<String, String> FIELDS = new LinkedHashMap<>();
+    static {
+        FIELDS.put("<" + SH + "focusNode>", "focusNode");
+        FIELDS.put("<" + SH + "resultPath>", "resultPath");
+        FIELDS.put("<" + SH + "value>", "value");
+        FIELDS.put("<" + SH + "sourceShape>", "sourceShape");
+        FIELDS.put("<" + SH + "sourceConstraintComponent>", "sourceConstraintComponent");
+        FIELDS.put("<" + SH + "resultSeverity>", "severity");
+        FIELDS.put("<" + SH + "resultMessage>", "message");
+    }
+
+    private final Writer writer;
+    private final boolean closeWriter;
+
+    // Number of results written
+    private long count = 0;
+
+    /////////////////
+    // Constructor //
+    /////////////////
+
+    /**
+     * Constructor.
+     *
+     * @param writer      Writer of the lines.
+     * @param closeWriter If true, the writer is closed with this one.
+     */
+    public ViolationWriter(Writer writer, boolean closeWriter) {
+        this.writer = writer;
+        this.closeWriter = closeWriter;
+    }
+
+    ///////////////////////
+    // Getters & Setters //
+    ///////////////////////
+
+    /**
+     * Get the number of results written.
+     *
+     * @return The number of results.
+     */
+    public synchronized long getCount() {
+        return this.count;
+    }
+
+    ////////////////////
+    // Public methods //
+    ////////////////////
+
+    /**
+     * Write some results of a report.
+     *
+     * @param report  The report graph.
+     * @param results Result nodes to write, in N-Triples syntax.
+     * @throws IOException If the results cannot be written.
+     */
+    public synchronized void write(Graph report, Set<String> results) throws IOException {
+
+        // Fields of each result
+        Map<String, Map<String, String>> lines = new LinkedHashMap<>();
+        for (String result : results) {
+            lines.put(result, new LinkedHashMap<>());
+        }
+        for (Edge edge : report.getEdges()) {
+            String field = FIELDS.get(NTriplesTerms.toTerm(edge.getEdgeNode()));
+            if (field == null) {
+                continue;
+            }
+            Map<String, String> line = lines.get(NTriplesTerms.toTerm(edge.getNode(0)));
+            if (line != null) {
+                line.put(field, plain(edge.getNode(1)));
+            }
+        }
+
+        for (Map<String, String> line : lines.values()) {
+            try (JsonGenerator generator = JSON_FACTORY.createGenerator(this.writer)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.writeStartObject();
+                for (String field : FIELDS.values()) {
+                    if (line.containsKey(field)) {
+                        generator.writeStringField(field, line.get(field));
+                    }
+                }
+                generator.writeEndObject();
+            }
+            this.writer.write('\n');
+            this.count++;
+        }
+        this.writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.closeWriter) {
+            this.writer.close();
+        } else {
+            this.writer.flush();
+        }
+    }
+
+    /////////////////////
+    // Private methods //
+    /////////////////////
+
+    /**
+     * Get the plain value of a node.
+     *
+     * @param node The node.
+     * @return The IRI, the blank node label or the lexical form of a literal.
+     */
+    private static String plain(Node node) {
+        IDatatype value = node.getDatatypeValue();
+        return value.isBlank() ? NTriplesTerms.toTerm(node) : value.getLabel();
+    }
+
+}
@@ -0,0 +1,333 @@
+package fr.inria.corese.command.utils.stream;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * Reads N-Triples or N-Quads statements one line at a time.
+ *
+ * Terms are returned in a normalized form: literals use the canonical
+ * N-Triples escapes and the {@code xsd:string} datatype is dropped. Comments
+ * and blank lines are skipped.
+ */
+public class NQuadsReader {
+
+    private static final String XSD_STRING = "<http://www.w3.org/2001/XMLSchema#string>";
+
+    private final BufferedReader reader;
+    private final String sourceName;
+    private final boolean allowGraph;
+    private final String blankNodePrefix;
+
+    // Current line
+    private long lineNumber = 0;
+    private String line;
+    private int pos;
+
+    /////////////////
+    // Constructor //
+    /////////////////
+
+    /**
+     * Constructor.
+     *
+     * @param reader          Reader to read the statements from.
+     * @param sourceName      Name of the source, used in error messages.
+     * @param allowGraph      True to read N-Quads, false to read N-Triples.
+     * @param blankNodePrefix Prefix added to blank node labels, so that labels of
+     *                        different sources do not collide. May be empty.
+     */
+    public NQuadsReader(BufferedReader reader, String sourceName, boolean allowGraph, String blankNodePrefix) {
+        this.reader = reader;
+        this.sourceName = sourceName;
+        this.allowGraph = allowGraph;
+        this.blankNodePrefix = blankNodePrefix;
+    }
+
+    ////////////////////
+    // Public methods //
+    ////////////////////
+
+    /**
+     * Read the next statement.
+     *
+     * @return The next statement, or null at the end of the input.
+     * @throws IOException              If the input cannot be read.
+     * @throws IllegalArgumentException If a line is not a valid statement.
+     */
+    public RdfStatement next() throws IOException {
+        while ((this.line = this.reader.readLine()) != null) {
+            this.lineNumber++;
+            this.pos = 0;
+
+            RdfStatement statement = this.parseLine();
+            if (statement != null) {
+                return statement;
+            }
+        }
+        return null;
+    }
+
+    /////////////////////
+    // Private methods //
+    /////////////////////
+
+    /**
+     * Parse the current line.
+     *
+     * @return The statement, or null if the line is blank or a comment.
+     */
+    private RdfStatement parseLine() {
+        this.skipWhitespace();
+        if (this.atEnd() || this.peek() == '#') {
+            return null;
+        }
+
+        String subject = this.readTerm();
+        if (subject.startsWith("\"")) {
+            throw this.error("a literal cannot be used as subject");
+        }
+
+        String predicate = this.readTerm();
+        if (!predicate.startsWith("<")) {
+            throw this.error("the predicate must be an IRI");
+        }
+
+        String object = this.readTerm();
+
+        String graph = null;
+        this.skipWhitespace();
+        if (!this.atEnd() && this.peek() != '.') {
+            if (!this.allowGraph) {
+                throw this.error("graph names are not allowed in N-Triples");
+            }
+            graph = this.readTerm();
+            if (graph.startsWith("\"")) {
+                throw this.error("a literal cannot be used as graph name");
+            }
+            this.skipWhitespace();
+        }
+
+        if (this.atEnd() || this.peek() != '.') {
+            throw this.error("expected '.' at the end of the statement");
+        }
+        this.pos++;
+
+        this.skipWhitespace();
+        if (!this.atEnd() && this.peek() != '#') {
+            throw this.error("unexpected content after the end of the statement");
+        }
+
+        return new RdfStatement(subject, predicate, object, graph);
+    }
+
+    /**
+     * Read an IRI, a blank node or a literal.
+     *
+     * @return The term in N-Triples syntax.
+     */
+    private String readTerm() {
+        this.skipWhitespace();
+        if (this.atEnd()) {
+            throw this.error("unexpected end of line");
+        }
+
+        switch (this.peek()) {
+            case '<':
+                return this.readIri();
+            case '_':
+                return this.readBlankNode();
+            case '"':
+                return this.readLiteral();
+            default:
+                throw this.error("unexpected character '" + this.peek() + "'");
+        }
+    }
+
+    /**
+     * Read an IRI.
+     *
+     * @return The IRI with its angle brackets.
+     */
+    private String readIri() {
+        int start = this.pos;
+        int end = this.line.indexOf('>', start + 1);
+        if (end < 0) {
+            throw this.error("unterminated IRI");
+        }
+
+        String iri = this.line.substring(start, end + 1);
+        for (int i = 1; i < iri.length() - 1; i++) {
+            if (Character.isWhitespace(iri.charAt(i))) {
+                throw this.error("whitespace is not allowed in IRIs");
+            }
+        }
+
+        this.pos = end + 1;
+        return iri;
+    }
+
+    /**
+     * Read a blank node.
+     *
+     * @return The blank node with its prefix applied.
+     */
+    private String readBlankNode() {
+        if (!this.line.startsWith("_:", this.pos)) {
+            throw this.error("invalid blank node");
+        }
+
+        int start = this.pos + 2;
+        int end = start;
+        while (end < this.line.length()) {
+            char c = this.line.charAt(end);
+            if (Character.isWhitespace(c) || c == '<' || c == '"' || c == '#') {
+                break;
+            }
+            end++;
+        }
+
+        // A label cannot end with '.', which belongs to the statement
+        while (end > start && this.line.charAt(end - 1) == '.') {
+            end--;
+        }
+        if (end == start) {
+            throw this.error("empty blank node label");
+        }
+
+        this.pos = end;
+        return "_:" + this.blankNodePrefix + this.line.substring(start, end);
+    }
+
+    /**
+     * Read a literal with its optional language tag or datatype.
+     *
+     * @return The literal in canonical N-Triples syntax.
+     */
+    private String readLiteral() {
+        StringBuilder lexical = new StringBuilder();
+        int i = this.pos + 1;
+
+        while (true) {
+            if (i >= this.line.length()) {
+                throw this.error("unterminated literal");
+            }
+            char c = this.line.charAt(i);
+            if (c == '"') {
+                break;
+            }
+            if (c == '\\') {
+                i = this.readEscape(i, lexical);
+            } else {
+                lexical.append(c);
+                i++;
+            }
+        }
+        this.pos = i + 1;
+
+        StringBuilder literal = new StringBuilder();
+        literal.append('"');
+        NTriplesTerms.appendEscaped(lexical, literal);
+        literal.append('"');
+
+        if (!this.atEnd() && this.peek() == '@') {
+            int start = this.pos;
+            this.pos++;
+            while (!this.atEnd() && (Character.isLetterOrDigit(this.peek()) || this.peek() == '-')) {
+                this.pos++;
+            }
+            if (this.pos == start + 1) {
+                throw this.error("empty language tag");
+            }
+            literal.append(this.line, start, this.pos);
+        } else if (this.line.startsWith("^^", this.pos)) {
+            this.pos += 2;
+            if (this.atEnd() || this.peek() != '<') {
+                throw this.error("the datatype must be an IRI");
+            }
+            String datatype = this.readIri();
+            if (!datatype.equals(XSD_STRING)) {
+                literal.append("^^").append(datatype);
+            }
+        }
+
+        return literal.toString();
+    }
+
+    /**
+     * Decode an escape sequence of a literal.
+     *
+     * @param i       Index of the backslash.
+     * @param lexical Builder to append the decoded character to.
+     * @return The index following the escape sequence.
+     */
+    private int readEscape(int i, StringBuilder lexical) {
+        if (i + 1 >= this.line.length()) {
+            throw this.error("unterminated escape sequence");
+        }
+
+        char c = this.line.charAt(i + 1);
+        switch (c) {
+            case 't':
+                lexical.append('\t');
+                return i + 2;
+            case 'b':
+                lexical.append('\b');
+                return i + 2;
+            case 'n':
+                lexical.append('\n');
+                return i + 2;
+            case 'r':
+                lexical.append('\r');
+                return i + 2;
+            case 'f':
+                lexical.append('\f');
+                return i + 2;
+            case '"':
+            case '\'':
+            case '\\':
+                lexical.append(c);
+                return i + 2;
+            case 'u':
+            case 'U':
+                int length = c == 'u' ? 4 : 8;
+                if (i + 2 + length > this.line.length()) {
+                    throw this.error("truncated unicode escape");
+                }
+                try {
+                    int codePoint = Integer.parseInt(this.line.substring(i + 2, i + 2 + length), 16);
+                    lexical.appendCodePoint(codePoint);
+                } catch (IllegalArgumentException e) {
+                    throw this.error("invalid unicode escape");
+                }
+                return i + 2 + length;
+            default:
+                throw this.error("invalid escape sequence '\\" + c + "'");
+        }
+    }
+
+    private void skipWhitespace() {
+        while (!this.atEnd() && (this.peek() == ' ' || this.peek() == '\t')) {
+            this.pos++;
+        }
+    }
+
+    private boolean atEnd() {
+        return this.pos >= this.line.length();
+    }
+
+    private char peek() {
+        return this.line.charAt(this.pos);
+    }
+
+    /**
+     * Build an error for the current line.
+     *
+     * @param message Description of the error.
+     * @return The exception to throw.
+     */
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(
+                "Failed to parse RDF file: " + this.sourceName + " at line " + this.lineNumber + ": " + message);
+    }
+}
@@ -0,0 +1,122 @@
+package fr.inria.corese.command.utils.stream;
+
+import fr.inria.corese.core.kgram.api.core.Edge;
+import fr.inria.corese.core.kgram.api.core.Node;
+import fr.inria.corese.core.sparql.api.IDatatype;
+
+/**
+ * Utility class to write RDF terms in N-Triples syntax.
+ */
+public class NTriplesTerms {
+
+    // Name of the default graph in Corese
+    public static final String DEFAULT_GRAPH = "http://ns.inria.fr/corese/kgram/default";
+
+    private static final String XSD_STRING = "http://www.w3.org/2001/XMLSchema#string";
+    private static final String RDF_LANG_STRING = "http://www.w3.org/1999/02/22-rdf-syntax-ns#langString";
+
+    /**
+     * Convert an edge of a Corese graph into a statement.
+     *
+     * @param edge Edge to convert.
+     * @return The statement, with a null graph name for the default graph.
+     */
+    public static RdfStatement toStatement(Edge edge) {
+        String graph = null;
+        Node graphNode = edge.getGraph();
+        if (graphNode != null && !DEFAULT_GRAPH.equals(graphNode.getLabel())) {
+            graph = toTerm(graphNode);
+        }
+
+        return new RdfStatement(
+                toTerm(edge.getNode(0)),
+                toTerm(edge.getEdgeNode()),
+                toTerm(edge.getNode(1)),
+                graph);
+    }
+
+    /**
+     * Convert a node of a Corese graph into a term.
+     *
+     * @param node Node to convert.
+     * @return The term in N-Triples syntax.
+     */
+    public static String toTerm(Node node) {
+        IDatatype value = node.getDatatypeValue();
+
+        if (value.isBlank()) {
+            String label = value.getLabel();
+            return label.startsWith("_:") ? label : "_:" + label;
+        }
+
+        if (value.isLiteral()) {
+            return literal(value.getLabel(), value.getLang(), value.getDatatypeURI());
+        }
+
+        return "<" + value.getLabel() + ">";
+    }
+
+    /**
+     * Build a literal term.
+     *
+     * @param lexical  Lexical form of the literal.
+     * @param lang     Language tag, or null.
+     * @param datatype Datatype IRI, or null for {@code xsd:string}.
+     * @return The literal in N-Triples syntax.
+     */
+    public static String literal(String lexical, String lang, String datatype) {
+        StringBuilder literal = new StringBuilder(lexical.length() + 2);
+        literal.append('"');
+        appendEscaped(lexical, literal);
+        literal.append('"');
+
+        if (lang != null && !lang.isEmpty()) {
+            literal.append('@').append(lang);
+        } else if (datatype != null && !datatype.equals(XSD_STRING) && !datatype.equals(RDF_LANG_STRING)) {
+            literal.append("^^<").append(datatype).append('>');
+        }
+
+        return literal.toString();
+    }
+
+    /**
+     * Append a lexical form using the canonical N-Triples escapes.
+     *
+     * @param lexical Lexical form to escape.
+     * @param out     Builder to append to.
+     */
+    public static void appendEscaped(CharSequence lexical, StringBuilder out) {
+        for (int i = 0; i < lexical.length(); i++) {
+            char c = lexical.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\b':
+                    out.append("\\b");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\f':
+                    out.append("\\f");
+                    break;
+                default:
+                    if (c < 0x20 || c == 0x7F) {
+                        out.append(String.format("\\u%04X", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package fr.inria.corese.command.utils.stream;
+
+/**
+ * An RDF statement whose terms are written in N-Triples syntax.
+ *
+ * Terms are kept as text so that statements can be copied from a reader to a
+ * writer without building any Corese node.
+ */
+public class RdfStatement {
+
+    private final String subject;
+    private final String predicate;
+    private final String object;
+    private final String graph;
+
+    /////////////////
+    // Constructor //
+    /////////////////
+
+    /**
+     * Constructor.
+     *
+     * @param subject   Subject, an IRI or a blank node.
+     * @param predicate Predicate, an IRI.
+     * @param object    Object, an IRI, a blank node or a literal.
+     * @param graph     Graph name, or null for the default graph.
+     */
+    public RdfStatement(String subject, String predicate, String object, String graph) {
+        this.subject = subject;
+        this.predicate = predicate;
+        this.object = object;
+        this.graph = graph;
+    }
+
+    ///////////////////////
+    // Getters & Setters //
+    ///////////////////////
+
+    /**
+     * Get the subject.
+     *
+     * @return The subject in N-Triples syntax.
+     */
+    public String getSubject() {
+        return this.subject;
+    }
+
+    /**
+     * Get the predicate.
+     *
+     * @return The predicate in N-Triples syntax.
+     */
+    public String getPredicate() {
+        return this.predicate;
+    }
+
+    /**
+     * Get the object.
+     *
+     * @return The object in N-Triples syntax.
+     */
+    public String getObject() {
+        return this.object;
+    }
+
+    /**
+     * Get the graph name.
+     *
+     * @return The graph name in N-Triples syntax, or null for the default graph.
+     */
+    public String getGraph() {
+        return this.graph;
+    }
+}
@@ -0,0 +1,182 @@
+package fr.inria.corese.command.utils.stream;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Objects;
+
+import fr.inria.corese.core.sparql.api.ResultFormatDef;
+
+/**
+ * Writes RDF statements one by one in a line-based serialization.
+ *
+ * N-Triples and Turtle outputs get one triple per line, N-Quads one quad per
+ * line, and TriG groups consecutive statements of the same graph in a single
+ * graph block. Nothing is buffered besides the underlying writer, so memory
+ * use does not depend on the number of statements.
+ */
+public class RdfStatementWriter {
+
+    private final Writer writer;
+    private final ResultFormatDef.format format;
+
+    // TriG state
+    private boolean inGraphBlock = false;
+    private String currentGraph = null;
+
+    private long count = 0;
+
+    /////////////////
+    // Constructor //
+    /////////////////
+
+    /**
+     * Constructor.
+     *
+     * @param writer Writer to write the statements to.
+     * @param format Corese output format, must be supported by
+     *               {@link #supports}.
+     */
+    public RdfStatementWriter(Writer writer, ResultFormatDef.format format) {
+        if (!supports(format)) {
+            throw new IllegalArgumentException("Format " + format + " cannot be written statement by statement");
+        }
+        this.writer = writer;
+        this.format = format;
+    }
+
+    ////////////////////
+    // Public methods //
+    ////////////////////
+
+    /**
+     * Check if a format can be written statement by statement.
+     *
+     * @param format Corese output format.
+     * @return True if the format is N-Triples, N-Quads, Turtle or TriG.
+     */
+    public static boolean supports(ResultFormatDef.format format) {
+        switch (format) {
+            case NTRIPLES_FORMAT:
+            case NQUADS_FORMAT:
+            case TURTLE_FORMAT:
+            case TRIG_FORMAT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Check if a format keeps graph names.
+     *
+     * @param format Corese output format.
+     * @return True if the format is N-Quads or TriG.
+     */
+    public static boolean keepsGraphs(ResultFormatDef.format format) {
+        switch (format) {
+            case NQUADS_FORMAT:
+            case TRIG_FORMAT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Write a statement.
+     *
+     * @param statement Statement to write.
+     * @throws IOException If the statement cannot be written.
+     */
+    public void write(RdfStatement statement) throws IOException {
+        switch (this.format) {
+            case NQUADS_FORMAT:
+                this.writeTriple(statement, "");
+                if (statement.getGraph() != null) {
+                    this.writer.write(' ');
+                    this.writer.write(statement.getGraph());
+                }
+                this.writer.write(" .\n");
+                break;
+
+            case TRIG_FORMAT:
+                this.switchGraph(statement.getGraph());
+                this.writeTriple(statement, this.inGraphBlock ? "    " : "");
+                this.writer.write(" .\n");
+                break;
+
+            default:
+                this.writeTriple(statement, "");
+                this.writer.write(" .\n");
+                break;
+        }
+        this.count++;
+    }
+
+    /**
+     * Close the last graph block, if any, and flush the writer.
+     *
+     * @throws IOException If the writer cannot be flushed.
+     */
+    public void finish() throws IOException {
+        if (this.inGraphBlock) {
+            this.writer.write("}\n");
+            this.inGraphBlock = false;
+        }
+        this.writer.flush();
+    }
+
+    /**
+     * Get the number of statements written.
+     *
+     * @return The number of statements written.
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    /////////////////////
+    // Private methods //
+    /////////////////////
+
+    /**
+     * Write the subject, predicate and object of a statement.
+     *
+     * @param statement Statement to write.
+     * @param indent    Indentation of the line.
+     * @throws IOException If the statement cannot be written.
+     */
+    private void writeTriple(RdfStatement statement, String indent) throws IOException {
+        this.writer.write(indent);
+        this.writer.write(statement.getSubject());
+        this.writer.write(' ');
+        this.writer.write(statement.getPredicate());
+        this.writer.write(' ');
+        this.writer.write(statement.getObject());
+    }
+
+    /**
+     * Open the TriG graph block of a statement if it differs from the current
+     * one.
+     *
+     * @param graph Graph name, or null for the default graph.
+     * @throws IOException If the block cannot be written.
+     */
+    private void switchGraph(String graph) throws IOException {
+        if (this.count > 0 && Objects.equals(graph, this.currentGraph)) {
+            return;
+        }
+
+        if (this.inGraphBlock) {
+            this.writer.write("}\n");
+            this.inGraphBlock = false;
+        }
+
+        if (graph != null) {
+            this.writer.write(graph);
+            this.writer.write(" {\n");
+            this.inGraphBlock = true;
+        }
+        this.currentGraph = graph;
+    }
+}
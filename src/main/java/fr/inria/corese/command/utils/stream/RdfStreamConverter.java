@@ -0,0 +1,220 @@
+package fr.inria.corese.command.utils.stream;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import fr.inria.corese.command.utils.exporter.AbstractExporter;
+import fr.inria.corese.command.utils.exporter.rdf.EnumRdfOutputFormat;
+import fr.inria.corese.command.utils.loader.rdf.EnumRdfInputFormat;
+import fr.inria.corese.command.utils.loader.rdf.RdfInputSource;
+import fr.inria.corese.core.api.Loader;
+import picocli.CommandLine.Model.CommandSpec;
+
+/**
+ * Utility class to convert line-based RDF data without loading it into a
+ * graph.
+ *
+ * Statements are read from N-Triples or N-Quads inputs and written to the
+ * output as soon as they are parsed, so memory use does not depend on the size
+ * of the data. Unlike a conversion through a graph, duplicate statements are
+ * kept.
+ */
+public class RdfStreamConverter extends AbstractExporter implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final EnumRdfOutputFormat outputFormat;
+
+    // Output
+    private Path outputPath;
+    private Writer writer;
+    private RdfStatementWriter statementWriter;
+
+    // Sources
+    private boolean separateBlankNodes = false;
+    private int sourceCount = 0;
+
+    /////////////////
+    // Constructor //
+    /////////////////
+
+    /**
+     * Constructor.
+     *
+     * @param spec         Command specification.
+     * @param verbose      If true, print information about the converted files.
+     * @param output       Output file path. If not provided, the result will be
+     *                     written to standard output.
+     * @param outputFormat Output serialization format.
+     */
+    public RdfStreamConverter(CommandSpec spec, boolean verbose, Path output, EnumRdfOutputFormat outputFormat) {
+        super(spec, verbose, output);
+        this.outputFormat = outputFormat;
+    }
+
+    ///////////////////////
+    // Getters & Setters //
+    ///////////////////////
+
+    /**
+     * Sets whether blank node labels of different sources must be kept apart.
+     *
+     * Blank node labels are local to a file, so when several files are
+     * converted into one output their labels are prefixed with the index of
+     * the file.
+     *
+     * @param separateBlankNodes True to prefix blank node labels.
+     */
+    public void setSeparateBlankNodes(boolean separateBlankNodes) {
+        this.separateBlankNodes = separateBlankNodes;
+    }
+
+    ////////////////////
+    // Public methods //
+    ////////////////////
+
+    /**
+     * Check if a conversion can be done without loading the data into a graph.
+     *
+     * N-Triples can be converted to N-Triples, N-Quads, Turtle or TriG, and
+     * N-Quads to N-Quads or TriG.
+     *
+     * @param inputFormat  Input serialization format.
+     * @param outputFormat Output serialization format.
+     * @throws IllegalArgumentException If the conversion cannot be streamed.
+     */
+    public static void checkSupported(EnumRdfInputFormat inputFormat, EnumRdfOutputFormat outputFormat) {
+        if (inputFormat == null) {
+            throw new IllegalArgumentException(
+                    "The input format cannot be automatically determined if you use standard input. "
+                            + "Please specify the input format with the option -f.");
+        }
+
+        boolean supported;
+        if (inputFormat.getCoreseFormat() == Loader.format.NT_FORMAT) {
+            supported = RdfStatementWriter.supports(outputFormat.getCoreseFormat());
+        } else if (inputFormat.getCoreseFormat() == Loader.format.NQUADS_FORMAT) {
+            supported = RdfStatementWriter.keepsGraphs(outputFormat.getCoreseFormat());
+        } else {
+            supported = false;
+        }
+
+        if (!supported) {
+            throw new IllegalArgumentException("Streaming conversion from " + inputFormat + " to " + outputFormat
+                    + " is not supported. Supported conversions are: ntriples to ntriples, nquads, turtle or trig; "
+                    + "nquads to nquads or trig. Remove the --streaming option to convert through a graph.");
+        }
+    }
+
+    /**
+     * Convert a file or URL.
+     *
+     * @param source      Source to convert.
+     * @param inputFormat Input serialization format.
+     */
+    public void convert(RdfInputSource source, EnumRdfInputFormat inputFormat) {
+        try (InputStream inputStream = source.open()) {
+            this.convert(inputStream, source.toString(), inputFormat);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to read RDF data file: " + source, e);
+        }
+    }
+
+    /**
+     * Convert the content of an input stream.
+     *
+     * @param inputStream Input stream to convert.
+     * @param sourceName  Name of the source, used in messages.
+     * @param inputFormat Input serialization format.
+     */
+    public void convert(InputStream inputStream, String sourceName, EnumRdfInputFormat inputFormat) {
+        checkSupported(inputFormat, this.outputFormat);
+        this.open();
+
+        boolean allowGraph = inputFormat.getCoreseFormat() == Loader.format.NQUADS_FORMAT;
+        String blankNodePrefix = this.separateBlankNodes ? "f" + this.sourceCount + "_" : "";
+        this.sourceCount++;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8),
+                BUFFER_SIZE);
+        NQuadsReader statementReader = new NQuadsReader(reader, sourceName, allowGraph, blankNodePrefix);
+
+        long before = this.statementWriter.getCount();
+        try {
+            RdfStatement statement;
+            while ((statement = statementReader.next()) != null) {
+                this.statementWriter.write(statement);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to convert RDF data file: " + sourceName, e);
+        }
+
+        if (this.verbose) {
+            this.spec.commandLine().getErr().println("Converted file: " + sourceName + " ("
+                    + (this.statementWriter.getCount() - before) + " statements)");
+        }
+    }
+
+    /**
+     * Flush and close the output.
+     */
+    @Override
+    public void close() {
+        if (this.statementWriter == null) {
+            return;
+        }
+
+        try {
+            this.statementWriter.finish();
+            if (this.outputPath != null) {
+                this.writer.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to write converted RDF data", e);
+        }
+
+        if (this.verbose) {
+            String destination = this.outputPath != null ? "file: " + this.outputPath : "standard output";
+            this.spec.commandLine().getErr().println("Exported " + this.statementWriter.getCount()
+                    + " statements to " + destination + " with format: " + this.outputFormat);
+        }
+        this.statementWriter = null;
+    }
+
+    /////////////////////
+    // Private methods //
+    /////////////////////
+
+    /**
+     * Open the output on the first conversion.
+     */
+    private void open() {
+        if (this.statementWriter != null) {
+            return;
+        }
+
+        if (this.outputIsDefined) {
+            this.outputPath = this.resolveOutputPath(this.needToAppendExtension
+                    ? Path.of(this.output + "." + this.outputFormat.getExtention())
+                    : this.output);
+            try {
+                this.writer = new BufferedWriter(new OutputStreamWriter(this.openOutputStream(this.outputPath),
+                        StandardCharsets.UTF_8), BUFFER_SIZE);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Failed to open export file: " + this.outputPath, e);
+            }
+        } else {
+            this.checkStdoutAllowed();
+            this.writer = this.spec.commandLine().getOut();
+        }
+
+        this.statementWriter = new RdfStatementWriter(this.writer, this.outputFormat.getCoreseFormat());
+    }
+}
@@ -1,20 +1,41 @@
 package fr.inria.corese.command.programs;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+
+import fr.inria.corese.command.utils.compression.EnumCompression;
+import fr.inria.corese.command.utils.compression.ParallelCompressorOutputStream;
 import fr.inria.corese.command.utils.loader.rdf.EnumRdfInputFormat;
+import fr.inria.corese.command.utils.loader.rdf.MappedLineLoader;
 import fr.inria.corese.command.utils.loader.rdf.RdfDataLoader;
 import fr.inria.corese.core.Graph;
 import fr.inria.corese.core.load.Load;
@@ -737,6 +758,198 @@ public class ConvertTest {
 
     }
 
+    @Test
+    public void testConvertStreamingNtToNq() {
+        String pathInputBeatlesNT = inputPath.resolve("beatles.nt").toString();
+        String pathRefBeatlesNQ = referencesPath.resolve("nt.beatles.nq").toString();
+        String pathOutBeatlesNQ = resultPath.resolve("streaming.nt.beatles.nq").toString();
+
+        int exitCode = cmd.execute("-i", pathInputBeatlesNT, "-of", "NQUADS", "-o", pathOutBeatlesNQ, "--streaming");
+
+        assertEquals(0, exitCode);
+        assertEquals(out.toString(), "");
+        assertEquals(err.toString(), "");
+        assertEquals(canonicalize(pathRefBeatlesNQ), canonicalize(pathOutBeatlesNQ));
+    }
+
+    @Test
+    public void testConvertStreamingNqToTrig() {
+        String pathInputBeatlesNQ = inputPath.resolve("beatles.nq").toString();
+        String pathRefBeatlesTrig = referencesPath.resolve("nq.beatles.trig").toString();
+        String pathOutBeatlesTrig = resultPath.resolve("streaming.nq.beatles.trig").toString();
+
+        int exitCode = cmd.execute("-i", pathInputBeatlesNQ, "-of", "TRIG", "-o", pathOutBeatlesTrig, "--streaming");
+
+        assertEquals(0, exitCode);
+        assertEquals(out.toString(), "");
+        assertEquals(err.toString(), "");
+        assertEquals(canonicalize(pathRefBeatlesTrig), canonicalize(pathOutBeatlesTrig));
+    }
+
+    @Test
+    public void testConvertStreamingUnsupportedFormat() {
+        String pathInputBeatlesTTL = inputPath.resolve("beatles.ttl").toString();
+        String pathOutBeatlesNT = resultPath.resolve("streaming.ttl.beatles.nt").toString();
+
+        int exitCode = cmd.execute("-i", pathInputBeatlesTTL, "-of", "NTRIPLES", "-o", pathOutBeatlesNT, "--streaming");
+
+        assertEquals(1, exitCode);
+        assertEquals(out.toString(), "");
+        assertTrue(err.toString().contains("Streaming conversion from turtle to ntriples is not supported"));
+    }
+
+    @Test
+    public void testConvertLoadThreads(@TempDir Path tempDir) throws Exception {
+        Path inputDir = Files.createDirectory(tempDir.resolve("input"));
+        for (int i = 0; i < 12; i++) {
+            Files.writeString(inputDir.resolve(String.format("part%02d.ttl", i)),
+                    "@prefix ex: <http://example.com/> .\n"
+                            + "ex:s" + i + " ex:p \"v" + i + "\" ;\n"
+                            + "    ex:q [ ex:r " + i + " ] .\n"
+                            + "ex:shared ex:p ex:s" + i + " .\n");
+        }
+        String pathOutSequential = tempDir.resolve("sequential.nt").toString();
+        String pathOutParallel = tempDir.resolve("parallel.nt").toString();
+
+        int exitCode = cmd.execute("-i", inputDir.toString(), "-of", "NTRIPLES", "-o", pathOutSequential);
+        assertEquals(0, exitCode);
+        exitCode = cmd.execute("-i", inputDir.toString(), "-of", "NTRIPLES", "-o", pathOutParallel,
+                "--load-threads", "4");
+        assertEquals(0, exitCode);
+
+        assertEquals(out.toString(), "");
+        assertEquals(err.toString(), "");
+        assertEquals(48, Files.readAllLines(Path.of(pathOutParallel)).size());
+        assertEquals(canonicalize(pathOutSequential), canonicalize(pathOutParallel));
+    }
+
+    @Test
+    public void testConvertLoadThreadsInChunks(@TempDir Path tempDir) throws Exception {
+        StringBuilder nTriples = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            String subject = "<http://example.com/s" + i + ">";
+            nTriples.append(subject).append(" <http://example.com/p> \"value ").append(i).append("\" .\n");
+            if (i % 20 == 0) {
+                // Blank nodes used in several chunks
+                nTriples.append("_:shared <http://example.com/index> \"").append(i).append("\" .\n");
+                nTriples.append(subject).append(" <http://example.com/q> _:b").append(i % 3).append(" .\n");
+            }
+            if (i % 50 == 0) {
+                nTriples.append(subject).append(" <http://example.com/label> \"not a _:blank node\" .\n");
+            }
+            if (i == 100) {
+                // A line longer than a chunk
+                nTriples.append(subject).append(" <http://example.com/text> \"").append("x".repeat(2000))
+                        .append("\" .\n");
+            }
+        }
+        Path input = tempDir.resolve("input.nt");
+        Files.writeString(input, nTriples);
+        String pathOutSequential = tempDir.resolve("sequential.nt").toString();
+        String pathOutParallel = tempDir.resolve("parallel.nt").toString();
+
+        MappedLineLoader.setSizes(1024, 256);
+        try {
+            int exitCode = cmd.execute("-i", input.toString(), "-of", "NTRIPLES", "-o", pathOutSequential);
+            assertEquals(0, exitCode);
+            exitCode = cmd.execute("-i", input.toString(), "-of", "NTRIPLES", "-o", pathOutParallel,
+                    "--load-threads", "4", "-v");
+            assertEquals(0, exitCode);
+        } finally {
+            MappedLineLoader.setSizes(MappedLineLoader.DEFAULT_MIN_FILE_SIZE, MappedLineLoader.DEFAULT_CHUNK_SIZE);
+        }
+
+        assertEquals(out.toString(), "");
+        assertTrue(err.toString().contains(" chunks with 4 threads"));
+        assertTrue(err.toString().contains("of lines with blank nodes were parsed on a single thread"));
+        assertEquals(canonicalize(pathOutSequential), canonicalize(pathOutParallel));
+    }
+
+    @Test
+    public void testConvertLoadThreadsWithInvalidInput(@TempDir Path tempDir) throws Exception {
+        String missing = tempDir.resolve("missing.ttl").toString();
+        List<String> args = new ArrayList<>(List.of("-of", "NTRIPLES", "--load-threads", "4"));
+        for (int i = 0; i < 6; i++) {
+            Path input = tempDir.resolve("part" + i + ".ttl");
+            Files.writeString(input, "<http://example.com/s" + i + "> <http://example.com/p> \"v\" .\n");
+            args.addAll(List.of("-i", i == 2 ? missing : input.toString()));
+        }
+
+        int exitCode = cmd.execute(args.toArray(String[]::new));
+        assertEquals(1, exitCode);
+        assertEquals(out.toString(), "");
+        assertTrue(err.toString().contains("Failed to open RDF data file: " + missing));
+    }
+
+    @Test
+    public void testConvertCompressGzip(@TempDir Path tempDir) throws Exception {
+        this.assertCompressedRoundTrip(tempDir, EnumCompression.GZIP);
+    }
+
+    @Test
+    public void testConvertCompressBzip2(@TempDir Path tempDir) throws Exception {
+        this.assertCompressedRoundTrip(tempDir, EnumCompression.BZIP2);
+    }
+
+    @Test
+    public void testConvertCompressZstd(@TempDir Path tempDir) throws Exception {
+        this.assertCompressedRoundTrip(tempDir, EnumCompression.ZSTD);
+    }
+
+    @Test
+    public void testParallelCompressorWriteAfterClose() throws Exception {
+        OutputStream outputStream = new ParallelCompressorOutputStream(new ByteArrayOutputStream(),
+                EnumCompression.GZIP, 2);
+        outputStream.write(1);
+        outputStream.close();
+
+        assertThrows(IOException.class, () -> outputStream.write(1));
+        assertThrows(IOException.class, () -> outputStream.write(new byte[4], 0, 4));
+    }
+
+    /**
+     * Convert data larger than a compression block with --compress, then check
+     * that the output decompresses to the uncompressed conversion and that it
+     * is read back as input, recognized by its header.
+     *
+     * @param tempDir     Temporary directory.
+     * @param compression Compression format.
+     */
+    private void assertCompressedRoundTrip(Path tempDir, EnumCompression compression) throws Exception {
+        Path input = tempDir.resolve("input.nt");
+        StringBuilder nTriples = new StringBuilder();
+        for (int i = 0; i < 30_000; i++) {
+            nTriples.append("<http://example.com/subject").append(i).append("> <http://example.com/value> \"")
+                    .append(i).append("\" .\n");
+        }
+        Files.writeString(input, nTriples);
+
+        Path plain = tempDir.resolve("plain.nt");
+        Path compressed = tempDir.resolve("compressed.nt");
+        assertEquals(0, cmd.execute("-i", input.toString(), "-of", "NTRIPLES", "-o", plain.toString()));
+        assertEquals(0, cmd.execute("-i", input.toString(), "-of", "NTRIPLES", "-o", compressed.toString(),
+                "--compress", compression.toString()));
+        assertEquals(out.toString(), "");
+        assertEquals(err.toString(), "");
+
+        // The extension is appended and the data spans several blocks
+        Path compressedFile = Path.of(compressed + "." + compression.getExtension());
+        assertTrue(Files.size(plain) > 1 << 20);
+        byte[] decompressed;
+        try (InputStream inputStream = EnumCompression.decompress(Files.newInputStream(compressedFile))) {
+            decompressed = inputStream.readAllBytes();
+        }
+        assertEquals(Files.readString(plain), new String(decompressed, StandardCharsets.UTF_8));
+
+        // Read back without the compression extension
+        Path renamed = Files.move(compressedFile, tempDir.resolve("renamed.nt"));
+        Path roundTrip = tempDir.resolve("roundtrip.nt");
+        assertEquals(0, cmd.execute("-i", renamed.toString(), "-of", "NTRIPLES", "-o", roundTrip.toString()));
+        assertEquals(err.toString(), "");
+        assertEquals(Files.readAllLines(plain).stream().sorted().toList(),
+                Files.readAllLines(roundTrip).stream().sorted().toList());
+    }
+
     @Test
     public void testConvertWithSameInputAndOutputPath() {
         String inputPath = referencesPath.resolve("beatles.ttl").toString();
@@ -781,4 +994,42 @@ public class ConvertTest {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testConvertUrlThroughHttpCache(@TempDir Path cacheDir) throws Exception {
+        String body = Files.readString(inputPath.resolve("beatles.ttl"));
+
+        WireMockServer server = new WireMockServer(WireMockConfiguration.options().dynamicPort());
+        server.start();
+        try {
+            server.stubFor(get(urlPathEqualTo("/beatles.ttl")).atPriority(1)
+                    .withHeader("If-None-Match", equalTo("\"v1\""))
+                    .willReturn(aResponse().withStatus(304)));
+            server.stubFor(get(urlPathEqualTo("/beatles.ttl")).atPriority(2)
+                    .willReturn(aResponse().withStatus(200).withHeader("ETag", "\"v1\"").withBody(body)));
+
+            String url = "http://localhost:" + server.port() + "/beatles.ttl";
+            String[] args = { "-i", url, "-of", "NTRIPLES", "--http-cache", "--http-cache-dir", cacheDir.toString() };
+
+            // Downloaded, then revalidated
+            assertEquals(0, cmd.execute(args));
+            String expected = out.toString();
+            out.getBuffer().setLength(0);
+            assertEquals(0, cmd.execute(args));
+            assertEquals(expected, out.toString());
+
+            server.verify(2, getRequestedFor(urlPathEqualTo("/beatles.ttl")));
+            server.verify(1, getRequestedFor(urlPathEqualTo("/beatles.ttl"))
+                    .withHeader("If-None-Match", equalTo("\"v1\"")));
+        } finally {
+            server.stop();
+        }
+
+        // Served from the cache without the server
+        out.getBuffer().setLength(0);
+        String url = "http://localhost:" + server.port() + "/beatles.ttl";
+        assertEquals(0, cmd.execute("-i", url, "-of", "NTRIPLES", "--http-cache-dir", cacheDir.toString(),
+                "--offline"));
+        assertTrue(out.toString().contains("http://example.com/"));
+    }
+
+}
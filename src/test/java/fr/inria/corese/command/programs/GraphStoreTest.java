@@ -0,0 +1,158 @@
+package fr.inria.corese.command.programs;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.delete;
+import static com.github.tomakehurst.wiremock.client.WireMock.deleteRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.put;
+import static com.github.tomakehurst.wiremock.client.WireMock.putRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+
+import picocli.CommandLine;
+
+public class GraphStoreTest {
+
+        private GraphStore graphStore = new GraphStore();
+        private CommandLine cmd = new CommandLine(graphStore);
+
+        private StringWriter out = new StringWriter();
+        private StringWriter err = new StringWriter();
+
+        private static WireMockServer wireMockServer;
+
+        private static final String graphUri = "http://example.org/graph";
+        private static final String graphContent = "<http://example.org/s> <http://example.org/p> <http://example.org/o> .\n";
+
+        @TempDir
+        Path tempDir;
+
+        Path inputPath;
+
+        public GraphStoreTest() throws URISyntaxException {
+                this.inputPath = Paths.get(
+                                GraphStoreTest.class.getResource("/fr/inria/corese/command/programs/query/input/")
+                                                .toURI());
+        }
+
+        ////////////////
+        // Before All //
+        ////////////////
+
+        @BeforeEach
+        public void initializePicoCli() {
+                cmd.setOut(new PrintWriter(this.out));
+                cmd.setErr(new PrintWriter(this.err));
+        }
+
+        @BeforeAll
+        public static void initializeWireMockServer() {
+                wireMockServer = new WireMockServer(WireMockConfiguration.options().dynamicPort());
+                wireMockServer.start();
+
+                wireMockServer.stubFor(get(urlPathEqualTo("/store"))
+                                .withQueryParam("graph", equalTo(graphUri))
+                                .willReturn(aResponse()
+                                                .withStatus(200)
+                                                .withHeader("Content-Type", "application/n-triples")
+                                                .withBody(graphContent)));
+
+                wireMockServer.stubFor(put(urlPathEqualTo("/store"))
+                                .willReturn(aResponse().withStatus(201)));
+
+                wireMockServer.stubFor(delete(urlPathEqualTo("/store"))
+                                .willReturn(aResponse().withStatus(204)));
+        }
+
+        ///////////////
+        // After All //
+        ///////////////
+
+        @AfterEach
+        public void resetStreams() {
+                wireMockServer.resetRequests();
+                out.getBuffer().setLength(0);
+                err.getBuffer().setLength(0);
+        }
+
+        @AfterAll
+        public static void tearDown() {
+                wireMockServer.stop();
+        }
+
+        ////////////////
+        // Test Cases //
+        ////////////////
+
+        private String storeUrl() {
+                return "http://localhost:" + wireMockServer.port() + "/store";
+        }
+
+        @Test
+        public void testGetToStandardOutput() {
+                int exitCode = cmd.execute("-e", storeUrl(), "-g", graphUri);
+
+                assertEquals(0, exitCode);
+                assertEquals("", err.toString());
+                assertEquals(graphContent, out.toString());
+        }
+
+        @Test
+        public void testGetToFile() throws Exception {
+                Path output = tempDir.resolve("graph.nt");
+
+                int exitCode = cmd.execute("-e", storeUrl(), "-g", graphUri, "-o", output.toString());
+
+                assertEquals(0, exitCode);
+                assertEquals(graphContent, Files.readString(output));
+        }
+
+        @Test
+        public void testPutFile() throws Exception {
+                Path input = inputPath.resolve("beatles.ttl");
+
+                int exitCode = cmd.execute("-e", storeUrl(), "-m", "put", "-g", graphUri, "-i", input.toString());
+
+                assertEquals(0, exitCode);
+                wireMockServer.verify(putRequestedFor(urlPathEqualTo("/store"))
+                                .withQueryParam("graph", equalTo(graphUri))
+                                .withHeader("Content-Type", containing("text/turtle"))
+                                .withRequestBody(equalTo(Files.readString(input))));
+        }
+
+        @Test
+        public void testDeleteDefaultGraph() {
+                int exitCode = cmd.execute("-e", storeUrl(), "-m", "delete");
+
+                assertEquals(0, exitCode);
+                wireMockServer.verify(deleteRequestedFor(urlPathEqualTo("/store"))
+                                .withQueryParam("default", equalTo("")));
+        }
+
+        @Test
+        public void testPutWithoutInput() {
+                int exitCode = cmd.execute("-e", storeUrl(), "-m", "put");
+
+                assertEquals(1, exitCode);
+        }
+
+}
@@ -0,0 +1,147 @@
+package fr.inria.corese.command.programs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import fr.inria.corese.command.utils.server.SparqlServer;
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.api.core.Edge;
+import fr.inria.corese.core.load.Load;
+import picocli.CommandLine;
+
+public class PushTest {
+
+        private Push push = new Push();
+        private CommandLine cmd = new CommandLine(push);
+
+        private StringWriter out = new StringWriter();
+        private StringWriter err = new StringWriter();
+
+        Path inputPath;
+
+        public PushTest() throws URISyntaxException {
+                this.inputPath = Paths.get(
+                                PushTest.class.getResource("/fr/inria/corese/command/programs/query/input/").toURI());
+        }
+
+        @BeforeEach
+        public void setUp() {
+                PrintWriter out = new PrintWriter(this.out);
+                PrintWriter err = new PrintWriter(this.err);
+                cmd.setOut(out);
+                cmd.setErr(err);
+        }
+
+        @Test
+        public void testPushInBatches() throws Exception {
+                String beatlesFile = inputPath.resolve("beatles.ttl").toString();
+
+                Graph expected = Graph.create();
+                Load.create(expected).parse(beatlesFile);
+
+                Graph graph = Graph.create();
+                try (SparqlServer server = new SparqlServer(cmd.getCommandSpec(), false, graph)) {
+                        server.setAllowUpdates(true);
+                        int port = server.start(0, 2);
+
+                        int exitCode = cmd.execute("-i", beatlesFile, "-e",
+                                        "http://localhost:" + port + SparqlServer.PATH, "--batch-size", "10",
+                                        "--push-threads", "2");
+
+                        assertEquals(0, exitCode);
+                        assertEquals(expected.size(), graph.size());
+                        assertTrue(err.toString().contains("Pushed " + expected.size() + " triples"));
+                }
+        }
+
+        @Test
+        public void testPushBlankNodesInSeveralBatches() throws Exception {
+                String input = this.writeBlankNodes();
+
+                Graph graph = Graph.create();
+                try (SparqlServer server = new SparqlServer(cmd.getCommandSpec(), false, graph)) {
+                        server.setAllowUpdates(true);
+                        int port = server.start(0, 2);
+
+                        int exitCode = cmd.execute("-i", input, "-e", "http://localhost:" + port + SparqlServer.PATH,
+                                        "--batch-size", "2");
+
+                        assertEquals(1, exitCode);
+                        assertEquals(0, graph.size());
+                        assertTrue(err.toString().contains("--skolemize"));
+                }
+        }
+
+        @Test
+        public void testPushSkolemize() throws Exception {
+                String input = this.writeBlankNodes();
+
+                Graph graph = Graph.create();
+                try (SparqlServer server = new SparqlServer(cmd.getCommandSpec(), false, graph)) {
+                        server.setAllowUpdates(true);
+                        int port = server.start(0, 2);
+
+                        int exitCode = cmd.execute("-i", input, "-e", "http://localhost:" + port + SparqlServer.PATH,
+                                        "--batch-size", "2", "--skolemize");
+
+                        assertEquals(0, exitCode);
+                        assertEquals(4, graph.size());
+
+                        // The blank node is a single IRI in every batch
+                        Set<String> subjects = new HashSet<>();
+                        for (Edge edge : graph.getEdges()) {
+                                subjects.add(edge.getNode(0).getLabel());
+                        }
+                        assertEquals(1, subjects.size());
+                        assertTrue(subjects.iterator().next()
+                                        .startsWith("http://localhost:" + port + "/.well-known/genid/"));
+                }
+        }
+
+        @Test
+        public void testPushStopsAfterFailure() throws Exception {
+                String beatlesFile = inputPath.resolve("beatles.ttl").toString();
+
+                // A read-only server rejects every update
+                Graph graph = Graph.create();
+                try (SparqlServer server = new SparqlServer(cmd.getCommandSpec(), false, graph)) {
+                        int port = server.start(0, 2);
+
+                        int exitCode = cmd.execute("-i", beatlesFile, "-e",
+                                        "http://localhost:" + port + SparqlServer.PATH, "--batch-size", "1",
+                                        "--push-threads", "1");
+
+                        assertEquals(1, exitCode);
+                        assertEquals(0, graph.size());
+                        assertTrue(err.toString().contains("no further batch was sent"));
+                }
+        }
+
+        /**
+         * Write a Turtle file whose four triples share one blank node.
+         *
+         * @return The path of the file.
+         * @throws IOException If the file cannot be written.
+         */
+        private String writeBlankNodes() throws IOException {
+                Path file = Files.createTempFile("corese-push", ".ttl");
+                Files.writeString(file, "@prefix ex: <http://example.org/> .\n"
+                                + "_:b ex:p1 ex:o1 ; ex:p2 ex:o2 ; ex:p3 ex:o3 ; ex:p4 ex:o4 .\n");
+                file.toFile().deleteOnExit();
+                return file.toString();
+        }
+
+}
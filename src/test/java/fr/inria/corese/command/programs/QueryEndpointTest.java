@@ -5,25 +5,38 @@ import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.exactly;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
 import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.matching;
 import static com.github.tomakehurst.wiremock.client.WireMock.post;
 import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.verify;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import com.github.tomakehurst.wiremock.WireMockServer;
 import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
 
 import picocli.CommandLine;
 
@@ -350,4 +363,229 @@ public class QueryEndpointTest {
                                 .withHeader("Accept", equalTo("application/json"))
                                 .withHeader("Authorization", equalTo("Bearer 1234")));
         }
+
+        // Several endpoints
+
+        @Test
+        public void getQueryTestMultipleEndpointsMerged() {
+                String[] args = { "-e", serverUrl, "http://127.0.0.1:8080/sparql", "-q", querySelect, "-m", "get",
+                                "--merge" };
+                int exitCode = cmd.execute(args);
+
+                // Asserts
+                assertEquals(0, exitCode);
+                verify(exactly(2), getRequestedFor(
+                                urlPathEqualTo("/sparql"))
+                                .withQueryParam("query", equalTo(querySelect))
+                                .withHeader("Accept", equalTo("text/csv")));
+
+                // The second result only has a header line, which is skipped
+                assertEquals("this is a fake response", out.toString().trim());
+                assertTrue(err.toString().contains("Queried 2 endpoints"));
+        }
+
+        @Test
+        public void getQueryTestMergeSingleEndpoint() {
+                String[] args = { "-e", serverUrl, "-q", querySelect, "-m", "get", "--merge" };
+                int exitCode = cmd.execute(args);
+
+                // Asserts
+                assertEquals(1, exitCode);
+                assertTrue(err.toString().contains("Results can only be merged when several endpoints are given"));
+        }
+
+        @Test
+        public void getQueryTestMultipleEndpointsTimeout(@TempDir Path outputDir) throws IOException {
+                wireMockServer.stubFor(get(urlPathEqualTo("/slow"))
+                                .willReturn(aResponse()
+                                                .withStatus(200)
+                                                .withBody("s\n1\n2\n3\n4\n5\n")
+                                                .withChunkedDribbleDelay(6, 4000)));
+
+                String[] args = { "-e", serverUrl, "http://localhost:8080/slow", "-q", querySelect, "-m", "get",
+                                "--endpoint-timeout", "1", "-o", outputDir.toString() };
+                int exitCode = cmd.execute(args);
+
+                // Asserts
+                assertEquals(1, exitCode);
+                assertTrue(err.toString().contains("timed out after 1 s"));
+                try (Stream<Path> files = Files.list(outputDir)) {
+                        assertEquals(List.of("localhost-8080-sparql.csv"),
+                                        files.map(file -> file.getFileName().toString()).toList());
+                }
+        }
+
+        // Pages
+
+        @Test
+        public void getQueryTestPages() {
+                wireMockServer.stubFor(get(urlPathEqualTo("/sparql"))
+                                .withQueryParam("query", matching("(?s).*OFFSET 0"))
+                                .willReturn(aResponse()
+                                                .withStatus(200)
+                                                .withBody("s\r\n1\r\n2\r\n")));
+                wireMockServer.stubFor(get(urlPathEqualTo("/sparql"))
+                                .withQueryParam("query", matching("(?s).*OFFSET 2"))
+                                .willReturn(aResponse()
+                                                .withStatus(200)
+                                                .withBody("s\r\n3\r\n")));
+                wireMockServer.stubFor(get(urlPathEqualTo("/sparql"))
+                                .withQueryParam("query", matching("(?s).*OFFSET 4"))
+                                .willReturn(aResponse()
+                                                .withStatus(200)
+                                                .withBody("s\r\n")));
+
+                String[] args = { "-e", serverUrl, "-q", "SELECT ?s WHERE { ?s ?p ?o } ORDER BY ?s", "-m", "get",
+                                "--page-size", "2" };
+                int exitCode = cmd.execute(args);
+
+                // Asserts
+                assertEquals(0, exitCode);
+                verify(exactly(1), getRequestedFor(urlPathEqualTo("/sparql"))
+                                .withQueryParam("query", matching("(?s).*LIMIT 2\nOFFSET 2")));
+                assertEquals("s\r\n1\r\n2\r\n3\r\n", out.toString());
+        }
+
+        @Test
+        public void getQueryTestPagesValuesAndComment() {
+                String pageQuery = "(?s)[^#]*ORDER BY \\?s\nLIMIT 2\nOFFSET 0\n"
+                                + "VALUES \\?s \\{ <http://example.org/a#1> <http://example.org/b> \\}";
+                wireMockServer.stubFor(get(urlPathEqualTo("/sparql"))
+                                .withQueryParam("query", matching(pageQuery))
+                                .willReturn(aResponse()
+                                                .withStatus(200)
+                                                .withBody("s\r\nhttp://example.org/a#1\r\n")));
+                wireMockServer.stubFor(get(urlPathEqualTo("/sparql"))
+                                .withQueryParam("query", matching("(?s).*OFFSET 2\nVALUES.*"))
+                                .willReturn(aResponse()
+                                                .withStatus(200)
+                                                .withBody("s\r\n")));
+
+                String[] args = { "-e", serverUrl, "-q",
+                                "SELECT ?s WHERE { ?s ?p ?o } # every subject\nORDER BY ?s LIMIT 10\n"
+                                                + "VALUES ?s { <http://example.org/a#1> <http://example.org/b> }",
+                                "-m", "get", "--page-size", "2", "--pages-in-flight", "1" };
+                int exitCode = cmd.execute(args);
+
+                // Asserts
+                assertEquals(0, exitCode);
+                verify(exactly(1), getRequestedFor(urlPathEqualTo("/sparql"))
+                                .withQueryParam("query", matching(pageQuery)));
+                assertEquals("s\r\nhttp://example.org/a#1\r\n", out.toString());
+        }
+
+        @Test
+        public void getQueryTestPagesTruncatedByEndpoint() throws IOException {
+                // The endpoint returns at most one row per response
+                wireMockServer.stubFor(get(urlPathEqualTo("/sparql"))
+                                .withQueryParam("query", matching("(?s).*OFFSET 0"))
+                                .willReturn(aResponse()
+                                                .withStatus(200)
+                                                .withBody("s\r\n1\r\n")));
+                wireMockServer.stubFor(get(urlPathEqualTo("/sparql"))
+                                .withQueryParam("query", matching("(?s).*OFFSET 2"))
+                                .willReturn(aResponse()
+                                                .withStatus(200)
+                                                .withBody("s\r\n3\r\n")));
+
+                Path output = Files.createTempDirectory("corese-pages").resolve("result.csv");
+                String[] args = { "-e", serverUrl, "-q", "SELECT ?s WHERE { ?s ?p ?o } ORDER BY ?s", "-m", "get",
+                                "--page-size", "2", "--pages-in-flight", "1", "-o", output.toString() };
+                int exitCode = cmd.execute(args);
+
+                // Asserts
+                assertEquals(1, exitCode);
+                assertTrue(err.toString().contains("use a smaller --page-size"));
+                assertFalse(Files.exists(output));
+        }
+
+        // Retries
+
+        @Test
+        public void getQueryTestRetry() {
+                String query = "SELECT ?o WHERE { ?s ?p ?o }";
+                wireMockServer.stubFor(get(urlPathEqualTo("/sparql"))
+                                .withQueryParam("query", equalTo(query))
+                                .inScenario("retry")
+                                .whenScenarioStateIs(Scenario.STARTED)
+                                .willReturn(aResponse()
+                                                .withStatus(503)
+                                                .withHeader("Retry-After", "0"))
+                                .willSetStateTo("available"));
+                wireMockServer.stubFor(get(urlPathEqualTo("/sparql"))
+                                .withQueryParam("query", equalTo(query))
+                                .inScenario("retry")
+                                .whenScenarioStateIs("available")
+                                .willReturn(aResponse()
+                                                .withStatus(200)
+                                                .withBody("o")));
+
+                String[] args = { "-e", serverUrl, "-q", query, "-m", "get", "--max-attempts", "2",
+                                "--backoff-base", "10", "--backoff-cap", "10" };
+                int exitCode = cmd.execute(args);
+
+                // Asserts
+                assertEquals(0, exitCode);
+                verify(exactly(2), getRequestedFor(urlPathEqualTo("/sparql"))
+                                .withQueryParam("query", equalTo(query)));
+                assertEquals("o", out.toString().trim());
+        }
+
+        @Test
+        public void getQueryTestRetryAfterLongerThanCap() {
+                String query = "SELECT ?o WHERE { ?s ?p ?o }";
+                wireMockServer.stubFor(get(urlPathEqualTo("/sparql"))
+                                .withQueryParam("query", equalTo(query))
+                                .inScenario("retry-after")
+                                .whenScenarioStateIs(Scenario.STARTED)
+                                .willReturn(aResponse()
+                                                .withStatus(503)
+                                                .withHeader("Retry-After", "99999999999999999"))
+                                .willSetStateTo("available"));
+                wireMockServer.stubFor(get(urlPathEqualTo("/sparql"))
+                                .withQueryParam("query", equalTo(query))
+                                .inScenario("retry-after")
+                                .whenScenarioStateIs("available")
+                                .willReturn(aResponse()
+                                                .withStatus(200)
+                                                .withBody("o")));
+
+                // The delay asked by the endpoint is cut to the backoff cap
+                String[] args = { "-e", serverUrl, "-q", query, "-m", "get", "--max-attempts", "2",
+                                "--backoff-base", "10", "--backoff-cap", "10" };
+                long start = System.nanoTime();
+                int exitCode = cmd.execute(args);
+
+                // Asserts
+                assertEquals(0, exitCode);
+                assertTrue(System.nanoTime() - start < 10_000_000_000L);
+                assertEquals("o", out.toString().trim());
+        }
+
+        // Response compression
+
+        @Test
+        public void getQueryTestGzipResponse() throws IOException {
+                String query = "SELECT ?p WHERE { ?s ?p ?o }";
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                        gzip.write("p\nhttp://example.org/p\n".getBytes(StandardCharsets.UTF_8));
+                }
+                wireMockServer.stubFor(get(urlPathEqualTo("/sparql"))
+                                .withQueryParam("query", equalTo(query))
+                                .willReturn(aResponse()
+                                                .withStatus(200)
+                                                .withHeader("Content-Encoding", "gzip")
+                                                .withBody(compressed.toByteArray())));
+
+                String[] args = { "-e", serverUrl, "-q", query, "-m", "get" };
+                int exitCode = cmd.execute(args);
+
+                // Asserts
+                assertEquals(0, exitCode);
+                verify(exactly(1), getRequestedFor(urlPathEqualTo("/sparql"))
+                                .withQueryParam("query", equalTo(query))
+                                .withHeader("Accept-Encoding", equalTo("gzip, deflate")));
+                assertEquals("p\nhttp://example.org/p", out.toString().trim());
+        }
 }
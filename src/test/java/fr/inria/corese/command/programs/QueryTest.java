@@ -15,6 +15,7 @@ import java.util.Arrays;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import fr.inria.corese.command.utils.server.SparqlServer;
 import fr.inria.corese.core.Graph;
 import fr.inria.corese.core.load.Load;
 import fr.inria.corese.core.print.CanonicalRdf10Format;
@@ -1775,4 +1776,91 @@ public class QueryTest {
                 assertTrue(compareFiles(pathRefMultiFile, pathResMultiFile));
         }
 
-}
\ No newline at end of file
+        @Test
+        public void testConnectToServer() throws Exception {
+                String beatlesFile = inputPath.resolve("beatles.ttl").toString();
+                String pathRefMultiFile = referencesPath.resolve("count").resolve("beatles.md").toString();
+                String pathResMultiFile = resultPath.resolve("count").resolve("connect-beatles.md").toString();
+
+                Graph graph = Graph.create();
+                Load.create(graph).parse(beatlesFile);
+
+                try (SparqlServer server = new SparqlServer(cmd.getCommandSpec(), false, graph)) {
+                        int port = server.start(0, 2);
+
+                        int exitCode = cmd.execute("--connect", "http://localhost:" + port, "-q",
+                                        "SELECT (COUNT(*) AS ?count) WHERE { ?s ?p ?o }", "-r", "markdown", "-o",
+                                        pathResMultiFile);
+
+                        assertEquals(0, exitCode);
+                        assertTrue(compareFiles(pathRefMultiFile, pathResMultiFile));
+                }
+        }
+
+        @Test
+        public void testConnectUpdateReadOnlyServer() throws Exception {
+                String beatlesFile = inputPath.resolve("beatles.ttl").toString();
+
+                Graph graph = Graph.create();
+                Load.create(graph).parse(beatlesFile);
+                int size = graph.size();
+
+                try (SparqlServer server = new SparqlServer(cmd.getCommandSpec(), false, graph)) {
+                        int port = server.start(0, 2);
+
+                        int exitCode = cmd.execute("--connect", "http://localhost:" + port, "-q",
+                                        "INSERT DATA { <http://example.org/s> <http://example.org/p> <http://example.org/o> }");
+
+                        assertEquals(1, exitCode);
+                        assertEquals(size, graph.size());
+                }
+        }
+
+        @Test
+        public void testBatchQueriesGlob() throws IOException {
+                String pathInpBeatlesTTL = inputPath.resolve("beatles.ttl").toString();
+                String globQueries = queriesPath.resolve("ask").toString() + "/beatles*.rq";
+                Path pathResBatch = resultPath.resolve("batch-glob");
+
+                int exitCode = cmd.execute("-i", pathInpBeatlesTTL, "-q", globQueries, "-o",
+                                pathResBatch.toString());
+
+                assertEquals(0, exitCode);
+                assertTrue(java.nio.file.Files.exists(pathResBatch.resolve("beatlesFalse.md")));
+                assertTrue(java.nio.file.Files.exists(pathResBatch.resolve("beatlesTrue.md")));
+        }
+
+        @Test
+        public void testBatchQueriesDirectory() throws IOException {
+                String pathInpBeatlesTTL = inputPath.resolve("beatles.ttl").toString();
+                String pathQueriesAsk = queriesPath.resolve("ask").toString();
+                Path pathResBatch = resultPath.resolve("batch");
+
+                int exitCode = cmd.execute("-i", pathInpBeatlesTTL, "-q", pathQueriesAsk, "-o",
+                                pathResBatch.toString(), "--query-threads", "2");
+
+                assertEquals(0, exitCode);
+                assertTrue(java.nio.file.Files.exists(pathResBatch.resolve("beatlesFalse.md")));
+                assertTrue(java.nio.file.Files.exists(pathResBatch.resolve("beatlesTrue.md")));
+                assertTrue(err.toString().contains("Ran 2 queries"));
+        }
+
+        @Test
+        public void testQueryFromSnapshot() throws IOException {
+                String pathInpBeatlesTTL = inputPath.resolve("beatles.ttl").toString();
+                String snapshot = resultPath.resolve("beatles.snapshot").toString();
+                String count = "SELECT (COUNT(*) AS ?count) WHERE { ?s ?p ?o }";
+
+                int exitCode = cmd.execute("-i", pathInpBeatlesTTL, "-q", count, "-r", "csv", "--snapshot-out",
+                                snapshot);
+                assertEquals(0, exitCode);
+                String expected = out.toString();
+                out.getBuffer().setLength(0);
+
+                exitCode = cmd.execute("-q", count, "-r", "csv", "--snapshot-in", snapshot);
+                assertEquals(0, exitCode);
+                assertEquals(expected, out.toString());
+                assertEquals("", err.toString());
+        }
+
+}
@@ -1,6 +1,7 @@
 package fr.inria.corese.command.programs;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -10,13 +11,17 @@ import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.regex.Pattern;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import fr.inria.corese.command.utils.shacl.ShapesCache;
 import fr.inria.corese.core.Graph;
 import fr.inria.corese.core.api.Loader;
 import fr.inria.corese.core.load.Load;
@@ -204,6 +209,403 @@ public class ValidateTest {
         assertNotEquals("", result);
     }
 
+    @Test
+    public void testViolationsOutFailOnViolation() {
+
+        String inputRdf = this.inputRdfPath.resolve("person-err.ttl").toString();
+        String inputShacl = this.inputShaclPath.resolve("person-validator.ttl").toString();
+
+        int exitCode = cmd.execute("-i", inputRdf, "-s", inputShacl, "--violations-out", "-",
+                "--fail-on-violation");
+
+        assertEquals(2, exitCode);
+        assertEquals("", this.err.toString());
+
+        String[] lines = this.out.toString().split("\n");
+        assertEquals(4, lines.length);
+        for (String line : lines) {
+            assertTrue(line.startsWith("{\"focusNode\":\"http://example.org/ns#"));
+            assertTrue(line.contains("\"severity\":\"http://www.w3.org/ns/shacl#Violation\""));
+        }
+        assertTrue(this.out.toString().contains("\"focusNode\":\"http://example.org/ns#Bob\""));
+    }
+
+    @Test
+    public void testSummaryWithViolationsOut(@TempDir Path tempDir) throws IOException {
+
+        String inputRdf = this.inputRdfPath.resolve("person-err.ttl").toString();
+        String inputShacl = this.inputShaclPath.resolve("person-validator.ttl").toString();
+        Path violations = tempDir.resolve("violations.jsonl");
+
+        int exitCode = cmd.execute("-i", inputRdf, "-s", inputShacl, "--summary",
+                "--violations-out", violations.toString());
+
+        assertEquals(0, exitCode);
+        assertEquals("", this.err.toString());
+        assertEquals(4, Files.readAllLines(violations).size());
+        assertTrue(this.out.toString().startsWith("| Shape | Severity | Results |"));
+        assertTrue(this.out.toString().contains("Conforms: false, 4 results"));
+    }
+
+    @Test
+    public void testSummaryWithViolationsOnStdout() {
+
+        String inputRdf = this.inputRdfPath.resolve("person-err.ttl").toString();
+        String inputShacl = this.inputShaclPath.resolve("person-validator.ttl").toString();
+
+        int exitCode = cmd.execute("-i", inputRdf, "-s", inputShacl, "--summary", "--violations-out", "-");
+
+        assertEquals(1, exitCode);
+        assertEquals("", this.out.toString());
+        assertTrue(this.err.toString().contains("The --summary option requires an output file with -o"));
+    }
+
+    @Test
+    public void testFailOnViolationConforms() {
+
+        String inputRdf = this.inputRdfPath.resolve("person-ok.ttl").toString();
+        String inputShacl = this.inputShaclPath.resolve("person-validator.ttl").toString();
+
+        int exitCode = cmd.execute("-i", inputRdf, "-s", inputShacl, "--fail-on-violation");
+
+        assertEquals(0, exitCode);
+        assertEquals("", this.err.toString());
+    }
+
+    @Test
+    public void testFailOnViolationReport(@TempDir Path tempDir) throws IOException {
+
+        String inputRdf = this.inputRdfPath.resolve("person-err.ttl").toString();
+        String inputShacl = this.inputShaclPath.resolve("person-validator.ttl").toString();
+        Path result = tempDir.resolve("result.nt");
+
+        int exitCode = cmd.execute("-i", inputRdf, "-s", inputShacl, "--fail-on-violation",
+                "-r", "NTRIPLES", "-o", result.toString());
+
+        assertEquals(2, exitCode);
+        assertEquals("", this.err.toString());
+        assertTrue(Files.readString(result).contains("\"false\"^^<http://www.w3.org/2001/XMLSchema#boolean>"));
+    }
+
+    @Test
+    public void testShapesCache(@TempDir Path tempDir) throws IOException {
+
+        String inputRdf = this.inputRdfPath.resolve("person-err.ttl").toString();
+        Path inputShacl = tempDir.resolve("person-validator.ttl");
+        Files.copy(this.inputShaclPath.resolve("person-validator.ttl"), inputShacl);
+        Path shapesCache = tempDir.resolve("shapes.snapshot");
+        Path result1 = tempDir.resolve("result1.ttl");
+        Path result2 = tempDir.resolve("result2.ttl");
+
+        int exitCode = cmd.execute("-i", inputRdf, "-s", inputShacl.toString(), "--shapes-cache",
+                shapesCache.toString(), "-o", result1.toString());
+        assertEquals(0, exitCode);
+        assertTrue(Files.exists(shapesCache));
+
+        // Read the shapes from the file, not from memory
+        ShapesCache.getInstance().clear();
+        exitCode = cmd.execute("-i", inputRdf, "-s", inputShacl.toString(), "--shapes-cache",
+                shapesCache.toString(), "-o", result2.toString(), "-v");
+
+        assertEquals(0, exitCode);
+        assertTrue(this.err.toString().contains("shapes triples from " + shapesCache));
+        assertTrue(this.compareFiles(result1.toString(), result2.toString(), Loader.format.TURTLE_FORMAT));
+    }
+
+    @Test
+    public void testMaxViolations(@TempDir Path tempDir) throws IOException {
+
+        String inputRdf1 = this.inputRdfPath.resolve("beatles-err.ttl").toString();
+        String inputRdf2 = this.inputRdfPath.resolve("person-err.ttl").toString();
+        String inputShacl1 = this.inputShaclPath.resolve("beatles-validator.ttl").toString();
+        String inputShacl2 = this.inputShaclPath.resolve("person-validator.ttl").toString();
+        Path result = tempDir.resolve("result.nt");
+
+        int exitCode = cmd.execute(
+                "-i", inputRdf1,
+                "-i", inputRdf2,
+                "-s", inputShacl1,
+                "-s", inputShacl2,
+                "--max-violations", "2",
+                "-r", "NTRIPLES",
+                "-o", result.toString());
+
+        assertEquals(0, exitCode);
+        assertEquals("", this.err.toString());
+        assertEquals(2, Files.readAllLines(result).stream()
+                .filter(line -> line.contains("<http://www.w3.org/ns/shacl#result>"))
+                .count());
+    }
+
+    @Test
+    public void testMaxViolationsIgnoresWarnings(@TempDir Path tempDir) throws IOException {
+
+        Path inputRdf = tempDir.resolve("data.ttl");
+        Files.writeString(inputRdf, String.join("\n",
+                "@prefix ex: <http://example.org/ns#> .",
+                "ex:Alice a ex:Person .",
+                "ex:Bob a ex:Person .",
+                "ex:Carol a ex:Person ."));
+        Path inputShacl = tempDir.resolve("shapes.ttl");
+        Files.writeString(inputShacl, String.join("\n",
+                "@prefix sh: <http://www.w3.org/ns/shacl#> .",
+                "@prefix ex: <http://example.org/ns#> .",
+                "ex:NameShape a sh:NodeShape ;",
+                "    sh:targetClass ex:Person ;",
+                "    sh:severity sh:Warning ;",
+                "    sh:property [ sh:path ex:name ; sh:minCount 1 ] ."));
+        Path result = tempDir.resolve("result.nt");
+
+        int exitCode = cmd.execute(
+                "-i", inputRdf.toString(),
+                "-s", inputShacl.toString(),
+                "--fail-fast",
+                "-r", "NTRIPLES",
+                "-o", result.toString());
+
+        // Warnings do not count towards the limit, every one is reported
+        assertEquals(0, exitCode);
+        assertEquals("", this.err.toString());
+        List<String> lines = Files.readAllLines(result);
+        assertEquals(3, lines.stream()
+                .filter(line -> line.contains("<http://www.w3.org/ns/shacl#result>"))
+                .count());
+        assertTrue(lines.stream().anyMatch(line -> line.contains("<http://www.w3.org/ns/shacl#Warning>")));
+    }
+
+    @Test
+    public void testSummaryFailFast() {
+
+        String inputRdf = this.inputRdfPath.resolve("person-err.ttl").toString();
+        String inputShacl = this.inputShaclPath.resolve("person-validator.ttl").toString();
+
+        int exitCode = cmd.execute("-i", inputRdf, "-s", inputShacl, "--summary", "--fail-fast");
+
+        assertEquals(0, exitCode);
+        assertEquals("", this.err.toString());
+        assertTrue(this.out.toString().startsWith("| Shape | Severity | Results |"));
+        assertTrue(this.out.toString().contains("| Violation | 1 |"));
+        assertTrue(this.out.toString().contains("Conforms: false, 1 result"));
+    }
+
+    @Test
+    public void testSummaryParallel() {
+
+        String inputRdf1 = this.inputRdfPath.resolve("beatles-err.ttl").toString();
+        String inputShacl1 = this.inputShaclPath.resolve("beatles-validator.ttl").toString();
+        String inputRdf2 = this.inputRdfPath.resolve("person-err.ttl").toString();
+        String inputShacl2 = this.inputShaclPath.resolve("person-validator.ttl").toString();
+
+        int exitCode = cmd.execute(
+                "-i", inputRdf1,
+                "-i", inputRdf2,
+                "-s", inputShacl1,
+                "-s", inputShacl2,
+                "--validation-threads", "2",
+                "--summary");
+
+        assertEquals(0, exitCode);
+        assertEquals("", this.err.toString());
+        assertTrue(this.out.toString().startsWith("| Shape | Severity | Results |"));
+        assertTrue(this.out.toString().contains("| [path <http://example.org/ns#ssn>] | Violation | 2 |"));
+        assertTrue(this.out.toString().contains("Conforms: false, 5 results"));
+    }
+
+    @Test
+    public void testMaxViolationsNegative() {
+
+        String inputRdf = this.inputRdfPath.resolve("person-err.ttl").toString();
+        String inputShacl = this.inputShaclPath.resolve("person-validator.ttl").toString();
+
+        int exitCode = cmd.execute("-i", inputRdf, "-s", inputShacl, "--max-violations", "-1");
+
+        assertEquals(1, exitCode);
+        assertEquals("", this.out.toString());
+        assertTrue(this.err.toString()
+                .contains("The maximum number of violations must be positive or zero, got: -1"));
+    }
+
+    @Test
+    public void test2RDF2SHACLBeatlesErrIncremental(@TempDir Path tempDir) throws IOException {
+
+        String inputRdf1 = this.inputRdfPath.resolve("beatles-err.ttl").toString();
+        String inputShacl1 = this.inputShaclPath.resolve("beatles-validator.ttl").toString();
+        String inputShacl2 = this.inputShaclPath.resolve("person-validator.ttl").toString();
+        String baseline = this.referencesPath.resolve("beatles-person-err.ttl").toString();
+
+        // Remove the second SSN of Bob
+        Path inputRdf2 = tempDir.resolve("person.ttl");
+        Files.writeString(inputRdf2, Files.readString(this.inputRdfPath.resolve("person-err.ttl"))
+                .replace("ex:ssn \"123-45-6789\" ;", ""));
+        Path removed = tempDir.resolve("removed.nt");
+        Files.writeString(removed, "<http://example.org/ns#Bob> <http://example.org/ns#ssn> \"123-45-6789\" .\n");
+
+        Path result = tempDir.resolve("result.nt");
+
+        int exitCode = cmd.execute(
+                "-i", inputRdf1,
+                "-i", inputRdf2.toString(),
+                "-s", inputShacl1,
+                "-s", inputShacl2,
+                "--baseline", baseline,
+                "--removed", removed.toString(),
+                "-r", "NTRIPLES",
+                "-o", result.toString());
+
+        assertEquals(0, exitCode);
+        assertEquals("", this.err.toString());
+
+        String report = Files.readString(result);
+        assertFalse(report.contains("<http://example.org/ns#Bob>"));
+        assertTrue(report.contains("<http://example.org/ns#Alice>"));
+        assertTrue(report.contains("<http://example.org/ns#Calvin>"));
+        assertTrue(report.contains("<http://example.com/Please_Please_Me>"));
+        assertTrue(report.contains("\"false\"^^<http://www.w3.org/2001/XMLSchema#boolean>"));
+    }
+
+    @Test
+    public void testIncrementalMaxViolationsAndViolationsOut(@TempDir Path tempDir) throws IOException {
+
+        String inputRdf1 = this.inputRdfPath.resolve("beatles-err.ttl").toString();
+        String inputShacl1 = this.inputShaclPath.resolve("beatles-validator.ttl").toString();
+        String inputShacl2 = this.inputShaclPath.resolve("person-validator.ttl").toString();
+        String baseline = this.referencesPath.resolve("beatles-person-err.ttl").toString();
+
+        // Give Bob a third SSN, which does not match the pattern
+        String statement = "<http://example.org/ns#Bob> <http://example.org/ns#ssn> \"bad\" .\n";
+        Path inputRdf2 = tempDir.resolve("person.ttl");
+        Files.writeString(inputRdf2, Files.readString(this.inputRdfPath.resolve("person-err.ttl")) + statement);
+        Path delta = tempDir.resolve("delta.nt");
+        Files.writeString(delta, statement);
+
+        Path result = tempDir.resolve("result.nt");
+        Path violations = tempDir.resolve("violations.jsonl");
+
+        int exitCode = cmd.execute(
+                "-i", inputRdf1,
+                "-i", inputRdf2.toString(),
+                "-s", inputShacl1,
+                "-s", inputShacl2,
+                "--baseline", baseline,
+                "--delta", delta.toString(),
+                "--max-violations", "5",
+                "--violations-out", violations.toString(),
+                "-r", "NTRIPLES",
+                "-o", result.toString());
+
+        assertEquals(0, exitCode);
+        assertEquals("", this.err.toString());
+
+        // Four results kept from the baseline, one of the two new results of Bob
+        assertEquals(5, Files.readAllLines(result).stream()
+                .filter(line -> line.contains("<http://www.w3.org/ns/shacl#result>"))
+                .count());
+
+        // Only the results of the focus nodes validated again are streamed
+        List<String> lines = Files.readAllLines(violations);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).startsWith("{\"focusNode\":\"http://example.org/ns#Bob\""));
+    }
+
+    @Test
+    public void testBaselineWithoutChange() {
+
+        String inputRdf = this.inputRdfPath.resolve("beatles-err.ttl").toString();
+        String inputShacl = this.inputShaclPath.resolve("beatles-validator.ttl").toString();
+        String baseline = this.referencesPath.resolve("beatles-err.ttl").toString();
+
+        int exitCode = cmd.execute("-i", inputRdf, "-s", inputShacl, "--baseline", baseline);
+
+        assertEquals(1, exitCode);
+    }
+
+    @Test
+    public void test2RDF2SHACLBeatlesErrParallel() throws IOException {
+
+        String inputRdf1 = this.inputRdfPath.resolve("beatles-err.ttl").toString();
+        String inputShacl1 = this.inputShaclPath.resolve("beatles-validator.ttl").toString();
+
+        String inputRdf2 = this.inputRdfPath.resolve("person-err.ttl").toString();
+        String inputShacl2 = this.inputShaclPath.resolve("person-validator.ttl").toString();
+
+        String expected = this.referencesPath.resolve("beatles-person-err.ttl").toString();
+        String result = this.resultPath.resolve("beatles-person-err-parallel.ttl").toString();
+
+        int exitCode = cmd.execute(
+                "-i", inputRdf1,
+                "-i", inputRdf2,
+                "-s", inputShacl1,
+                "-s", inputShacl2,
+                "--validation-threads", "2",
+                "-o", result);
+
+        assertEquals(0, exitCode);
+        assertEquals("", this.out.toString());
+        assertEquals("", this.err.toString());
+        assertTrue(this.compareFiles(expected, result, Loader.format.TURTLE_FORMAT));
+        assertNotEquals("", result);
+    }
+
+    @Test
+    public void testParallelValidationLargeData(@TempDir Path tempDir) throws IOException {
+
+        // Eight shapes, so that every thread evaluates several partitions
+        StringBuilder shapes = new StringBuilder("@prefix sh: <http://www.w3.org/ns/shacl#> .\n"
+                + "@prefix xsd: <http://www.w3.org/2001/XMLSchema#> .\n"
+                + "@prefix ex: <http://example.org/ns#> .\n");
+        for (int i = 0; i < 8; i++) {
+            shapes.append("ex:Shape").append(i).append(" a sh:NodeShape ; sh:targetClass ex:Class").append(i)
+                    .append(" ; sh:property [ sh:path ex:name ; sh:minCount 1 ; sh:datatype xsd:string ]")
+                    .append(" ; sh:property [ sh:path ex:knows ; sh:class ex:Class").append((i + 1) % 8)
+                    .append(" ] .\n");
+        }
+        Path inputShacl = tempDir.resolve("shapes.ttl");
+        Files.writeString(inputShacl, shapes);
+
+        // Nodes missing their name, with a wrong datatype or knowing a node of the wrong class
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < 4000; i++) {
+            String node = "<http://example.org/ns#n" + i + ">";
+            data.append(node).append(" <http://www.w3.org/1999/02/22-rdf-syntax-ns#type>")
+                    .append(" <http://example.org/ns#Class").append(i % 8).append("> .\n");
+            if (i % 7 == 0) {
+                data.append(node).append(" <http://example.org/ns#name> \"").append(i)
+                        .append("\"^^<http://www.w3.org/2001/XMLSchema#integer> .\n");
+            } else if (i % 11 != 0) {
+                data.append(node).append(" <http://example.org/ns#name> \"Node ").append(i).append("\" .\n");
+            }
+            data.append(node).append(" <http://example.org/ns#knows> <http://example.org/ns#n").append((i + 1) % 4000)
+                    .append("> .\n");
+            if (i % 13 == 0) {
+                data.append(node).append(" <http://example.org/ns#knows> <http://example.org/ns#n")
+                        .append((i + 2) % 4000).append("> .\n");
+            }
+        }
+        Path inputRdf = tempDir.resolve("data.nt");
+        Files.writeString(inputRdf, data);
+
+        Path sequential = tempDir.resolve("sequential.nt");
+        Path parallel = tempDir.resolve("parallel.nt");
+
+        int exitCode = cmd.execute("-i", inputRdf.toString(), "-s", inputShacl.toString(),
+                "-r", "NTRIPLES", "-o", sequential.toString());
+        assertEquals(0, exitCode);
+
+        exitCode = cmd.execute("-i", inputRdf.toString(), "-s", inputShacl.toString(),
+                "--validation-threads", "4", "-r", "NTRIPLES", "-o", parallel.toString());
+        assertEquals(0, exitCode);
+        assertEquals("", this.err.toString());
+
+        long results = Files.readAllLines(sequential).stream()
+                .filter(line -> line.contains("<http://www.w3.org/ns/shacl#result>"))
+                .count();
+        assertTrue(results > 1000);
+        assertEquals(results, Files.readAllLines(parallel).stream()
+                .filter(line -> line.contains("<http://www.w3.org/ns/shacl#result>"))
+                .count());
+        assertTrue(this.compareFiles(sequential.toString(), parallel.toString(), Loader.format.NT_FORMAT));
+    }
+
     @Test
     public void test1RDFUrl1SHACLBeatlesOk() throws IOException {
 
@@ -0,0 +1,192 @@
+package fr.inria.corese.command.utils.loader.rdf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import fr.inria.corese.command.utils.stream.NTriplesTerms;
+import fr.inria.corese.core.Graph;
+import fr.inria.corese.core.kgram.api.core.Edge;
+import fr.inria.corese.core.kgram.api.core.Node;
+import fr.inria.corese.core.sparql.api.IDatatype;
+
+public class GraphSnapshotTest {
+
+    private static final String EX = "http://example.com/";
+    private static final String XSD_INTEGER = "http://www.w3.org/2001/XMLSchema#integer";
+    private static final String SETTINGS = "format=TURTLE";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Round trip of language-tagged and typed literals")
+    void roundTripLiterals() throws IOException {
+        Graph graph = Graph.create();
+        Node defaultGraph = graph.addGraph(NTriplesTerms.DEFAULT_GRAPH);
+        Node subject = graph.addResource(EX + "s");
+        graph.addEdge(defaultGraph, subject, graph.addProperty(EX + "name"), graph.addLiteral("chat", null, "fr"));
+        graph.addEdge(defaultGraph, subject, graph.addProperty(EX + "count"),
+                graph.addLiteral("1", XSD_INTEGER, null));
+
+        Path source = this.writeSource("<http://example.com/s> <http://example.com/p> \"o\" .\n");
+        Path file = this.tempDir.resolve("graph.snapshot");
+        GraphSnapshot.write(graph, List.of(source), SETTINGS, file);
+
+        Map<String, IDatatype> objects = new HashMap<>();
+        try (GraphSnapshot snapshot = new GraphSnapshot(file)) {
+            assertEquals(SETTINGS, snapshot.getSettings());
+            Graph read = snapshot.readGraph();
+            assertEquals(2, read.size());
+            for (Edge edge : read.getEdges()) {
+                assertEquals(EX + "s", edge.getNode(0).getLabel());
+                objects.put(edge.getEdgeNode().getLabel(), edge.getNode(1).getDatatypeValue());
+            }
+        }
+
+        IDatatype name = objects.get(EX + "name");
+        assertNotNull(name);
+        assertTrue(name.isLiteral());
+        assertEquals("chat", name.getLabel());
+        assertEquals("fr", name.getLang());
+
+        IDatatype count = objects.get(EX + "count");
+        assertNotNull(count);
+        assertTrue(count.isLiteral());
+        assertEquals("1", count.getLabel());
+        assertEquals(XSD_INTEGER, count.getDatatypeURI());
+    }
+
+    @Test
+    @DisplayName("Snapshot of unchanged sources is up to date")
+    void checkStaleUnchanged() throws IOException {
+        Path source = this.writeSource("<http://example.com/s> <http://example.com/p> \"abc\" .\n");
+        Path file = this.writeSnapshot(source);
+
+        try (GraphSnapshot snapshot = new GraphSnapshot(file)) {
+            assertNull(snapshot.checkStale(List.of(source), SETTINGS));
+            assertNull(snapshot.checkStale(null, SETTINGS));
+        }
+    }
+
+    @Test
+    @DisplayName("Snapshot written with other settings is stale")
+    void checkStaleSettings() throws IOException {
+        Path source = this.writeSource("<http://example.com/s> <http://example.com/p> \"abc\" .\n");
+        Path file = this.writeSnapshot(source);
+
+        try (GraphSnapshot snapshot = new GraphSnapshot(file)) {
+            String reason = snapshot.checkStale(List.of(source), "format=NTRIPLES");
+            assertNotNull(reason);
+            assertTrue(reason.contains("other loading options"));
+        }
+    }
+
+    @Test
+    @DisplayName("Snapshot of a source with another size is stale")
+    void checkStaleSize() throws IOException {
+        Path source = this.writeSource("<http://example.com/s> <http://example.com/p> \"abc\" .\n");
+        Path file = this.writeSnapshot(source);
+        FileTime modified = Files.getLastModifiedTime(source);
+        Files.writeString(source, "<http://example.com/s> <http://example.com/p> \"abcd\" .\n");
+        Files.setLastModifiedTime(source, modified);
+
+        try (GraphSnapshot snapshot = new GraphSnapshot(file)) {
+            String reason = snapshot.checkStale(List.of(source), SETTINGS);
+            assertNotNull(reason);
+            assertTrue(reason.contains("has changed"));
+        }
+    }
+
+    @Test
+    @DisplayName("Snapshot of a touched source with the same content is up to date")
+    void checkStaleTouchedSameContent() throws IOException {
+        Path source = this.writeSource("<http://example.com/s> <http://example.com/p> \"abc\" .\n");
+        Path file = this.writeSnapshot(source);
+        this.touch(source);
+
+        try (GraphSnapshot snapshot = new GraphSnapshot(file)) {
+            assertNull(snapshot.checkStale(List.of(source), SETTINGS));
+        }
+    }
+
+    @Test
+    @DisplayName("Snapshot of a modified source with the same size is stale")
+    void checkStaleModifiedSameSize() throws IOException {
+        Path source = this.writeSource("<http://example.com/s> <http://example.com/p> \"abc\" .\n");
+        Path file = this.writeSnapshot(source);
+        Files.writeString(source, "<http://example.com/s> <http://example.com/p> \"xyz\" .\n");
+        this.touch(source);
+
+        try (GraphSnapshot snapshot = new GraphSnapshot(file)) {
+            String reason = snapshot.checkStale(List.of(source), SETTINGS);
+            assertNotNull(reason);
+            assertTrue(reason.contains("has changed"));
+        }
+    }
+
+    @Test
+    @DisplayName("Snapshot built from other files is stale")
+    void checkStaleOtherSources() throws IOException {
+        Path source = this.writeSource("<http://example.com/s> <http://example.com/p> \"abc\" .\n");
+        Path file = this.writeSnapshot(source);
+
+        try (GraphSnapshot snapshot = new GraphSnapshot(file)) {
+            String reason = snapshot.checkStale(List.of(this.tempDir.resolve("other.nt")), SETTINGS);
+            assertNotNull(reason);
+            assertTrue(reason.contains("other input files"));
+        }
+    }
+
+    /**
+     * Write the source file of the tests.
+     *
+     * @param content Content of the file.
+     * @return The path of the file.
+     * @throws IOException If the file cannot be written.
+     */
+    private Path writeSource(String content) throws IOException {
+        return Files.writeString(this.tempDir.resolve("source.nt"), content);
+    }
+
+    /**
+     * Write a snapshot of a one-triple graph built from a source.
+     *
+     * @param source Source recorded in the snapshot.
+     * @return The path of the snapshot.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    private Path writeSnapshot(Path source) throws IOException {
+        Graph graph = Graph.create();
+        graph.addEdge(graph.addGraph(NTriplesTerms.DEFAULT_GRAPH), graph.addResource(EX + "s"),
+                graph.addProperty(EX + "p"), graph.addLiteral("abc", null, null));
+        Path file = this.tempDir.resolve("graph.snapshot");
+        GraphSnapshot.write(graph, List.of(source), SETTINGS, file);
+        return file;
+    }
+
+    /**
+     * Move the modification time of a file one minute later.
+     *
+     * @param path File to touch.
+     * @throws IOException If the time cannot be changed.
+     */
+    private void touch(Path path) throws IOException {
+        long modified = Files.getLastModifiedTime(path).toMillis();
+        Files.setLastModifiedTime(path, FileTime.fromMillis(modified + 60_000));
+    }
+
+}